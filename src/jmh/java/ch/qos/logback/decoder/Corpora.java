@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.List;
+
+/**
+ * The layouts benchmarked, by name, and their generated events
+ */
+final class Corpora {
+  /** Number of distinct events decoded in turn by each benchmark */
+  static final int SIZE = 1024;
+
+  private Corpora() {
+  }
+
+  /**
+   * Gets a layout pattern by name
+   *
+   * @param name one of "simple", "caller", "mdc" or "exception"
+   * @return the layout pattern
+   */
+  static String layout(String name) {
+    if ("simple".equals(name)) {
+      return LogGenerator.SIMPLE_LAYOUT;
+    } else if ("caller".equals(name)) {
+      return LogGenerator.CALLER_LAYOUT;
+    } else if ("mdc".equals(name)) {
+      return LogGenerator.MDC_LAYOUT;
+    } else if ("exception".equals(name)) {
+      return LogGenerator.EXCEPTION_LAYOUT;
+    }
+    throw new IllegalArgumentException("unknown layout: " + name);
+  }
+
+  /**
+   * Generates {@link #SIZE} events for a layout
+   *
+   * @param name the name of the layout
+   * @return the text of each event
+   */
+  static String[] events(String name) {
+    List<String> events = LogGenerator.generateEvents(layout(name), SIZE);
+    return events.toArray(new String[events.size()]);
+  }
+}
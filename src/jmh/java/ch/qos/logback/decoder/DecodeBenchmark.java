@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Measures {@link Decoder#decode(CharSequence)} for each layout
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+  @Param({ "simple", "caller", "mdc", "exception" })
+  public String layout;
+
+  private String[] events;
+  private BufferDecoder decoder;
+  private BufferDecoder lazyDecoder;
+  private BufferDecoder filteredDecoder;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    events = Corpora.events(layout);
+    decoder = new BufferDecoder();
+    decoder.setLayoutPattern(Corpora.layout(layout));
+    lazyDecoder = new BufferDecoder();
+    lazyDecoder.setLayoutPattern(Corpora.layout(layout));
+    lazyDecoder.setLazy(true);
+    filteredDecoder = new BufferDecoder();
+    filteredDecoder.setLayoutPattern(Corpora.layout(layout));
+    filteredDecoder.setFilters(Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.WARN)));
+  }
+
+  @Benchmark
+  public ILoggingEvent decode() {
+    return decoder.decode(events[next++ & (Corpora.SIZE - 1)]);
+  }
+
+  /** Decodes lazily and only reads the level, like a level filter */
+  @Benchmark
+  public Level decodeLazyLevelOnly() {
+    return lazyDecoder.decode(events[next++ & (Corpora.SIZE - 1)]).getLevel();
+  }
+
+  /** Decodes only WARN and ERROR events, dropping the others unparsed */
+  @Benchmark
+  public ILoggingEvent decodeMinLevelWarn() {
+    return filteredDecoder.decode(events[next++ & (Corpora.SIZE - 1)]);
+  }
+
+  @Benchmark
+  public boolean isEventStart() {
+    String event = events[next++ & (Corpora.SIZE - 1)];
+    return decoder.isEventStart(event.substring(0, event.indexOf('\n')));
+  }
+}
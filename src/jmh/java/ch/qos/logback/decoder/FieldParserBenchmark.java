@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.core.pattern.parser2.DatePatternInfo;
+import ch.qos.logback.core.pattern.parser2.PatternParser;
+
+/**
+ * Measures the field capturers that dominate decoding: dates
+ * and caller data
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldParserBenchmark {
+  private static final int DATE_LENGTH = "yyyy-MM-dd HH:mm:ss.SSS".length();
+
+  private String[] events;
+  private String[] callers;
+  private DatePatternInfo dateInfo;
+  private FieldCapturer<IStaticLoggingEvent> dateParser;
+  private CallerStackTraceParser callerParser;
+  private StaticLoggingEvent event;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    events = Corpora.events("caller");
+    callers = new String[events.length];
+    for (int i = 0; i < events.length; i++) {
+      callers[i] = events[i].substring(events[i].indexOf("Caller+0"));
+    }
+
+    dateInfo = (DatePatternInfo)PatternParser.parse(LogGenerator.CALLER_LAYOUT).get(0);
+    dateParser = new DateParser().forContext(dateInfo);
+    callerParser = new CallerStackTraceParser();
+    event = new StaticLoggingEvent();
+  }
+
+  /** Parses the date in place, as {@link DecodeContext} does */
+  @Benchmark
+  public long date() {
+    dateParser.captureField(event, events[next++ & (Corpora.SIZE - 1)], 0, DATE_LENGTH, dateInfo);
+    return event.getTimeStamp();
+  }
+
+  /** Parses the date from a {@code String}, with {@code SimpleDateFormat} */
+  @Benchmark
+  public long dateString() {
+    dateParser.captureField(event, events[next++ & (Corpora.SIZE - 1)].substring(0, DATE_LENGTH), dateInfo);
+    return event.getTimeStamp();
+  }
+
+  @Benchmark
+  public StaticLoggingEvent callerStackTrace() {
+    callerParser.captureField(event, callers[next++ & (Corpora.SIZE - 1)], null);
+    return event;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Measures decoding whole generated files, end to end
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileDecodeBenchmark {
+  @Param({ "simple", "caller", "exception" })
+  public String layout;
+
+  @Param({ "100000" })
+  public int numEvents;
+
+  private File file;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = File.createTempFile("decode-benchmark", ".log");
+    LogGenerator.generateFile(file.getPath(), Corpora.layout(layout), numEvents);
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public void bufferDecoder(final Blackhole bh) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      new BufferDecoder().decode(reader, new ILoggingEventHandler() {
+        @Override
+        public void handle(ILoggingEvent event) {
+          bh.consume(event);
+        }
+      });
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Benchmark
+  public void mappedFileDecoder(final Blackhole bh) throws IOException {
+    new MappedFileDecoder().decode(file, new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        bh.consume(event);
+      }
+    });
+  }
+
+  /** Decodes 1% of the events, from the middle of the file */
+  @Benchmark
+  public void mappedFileDecoderTimeRange(final Blackhole bh) throws IOException {
+    long since = LogGenerator.START_TIME + numEvents / 2 * LogGenerator.EVENT_INTERVAL;
+    long until = since + numEvents / 100 * LogGenerator.EVENT_INTERVAL;
+    new MappedFileDecoder().decode(file, since, until, new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        bh.consume(event);
+      }
+    });
+  }
+}
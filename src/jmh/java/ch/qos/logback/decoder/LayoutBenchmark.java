@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+import ch.qos.logback.core.pattern.parser2.PatternParser;
+import ch.qos.logback.decoder.regex.PatternLayoutRegexUtil;
+
+/**
+ * Measures the compilation of layout patterns
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+  @Param({ "simple", "caller", "mdc", "exception" })
+  public String layout;
+
+  private String layoutPattern;
+
+  @Setup
+  public void setUp() {
+    layoutPattern = Corpora.layout(layout);
+  }
+
+  @Benchmark
+  public String toRegex() {
+    return new PatternLayoutRegexUtil().toRegex(layoutPattern);
+  }
+
+  @Benchmark
+  public List<PatternInfo> parse() {
+    return PatternParser.parse(layoutPattern);
+  }
+
+  @Benchmark
+  public CompiledLayout compile() {
+    return CompiledLayout.compile(layoutPattern);
+  }
+
+  @Benchmark
+  public CompiledLayout cachedCompile() {
+    return CompiledLayoutCache.getDefault().get(layoutPattern);
+  }
+}
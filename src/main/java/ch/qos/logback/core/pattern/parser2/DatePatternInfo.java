@@ -20,6 +20,7 @@ import java.text.SimpleDateFormat;
  */
 public class DatePatternInfo extends PatternInfo {
   private DateFormat dateFormat;
+  private FixedDateFormat fixedDateFormat;
 
   public DatePatternInfo() {
     dateFormat = SimpleDateFormat.getDateInstance();
@@ -40,4 +41,22 @@ public class DatePatternInfo extends PatternInfo {
   public void setDateFormat(DateFormat dateFormat) {
     this.dateFormat = dateFormat;
   }
+
+  /**
+   * Gets the fixed-width date format, which parses faster than the date
+   * format but only supports common patterns
+   * @return the fixed-width date format; or {@code null} if the date
+   * pattern is not supported by {@link FixedDateFormat}
+   */
+  public FixedDateFormat getFixedDateFormat() {
+    return fixedDateFormat;
+  }
+
+  /**
+   * Sets the fixed-width date format
+   * @param fixedDateFormat desired fixed-width date format (or {@code null})
+   */
+  public void setFixedDateFormat(FixedDateFormat fixedDateFormat) {
+    this.fixedDateFormat = fixedDateFormat;
+  }
 }
@@ -0,0 +1,365 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.core.pattern.parser2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * A {@code FixedDateFormat} parses dates whose fields all have a fixed
+ * width, such as those of the ISO8601 ({@code yyyy-MM-dd HH:mm:ss,SSS})
+ * and {@code HH:mm:ss.SSS} patterns. The digits are read in place and the
+ * epoch is computed arithmetically, so no {@code Date} or {@code Calendar}
+ * is created. It is immutable and thread-safe.
+ *
+ * <p>Only the {@code yyyy}, {@code MM}, {@code dd}, {@code HH},
+ * {@code mm}, {@code ss} and {@code SSS} fields are supported, along with
+ * any literal (quoted or not). Fields that are missing from the pattern
+ * default to 1970-01-01 00:00:00.000, like in {@code SimpleDateFormat}.</p>
+ *
+ * <p>A date is parsed in two parts: the prefix (everything up to the
+ * milliseconds), whose epoch can be cached by the caller and is the same
+ * for all events of the same second, and the milliseconds.</p>
+ */
+public final class FixedDateFormat {
+  /** Returned by the parse methods when the text does not fit the pattern */
+  public static final long INVALID = Long.MIN_VALUE;
+
+  private static final char YEAR = 'y';
+  private static final char MONTH = 'M';
+  private static final char DAY = 'd';
+  private static final char HOUR = 'H';
+  private static final char MINUTE = 'm';
+  private static final char SECOND = 's';
+  private static final char MILLIS = 'S';
+
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  private final String pattern;
+  private final TimeZone timeZone;
+
+  // the expected text, where the chars of fields are placeholders
+  private final char[] template;
+  private final boolean[] isField;
+
+  private final char[] fieldTypes;
+  private final int[] fieldOffsets;
+  private final int[] fieldWidths;
+  private final int prefixLength;
+
+  private FixedDateFormat(String pattern, TimeZone timeZone, StringBuilder template,
+      List<int[]> fields) {
+    this.pattern = pattern;
+    this.timeZone = timeZone;
+    this.template = template.toString().toCharArray();
+    this.isField = new boolean[this.template.length];
+
+    int n = fields.size();
+    fieldTypes = new char[n];
+    fieldOffsets = new int[n];
+    fieldWidths = new int[n];
+    int millisOffset = -1;
+    for (int i = 0; i < n; i++) {
+      int[] f = fields.get(i);
+      fieldTypes[i] = (char)f[0];
+      fieldOffsets[i] = f[1];
+      fieldWidths[i] = f[2];
+      for (int j = f[1]; j < f[1] + f[2]; j++) {
+        isField[j] = true;
+      }
+      if (fieldTypes[i] == MILLIS) {
+        millisOffset = f[1];
+      }
+    }
+
+    // The prefix ends at the milliseconds, unless other fields follow
+    // them, in which case the whole date is the prefix.
+    int prefix = this.template.length;
+    if (millisOffset >= 0) {
+      prefix = millisOffset;
+      for (int i = 0; i < n; i++) {
+        if (fieldOffsets[i] > millisOffset) {
+          prefix = this.template.length;
+        }
+      }
+    }
+    this.prefixLength = prefix;
+  }
+
+  /**
+   * Compiles a date pattern
+   *
+   * @param pattern the {@code SimpleDateFormat} pattern
+   * @param timeZone the time zone of the dates (or {@code null} for
+   * the default time zone)
+   * @return the compiled format; or {@code null} if the pattern has
+   * fields that are not supported
+   */
+  public static FixedDateFormat compile(String pattern, TimeZone timeZone) {
+    StringBuilder template = new StringBuilder();
+    List<int[]> fields = new ArrayList<int[]>();
+    String seen = "";
+
+    int i = 0;
+    while (i < pattern.length()) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        // quoted literal, where '' is a single quote
+        int close = pattern.indexOf('\'', i + 1);
+        if (close < 0) {
+          return null;
+        }
+        template.append(close == i + 1 ? "'" : pattern.substring(i + 1, close));
+        i = close + 1;
+
+      } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+        int j = i;
+        while (j < pattern.length() && pattern.charAt(j) == c) {
+          j++;
+        }
+        int width = j - i;
+        if (width != expectedWidth(c) || seen.indexOf(c) >= 0) {
+          return null;
+        }
+        seen += c;
+        fields.add(new int[] { c, template.length(), width });
+        for (int k = 0; k < width; k++) {
+          template.append('0');
+        }
+        i = j;
+
+      } else {
+        template.append(c);
+        i++;
+      }
+    }
+
+    if (fields.isEmpty()) {
+      return null;
+    }
+    return new FixedDateFormat(pattern, timeZone != null ? timeZone : TimeZone.getDefault(),
+        template, fields);
+  }
+
+  /**
+   * Gets the width of a supported field
+   *
+   * @param field the pattern letter of the field
+   * @return the width or -1 if the field is not supported
+   */
+  private static int expectedWidth(char field) {
+    switch (field) {
+      case YEAR: return 4;
+      case MILLIS: return 3;
+      case MONTH:
+      case DAY:
+      case HOUR:
+      case MINUTE:
+      case SECOND: return 2;
+      default: return -1;
+    }
+  }
+
+  /**
+   * Gets the pattern this was compiled from
+   *
+   * @return the pattern
+   */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Gets the time zone of parsed dates
+   *
+   * @return the time zone
+   */
+  public TimeZone getTimeZone() {
+    return timeZone;
+  }
+
+  /**
+   * Gets the length of all dates in this format
+   *
+   * @return the length in chars
+   */
+  public int length() {
+    return template.length;
+  }
+
+  /**
+   * Gets the length of the prefix whose epoch is returned by
+   * {@link #parsePrefix(CharSequence, int)}
+   *
+   * @return the length in chars
+   */
+  public int prefixLength() {
+    return prefixLength;
+  }
+
+  /**
+   * Parses a date
+   *
+   * @param text the text containing the date
+   * @param start index of the first char of the date
+   * @param end index after the last char of the date
+   * @return the epoch in milliseconds; or {@link #INVALID} if the text
+   * does not fit the pattern
+   */
+  public long parse(CharSequence text, int start, int end) {
+    if (end - start != template.length) {
+      return INVALID;
+    }
+    long epoch = parsePrefix(text, start);
+    int millis = parseMillis(text, start);
+    return epoch == INVALID || millis < 0 ? INVALID : epoch + millis;
+  }
+
+  /**
+   * Parses the prefix of a date (that is, everything but the milliseconds,
+   * when they are the last field). The result is the same for all dates
+   * with the same prefix, so it can be cached.
+   *
+   * @param text the text containing the date, of which at least
+   * {@link #length()} chars must be available from {@code start}
+   * @param start index of the first char of the date
+   * @return the epoch in milliseconds of the prefix; or {@link #INVALID}
+   * if the prefix does not fit the pattern
+   */
+  public long parsePrefix(CharSequence text, int start) {
+    if (!literalsMatch(text, start, 0, prefixLength)) {
+      return INVALID;
+    }
+
+    int year = 1970;
+    int month = 1;
+    int day = 1;
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int millis = 0;
+    for (int i = 0; i < fieldTypes.length; i++) {
+      if (fieldOffsets[i] >= prefixLength) {
+        continue;
+      }
+      int value = digits(text, start + fieldOffsets[i], fieldWidths[i]);
+      if (value < 0) {
+        return INVALID;
+      }
+      switch (fieldTypes[i]) {
+        case YEAR: year = value; break;
+        case MONTH: month = value; break;
+        case DAY: day = value; break;
+        case HOUR: hour = value; break;
+        case MINUTE: minute = value; break;
+        case SECOND: second = value; break;
+        case MILLIS: millis = value; break;
+        default: break;
+      }
+    }
+
+    // Out-of-range days, hours, minutes and seconds roll over like in a
+    // lenient SimpleDateFormat, but months don't, so leave them (and
+    // pre-Gregorian years) to SimpleDateFormat.
+    if (month < 1 || month > 12 || year < 1600) {
+      return INVALID;
+    }
+
+    long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+        + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    return toUtc(local);
+  }
+
+  /**
+   * Parses the milliseconds of a date, if they follow the prefix
+   *
+   * @param text the text containing the date, of which at least
+   * {@link #length()} chars must be available from {@code start}
+   * @param start index of the first char of the date
+   * @return the milliseconds (0 if they are part of the prefix or not in
+   * the pattern); or -1 if the text does not fit the pattern
+   */
+  public int parseMillis(CharSequence text, int start) {
+    if (!literalsMatch(text, start, prefixLength, template.length)) {
+      return -1;
+    }
+    if (prefixLength == template.length) {
+      return 0;
+    }
+    return digits(text, start + prefixLength, 3);
+  }
+
+  /**
+   * Determines whether the literal chars in a range of the template are
+   * found in the text
+   */
+  private boolean literalsMatch(CharSequence text, int start, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (!isField[i] && text.charAt(start + i) != template[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads a number of a fixed width
+   *
+   * @return the number or -1 if a char is not a digit
+   */
+  private static int digits(CharSequence text, int pos, int width) {
+    int value = 0;
+    for (int i = pos; i < pos + width; i++) {
+      int d = text.charAt(i) - '0';
+      if (d < 0 || d > 9) {
+        return -1;
+      }
+      value = value * 10 + d;
+    }
+    return value;
+  }
+
+  /**
+   * Converts a local date-time (as millis since the local epoch) to UTC.
+   * A local time in a DST gap is taken as standard time, and an ambiguous
+   * one as the later of its two instants, like {@code GregorianCalendar}.
+   */
+  private long toUtc(long local) {
+    int offset = timeZone.getOffset(local - timeZone.getRawOffset());
+    long utc = local - offset;
+    int actual = timeZone.getOffset(utc);
+    if (actual != offset) {
+      utc = local - actual;
+    }
+    return utc;
+  }
+
+  /**
+   * Counts the days from 1970-01-01 to a date of the proleptic
+   * Gregorian calendar
+   */
+  static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yoe = y - era * 400;
+    int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097L + doe - 719468;
+  }
+
+  @Override
+  public String toString() {
+    return pattern;
+  }
+}
@@ -97,7 +97,14 @@ public class PatternParser {
     return LoggerFactory.getLogger(PatternParser.class);
   }
 
-  private static DateFormat parseDateFormat(String option) {
+  /**
+   * Parses the option of a date pattern into a date format, and into a
+   * fixed-width date format when the pattern supports it
+   *
+   * @param option the date option (e.g., "HH:mm:ss.SSS, UTC")
+   * @param info the pattern info to receive the date formats
+   */
+  private static void parseDateFormat(String option, DatePatternInfo info) {
     TimeZone tz = null;
 
     // default to ISO8601 if no conversion pattern given
@@ -137,7 +144,8 @@ public class PatternParser {
       format.setTimeZone(tz);
     }
 
-    return format;
+    info.setDateFormat(format);
+    info.setFixedDateFormat(FixedDateFormat.compile(option, tz));
   }
 
   /**
@@ -184,7 +192,7 @@ public class PatternParser {
           .setFormatModifier(m.group(FORMAT));
 
       if (isDate) {
-        ((DatePatternInfo)inf).setDateFormat(parseDateFormat(opt.value()));
+        parseDateFormat(opt.value(), (DatePatternInfo)inf);
       }
 
       // recursively set children
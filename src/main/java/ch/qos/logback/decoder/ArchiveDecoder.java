@@ -0,0 +1,504 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.PatternLayout;
+
+/**
+ * An {@code ArchiveDecoder} decodes log files that were compressed on
+ * rollover (e.g., by a {@code TimeBasedRollingPolicy} with a {@code .gz}
+ * or {@code .zip} file name pattern) without decompressing them to disk.
+ * Files with other extensions are read as is.
+ * <p>
+ * The files are inflated and converted to chars on a separate thread,
+ * which hands them over in large reusable chunks, so that inflating one
+ * part of the input overlaps with decoding the events of the previous one.
+ */
+public class ArchiveDecoder extends BufferDecoder {
+  /** Size (in chars) of a chunk handed from the inflating thread to the decoding thread */
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  /** Number of chunks in flight between the two threads */
+  private static final int CHUNK_COUNT = 4;
+
+  /** Size (in bytes) of the buffers of the compressed and inflated streams */
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+  private final Logger logger;
+  private Charset charset;
+
+  /**
+   * Constructs an {@code ArchiveDecoder}
+   */
+  public ArchiveDecoder() {
+    super();
+    logger = LoggerFactory.getLogger(ArchiveDecoder.class);
+    charset = Charset.defaultCharset();
+  }
+
+  /**
+   * Sets the character encoding of decoded files
+   *
+   * @param charset the desired encoding (the platform default if not set)
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Gets the character encoding of decoded files
+   *
+   * @return the encoding
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Determines whether a file is a compressed archive, judging by its name
+   *
+   * @param file the file
+   * @return true if the file name ends with {@code .gz} or {@code .zip}
+   */
+  public static boolean isArchive(File file) {
+    String name = file.getName().toLowerCase();
+    return name.endsWith(".gz") || name.endsWith(".zip");
+  }
+
+  /**
+   * Parses the log events of a file, which may be compressed. Events
+   * that cannot be decoded are skipped.
+   *
+   * @param file the log file
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading or inflating the file
+   */
+  public void decode(File file, ILoggingEventHandler handler) throws IOException {
+    decode(Collections.singletonList(file), handler);
+  }
+
+  /**
+   * Parses the log events of several files (e.g., the rolled archives
+   * of a log, oldest first) as if they were one log. Each entry of a
+   * {@code .zip} archive is read as a separate file. The layout pattern
+   * header of every file but the first is skipped, so all files are
+   * decoded with the same layout. Events that cannot be decoded are
+   * skipped.
+   *
+   * @param files the log files, in the order to decode
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading or inflating a file
+   */
+  public void decode(List<File> files, final ILoggingEventHandler handler) throws IOException {
+    pipe(files, new PipeReader() {
+      @Override
+      public void read(BufferedReader reader) throws IOException {
+        decode(reader, handler);
+      }
+    });
+  }
+
+  /**
+   * Parses the log events of several files as if they were one log (see
+   * {@link #decode(List, ILoggingEventHandler)}) into a batch, passing the
+   * batch to the given handler each time it is full and once more at
+   * the end (if it is not empty)
+   *
+   * @param files the log files, in the order to decode
+   * @param batch the batch to fill; it is cleared before it is filled,
+   * and after each call to the handler
+   * @param handler the handler to receive the filled batch
+   * @throws IOException an error occurred while reading or inflating a file
+   * @see BufferDecoder#decode(BufferedReader, EventBatch, EventBatchHandler)
+   */
+  public void decode(List<File> files, final EventBatch batch, final EventBatchHandler handler) throws IOException {
+    pipe(files, new PipeReader() {
+      @Override
+      public void read(BufferedReader reader) throws IOException {
+        decode(reader, batch, handler);
+      }
+    });
+  }
+
+  /**
+   * Decodes the text of a pipe
+   */
+  private interface PipeReader {
+    void read(BufferedReader reader) throws IOException;
+  }
+
+  /**
+   * Inflates files into a pipe on another thread while the pipe is read
+   *
+   * @param files the log files, in the order to decode
+   * @param pipeReader decodes the text of the pipe
+   * @throws IOException an error occurred while reading or inflating a file
+   */
+  private void pipe(List<File> files, PipeReader pipeReader) throws IOException {
+    ChunkPipe pipe = new ChunkPipe();
+    Thread inflater = new Thread(new Inflater(files, pipe), "logback-decoder-inflater");
+    inflater.setDaemon(true);
+    inflater.start();
+
+    try {
+      pipeReader.read(new BufferedReader(pipe));
+    } finally {
+      // stops the inflater if decoding failed before the end of the input
+      inflater.interrupt();
+      try {
+        inflater.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Opens a stream of the uncompressed contents of a file. The stream
+   * of a {@code .zip} archive is a {@link ZipInputStream}, which must be
+   * positioned at an entry before it is read.
+   *
+   * @param file the file
+   * @return the stream
+   * @throws IOException an error occurred while opening the file
+   */
+  static InputStream open(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    String name = file.getName().toLowerCase();
+    try {
+      if (name.endsWith(".gz")) {
+        return new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+      } else if (name.endsWith(".zip")) {
+        return new ZipInputStream(new BufferedInputStream(in, STREAM_BUFFER_SIZE));
+      }
+      return in;
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * A block of chars handed from the inflating thread to the decoding thread
+   */
+  private static class Chunk {
+    final char[] chars;
+    int length;
+    Throwable error;
+
+    Chunk(int size) {
+      chars = new char[size];
+    }
+  }
+
+  /**
+   * Reads the chunks filled by an {@link Inflater}, returning each to the
+   * inflater once it has been read. A chunk with no chars marks the end
+   * of the input.
+   */
+  private static class ChunkPipe extends Reader {
+    final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(CHUNK_COUNT);
+    final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNK_COUNT);
+    private Chunk current;
+    private int position;
+    private boolean ended;
+
+    ChunkPipe() {
+      for (int i = 0; i < CHUNK_COUNT; i++) {
+        free.add(new Chunk(CHUNK_SIZE));
+      }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (current == null || position == current.length) {
+        if (ended || !nextChunk()) {
+          return -1;
+        }
+      }
+      int count = Math.min(len, current.length - position);
+      System.arraycopy(current.chars, position, cbuf, off, count);
+      position += count;
+      return count;
+    }
+
+    private boolean nextChunk() throws IOException {
+      if (current != null) {
+        free.add(current);
+        current = null;
+      }
+      try {
+        current = full.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      position = 0;
+      if (current.error != null) {
+        ended = true;
+        if (current.error instanceof IOException) {
+          throw (IOException) current.error;
+        } else if (current.error instanceof Error) {
+          throw (Error) current.error;
+        }
+        throw (RuntimeException) current.error;
+      }
+      ended = current.length == 0;
+      return !ended;
+    }
+
+    @Override
+    public void close() {
+      // the inflater is stopped by the decoding thread
+    }
+  }
+
+  /**
+   * Inflates files into the chunks of a {@link ChunkPipe}
+   */
+  private class Inflater implements Runnable {
+    private final List<File> files;
+    private final ChunkPipe pipe;
+    private Chunk chunk;
+    private boolean lastCharWasNewLine;
+
+    Inflater(List<File> files, ChunkPipe pipe) {
+      this.files = files;
+      this.pipe = pipe;
+      this.lastCharWasNewLine = true;
+    }
+
+    @Override
+    public void run() {
+      try {
+        boolean first = getLayoutPattern() == null;
+        for (File file : files) {
+          inflate(file, first);
+          first = false;
+        }
+        flush();
+        // end of input
+        chunk = pipe.free.take();
+        chunk.length = 0;
+        pipe.full.put(chunk);
+
+      } catch (InterruptedException e) {
+        // decoding ended early
+
+      } catch (IOException e) {
+        fail(e);
+      } catch (RuntimeException e) {
+        fail(e);
+      } catch (Error e) {
+        fail(e);
+      }
+    }
+
+    /**
+     * Passes the error that stopped inflating to the decoding thread,
+     * which would otherwise wait for the end of the input forever
+     *
+     * @param error an {@link IOException}, {@link RuntimeException} or
+     * {@link Error}
+     */
+    private void fail(Throwable error) {
+      try {
+        // the events read before the error are decoded first
+        flush();
+        chunk = pipe.free.take();
+        chunk.length = 0;
+        chunk.error = error;
+        pipe.full.put(chunk);
+      } catch (InterruptedException e) {
+        // decoding ended early
+      }
+    }
+
+    /**
+     * Inflates a file into chunks
+     *
+     * @param file the file
+     * @param keepHeader true to keep the layout pattern header of the file
+     * @throws IOException an error occurred while reading the file
+     * @throws InterruptedException
+     */
+    private void inflate(File file, boolean keepHeader) throws IOException, InterruptedException {
+      logger.debug("inflating {}", file);
+      InputStream in = open(file);
+      try {
+        if (in instanceof ZipInputStream) {
+          ZipInputStream zip = (ZipInputStream) in;
+          ZipEntry entry;
+          while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+              copy(new InputStreamReader(new UnclosableInputStream(zip), charset), keepHeader);
+              keepHeader = false;
+            }
+          }
+        } else {
+          copy(new InputStreamReader(in, charset), keepHeader);
+        }
+      } finally {
+        in.close();
+      }
+    }
+
+    /**
+     * Copies the chars of one file into chunks, skipping its header
+     * unless requested otherwise
+     *
+     * @param reader the reader of the file
+     * @param keepHeader true to keep the layout pattern header of the file
+     * @throws IOException an error occurred while reading the file
+     * @throws InterruptedException
+     */
+    private void copy(Reader reader, boolean keepHeader) throws IOException, InterruptedException {
+      // events never span files
+      if (!lastCharWasNewLine) {
+        append('\n');
+      }
+
+      boolean atStart = true;
+      int count;
+      do {
+        if (chunk == null) {
+          chunk = pipe.free.take();
+          chunk.length = 0;
+        }
+        count = reader.read(chunk.chars, chunk.length, chunk.chars.length - chunk.length);
+        if (count > 0) {
+          if (atStart && !keepHeader) {
+            count = skipHeader(reader, count);
+          }
+          atStart = false;
+          chunk.length += count;
+          lastCharWasNewLine = chunk.length > 0 && chunk.chars[chunk.length - 1] == '\n';
+          if (chunk.length == chunk.chars.length) {
+            flush();
+          }
+        }
+      } while (count >= 0);
+    }
+
+    /**
+     * Removes the layout pattern header (if any) from the first chars
+     * read from a file
+     *
+     * @param reader the reader of the file
+     * @param count the number of chars just read into the current chunk
+     * @return the number of chars remaining
+     * @throws IOException an error occurred while reading the file
+     */
+    private int skipHeader(Reader reader, int count) throws IOException {
+      char[] chars = chunk.chars;
+      int start = chunk.length;
+      // the header is short, but may have been read only in part
+      int end = start + count;
+      while (end - start < PatternLayout.HEADER_PREFIX.length() && end < chars.length) {
+        int more = reader.read(chars, end, chars.length - end);
+        if (more < 0) {
+          break;
+        }
+        end += more;
+      }
+
+      if (!startsWith(chars, start, end, PatternLayout.HEADER_PREFIX)) {
+        return end - start;
+      }
+
+      for (int i = start; i < end; i++) {
+        if (chars[i] == '\n') {
+          System.arraycopy(chars, i + 1, chars, start, end - i - 1);
+          return end - i - 1;
+        }
+      }
+      // the rest of the header line has not been read yet
+      int c;
+      while ((c = reader.read()) >= 0 && c != '\n') {
+        continue;
+      }
+      return 0;
+    }
+
+    private boolean startsWith(char[] chars, int start, int end, String prefix) {
+      if (end - start < prefix.length()) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+        if (chars[start + i] != prefix.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void append(char c) throws IOException, InterruptedException {
+      if (chunk == null) {
+        chunk = pipe.free.take();
+        chunk.length = 0;
+      }
+      chunk.chars[chunk.length++] = c;
+      if (chunk.length == chunk.chars.length) {
+        flush();
+      }
+    }
+
+    /**
+     * Hands the current chunk (if any) to the decoding thread
+     *
+     * @throws InterruptedException
+     */
+    private void flush() throws InterruptedException {
+      if (chunk != null && chunk.length > 0) {
+        pipe.full.put(chunk);
+      }
+      chunk = null;
+    }
+  }
+
+  /**
+   * Keeps the reader of a zip entry from closing the whole archive
+   */
+  private static class UnclosableInputStream extends FilterInputStream {
+    UnclosableInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public void close() {
+      // the archive is closed once all of its entries are read
+    }
+  }
+}
@@ -14,8 +14,15 @@ package ch.qos.logback.decoder;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,10 +49,14 @@ public class BufferDecoder extends Decoder {
   }
 
   /**
-   * Parses log events from a buffer
+   * Parses log events from a buffer. Continuation lines (such as those of
+   * a multi-line message or a stack trace) are decoded along with the line
+   * that starts their event.
    *
    * @param reader buffer containing log strings, delimited by a new-line character
-   * @return a list of log events
+   * @return a list of log events, containing {@code null} for each event
+   * that cannot be decoded (events rejected by a
+   * {@link #setFilters(List) filter} are left out)
    * @throws IOException an error occurred while reading buffer
    */
   public List<ILoggingEvent> decode(BufferedReader reader) throws IOException {
@@ -58,20 +69,136 @@ public class BufferDecoder extends Decoder {
       readLayoutPattern(reader);
     }
 
-    int lineNum = 0;
-    String inputLine;
-    while ((inputLine = reader.readLine()) != null) {
-      lineNum++;
-      ILoggingEvent event = super.decode(inputLine + "\n");
-      if (event == null) {
-        logger.trace("line {}: cannot decode: \"{}\"", lineNum, inputLine);
+    EventAssembler assembler = new EventAssembler(reader, this);
+    String eventText;
+    while ((eventText = assembler.readEvent()) != null) {
+      ILoggingEvent event = decodeEvent(eventText, assembler);
+      if (event != null || !wasRejected()) {
+        eventList.add(event);
       }
-      eventList.add(event);
     }
 
     return eventList;
   }
 
+  /**
+   * Parses log events from a buffer, passing each event to the given
+   * handler as soon as it is decoded. Unlike {@link #decode(BufferedReader)},
+   * the events are not retained, and events that cannot be decoded are
+   * skipped.
+   *
+   * @param reader buffer containing log strings, delimited by a new-line character
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading buffer
+   */
+  public void decode(BufferedReader reader, ILoggingEventHandler handler) throws IOException {
+    if (getLayoutPattern() == null) {
+      readLayoutPattern(reader);
+    }
+
+    EventAssembler assembler = new EventAssembler(reader, this);
+    String eventText;
+    while ((eventText = assembler.readEvent()) != null) {
+      ILoggingEvent event = decodeEvent(eventText, assembler);
+      if (event != null) {
+        handler.handle(event);
+      }
+    }
+  }
+
+  /**
+   * Parses log events from a buffer into a batch, passing the batch to
+   * the given handler each time it is full and once more at the end
+   * of the buffer (if it is not empty). Events that cannot be decoded
+   * are skipped.
+   *
+   * @param reader buffer containing log strings, delimited by a new-line character
+   * @param batch the batch to fill; it is cleared before it is filled,
+   * and after each call to the handler
+   * @param handler the handler to receive the filled batch
+   * @throws IOException an error occurred while reading buffer
+   * @see Decoder#decode(CharSequence, EventBatch)
+   */
+  public void decode(BufferedReader reader, EventBatch batch, EventBatchHandler handler) throws IOException {
+    if (getLayoutPattern() == null) {
+      readLayoutPattern(reader);
+    }
+
+    batch.clear();
+    EventAssembler assembler = new EventAssembler(reader, this);
+    String eventText;
+    while ((eventText = assembler.readEvent()) != null) {
+      if (!decode(eventText, batch) && !wasRejected()) {
+        logger.trace("line {}: cannot decode: \"{}\"", assembler.getEventLineNumber(), eventText);
+      }
+      if (batch.isFull()) {
+        handler.handle(batch);
+        batch.clear();
+      }
+    }
+    if (batch.size() > 0) {
+      handler.handle(batch);
+      batch.clear();
+    }
+  }
+
+  /**
+   * Gets an iterator that lazily parses log events from a buffer. Only
+   * one event is decoded at a time, and events that cannot be decoded are
+   * skipped. Read errors are rethrown from the iterator as
+   * {@link UncheckedIOException}.
+   *
+   * @param reader buffer containing log strings, delimited by a new-line character
+   * @return the event iterator
+   * @throws IOException an error occurred while reading the layout pattern header
+   */
+  public Iterator<ILoggingEvent> iterator(BufferedReader reader) throws IOException {
+    if (getLayoutPattern() == null) {
+      readLayoutPattern(reader);
+    }
+    return new EventIterator(reader);
+  }
+
+  /**
+   * Gets a sequential stream that lazily parses log events from a buffer.
+   * Events that cannot be decoded are skipped. Closing the stream closes
+   * the reader.
+   *
+   * @param reader buffer containing log strings, delimited by a new-line character
+   * @return the event stream
+   * @throws IOException an error occurred while reading the layout pattern header
+   */
+  public Stream<ILoggingEvent> stream(final BufferedReader reader) throws IOException {
+    Spliterator<ILoggingEvent> spliterator = Spliterators.spliteratorUnknownSize(
+        iterator(reader), Spliterator.ORDERED | Spliterator.NONNULL);
+
+    return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Decodes the text of a single event read from a buffer
+   *
+   * @param eventText the event text, including line terminators
+   * @param assembler the assembler that read the text (for logging only)
+   * @return the decoded event or {@code null} if the text cannot be decoded
+   */
+  private ILoggingEvent decodeEvent(String eventText, EventAssembler assembler) {
+    ILoggingEvent event = super.decode(eventText);
+    if (event == null && !wasRejected()) {
+      logger.trace("line {}: cannot decode: \"{}\"", assembler.getEventLineNumber(), eventText);
+    }
+    return event;
+  }
+
   /**
    * Reads the layout pattern header from the given reader
    * and sets this decoder's layout pattern accordingly.
@@ -119,4 +246,57 @@ public class BufferDecoder extends Decoder {
     }
     return layout;
   }
+
+  /**
+   * Iterator that reads ahead to the next decodable event of a buffer
+   */
+  private class EventIterator implements Iterator<ILoggingEvent> {
+    private final EventAssembler assembler;
+    private ILoggingEvent next;
+    private boolean done;
+
+    EventIterator(BufferedReader reader) {
+      this.assembler = new EventAssembler(reader, BufferDecoder.this);
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next != null) {
+        return true;
+      }
+      if (done) {
+        return false;
+      }
+
+      try {
+        String eventText;
+        while ((eventText = assembler.readEvent()) != null) {
+          next = decodeEvent(eventText, assembler);
+          if (next != null) {
+            return true;
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+
+      done = true;
+      return false;
+    }
+
+    @Override
+    public ILoggingEvent next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ILoggingEvent event = next;
+      next = null;
+      return event;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
@@ -15,8 +15,6 @@ package ch.qos.logback.decoder;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.lang3.StringUtils;
-
 import com.google.code.regexp.Matcher;
 import com.google.code.regexp.Pattern;
 
@@ -49,28 +47,22 @@ public class CallerStackTraceParser implements FieldCapturer<IStaticLoggingEvent
         continue;
       }
 
-      String className = StringUtils.defaultString(m2.group("class"));
-      String fileName = StringUtils.defaultString(m2.group("file"));
-      String lineNumberStr = StringUtils.defaultString(m2.group("line"));
-
-      // parse line number from string
-      int lineNumber = 0;
-      if (lineNumberStr.length() > 0) {
-        try {
-          lineNumber = Integer.valueOf(lineNumberStr);
-        } catch (NumberFormatException e) {
-          // ignore
-        }
-      }
+      // the names repeat across events, so they are taken from the pool
+      StringPool pool = StringPool.getDefault();
+      int classStart = m2.start("class");
+      int classEnd = m2.end("class");
+      String fileName = m2.start("file") < 0 ? "" : pool.intern(line, m2.start("file"), m2.end("file"));
+      int lineNumber = m2.start("line") < 0 ? 0 : ParserUtil.parseInt(line, m2.start("line"), m2.end("line"), 0);
 
       // parse method name from classname field
-      int pos = className.lastIndexOf('.');
+      int pos = line.lastIndexOf('.', classEnd - 1);
+      String className;
       String methodName;
-      if (pos > -1) {
-        methodName = className.substring(className.lastIndexOf('.') + 1);
-        className = className.substring(0, pos);
+      if (pos >= classStart) {
+        methodName = pool.intern(line, pos + 1, classEnd);
+        className = pool.intern(line, classStart, pos);
       } else {
-        methodName = className;
+        methodName = pool.intern(line, classStart, classEnd);
         className = "";
       }
 
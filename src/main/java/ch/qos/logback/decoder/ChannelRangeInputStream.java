@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An {@code InputStream} over a byte range of a file. Reads are
+ * positional, so several streams can share one {@link FileChannel}
+ * and be read concurrently. Closing the stream does not close the
+ * channel.
+ */
+class ChannelRangeInputStream extends InputStream {
+  private final FileChannel channel;
+  private final long end;
+  private long position;
+
+  /**
+   * Constructs a {@code ChannelRangeInputStream}
+   *
+   * @param channel the file to read
+   * @param start offset of the first byte to read
+   * @param end offset after the last byte to read
+   */
+  ChannelRangeInputStream(FileChannel channel, long start, long end) {
+    this.channel = channel;
+    this.position = start;
+    this.end = end;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    long remaining = end - position;
+    if (remaining <= 0) {
+      return -1;
+    }
+
+    ByteBuffer buf = ByteBuffer.wrap(b, off, (int)Math.min(len, remaining));
+    int n = channel.read(buf, position);
+    if (n > 0) {
+      position += n;
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) {
+    long skipped = Math.max(0, Math.min(n, end - position));
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return (int)Math.min(Integer.MAX_VALUE, end - position);
+  }
+}
@@ -22,7 +22,12 @@ public class ClassOfCallerParser implements FieldCapturer<IStaticLoggingEvent> {
 
   @Override
   public void captureField(IStaticLoggingEvent event, String fieldAsStr, PatternInfo info) {
-    event.setClassNameOfCaller(fieldAsStr.trim());
+    event.setClassNameOfCaller(StringPool.getDefault().intern(fieldAsStr.trim()));
+  }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    event.setClassNameOfCaller(ParserUtil.internTrimmed(input, start, end));
   }
 
 }
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Describes the columnar event format written by {@link ColumnarWriter}
+ * and read by {@link ColumnarReader}.
+ * <p>
+ * A file starts with a magic number and a version (4 bytes each), which
+ * are followed by blocks of up to {@link #DEFAULT_BLOCK_SIZE} events. Each
+ * block is prefixed by its length in bytes (a varint) and holds:
+ * <ol>
+ * <li>the event count (varint), the lowest and highest timestamps
+ * (8 bytes each), and a mask of the level codes of its events (1 byte)</li>
+ * <li>the strings added to the file's dictionary by this block</li>
+ * <li>one section per column, each prefixed by its length in bytes:
+ * timestamps (zigzag varint deltas from the previous event, the first from
+ * the lowest timestamp), level codes (1 byte each), dictionary ids of the
+ * logger, thread, context, caller class, caller method and caller file
+ * (varints; 0 if not decoded, or else the id plus 1), caller lines
+ * (varints), and the messages and MDC properties compressed by a
+ * {@link java.util.zip.Deflater}</li>
+ * </ol>
+ * A reader can skip any block or section without decoding it, except for
+ * the dictionary strings.
+ */
+final class ColumnarFormat {
+  static final int MAGIC = 0x4c424346; // "LBCF"
+  static final int VERSION = 1;
+
+  /** Default number of events per block */
+  static final int DEFAULT_BLOCK_SIZE = 4096;
+
+  /** Levels by code; code 0 is an event without a (known) level */
+  static final Level[] LEVELS = {
+    null, Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR,
+  };
+
+  /** Number of columns of dictionary ids */
+  static final int STRING_COLUMNS = 6;
+  static final int LOGGER = 0;
+  static final int THREAD = 1;
+  static final int CONTEXT = 2;
+  static final int CALLER_CLASS = 3;
+  static final int CALLER_METHOD = 4;
+  static final int CALLER_FILE = 5;
+
+  /**
+   * Constructor not called
+   */
+  private ColumnarFormat() {}
+
+  /**
+   * Gets the code of a level
+   *
+   * @param level the level (may be {@code null})
+   * @return the code; 0 if the level is not one of {@link #LEVELS}
+   */
+  static int levelCode(Level level) {
+    if (level != null) {
+      for (int i = 1; i < LEVELS.length; i++) {
+        if (LEVELS[i].levelInt == level.levelInt) {
+          return i;
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * A growable buffer of encoded bytes
+   */
+  static final class Output {
+    byte[] bytes;
+    int length;
+
+    Output(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    void reset() {
+      length = 0;
+    }
+
+    void ensure(int more) {
+      if (length + more > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+      }
+    }
+
+    void writeByte(int b) {
+      ensure(1);
+      bytes[length++] = (byte) b;
+    }
+
+    void writeLong(long v) {
+      ensure(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        bytes[length++] = (byte) (v >>> shift);
+      }
+    }
+
+    /** Writes a non-negative value in 7-bit groups */
+    void writeVarLong(long v) {
+      ensure(10);
+      while ((v & ~0x7FL) != 0) {
+        bytes[length++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      bytes[length++] = (byte) v;
+    }
+
+    /** Writes a signed value, small in magnitude, as a varint */
+    void writeZigZag(long v) {
+      writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    void writeBytes(byte[] b, int off, int len) {
+      ensure(len);
+      System.arraycopy(b, off, bytes, length, len);
+      length += len;
+    }
+
+    /** Writes a length-prefixed section */
+    void writeSection(Output section) {
+      writeVarLong(section.length);
+      writeBytes(section.bytes, 0, section.length);
+    }
+
+    /** Writes a string (or {@code null}) as its UTF-8 length plus 1, and bytes */
+    void writeString(String s) {
+      if (s == null) {
+        writeVarLong(0);
+        return;
+      }
+      byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(utf8.length + 1);
+      writeBytes(utf8, 0, utf8.length);
+    }
+  }
+
+  /**
+   * A cursor over encoded bytes
+   */
+  static final class Input {
+    byte[] bytes;
+    int position;
+    int limit;
+
+    Input(byte[] bytes, int position, int limit) {
+      this.bytes = bytes;
+      this.position = position;
+      this.limit = limit;
+    }
+
+    int readByte() {
+      return bytes[position++] & 0xFF;
+    }
+
+    long readLong() {
+      long v = 0;
+      for (int i = 0; i < 8; i++) {
+        v = (v << 8) | (bytes[position++] & 0xFF);
+      }
+      return v;
+    }
+
+    long readVarLong() {
+      long v = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[position++];
+        v |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return v;
+    }
+
+    int readVarInt() {
+      return (int) readVarLong();
+    }
+
+    long readZigZag() {
+      long v = readVarLong();
+      return (v >>> 1) ^ -(v & 1);
+    }
+
+    String readString() {
+      int length = readVarInt() - 1;
+      if (length < 0) {
+        return null;
+      }
+      String s = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return s;
+    }
+
+    void skipString() {
+      int length = readVarInt() - 1;
+      if (length > 0) {
+        position += length;
+      }
+    }
+
+    /**
+     * Reads the length of a section and moves past it
+     *
+     * @return a cursor over the section
+     */
+    Input section() {
+      int length = readVarInt();
+      Input section = new Input(bytes, position, position + length);
+      position += length;
+      return section;
+    }
+  }
+}
@@ -0,0 +1,386 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.decoder.ColumnarFormat.Input;
+
+/**
+ * A {@code ColumnarReader} reads the events stored by a {@link ColumnarWriter}.
+ * <p>
+ * {@link MinLevelFilter}s, {@link LoggerPrefixFilter}s and
+ * {@link TimeRangeFilter}s are evaluated against the columns: blocks whose
+ * levels and time range cannot pass are skipped whole, each logger name
+ * is tested once, and the messages of a block are only inflated if any
+ * of its events passes.
+ */
+public class ColumnarReader {
+  private static final int INPUT_BUFFER_SIZE = 256 * 1024;
+
+  private List<FieldFilter> filters = Collections.emptyList();
+
+  /**
+   * Determines whether a file is in the columnar format
+   *
+   * @param file the file
+   * @return true if the file starts with the format's magic number
+   * @throws IOException an error occurred while reading the file
+   */
+  public static boolean isColumnar(File file) throws IOException {
+    if (!file.isFile() || file.length() < 8) {
+      return false;
+    }
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      return in.readInt() == ColumnarFormat.MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Sets the filters that events must pass to be read
+   *
+   * @param filters the filters (empty or {@code null} to read all events)
+   * @throws IllegalArgumentException a filter is not a {@link MinLevelFilter},
+   * {@link LoggerPrefixFilter} or {@link TimeRangeFilter}
+   */
+  public void setFilters(List<FieldFilter> filters) {
+    if (filters == null) {
+      filters = Collections.emptyList();
+    }
+    for (FieldFilter filter : filters) {
+      if (!(filter instanceof MinLevelFilter || filter instanceof LoggerPrefixFilter
+          || filter instanceof TimeRangeFilter)) {
+        throw new IllegalArgumentException("unsupported filter: " + filter.getClass().getName());
+      }
+    }
+    this.filters = Collections.unmodifiableList(new ArrayList<FieldFilter>(filters));
+  }
+
+  /**
+   * Gets the filters that events must pass to be read
+   *
+   * @return the filters (empty to read all events)
+   */
+  public List<FieldFilter> getFilters() {
+    return filters;
+  }
+
+  /**
+   * Reads the events of a columnar file
+   *
+   * @param file the file
+   * @return the events that pass the filters, in the order they were written
+   * @throws IOException an error occurred while reading the file, or it
+   * is not in the columnar format
+   */
+  public List<ILoggingEvent> read(File file) throws IOException {
+    final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    read(file, new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        events.add(event);
+      }
+    });
+    return events;
+  }
+
+  /**
+   * Reads the events of a columnar file, passing each event that passes
+   * the filters to the given handler
+   *
+   * @param file the file
+   * @param handler the handler to receive the events
+   * @throws IOException an error occurred while reading the file, or it
+   * is not in the columnar format
+   */
+  public void read(File file, ILoggingEventHandler handler) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file), INPUT_BUFFER_SIZE);
+    try {
+      new Scan(in, file).run(handler);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * The state of one read of a file
+   */
+  private class Scan {
+    private final DataInputStream in;
+    private final File file;
+    private final Inflater inflater;
+    private final Level threshold;
+    private final List<String> prefixes;
+    private final long since;
+    private final long until;
+    private String[] dictionary;
+    private int dictionarySize;
+    // per dictionary id: 0 if not tested yet, 1 if the logger passes, 2 if not
+    private byte[] loggerState;
+    private byte[] block;
+    private byte[] messages;
+
+    Scan(InputStream in, File file) {
+      this.in = new DataInputStream(in);
+      this.file = file;
+      this.inflater = new Inflater();
+      this.dictionary = new String[1024];
+      this.loggerState = new byte[1024];
+      this.block = new byte[64 * 1024];
+      this.messages = new byte[256 * 1024];
+
+      Level level = null;
+      List<String> loggerPrefixes = new ArrayList<String>();
+      long from = Long.MIN_VALUE;
+      long to = Long.MAX_VALUE;
+      for (FieldFilter filter : filters) {
+        if (filter instanceof MinLevelFilter) {
+          Level t = ((MinLevelFilter) filter).getThreshold();
+          level = level == null || t.isGreaterOrEqual(level) ? t : level;
+        } else if (filter instanceof LoggerPrefixFilter) {
+          loggerPrefixes.add(((LoggerPrefixFilter) filter).getPrefix());
+        } else if (filter instanceof TimeRangeFilter) {
+          from = Math.max(from, ((TimeRangeFilter) filter).getSince());
+          to = Math.min(to, ((TimeRangeFilter) filter).getUntil());
+        }
+      }
+      this.threshold = level;
+      this.prefixes = loggerPrefixes;
+      this.since = from;
+      this.until = to;
+    }
+
+    void run(ILoggingEventHandler handler) throws IOException {
+      try {
+        if (in.readInt() != ColumnarFormat.MAGIC) {
+          throw new IOException("not a columnar file: " + file);
+        }
+        if (in.readInt() != ColumnarFormat.VERSION) {
+          throw new IOException("unsupported version of columnar file: " + file);
+        }
+
+        int length;
+        while ((length = readBlockLength()) >= 0) {
+          if (block.length < length) {
+            block = new byte[Math.max(length, block.length * 2)];
+          }
+          in.readFully(block, 0, length);
+          readBlock(new Input(block, 0, length), handler);
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("corrupt columnar file: " + file, e);
+      } finally {
+        inflater.end();
+      }
+    }
+
+    /**
+     * Reads the varint length of the next block
+     *
+     * @return the length; or -1 at the end of the file
+     */
+    private int readBlockLength() throws IOException {
+      int length = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = in.read();
+        if (b < 0) {
+          if (shift == 0) {
+            return -1;
+          }
+          throw new EOFException("truncated columnar file: " + file);
+        }
+        length |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return length;
+    }
+
+    private void readBlock(Input input, ILoggingEventHandler handler) throws DataFormatException {
+      int count = input.readVarInt();
+      long min = input.readLong();
+      long max = input.readLong();
+      int levelMask = input.readByte();
+
+      // the dictionary is read even from skipped blocks
+      int newStrings = input.readVarInt();
+      Input strings = input.section();
+      for (int i = 0; i < newStrings; i++) {
+        addString(strings.readString());
+      }
+
+      if (max < since || min >= until || !mayPassLevel(levelMask)) {
+        return;
+      }
+
+      Input timestamps = input.section();
+      Input levels = input.section();
+      Input[] ids = new Input[ColumnarFormat.STRING_COLUMNS];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = input.section();
+      }
+      Input lines = input.section();
+
+      // filter on the columns before inflating the messages
+      long[] times = new long[count];
+      int[] levelCodes = new int[count];
+      int[] loggerIds = new int[count];
+      boolean[] accepted = new boolean[count];
+      int acceptedCount = 0;
+      long time = min;
+      for (int i = 0; i < count; i++) {
+        time += timestamps.readZigZag();
+        times[i] = time;
+        levelCodes[i] = levels.readByte();
+        loggerIds[i] = ids[ColumnarFormat.LOGGER].readVarInt();
+        accepted[i] = accept(time, levelCodes[i], loggerIds[i]);
+        if (accepted[i]) {
+          acceptedCount++;
+        }
+      }
+      if (acceptedCount == 0) {
+        return;
+      }
+
+      Input messages = inflate(input);
+      for (int i = 0; i < count; i++) {
+        int thread = ids[ColumnarFormat.THREAD].readVarInt();
+        int context = ids[ColumnarFormat.CONTEXT].readVarInt();
+        int callerClass = ids[ColumnarFormat.CALLER_CLASS].readVarInt();
+        int callerMethod = ids[ColumnarFormat.CALLER_METHOD].readVarInt();
+        int callerFile = ids[ColumnarFormat.CALLER_FILE].readVarInt();
+        int line = lines.readVarInt();
+
+        if (!accepted[i]) {
+          messages.skipString();
+          for (int n = messages.readVarInt() * 2; n > 0; n--) {
+            messages.skipString();
+          }
+          continue;
+        }
+
+        StaticLoggingEvent event = new StaticLoggingEvent();
+        event.setTimeStamp(times[i]);
+        Level level = ColumnarFormat.LEVELS[levelCodes[i]];
+        if (level != null) {
+          event.setLevel(level);
+        }
+        event.setLoggerName(lookup(loggerIds[i]));
+        event.setThreadName(lookup(thread));
+        event.setContextName(lookup(context));
+        event.setClassNameOfCaller(lookup(callerClass));
+        event.setMethodOfCaller(lookup(callerMethod));
+        event.setFileNameOfCaller(lookup(callerFile));
+        event.setLineNumberOfCaller(line);
+        event.setMessage(messages.readString());
+
+        int mdcSize = messages.readVarInt();
+        if (mdcSize > 0) {
+          Map<String, String> mdc = new LinkedHashMap<String, String>();
+          for (int n = 0; n < mdcSize; n++) {
+            mdc.put(messages.readString(), messages.readString());
+          }
+          event.setMDCPropertyMap(mdc);
+        }
+        handler.handle(event);
+      }
+    }
+
+    private boolean mayPassLevel(int levelMask) {
+      if (threshold == null || (levelMask & 1) != 0) {
+        // events without a known level always pass
+        return true;
+      }
+      for (int code = 1; code < ColumnarFormat.LEVELS.length; code++) {
+        if ((levelMask & (1 << code)) != 0 && ColumnarFormat.LEVELS[code].isGreaterOrEqual(threshold)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean accept(long time, int levelCode, int loggerId) {
+      if (time < since || time >= until) {
+        return false;
+      }
+      if (threshold != null && levelCode != 0 && !ColumnarFormat.LEVELS[levelCode].isGreaterOrEqual(threshold)) {
+        return false;
+      }
+      if (!prefixes.isEmpty() && loggerId != 0) {
+        int id = loggerId - 1;
+        if (loggerState[id] == 0) {
+          loggerState[id] = 1;
+          for (String prefix : prefixes) {
+            if (!dictionary[id].startsWith(prefix)) {
+              loggerState[id] = 2;
+              break;
+            }
+          }
+        }
+        return loggerState[id] == 1;
+      }
+      return true;
+    }
+
+    private Input inflate(Input input) throws DataFormatException {
+      int rawLength = input.readVarInt();
+      Input compressed = input.section();
+      if (messages.length < rawLength) {
+        messages = new byte[Math.max(rawLength, messages.length * 2)];
+      }
+      inflater.reset();
+      inflater.setInput(compressed.bytes, compressed.position, compressed.limit - compressed.position);
+      int length = 0;
+      while (length < rawLength) {
+        int n = inflater.inflate(messages, length, rawLength - length);
+        if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+          throw new DataFormatException("truncated messages");
+        }
+        length += n;
+      }
+      return new Input(messages, 0, rawLength);
+    }
+
+    private void addString(String s) {
+      if (dictionarySize == dictionary.length) {
+        dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+        loggerState = Arrays.copyOf(loggerState, dictionarySize * 2);
+      }
+      dictionary[dictionarySize++] = s;
+    }
+
+    private String lookup(int id) {
+      return id == 0 ? null : dictionary[id - 1];
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.decoder.ColumnarFormat.Output;
+
+/**
+ * A {@code ColumnarWriter} stores the events it handles in the compact
+ * columnar format of {@link ColumnarFormat}, so that they can be read
+ * back by a {@link ColumnarReader} many times over without decoding the
+ * log text again. The stored fields are the timestamp, level, logger,
+ * thread, context, caller class, method, file and line, message and MDC
+ * of each event (as far as they were decoded); caller stack traces are
+ * not stored.
+ * <p>
+ * Events are buffered in blocks; the last block is written by
+ * {@link #close()}. Write errors are rethrown as {@link UncheckedIOException}.
+ */
+public class ColumnarWriter implements ILoggingEventHandler, Flushable, Closeable {
+  private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+
+  private final DataOutputStream out;
+  private final int blockSize;
+  private final Map<String, Integer> dictionary;
+  private final Deflater deflater;
+
+  // columns of the current block
+  private final Output newStrings;
+  private final Output timestamps;
+  private final Output levels;
+  private final Output[] strings;
+  private final Output lines;
+  private final Output messages;
+  private final Output compressed;
+  private final Output block;
+  private final Output blockLength;
+  private final long[] eventTimestamps;
+  private int newStringCount;
+  private int count;
+  private int levelMask;
+
+  /**
+   * Constructs a {@code ColumnarWriter} with the default block size
+   *
+   * @param out the stream to write to (closed by {@link #close()})
+   * @throws IOException an error occurred while writing the file header
+   */
+  public ColumnarWriter(OutputStream out) throws IOException {
+    this(out, ColumnarFormat.DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Constructs a {@code ColumnarWriter}
+   *
+   * @param out the stream to write to (closed by {@link #close()})
+   * @param blockSize number of events per block
+   * @throws IOException an error occurred while writing the file header
+   */
+  public ColumnarWriter(OutputStream out, int blockSize) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE));
+    this.blockSize = blockSize;
+    this.dictionary = new HashMap<String, Integer>();
+    this.deflater = new Deflater(Deflater.BEST_SPEED);
+
+    newStrings = new Output(1024);
+    timestamps = new Output(blockSize * 2);
+    levels = new Output(blockSize);
+    strings = new Output[ColumnarFormat.STRING_COLUMNS];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = new Output(blockSize);
+    }
+    lines = new Output(blockSize);
+    messages = new Output(blockSize * 64);
+    compressed = new Output(blockSize * 16);
+    block = new Output(blockSize * 32);
+    blockLength = new Output(8);
+    eventTimestamps = new long[blockSize];
+
+    this.out.writeInt(ColumnarFormat.MAGIC);
+    this.out.writeInt(ColumnarFormat.VERSION);
+  }
+
+  @Override
+  public void handle(ILoggingEvent event) {
+    eventTimestamps[count] = event.getTimeStamp();
+    int level = ColumnarFormat.levelCode(event.getLevel());
+    levels.writeByte(level);
+    levelMask |= 1 << level;
+
+    writeId(ColumnarFormat.LOGGER, event.getLoggerName());
+    writeId(ColumnarFormat.THREAD, event.getThreadName());
+    if (event instanceof IStaticLoggingEvent) {
+      IStaticLoggingEvent e = (IStaticLoggingEvent) event;
+      writeId(ColumnarFormat.CONTEXT, e.getContextName());
+      writeId(ColumnarFormat.CALLER_CLASS, e.getClassNameOfCaller());
+      writeId(ColumnarFormat.CALLER_METHOD, e.getMethodOfCaller());
+      writeId(ColumnarFormat.CALLER_FILE, e.getFileNameOfCaller());
+      lines.writeVarLong(Math.max(0, e.getLineNumberOfCaller()));
+    } else {
+      for (int i = ColumnarFormat.CONTEXT; i < strings.length; i++) {
+        strings[i].writeVarLong(0);
+      }
+      lines.writeVarLong(0);
+    }
+
+    messages.writeString(event.getMessage());
+    Map<String, String> mdc = event.getMDCPropertyMap();
+    messages.writeVarLong(mdc == null ? 0 : mdc.size());
+    if (mdc != null) {
+      for (Map.Entry<String, String> entry : mdc.entrySet()) {
+        messages.writeString(entry.getKey());
+        messages.writeString(entry.getValue());
+      }
+    }
+
+    if (++count == blockSize) {
+      try {
+        writeBlock();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Writes the dictionary id of a string to a column, adding the string
+   * to the dictionary if it is new
+   */
+  private void writeId(int column, String s) {
+    if (s == null) {
+      strings[column].writeVarLong(0);
+      return;
+    }
+    Integer id = dictionary.get(s);
+    if (id == null) {
+      id = dictionary.size();
+      dictionary.put(s, id);
+      newStrings.writeString(s);
+      newStringCount++;
+    }
+    strings[column].writeVarLong(id + 1L);
+  }
+
+  /**
+   * Writes the buffered events as a block
+   *
+   * @throws IOException an error occurred while writing
+   */
+  private void writeBlock() throws IOException {
+    if (count == 0) {
+      return;
+    }
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < count; i++) {
+      min = Math.min(min, eventTimestamps[i]);
+      max = Math.max(max, eventTimestamps[i]);
+    }
+    long previous = min;
+    for (int i = 0; i < count; i++) {
+      timestamps.writeZigZag(eventTimestamps[i] - previous);
+      previous = eventTimestamps[i];
+    }
+    compress();
+
+    block.writeVarLong(count);
+    block.writeLong(min);
+    block.writeLong(max);
+    block.writeByte(levelMask);
+    block.writeVarLong(newStringCount);
+    block.writeSection(newStrings);
+    block.writeSection(timestamps);
+    block.writeSection(levels);
+    for (Output column : strings) {
+      block.writeSection(column);
+    }
+    block.writeSection(lines);
+    block.writeVarLong(messages.length);
+    block.writeSection(compressed);
+
+    blockLength.writeVarLong(block.length);
+    out.write(blockLength.bytes, 0, blockLength.length);
+    out.write(block.bytes, 0, block.length);
+
+    count = 0;
+    levelMask = 0;
+    newStringCount = 0;
+    for (Output column : new Output[] { newStrings, timestamps, levels, lines, messages, compressed, block, blockLength }) {
+      column.reset();
+    }
+    for (Output column : strings) {
+      column.reset();
+    }
+  }
+
+  /**
+   * Compresses the messages column
+   */
+  private void compress() {
+    deflater.reset();
+    deflater.setInput(messages.bytes, 0, messages.length);
+    deflater.finish();
+    while (!deflater.finished()) {
+      compressed.ensure(Math.max(4096, messages.length / 4));
+      compressed.length += deflater.deflate(compressed.bytes, compressed.length,
+          compressed.bytes.length - compressed.length);
+    }
+  }
+
+  /**
+   * Writes the buffered events as a (short) block, and flushes the stream
+   *
+   * @throws IOException an error occurred while writing
+   */
+  @Override
+  public void flush() throws IOException {
+    writeBlock();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      deflater.end();
+      out.close();
+    }
+  }
+}
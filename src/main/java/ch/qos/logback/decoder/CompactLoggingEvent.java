@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+
+/**
+ * A {@code CompactLoggingEvent} holds only the fields that a decoder can
+ * fill in, for holding many decoded events in memory. Unlike
+ * {@link StaticLoggingEvent}, it does not extend logback's
+ * {@code LoggingEvent}, so it carries none of the fields of a live event
+ * (logger context, arguments, throwable proxy and so on). The caller
+ * fields, which few layouts include, are kept in a separate object that
+ * is only created when one of them is decoded.
+ *
+ * <p>Events that are not decoded from a thread or MDC field have no
+ * thread name and an empty MDC (they never fall back to the current
+ * thread's). Like {@code LoggingEvent}, this class is not thread-safe,
+ * but an event can be handed off to another thread.</p>
+ *
+ * @see Decoder#setCompact(boolean)
+ */
+public class CompactLoggingEvent implements IStaticLoggingEvent {
+  private static final StackTraceElement[] NO_CALLER_DATA = new StackTraceElement[0];
+
+  private long timeStamp;
+  private Level level;
+  private String loggerName;
+  private String threadName;
+  private String message;
+  private String contextName;
+  private Map<String, String> mdc;
+  private Caller caller;
+
+  /**
+   * The caller fields of an event
+   */
+  private static final class Caller {
+    String className;
+    String methodName;
+    String fileName;
+    int lineNumber;
+    StackTraceElement[] data;
+  }
+
+  private Caller caller() {
+    if (caller == null) {
+      caller = new Caller();
+    }
+    return caller;
+  }
+
+  @Override
+  public void setTimeStamp(long ms) {
+    timeStamp = ms;
+  }
+
+  @Override
+  public long getTimeStamp() {
+    return timeStamp;
+  }
+
+  @Override
+  public void setLevel(Level level) {
+    this.level = level;
+  }
+
+  @Override
+  public Level getLevel() {
+    return level;
+  }
+
+  @Override
+  public void setLoggerName(String loggerName) {
+    this.loggerName = loggerName;
+  }
+
+  @Override
+  public String getLoggerName() {
+    return loggerName;
+  }
+
+  @Override
+  public void setThreadName(String threadName) {
+    this.threadName = threadName;
+  }
+
+  @Override
+  public String getThreadName() {
+    return threadName;
+  }
+
+  @Override
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  @Override
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * Gets the message. Decoded messages are already formatted, so this
+   * is the same as {@link #getMessage()}.
+   */
+  @Override
+  public String getFormattedMessage() {
+    return message;
+  }
+
+  @Override
+  public void setContextName(String contextName) {
+    this.contextName = contextName;
+  }
+
+  @Override
+  public String getContextName() {
+    return contextName;
+  }
+
+  @Override
+  public void setMDCPropertyMap(Map<String, String> map) {
+    mdc = map;
+  }
+
+  @Override
+  public Map<String, String> getMDCPropertyMap() {
+    return mdc == null ? Collections.<String, String>emptyMap() : mdc;
+  }
+
+  @Override
+  @Deprecated
+  public Map<String, String> getMdc() {
+    return getMDCPropertyMap();
+  }
+
+  @Override
+  public void setClassNameOfCaller(String className) {
+    caller().className = className;
+  }
+
+  @Override
+  public String getClassNameOfCaller() {
+    return caller == null ? null : caller.className;
+  }
+
+  @Override
+  public void setMethodOfCaller(String methodName) {
+    caller().methodName = methodName;
+  }
+
+  @Override
+  public String getMethodOfCaller() {
+    return caller == null ? null : caller.methodName;
+  }
+
+  @Override
+  public void setFileNameOfCaller(String fileName) {
+    caller().fileName = fileName;
+  }
+
+  @Override
+  public String getFileNameOfCaller() {
+    return caller == null ? null : caller.fileName;
+  }
+
+  @Override
+  public void setLineNumberOfCaller(int lineNumber) {
+    caller().lineNumber = lineNumber;
+  }
+
+  @Override
+  public int getLineNumberOfCaller() {
+    return caller == null ? 0 : caller.lineNumber;
+  }
+
+  @Override
+  public void setCallerStackData(List<StackTraceElement> stackTrace) {
+    caller().data = stackTrace == null ? null : stackTrace.toArray(new StackTraceElement[stackTrace.size()]);
+  }
+
+  /**
+   * Gets the caller stack trace. The array is held by the event and is
+   * returned as is (not copied), so it must not be changed.
+   *
+   * @return the stack trace (empty if it was not decoded)
+   */
+  @Override
+  public StackTraceElement[] getCallerData() {
+    return caller == null || caller.data == null ? NO_CALLER_DATA : caller.data;
+  }
+
+  @Override
+  public boolean hasCallerData() {
+    return caller != null && caller.data != null;
+  }
+
+  @Override
+  public Object[] getArgumentArray() {
+    return null;
+  }
+
+  @Override
+  public LoggerContextVO getLoggerContextVO() {
+    return null;
+  }
+
+  @Override
+  public IThrowableProxy getThrowableProxy() {
+    return null;
+  }
+
+  @Override
+  public Marker getMarker() {
+    return null;
+  }
+
+  /**
+   * Does nothing, since all fields of the event are already set
+   */
+  @Override
+  public void prepareForDeferredProcessing() {
+  }
+
+  @Override
+  public String toString() {
+    return "[" + level + "] " + message;
+  }
+}
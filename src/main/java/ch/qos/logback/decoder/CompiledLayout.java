@@ -0,0 +1,446 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+import ch.qos.logback.core.pattern.parser2.PatternParser;
+import ch.qos.logback.decoder.regex.PatternLayoutRegexUtil;
+
+import com.google.code.regexp.Pattern;
+
+/**
+ * A {@code CompiledLayout} holds everything derived from a layout pattern
+ * that is needed to decode it: the regex, the sub-pattern information,
+ * the field plan, the event-start pattern and the literal anchors that
+ * turn away text which cannot match. It is immutable and
+ * thread-safe, so a single instance can be shared by any number of
+ * threads, each of which decodes through its own {@link DecodeContext}.
+ */
+public final class CompiledLayout {
+  private static final Logger logger = LoggerFactory.getLogger(CompiledLayout.class);
+
+  private final String layoutPattern;
+  private final Set<String> fields;
+  private final List<PatternInfo> patternInfo;
+  private final java.util.regex.Pattern matchPattern;
+  private final java.util.regex.Pattern eventStartPattern;
+  private final LiteralAnchors anchors;
+  private final LiteralAnchors eventStartAnchors;
+  private final int eventStartDateGroup;
+  private final PatternInfo dateInfo;
+  private final FieldSlot[] fieldPlan;
+
+  private CompiledLayout(String layoutPattern, Set<String> fields) {
+    String regex = new PatternLayoutRegexUtil().toRegex(layoutPattern, fields);
+    Pattern regexPattern = Pattern.compile(regex);
+    List<PatternInfo> infos = PatternParser.parse(layoutPattern);
+
+    this.layoutPattern = layoutPattern;
+    this.fields = fields;
+    this.patternInfo = infos != null
+        ? Collections.unmodifiableList(infos)
+        : Collections.<PatternInfo>emptyList();
+    this.matchPattern = regexPattern.pattern();
+    int startEnd = eventStartEnd(layoutPattern, infos);
+    Pattern startPattern = compileEventStartPattern(layoutPattern.substring(0, startEnd));
+    this.eventStartPattern = startPattern != null ? startPattern.pattern() : null;
+    this.eventStartDateGroup = startPattern != null ? startPattern.indexOf(PatternNames.DATE) + 1 : 0;
+    this.anchors = LiteralAnchors.of(layoutPattern, infos, layoutPattern.length());
+    this.eventStartAnchors = startPattern != null
+        ? LiteralAnchors.of(layoutPattern, infos, startEnd)
+        : LiteralAnchors.NONE;
+    this.dateInfo = findInfo(infos, PatternNames.DATE);
+    this.fieldPlan = compileFieldPlan(regexPattern, infos);
+    logger.trace("regex: {}", regex);
+  }
+
+  /**
+   * Compiles a layout pattern
+   *
+   * @param layoutPattern the layout pattern to compile
+   * @return the compiled layout
+   */
+  public static CompiledLayout compile(String layoutPattern) {
+    return compile(layoutPattern, null);
+  }
+
+  /**
+   * Compiles a layout pattern that only decodes some fields. The regex
+   * groups of the other fields are non-capturing, and their capturers are
+   * never called, so the events' other fields are left unset.
+   *
+   * @param layoutPattern the layout pattern to compile
+   * @param fields the pattern names (e.g., "level" or "p") of the fields to
+   * decode; or {@code null} to decode all fields
+   * @return the compiled layout
+   * @throws IllegalArgumentException a field name is unknown
+   */
+  public static CompiledLayout compile(String layoutPattern, Set<String> fields) {
+    if (layoutPattern == null) {
+      throw new IllegalArgumentException("layout pattern cannot be null");
+    }
+    return new CompiledLayout(layoutPattern, toFullNames(fields));
+  }
+
+  /**
+   * Converts field names to their full pattern names
+   *
+   * @param fields the field names (or {@code null})
+   * @return an unmodifiable, sorted set of the full names; or {@code null}
+   * if {@code fields} is {@code null}
+   * @throws IllegalArgumentException a field name is unknown
+   */
+  static Set<String> toFullNames(Set<String> fields) {
+    if (fields == null) {
+      return null;
+    }
+    Set<String> fullNames = new TreeSet<String>();
+    for (String field : fields) {
+      String name = field.trim();
+      if (!PatternNames.asList().contains(name)) {
+        throw new IllegalArgumentException("unknown field: " + field);
+      }
+      fullNames.add(PatternNames.getFullName(name));
+    }
+    return Collections.unmodifiableSet(fullNames);
+  }
+
+  /**
+   * Gets the layout pattern this was compiled from
+   *
+   * @return the layout pattern
+   */
+  public String getLayoutPattern() {
+    return layoutPattern;
+  }
+
+  /**
+   * Gets the fields decoded with this layout
+   *
+   * @return an unmodifiable set of the full pattern names of the fields;
+   * or {@code null} if all fields are decoded
+   */
+  public Set<String> getFields() {
+    return fields;
+  }
+
+  /**
+   * Gets the sub-patterns of the layout pattern
+   *
+   * @return an unmodifiable list of the top-level sub-patterns
+   */
+  public List<PatternInfo> getPatternInfo() {
+    return patternInfo;
+  }
+
+  /**
+   * Creates a context that decodes with this layout. A context is cheap
+   * to create, but it is not thread-safe and must only be used by one
+   * thread at a time.
+   *
+   * @return the new context
+   */
+  public DecodeContext newContext() {
+    return new DecodeContext(this, null);
+  }
+
+  /**
+   * Creates a context that decodes with this layout and drops the events
+   * rejected by the given filters
+   *
+   * @param filters the filters to apply (or {@code null} for none)
+   * @return the new context
+   * @throws IllegalArgumentException a filter is on a field that this
+   * layout does not capture
+   */
+  public DecodeContext newContext(List<FieldFilter> filters) {
+    return new DecodeContext(this, filters);
+  }
+
+  /**
+   * Gets the pattern that matches a whole event
+   */
+  java.util.regex.Pattern getMatchPattern() {
+    return matchPattern;
+  }
+
+  /**
+   * Gets the pattern that matches the start of an event's first line
+   *
+   * @return the pattern or {@code null} if any line can start an event
+   */
+  java.util.regex.Pattern getEventStartPattern() {
+    return eventStartPattern;
+  }
+
+  /**
+   * Gets the literal anchors that every match of a whole event contains
+   *
+   * @return the anchors (empty if the layout has no literal text)
+   */
+  LiteralAnchors getAnchors() {
+    return anchors;
+  }
+
+  /**
+   * Gets the literal anchors that every match of the
+   * {@link #getEventStartPattern() event-start pattern} contains
+   *
+   * @return the anchors (empty if the layout has no literal text before
+   * its first multi-line sub-pattern)
+   */
+  LiteralAnchors getEventStartAnchors() {
+    return eventStartAnchors;
+  }
+
+  /**
+   * Gets the group of the event-start pattern that matches the date
+   *
+   * @return the group index or 0 if the date is not among the leading
+   * sub-patterns of the layout
+   */
+  int getEventStartDateGroup() {
+    return eventStartDateGroup;
+  }
+
+  /**
+   * Gets the sub-pattern information of the first date in the layout
+   *
+   * @return the date information or {@code null} if the layout has no date
+   */
+  PatternInfo getDateInfo() {
+    return dateInfo;
+  }
+
+  /**
+   * Determines whether the timestamp of an event can be read from its
+   * first line alone, which is what allows seeking by time
+   *
+   * @return true if the layout starts with a date (possibly after other
+   * single-line sub-patterns); otherwise false
+   */
+  public boolean hasLeadingDate() {
+    return eventStartDateGroup > 0 && dateInfo != null;
+  }
+
+  /**
+   * Gets the field plan, which must not be modified
+   */
+  FieldSlot[] getFieldPlan() {
+    return fieldPlan;
+  }
+
+  /**
+   * Determines whether this layout captures a field
+   *
+   * @param name the full pattern name of the field
+   * @return true if the field plan has a slot for the field; otherwise false
+   */
+  boolean captures(String name) {
+    for (FieldSlot slot : fieldPlan) {
+      if (slot.name.equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Resolves, once per layout pattern, which regex group feeds which
+   * field capturer, and with which sub-pattern information. This keeps
+   * all name lookups out of {@link DecodeContext#decode(CharSequence)}.
+   *
+   * @param regexPattern the regex compiled from the layout pattern
+   * @param infos the sub-patterns of the layout pattern
+   * @return the plan, with one slot per decodable named group, in order
+   * of appearance
+   */
+  private static FieldSlot[] compileFieldPlan(Pattern regexPattern, List<PatternInfo> infos) {
+    List<FieldSlot> plan = new ArrayList<FieldSlot>();
+    List<PatternInfo> unused = new ArrayList<PatternInfo>();
+    flatten(infos, unused);
+
+    // a name can repeat (e.g., "%d %d"), but only its first group
+    // is ever decoded
+    for (String name : new LinkedHashSet<String>(regexPattern.groupNames())) {
+      PatternInfo info = null;
+      for (PatternInfo inf : unused) {
+        if (name.equals(PatternNames.getFullName(inf.getName()))) {
+          info = inf;
+          unused.remove(inf);
+          break;
+        }
+      }
+
+      FieldCapturer<IStaticLoggingEvent> capturer = DECODER_MAP.get(name);
+      if (capturer == null) {
+        logger.warn("No decoder for [{}]", name);
+      } else {
+        plan.add(new FieldSlot(name, regexPattern.indexOf(name) + 1, capturer, info));
+      }
+    }
+    return plan.toArray(new FieldSlot[plan.size()]);
+  }
+
+  /**
+   * Collects sub-patterns and their children in order of appearance
+   *
+   * @param infos the sub-patterns to collect (or {@code null})
+   * @param dest the destination list
+   */
+  private static void flatten(List<PatternInfo> infos, List<PatternInfo> dest) {
+    if (infos != null) {
+      for (PatternInfo inf : infos) {
+        dest.add(inf);
+        flatten(inf.getChildren(), dest);
+      }
+    }
+  }
+
+  /**
+   * Finds the first sub-pattern (in depth-first order) with a given name
+   *
+   * @param infos the sub-patterns to search
+   * @param fullName the full pattern name to find
+   * @return the sub-pattern or {@code null} if not found
+   */
+  private static PatternInfo findInfo(List<PatternInfo> infos, String fullName) {
+    List<PatternInfo> all = new ArrayList<PatternInfo>();
+    flatten(infos, all);
+    for (PatternInfo inf : all) {
+      if (inf.getName() != null && fullName.equals(PatternNames.getFullName(inf.getName()))) {
+        return inf;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the end of the leading sub-patterns of a layout that print
+   * on the first line of an event
+   *
+   * @param layoutPattern the layout pattern
+   * @param infos the top-level sub-patterns of {@code layoutPattern}
+   * @return the start of the first multi-line sub-pattern; or the length
+   * of the layout pattern if it has none
+   */
+  private static int eventStartEnd(String layoutPattern, List<PatternInfo> infos) {
+    if (infos != null) {
+      for (PatternInfo inf : infos) {
+        if (isMultiLine(inf)) {
+          return inf.start();
+        }
+      }
+    }
+    return layoutPattern.length();
+  }
+
+  /**
+   * Compiles the pattern that recognizes the first line of an event from
+   * the leading sub-patterns of a layout
+   *
+   * @param prefix the leading sub-patterns of the layout pattern
+   * (up to {@link #eventStartEnd(String, List)})
+   * @return the anchored pattern or {@code null} if the prefix does not
+   * hold any sub-pattern or literal that could be checked
+   */
+  private static Pattern compileEventStartPattern(String prefix) {
+    if (prefix.trim().isEmpty()) {
+      return null;
+    }
+    String regex = new PatternLayoutRegexUtil().toRegex(prefix);
+    return Pattern.compile(regex);
+  }
+
+  /**
+   * Determines whether a sub-pattern (or any of its children) can
+   * produce output that spans multiple lines
+   *
+   * @param inf the sub-pattern to evaluate
+   * @return true if multi-line; otherwise false
+   */
+  private static boolean isMultiLine(PatternInfo inf) {
+    if (inf.getName() != null && MULTILINE_NAMES.contains(PatternNames.getFullName(inf.getName()))) {
+      return true;
+    }
+    if (inf.getChildren() != null) {
+      for (PatternInfo child : inf.getChildren()) {
+        if (isMultiLine(child)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static final Set<String> MULTILINE_NAMES = new HashSet<String>(Arrays.asList(
+      PatternNames.MESSAGE,
+      PatternNames.EXCEPTION,
+      PatternNames.EXT_EXCEPTION,
+      PatternNames.ROOT_EXCEPTION,
+      PatternNames.CALLER_STACKTRACE,
+      PatternNames.NEWLINE
+      ));
+
+  /**
+   * A step of the field plan: the full pattern name of a field, the index
+   * of its regex group, the capturer that parses the group's text, and the
+   * sub-pattern information passed to the capturer
+   */
+  static final class FieldSlot {
+    final String name;
+    final int group;
+    final FieldCapturer<IStaticLoggingEvent> capturer;
+    final PatternInfo info;
+
+    FieldSlot(String name, int group, FieldCapturer<IStaticLoggingEvent> capturer, PatternInfo info) {
+      this.name = name;
+      this.group = group;
+      this.capturer = capturer;
+      this.info = info;
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static final Map<String, FieldCapturer<IStaticLoggingEvent>> DECODER_MAP =
+    new HashMap<String, FieldCapturer<IStaticLoggingEvent>>() {{
+      put(PatternNames.CALLER_STACKTRACE, new CallerStackTraceParser());
+      put(PatternNames.CLASS_OF_CALLER, new ClassOfCallerParser());
+      put(PatternNames.CONTEXT_NAME, new ContextNameParser());
+      put(PatternNames.DATE, new DateParser());
+      put(PatternNames.EXCEPTION, new ExceptionParser());
+      put(PatternNames.EXT_EXCEPTION, new ExceptionParser());
+      put(PatternNames.LEVEL, new LevelParser());
+      put(PatternNames.LINE_OF_CALLER, new LineOfCallerParser());
+      put(PatternNames.LOGGER_NAME, new LoggerNameParser());
+      put(PatternNames.MDC, new MDCParser());
+      put(PatternNames.METHOD_OF_CALLER, new MethodOfCallerParser());
+      put(PatternNames.MESSAGE, new MessageParser());
+      put(PatternNames.ROOT_EXCEPTION, new ExceptionParser());
+      put(PatternNames.THREAD_NAME, new ThreadNameParser());
+    }};
+}
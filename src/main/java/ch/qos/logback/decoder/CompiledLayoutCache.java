@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@code CompiledLayoutCache} keeps the most recently used
+ * {@link CompiledLayout}s, keyed by their layout pattern (and the fields
+ * they decode), so that decoding
+ * many files that share a few layouts only compiles each layout once.
+ * It is bounded (least recently used layouts are evicted first) and
+ * thread-safe. Layouts are compiled outside of the cache's lock, so a slow
+ * compilation does not block lookups of other layouts.
+ */
+public final class CompiledLayoutCache {
+  /** Number of layouts kept by the default cache */
+  public static final int DEFAULT_MAX_SIZE = 64;
+
+  private static final CompiledLayoutCache DEFAULT = new CompiledLayoutCache(DEFAULT_MAX_SIZE);
+
+  private final int maxSize;
+  private final Map<Map.Entry<String, Set<String>>, CompiledLayout> layouts;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Constructs a {@code CompiledLayoutCache}
+   *
+   * @param maxSize the maximum number of layouts to keep
+   */
+  @SuppressWarnings("serial")
+  public CompiledLayoutCache(final int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.layouts = new LinkedHashMap<Map.Entry<String, Set<String>>, CompiledLayout>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Map.Entry<String, Set<String>>, CompiledLayout> eldest) {
+        if (size() > maxSize) {
+          evictionCount.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Gets the cache shared by all decoders
+   *
+   * @return the default cache
+   */
+  public static CompiledLayoutCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Gets the compiled form of a layout pattern, compiling it if it is
+   * not in the cache
+   *
+   * @param layoutPattern the layout pattern
+   * @return the compiled layout
+   */
+  public CompiledLayout get(String layoutPattern) {
+    return get(layoutPattern, null);
+  }
+
+  /**
+   * Gets the compiled form of a layout pattern that only decodes some
+   * fields, compiling it if it is not in the cache
+   *
+   * @param layoutPattern the layout pattern
+   * @param fields the pattern names of the fields to decode; or
+   * {@code null} to decode all fields
+   * @return the compiled layout
+   * @throws IllegalArgumentException a field name is unknown
+   * @see CompiledLayout#compile(String, Set)
+   */
+  public CompiledLayout get(String layoutPattern, Set<String> fields) {
+    Map.Entry<String, Set<String>> key = new SimpleImmutableEntry<String, Set<String>>(
+        layoutPattern, CompiledLayout.toFullNames(fields));
+
+    CompiledLayout layout;
+    synchronized (layouts) {
+      layout = layouts.get(key);
+    }
+    if (layout != null) {
+      hitCount.incrementAndGet();
+      return layout;
+    }
+
+    missCount.incrementAndGet();
+    CompiledLayout compiled = CompiledLayout.compile(layoutPattern, fields);
+    synchronized (layouts) {
+      // another thread may have compiled the same layout meanwhile;
+      // keep the first so that all decoders share one instance
+      layout = layouts.get(key);
+      if (layout == null) {
+        layout = compiled;
+        layouts.put(key, layout);
+      }
+    }
+    return layout;
+  }
+
+  /**
+   * Removes all layouts from the cache. The statistics are not reset.
+   */
+  public void clear() {
+    synchronized (layouts) {
+      layouts.clear();
+    }
+  }
+
+  /**
+   * Gets the number of layouts in the cache
+   *
+   * @return the number of layouts
+   */
+  public int size() {
+    synchronized (layouts) {
+      return layouts.size();
+    }
+  }
+
+  /**
+   * Gets the maximum number of layouts kept by the cache
+   *
+   * @return the maximum number of layouts
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Gets the number of lookups that found their layout in the cache
+   *
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Gets the number of lookups that had to compile their layout
+   *
+   * @return the miss count
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Gets the number of layouts evicted to make room for others
+   *
+   * @return the eviction count
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Gets the ratio of lookups that found their layout in the cache
+   *
+   * @return the hit rate, from 0 to 1 (or 1 if there were no lookups)
+   */
+  public double getHitRate() {
+    long hits = hitCount.get();
+    long total = hits + missCount.get();
+    return total == 0 ? 1.0 : (double)hits / total;
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledLayoutCache[size=" + size() + ", maxSize=" + maxSize
+        + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+        + ", evictions=" + getEvictionCount() + "]";
+  }
+}
@@ -22,7 +22,12 @@ public class ContextNameParser implements FieldCapturer<IStaticLoggingEvent> {
 
   @Override
   public void captureField(IStaticLoggingEvent event, String fieldAsStr, PatternInfo info) {
-    event.setContextName(fieldAsStr);
+    event.setContextName(StringPool.getDefault().intern(fieldAsStr));
+  }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    event.setContextName(StringPool.getDefault().intern(input, start, end));
   }
 
 }
@@ -12,6 +12,7 @@
  */
 package ch.qos.logback.decoder;
 
+import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.Date;
 
@@ -19,13 +20,60 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.core.pattern.parser2.DatePatternInfo;
+import ch.qos.logback.core.pattern.parser2.FixedDateFormat;
 import ch.qos.logback.core.pattern.parser2.PatternInfo;
 
 /**
  * A {@code DateParser} parses a date field from a string and populates the
- * appropriate field in a given logging event
+ * appropriate field in a given logging event. Dates in a common fixed-width
+ * pattern are parsed with a {@link FixedDateFormat}; others fall back to
+ * the {@code SimpleDateFormat} of the {@link DatePatternInfo}.
  */
 public class DateParser implements FieldCapturer<IStaticLoggingEvent> {
+  private final DateFormat dateFormat;
+  private final FixedDateFormat fixedDateFormat;
+
+  // the prefix (up to the seconds) of the last date parsed with
+  // fixedDateFormat, and its epoch
+  private final char[] cachedPrefix;
+  private boolean cached;
+  private long cachedEpoch;
+
+  /**
+   * Constructs a {@code DateParser} that parses with the date format of
+   * the {@link DatePatternInfo} given to it. That format is shared, so
+   * its use is synchronized.
+   */
+  public DateParser() {
+    this(null, null);
+  }
+
+  /**
+   * Constructs a {@code DateParser} that parses with its own date format
+   *
+   * @param dateFormat the date format to parse with (or {@code null} to
+   * use the format of the {@link DatePatternInfo} given to it)
+   */
+  public DateParser(DateFormat dateFormat) {
+    this(dateFormat, null);
+  }
+
+  /**
+   * Constructs a {@code DateParser} that parses with its own date formats.
+   * Consecutive dates that share a prefix up to their seconds only have
+   * their milliseconds parsed, so an instance must not be shared by
+   * several threads.
+   *
+   * @param dateFormat the date format to parse with (or {@code null} to
+   * use the format of the {@link DatePatternInfo} given to it)
+   * @param fixedDateFormat the fixed-width date format to try first
+   * (or {@code null} to only use {@code dateFormat})
+   */
+  public DateParser(DateFormat dateFormat, FixedDateFormat fixedDateFormat) {
+    this.dateFormat = dateFormat;
+    this.fixedDateFormat = fixedDateFormat;
+    this.cachedPrefix = fixedDateFormat != null ? new char[fixedDateFormat.prefixLength()] : null;
+  }
 
   private Logger logger() {
     return LoggerFactory.getLogger(DateParser.class);
@@ -37,8 +85,16 @@ public class DateParser implements FieldCapturer<IStaticLoggingEvent> {
     if (info instanceof DatePatternInfo) {
       DatePatternInfo dpi = (DatePatternInfo)info;
       try {
-          Date date = dpi.getDateFormat().parse(fieldAsStr);
-          event.setTimeStamp(date.getTime());
+        Date date;
+        if (dateFormat != null) {
+          date = dateFormat.parse(fieldAsStr);
+        } else {
+          DateFormat sharedFormat = dpi.getDateFormat();
+          synchronized (sharedFormat) {
+            date = sharedFormat.parse(fieldAsStr);
+          }
+        }
+        event.setTimeStamp(date.getTime());
       } catch (ParseException e) {
         logger().error(e.toString());
       }
@@ -46,4 +102,110 @@ public class DateParser implements FieldCapturer<IStaticLoggingEvent> {
       logger().debug("expected DatePatternInfo, actual {}", info.getClass().getName());
     }
   }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    long epoch = FixedDateFormat.INVALID;
+    if (fixedDateFormat != null) {
+      epoch = parseFixed(input, start, end);
+    } else if (info instanceof DatePatternInfo && ((DatePatternInfo)info).getFixedDateFormat() != null) {
+      epoch = ((DatePatternInfo)info).getFixedDateFormat().parse(input, start, end);
+    }
+
+    if (epoch != FixedDateFormat.INVALID) {
+      event.setTimeStamp(epoch);
+    } else {
+      captureField(event, input.subSequence(start, end).toString(), info);
+    }
+  }
+
+  /**
+   * Parses a date with the fixed-width date format, reusing the epoch
+   * of the previous date if both have the same prefix
+   *
+   * @return the epoch in milliseconds or {@link FixedDateFormat#INVALID}
+   */
+  private long parseFixed(CharSequence input, int start, int end) {
+    if (end - start != fixedDateFormat.length()) {
+      return FixedDateFormat.INVALID;
+    }
+
+    if (!cached || !prefixEquals(input, start)) {
+      long epoch = fixedDateFormat.parsePrefix(input, start);
+      if (epoch == FixedDateFormat.INVALID) {
+        return FixedDateFormat.INVALID;
+      }
+      for (int i = 0; i < cachedPrefix.length; i++) {
+        cachedPrefix[i] = input.charAt(start + i);
+      }
+      cachedEpoch = epoch;
+      cached = true;
+    }
+
+    int millis = fixedDateFormat.parseMillis(input, start);
+    return millis < 0 ? FixedDateFormat.INVALID : cachedEpoch + millis;
+  }
+
+  private boolean prefixEquals(CharSequence input, int start) {
+    for (int i = cachedPrefix.length - 1; i >= 0; i--) {
+      if (cachedPrefix[i] != input.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the timestamp of a date field without an event, e.g., to
+   * compare it with a time range. The fixed-width date format of the
+   * {@link DatePatternInfo} is tried first; otherwise, its shared date
+   * format is used (synchronized).
+   *
+   * @param input the input sequence containing the field
+   * @param start index of the first char of the field in {@code input}
+   * @param end index after the last char of the field in {@code input}
+   * @param info sub-pattern information of the field
+   * @return the timestamp in milliseconds since the epoch; or
+   * {@link FixedDateFormat#INVALID} if the field cannot be parsed
+   */
+  static long parseTimestamp(CharSequence input, int start, int end, PatternInfo info) {
+    if (!(info instanceof DatePatternInfo)) {
+      return FixedDateFormat.INVALID;
+    }
+    DatePatternInfo dpi = (DatePatternInfo)info;
+
+    FixedDateFormat fixedFormat = dpi.getFixedDateFormat();
+    if (fixedFormat != null) {
+      long timestamp = fixedFormat.parse(input, start, end);
+      if (timestamp != FixedDateFormat.INVALID) {
+        return timestamp;
+      }
+    }
+
+    DateFormat sharedFormat = dpi.getDateFormat();
+    if (sharedFormat == null) {
+      return FixedDateFormat.INVALID;
+    }
+    try {
+      synchronized (sharedFormat) {
+        return sharedFormat.parse(input.subSequence(start, end).toString()).getTime();
+      }
+    } catch (ParseException e) {
+      return FixedDateFormat.INVALID;
+    }
+  }
+
+  /**
+   * Gets a parser with its own copy of the date format, since
+   * {@code DateFormat}s are not thread-safe, and its own cache for
+   * the fixed-width date format
+   */
+  @Override
+  public FieldCapturer<IStaticLoggingEvent> forContext(PatternInfo info) {
+    if (info instanceof DatePatternInfo && ((DatePatternInfo)info).getDateFormat() != null) {
+      DatePatternInfo dpi = (DatePatternInfo)info;
+      return new DateParser((DateFormat)dpi.getDateFormat().clone(), dpi.getFixedDateFormat());
+    }
+    return this;
+  }
 }
@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.pattern.parser2.FixedDateFormat;
+import ch.qos.logback.decoder.CompiledLayout.FieldSlot;
+
+/**
+ * A {@code DecodeContext} decodes log events with a {@link CompiledLayout}.
+ * It reuses its matchers from one event to the next, and keeps its own
+ * copy of any field capturer with parsing state (such as the date format
+ * of a {@link DateParser}). A context is not thread-safe; each thread
+ * should get its own from {@link CompiledLayout#newContext()}.
+ *
+ * <p>A context can also be given {@link FieldFilter}s, which are applied
+ * to the text of the matched fields before an event is created.</p>
+ */
+public final class DecodeContext {
+  private final CompiledLayout layout;
+  private final FieldSlot[] fieldPlan;
+  private final FieldCapturer<IStaticLoggingEvent>[] capturers;
+  private final Matcher matcher;
+  private final Matcher eventStartMatcher;
+  private final LiteralAnchors anchors;
+  private final LiteralAnchors eventStartAnchors;
+  private final List<FieldFilter> filters;
+  private final FieldFilter[] filterPlan;
+  private final int[] filterSlots;
+  private final boolean[] batchColumns;
+  private boolean rejected;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  DecodeContext(CompiledLayout layout, List<FieldFilter> filters) {
+    this.layout = layout;
+    this.fieldPlan = layout.getFieldPlan();
+    this.capturers = new FieldCapturer[fieldPlan.length];
+    for (int i = 0; i < fieldPlan.length; i++) {
+      capturers[i] = fieldPlan[i].capturer.forContext(fieldPlan[i].info);
+    }
+    this.batchColumns = new boolean[fieldPlan.length];
+    for (int i = 0; i < fieldPlan.length; i++) {
+      batchColumns[i] = EventBatch.isColumn(fieldPlan[i].name);
+    }
+    this.matcher = layout.getMatchPattern().matcher("");
+    this.anchors = layout.getAnchors();
+    this.eventStartAnchors = layout.getEventStartAnchors();
+    this.eventStartMatcher = layout.getEventStartPattern() == null
+        ? null
+        : layout.getEventStartPattern().matcher("");
+
+    this.filters = filters != null ? filters : Collections.<FieldFilter>emptyList();
+    this.filterPlan = this.filters.toArray(new FieldFilter[this.filters.size()]);
+    this.filterSlots = new int[filterPlan.length];
+    for (int f = 0; f < filterPlan.length; f++) {
+      filterSlots[f] = slotOf(filterPlan[f].getFieldName());
+    }
+  }
+
+  /**
+   * Finds the slot of a field in the field plan
+   *
+   * @param name the full pattern name of the field
+   * @return the index of the slot
+   * @throws IllegalArgumentException the layout does not capture the field
+   */
+  private int slotOf(String name) {
+    for (int i = 0; i < fieldPlan.length; i++) {
+      if (fieldPlan[i].name.equals(name)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("cannot filter on " + name
+        + ", which the layout does not capture: " + layout.getLayoutPattern());
+  }
+
+  /**
+   * Gets the layout this context decodes with
+   *
+   * @return the layout
+   */
+  public CompiledLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Gets the filters this context applies
+   *
+   * @return the filters (never {@code null})
+   */
+  public List<FieldFilter> getFilters() {
+    return filters;
+  }
+
+  /**
+   * Determines whether the last input given to {@link #decode(CharSequence)}
+   * or {@link #decodeLazily(CharSequence)} matched the layout, but was
+   * rejected by a filter
+   *
+   * @return true if rejected; otherwise false
+   */
+  public boolean wasRejected() {
+    return rejected;
+  }
+
+  /**
+   * Determines whether a line could be the first line of a log event
+   *
+   * @param line the line to evaluate (without its line terminator)
+   * @return true if the line starts an event or the layout has no
+   * leading sub-patterns to check; otherwise false
+   * @see Decoder#isEventStart(CharSequence)
+   */
+  public boolean isEventStart(CharSequence line) {
+    if (eventStartMatcher == null) {
+      return true;
+    }
+    // most continuation lines (e.g., stack frames) lack the layout's literals
+    if (!eventStartAnchors.matches(line)) {
+      return false;
+    }
+    boolean found = eventStartMatcher.reset(line).lookingAt();
+    eventStartMatcher.reset("");
+    return found;
+  }
+
+  /**
+   * Reads the timestamp of an event from its first line, without
+   * decoding any other field
+   *
+   * @param line the first line of the event
+   * @return the timestamp in milliseconds since the epoch; or
+   * {@link FixedDateFormat#INVALID} if the line does not start an event,
+   * its date cannot be parsed, or the layout has no
+   * {@link CompiledLayout#hasLeadingDate() leading date}
+   */
+  long readTimestamp(CharSequence line) {
+    int group = layout.getEventStartDateGroup();
+    if (eventStartMatcher == null || group == 0 || !eventStartAnchors.matches(line)) {
+      return FixedDateFormat.INVALID;
+    }
+
+    long timestamp = FixedDateFormat.INVALID;
+    if (eventStartMatcher.reset(line).lookingAt() && eventStartMatcher.start(group) >= 0) {
+      timestamp = DateParser.parseTimestamp(line, eventStartMatcher.start(group),
+          eventStartMatcher.end(group), layout.getDateInfo());
+    }
+    eventStartMatcher.reset("");
+    return timestamp;
+  }
+
+  /**
+   * Decodes a log event
+   *
+   * @param input the text of the event, which may span several lines
+   * @return the decoded {@link ILoggingEvent} or {@code null}
+   * if the input cannot be decoded or is rejected by a filter
+   * @see Decoder#decode(CharSequence)
+   */
+  public ILoggingEvent decode(CharSequence input) {
+    return decode(input, false);
+  }
+
+  /**
+   * Decodes a log event as a {@link CompactLoggingEvent}
+   *
+   * @param input the text of the event, which may span several lines
+   * @return the decoded {@link CompactLoggingEvent} or {@code null}
+   * if the input cannot be decoded or is rejected by a filter
+   * @see Decoder#setCompact(boolean)
+   */
+  public ILoggingEvent decodeCompact(CharSequence input) {
+    return decode(input, true);
+  }
+
+  private ILoggingEvent decode(CharSequence input, boolean compact) {
+    IStaticLoggingEvent event = null;
+
+    if (match(input) && accept(input)) {
+      event = compact ? new CompactLoggingEvent() : new StaticLoggingEvent();
+
+      for (int i = 0; i < fieldPlan.length; i++) {
+        int group = fieldPlan[i].group;
+        int start = matcher.start(group);
+
+        // skip optional groups that did not participate in the match
+        if (start >= 0) {
+          capturers[i].captureField(event, input, start, matcher.end(group), fieldPlan[i].info);
+        }
+      }
+    }
+
+    // don't hold on to the input (e.g., a large multi-line event)
+    matcher.reset("");
+    return event;
+  }
+
+  /**
+   * Decodes a log event into the next entry of a batch. Only the fields
+   * that are columns of the batch are parsed; the message and stack trace
+   * are copied into the batch without creating a {@code String}.
+   *
+   * @param input the text of the event, which may span several lines
+   * @param batch the batch to add the event to
+   * @return true if the event was added; false if the input cannot be
+   * decoded or is rejected by a filter
+   * @throws IllegalStateException the batch is full
+   * @see Decoder#decode(CharSequence, EventBatch)
+   */
+  public boolean decode(CharSequence input, EventBatch batch) {
+    if (batch.isFull()) {
+      throw new IllegalStateException("batch is full");
+    }
+    boolean decoded = match(input) && accept(input);
+    if (decoded) {
+      IStaticLoggingEvent row = batch.add();
+
+      for (int i = 0; i < fieldPlan.length; i++) {
+        int group = fieldPlan[i].group;
+        int start = matcher.start(group);
+        if (start < 0 || !batchColumns[i]) {
+          continue;
+        }
+        if (fieldPlan[i].name.equals(PatternNames.MESSAGE)) {
+          batch.setMessage(input, start, matcher.end(group));
+        } else if (EventBatch.isExceptionColumn(fieldPlan[i].name)) {
+          batch.setException(input, start, matcher.end(group));
+        } else {
+          capturers[i].captureField(row, input, start, matcher.end(group), fieldPlan[i].info);
+        }
+      }
+    } else {
+      batch.skip(rejected);
+    }
+
+    matcher.reset("");
+    return decoded;
+  }
+
+  /**
+   * Matches a log event without parsing any of its fields. The fields
+   * are parsed when they are first read from the returned event.
+   *
+   * @param input the text of the event, which may span several lines;
+   * it is kept by the returned event, so it must not be changed
+   * @return a {@link LazyLoggingEvent} or {@code null} if the input
+   * cannot be decoded or is rejected by a filter
+   */
+  public ILoggingEvent decodeLazily(CharSequence input) {
+    ILoggingEvent event = null;
+    if (match(input) && accept(input)) {
+      event = new LazyLoggingEvent(input, fieldPlan, matcher);
+    }
+    matcher.reset("");
+    return event;
+  }
+
+  /**
+   * Matches the input against the layout
+   *
+   * @param input the text of the event
+   * @return true if the matcher has a match with groups; otherwise false
+   */
+  private boolean match(CharSequence input) {
+    rejected = false;
+    matcher.reset(input);
+
+    // Turn away input that lacks the layout's literals before running the
+    // regex at all. Otherwise, the regex must match the whole input, so
+    // that lazy multi-line fields (e.g., %msg) extend to the end of the
+    // event rather than stopping at its first line, and it runs only once.
+    return anchors.matches(input) && matcher.matches() && matcher.groupCount() > 0;
+  }
+
+  /**
+   * Applies the filters to the fields of the current match. A filter
+   * whose field did not participate in the match is skipped.
+   *
+   * @param input the text of the event
+   * @return true if all filters accept the event; otherwise false
+   */
+  private boolean accept(CharSequence input) {
+    for (int i = 0; i < filterPlan.length; i++) {
+      FieldSlot slot = fieldPlan[filterSlots[i]];
+      int start = matcher.start(slot.group);
+      if (start >= 0 && !filterPlan[i].accept(input, start, matcher.end(slot.group), slot.info)) {
+        rejected = true;
+        return false;
+      }
+    }
+    return true;
+  }
+}
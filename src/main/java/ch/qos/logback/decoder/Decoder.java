@@ -12,54 +12,48 @@
  */
 package ch.qos.logback.decoder;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Set;
+import java.util.TreeSet;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.pattern.parser2.PatternInfo;
-import ch.qos.logback.core.pattern.parser2.PatternParser;
-import ch.qos.logback.decoder.regex.PatternLayoutRegexUtil;
-
-import com.google.code.regexp.Matcher;
-import com.google.code.regexp.Pattern;
 
 /**
  * A {@code Decoder} parses information from a log string and produces an
  * {@link ILoggingEvent} as a result.
+ *
+ * <p>The layout pattern is compiled once into a {@link CompiledLayout},
+ * and each thread decodes through its own {@link DecodeContext}, so
+ * a decoder can be used by several threads at once (as long as its
+ * layout pattern is not changed meanwhile).</p>
  */
 public abstract class Decoder {
-  private final Logger logger;
-  private Pattern regexPattern;
-  private String layoutPattern;
-  private List<PatternInfo> patternInfo;
+  private volatile CompiledLayout layout;
+  private volatile boolean lazy;
+  private volatile boolean compact;
+  private volatile Set<String> fields;
+  private volatile List<FieldFilter> filters = Collections.emptyList();
+  private final ThreadLocal<DecodeContext> contexts = new ThreadLocal<DecodeContext>();
 
   /**
    * Constructs a {@code Decoder}
    */
   protected Decoder() {
-    logger = LoggerFactory.getLogger(Decoder.class);
   }
 
   /**
-   * Sets the layout pattern used for decoding
+   * Sets the layout pattern used for decoding. The pattern is compiled
+   * through {@link CompiledLayoutCache#getDefault()}, so decoders that use
+   * the same pattern share its compiled form.
    *
    * @param layoutPattern the desired layout pattern
+   * @throws IllegalArgumentException a {@link #setFilters(List) filter}
+   * is on a field that the layout does not have
    */
   public void setLayoutPattern(String layoutPattern) {
-    if (layoutPattern != null) {
-      String regex = new PatternLayoutRegexUtil().toRegex(layoutPattern);
-      regexPattern = Pattern.compile(regex);
-      patternInfo = PatternParser.parse(layoutPattern);
-    } else {
-      regexPattern = null;
-      patternInfo = null;
-    }
-    this.layoutPattern = layoutPattern;
+    setCompiledLayout(layoutPattern != null ? CompiledLayoutCache.getDefault().get(layoutPattern, projection(fields, filters)) : null);
   }
 
   /**
@@ -68,85 +62,281 @@ public abstract class Decoder {
    * @return the layout pattern
    */
   public String getLayoutPattern() {
-    return layoutPattern;
+    CompiledLayout current = layout;
+    return current != null ? current.getLayoutPattern() : null;
   }
 
   /**
-   * Decodes a log line as an {@link ILoggingEvent}
+   * Sets the compiled layout used for decoding. A layout can be shared
+   * by several decoders, so that it is only compiled once.
    *
-   * @param inputLine the log line to decode
-   * @return the decoded {@link ILoggingEvent }or {@code null}
-   * if line cannot be decoded
+   * @param layout the desired layout (or {@code null} to clear it)
+   * @throws IllegalArgumentException a {@link #setFilters(List) filter}
+   * is on a field that the layout does not capture
    */
-  public ILoggingEvent decode(String inputLine) {
-
-    IStaticLoggingEvent event = null;
-    Matcher matcher = regexPattern.matcher(inputLine);
+  public void setCompiledLayout(CompiledLayout layout) {
+    checkFilters(layout, filters);
+    this.layout = layout;
+  }
 
-    logger.trace("regex: {}", regexPattern.toString());
+  /**
+   * Gets the compiled layout used for decoding
+   *
+   * @return the layout (or {@code null} if no layout pattern is set)
+   */
+  public CompiledLayout getCompiledLayout() {
+    return layout;
+  }
 
-    if (matcher.find() && matcher.groupCount() > 0) {
-      event = new StaticLoggingEvent();
+  /**
+   * Sets the fields to decode. The other fields of the layout are still
+   * matched, but not captured or parsed, and are left unset in decoded
+   * events.
+   *
+   * @param fields the pattern names (e.g., "level", "logger" or "d") of
+   * the fields to decode; or {@code null} to decode all fields (the default)
+   * @throws IllegalArgumentException a field name is unknown
+   */
+  public void setFields(Set<String> fields) {
+    this.fields = CompiledLayout.toFullNames(fields);
+    recompileLayout();
+  }
 
-      int patternIndex = 0;
-      Map<String, String> groupMap = matcher.namedGroups();
-      for (Entry<String, String> entry : groupMap.entrySet()) {
-        String pattName = entry.getKey();
-        String field = entry.getValue();
+  /**
+   * Gets the fields to decode
+   *
+   * @return the full pattern names of the fields; or {@code null} if
+   * all fields are decoded
+   */
+  public Set<String> getFields() {
+    return fields;
+  }
 
-        logger.debug("{} = {}", pattName, field);
+  /**
+   * Sets the filters that decoded events must pass. Filters are applied
+   * to the text of their fields right after the layout matches, so the
+   * events they reject are never created, and none of their fields are
+   * parsed. The fields of the filters are always captured, even if
+   * {@link #setFields(Set) not requested}.
+   *
+   * @param filters the filters (or {@code null} or an empty list to
+   * keep all events)
+   * @throws IllegalArgumentException a filter is on a field that the
+   * current layout does not have
+   */
+  public void setFilters(List<FieldFilter> filters) {
+    List<FieldFilter> list = filters != null
+        ? Collections.unmodifiableList(new ArrayList<FieldFilter>(filters))
+        : Collections.<FieldFilter>emptyList();
+    CompiledLayout current = layout;
+    CompiledLayout recompiled = current != null
+        ? CompiledLayoutCache.getDefault().get(current.getLayoutPattern(), projection(fields, list))
+        : null;
+    checkFilters(recompiled, list);
+    this.filters = list;
+    this.layout = recompiled;
+  }
 
-        FieldCapturer<IStaticLoggingEvent> parser = DECODER_MAP.get(pattName);
-        if (parser == null) {
-          logger.warn("No decoder for [{}, {}]", pattName, field);
-        } else {
-          parser.captureField(event, field, getPatternInfo(patternIndex, pattName));
-        }
+  /**
+   * Gets the filters that decoded events must pass
+   *
+   * @return the filters (never {@code null})
+   */
+  public List<FieldFilter> getFilters() {
+    return filters;
+  }
 
-        patternIndex++;
+  /**
+   * Checks that a layout captures the fields of filters, since a filter
+   * on a missing field could not reject any event
+   *
+   * @param layout the layout (or {@code null} if none is set yet)
+   * @param filters the filters
+   * @throws IllegalArgumentException a filter is on a field that the
+   * layout does not capture
+   */
+  private static void checkFilters(CompiledLayout layout, List<FieldFilter> filters) {
+    if (layout == null) {
+      return;
+    }
+    for (FieldFilter filter : filters) {
+      if (!layout.captures(filter.getFieldName())) {
+        throw new IllegalArgumentException("cannot filter on " + filter.getFieldName()
+            + ", which the layout does not capture: " + layout.getLayoutPattern());
       }
     }
-    return event;
   }
 
   /**
-   * Gets the pattern info for a sub-pattern
+   * Gets the fields to capture, which are the requested fields and the
+   * fields of the filters
    *
-   * @param patternIndex the index of the sub-pattern
-   * @param fieldName the name of the sub-pattern
-   * @return the pattern info or {@code null} if not found
+   * @param requested the requested fields (or {@code null} for all)
+   * @param filters the filters
+   * @return the full pattern names of the fields; or {@code null} to
+   * capture all fields
    */
-  private PatternInfo getPatternInfo(int patternIndex, String fieldName) {
-    PatternInfo inf = patternInfo.get(patternIndex);
-    if (inf != null) {
+  private static Set<String> projection(Set<String> requested, List<FieldFilter> filters) {
+    if (requested == null || filters.isEmpty()) {
+      return requested;
+    }
+    Set<String> names = new TreeSet<String>(requested);
+    for (FieldFilter filter : filters) {
+      names.add(filter.getFieldName());
+    }
+    return names;
+  }
 
-      // get the value only if the field name at this index
-      // matches the given name
-      String infName = PatternNames.getFullName(inf.getName());
-      if (infName != null && !infName.equals(fieldName)) {
-        logger.debug(
-              "BUG!! Saw a field name that did not match the pattern info's " +
-              "name! (index={} expected={} actual={})",
-              new Object[] { patternIndex, fieldName, infName });
+  /**
+   * Recompiles the current layout for the current projection
+   */
+  private void recompileLayout() {
+    CompiledLayout current = layout;
+    if (current != null) {
+      setCompiledLayout(CompiledLayoutCache.getDefault().get(current.getLayoutPattern(), projection(fields, filters)));
+    }
+  }
 
-        inf = null;
-      }
+  /**
+   * Sets whether the fields of decoded events are parsed lazily, when
+   * they are first read, instead of while decoding. This saves the
+   * cost of parsing the fields that are never read.
+   *
+   * @param lazy true to decode {@link LazyLoggingEvent}s; false to parse
+   * all fields while decoding (the default)
+   */
+  public void setLazy(boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  /**
+   * Gets whether the fields of decoded events are parsed lazily
+   *
+   * @return true if lazy; otherwise false
+   */
+  public boolean isLazy() {
+    return lazy;
+  }
+
+  /**
+   * Sets whether events are decoded as {@link CompactLoggingEvent}s,
+   * which take about half the memory of the default events. This is
+   * meant for holding many decoded events in memory. It has no effect
+   * on {@link #setLazy(boolean) lazy} decoding.
+   *
+   * @param compact true to decode {@link CompactLoggingEvent}s; false to
+   * decode {@link StaticLoggingEvent}s (the default)
+   */
+  public void setCompact(boolean compact) {
+    this.compact = compact;
+  }
+
+  /**
+   * Gets whether events are decoded as {@link CompactLoggingEvent}s
+   *
+   * @return true if compact; otherwise false
+   */
+  public boolean isCompact() {
+    return compact;
+  }
+
+  /**
+   * Gets the decode context of the current thread for the current layout.
+   * Contexts are not thread-safe, so each thread keeps its own; this is
+   * what makes {@link #decode(CharSequence)} and
+   * {@link #isEventStart(CharSequence)} safe to call concurrently.
+   *
+   * @return the context
+   * @throws UnknownLayoutPatternException no layout pattern is set
+   */
+  protected DecodeContext context() {
+    CompiledLayout current = layout;
+    if (current == null) {
+      throw new UnknownLayoutPatternException("layout pattern not specified");
+    }
+    List<FieldFilter> currentFilters = filters;
+    DecodeContext context = contexts.get();
+    if (context == null || context.getLayout() != current || context.getFilters() != currentFilters) {
+      context = current.newContext(currentFilters);
+      contexts.set(context);
     }
-    return inf;
-  }
-
-  @SuppressWarnings("serial")
-  private static final Map<String, FieldCapturer<IStaticLoggingEvent>> DECODER_MAP =
-    new HashMap<String, FieldCapturer<IStaticLoggingEvent>>() {{
-      put(PatternNames.CALLER_STACKTRACE, new CallerStackTraceParser());
-      put(PatternNames.CLASS_OF_CALLER, new ClassOfCallerParser());
-      put(PatternNames.CONTEXT_NAME, new ContextNameParser());
-      put(PatternNames.DATE, new DateParser());
-      put(PatternNames.LEVEL, new LevelParser());
-      put(PatternNames.LINE_OF_CALLER, new LineOfCallerParser());
-      put(PatternNames.LOGGER_NAME, new LoggerNameParser());
-      put(PatternNames.METHOD_OF_CALLER, new MethodOfCallerParser());
-      put(PatternNames.MESSAGE, new MessageParser());
-      put(PatternNames.THREAD_NAME, new ThreadNameParser());
-    }};
+    return context;
+  }
+
+  /**
+   * Determines whether a line could be the first line of a log event.
+   * Only the leading sub-patterns of the layout (those before the first
+   * sub-pattern that can span multiple lines, such as %msg or %ex) are
+   * checked, so this is much cheaper than a full decode. Lines for which
+   * this returns false are continuation lines of the preceding event.
+   *
+   * @param line the line to evaluate (without its line terminator)
+   * @return true if the line starts an event or the layout has no
+   * leading sub-patterns to check; otherwise false
+   */
+  public boolean isEventStart(CharSequence line) {
+    return context().isEventStart(line);
+  }
+
+  /**
+   * Decodes a log line as an {@link ILoggingEvent}
+   *
+   * @param inputLine the log line to decode, which may span several
+   * lines when the event contains a multi-line message, exception or
+   * caller data. Any {@code CharSequence} can be given (e.g., a view over
+   * a memory-mapped file), which is matched in place without first being
+   * copied to a {@code String}.
+   * @return the decoded {@link ILoggingEvent }or {@code null}
+   * if line cannot be decoded or is rejected by a filter
+   * @see #setLazy(boolean)
+   * @see #setCompact(boolean)
+   * @see #setFilters(List)
+   */
+  public ILoggingEvent decode(CharSequence inputLine) {
+    if (lazy) {
+      return context().decodeLazily(inputLine);
+    }
+    return compact ? context().decodeCompact(inputLine) : context().decode(inputLine);
+  }
+
+  /**
+   * Decodes a log line into the next entry of a batch, without creating
+   * an event object. Only the timestamp, level, logger, thread, context
+   * and message are decoded; {@link #setFields(Set) fields} that are
+   * left out are not decoded either.
+   *
+   * @param inputLine the log line to decode, which may span several lines
+   * @param batch the batch to add the event to
+   * @return true if the event was added to the batch; false if the line
+   * cannot be decoded or is rejected by a filter
+   * @throws IllegalStateException the batch is full
+   * @see #setFilters(List)
+   */
+  public boolean decode(CharSequence inputLine, EventBatch batch) {
+    return context().decode(inputLine, batch);
+  }
+
+  /**
+   * Reads the timestamp of an event from its first line, without
+   * decoding any other field
+   *
+   * @param line the first line of the event
+   * @return the timestamp or {@code FixedDateFormat.INVALID} if it
+   * cannot be read
+   * @see DecodeContext#readTimestamp(CharSequence)
+   */
+  long readTimestamp(CharSequence line) {
+    return context().readTimestamp(line);
+  }
+
+  /**
+   * Determines whether the last line decoded by the current thread
+   * was rejected by a filter (rather than not matching the layout)
+   *
+   * @return true if rejected; otherwise false
+   */
+  protected boolean wasRejected() {
+    return context().wasRejected();
+  }
+
 }
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@code EventAssembler} groups the lines read from a buffer into the
+ * text of whole log events. A line that {@link Decoder#isEventStart(CharSequence)
+ * starts an event} is joined with the continuation lines that follow it
+ * (e.g., the lines of a multi-line message or a stack trace), so the event
+ * can be decoded at once. Continuation lines are never passed to the
+ * full layout regex.
+ */
+class EventAssembler {
+  /** Default maximum length (in chars) of an assembled event */
+  static final int DEFAULT_MAX_EVENT_LENGTH = 1024 * 1024;
+
+  private final Logger logger;
+  private final BufferedReader reader;
+  private final Decoder decoder;
+  private final int maxEventLength;
+  private final StringBuilder buffer;
+  private String nextLine;
+  private int nextLineNum;
+  private int lineNum;
+  private int eventLineNum;
+
+  /**
+   * Constructs an {@code EventAssembler} with the default maximum
+   * event length
+   *
+   * @param reader buffer containing log strings, delimited by a new-line character
+   * @param decoder the decoder whose layout pattern identifies event starts
+   */
+  EventAssembler(BufferedReader reader, Decoder decoder) {
+    this(reader, decoder, DEFAULT_MAX_EVENT_LENGTH);
+  }
+
+  /**
+   * Constructs an {@code EventAssembler}
+   *
+   * @param reader buffer containing log strings, delimited by a new-line character
+   * @param decoder the decoder whose layout pattern identifies event starts
+   * @param maxEventLength maximum number of chars to buffer for an event;
+   * continuation lines beyond this limit are dropped
+   */
+  EventAssembler(BufferedReader reader, Decoder decoder, int maxEventLength) {
+    this.logger = LoggerFactory.getLogger(EventAssembler.class);
+    this.reader = reader;
+    this.decoder = decoder;
+    this.maxEventLength = maxEventLength;
+    this.buffer = new StringBuilder(256);
+  }
+
+  /**
+   * Reads the text of the next event. Each line of the text (including
+   * the last one) is terminated by a new-line character. A line that
+   * is neither an event start nor preceded by one (e.g., the tail of a
+   * stack trace at the top of a rolled file) is returned by itself.
+   *
+   * @return the event text or {@code null} if the end of the buffer
+   * has been reached
+   * @throws IOException an error occurred while reading buffer
+   */
+  String readEvent() throws IOException {
+    String line = nextLine;
+    eventLineNum = nextLineNum;
+    nextLine = null;
+
+    if (line == null) {
+      line = reader.readLine();
+      eventLineNum = ++lineNum;
+      if (line == null) {
+        return null;
+      }
+    }
+
+    buffer.setLength(0);
+    buffer.append(line).append('\n');
+
+    if (decoder.isEventStart(line)) {
+      while ((line = reader.readLine()) != null) {
+        lineNum++;
+        if (decoder.isEventStart(line)) {
+          nextLine = line;
+          nextLineNum = lineNum;
+          break;
+        }
+
+        if (buffer.length() + line.length() < maxEventLength) {
+          buffer.append(line).append('\n');
+        } else {
+          logger.trace("line {}: event exceeds {} chars; dropped: \"{}\"",
+              new Object[] { lineNum, maxEventLength, line });
+        }
+      }
+    }
+
+    return buffer.toString();
+  }
+
+  /**
+   * Gets the line number of the first line of the event last returned
+   * by {@link #readEvent()}
+   *
+   * @return the one-based line number
+   */
+  int getEventLineNumber() {
+    return eventLineNum;
+  }
+}
@@ -0,0 +1,513 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * An {@code EventBatch} holds a run of decoded events as columns of
+ * primitives instead of as event objects, for consumers that only read
+ * a few fields of many events (e.g., to aggregate them). A batch is
+ * filled by {@link Decoder#decode(CharSequence, EventBatch)} (or by the
+ * batch methods of {@link BufferDecoder} and {@link MappedFileDecoder}),
+ * and can be {@link #clear() cleared} and refilled any number of times
+ * without allocating per event.
+ * <p>
+ * The columns are:
+ * <ul>
+ * <li>{@link #getTimestamps() timestamps} (0 if not decoded)</li>
+ * <li>{@link #getLevels() level ordinals} (see {@link #toLevel(int)};
+ * 0 if not decoded)</li>
+ * <li>dictionary ids of the {@link #getLoggerIds() logger},
+ * {@link #getThreadIds() thread} and {@link #getContextIds() context}
+ * names (see {@link #getString(int)}; -1 if not decoded)</li>
+ * <li>messages, as spans of a shared {@link #getMessageChars() char
+ * buffer} (empty if not decoded)</li>
+ * <li>stack traces of the exception field ({@code %ex}, {@code %xEx} or
+ * {@code %rEx}), as spans of another {@link #getExceptionChars() char
+ * buffer} (empty if the event has none or the layout has no such field)</li>
+ * </ul>
+ * Only the first {@link #size()} entries of each column are valid. The
+ * dictionary (and the counts of events that were left out) is kept when
+ * the batch is cleared, so ids can be compared across all the batches
+ * of a decode. Other fields (such as the MDC
+ * and caller data) are not decoded into a batch.
+ * <p>
+ * A batch is not thread-safe.
+ */
+public final class EventBatch {
+  private final int capacity;
+  private final long[] timestamps;
+  private final byte[] levels;
+  private final int[] loggerIds;
+  private final int[] threadIds;
+  private final int[] contextIds;
+  private final int[] messageOffsets;
+  private char[] messageChars;
+  private final int[] exceptionOffsets;
+  private char[] exceptionChars;
+  private int size;
+  private long undecodableCount;
+  private long rejectedCount;
+
+  private final Map<String, Integer> ids = new HashMap<String, Integer>();
+  private final List<String> strings = new ArrayList<String>();
+  private final Row row = new Row();
+
+  /**
+   * Constructs an {@code EventBatch}
+   *
+   * @param capacity the maximum number of events in the batch
+   */
+  public EventBatch(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.timestamps = new long[capacity];
+    this.levels = new byte[capacity];
+    this.loggerIds = new int[capacity];
+    this.threadIds = new int[capacity];
+    this.contextIds = new int[capacity];
+    this.messageOffsets = new int[capacity + 1];
+    this.messageChars = new char[capacity * 64];
+    this.exceptionOffsets = new int[capacity + 1];
+    this.exceptionChars = new char[0];
+  }
+
+  /**
+   * Gets the level of a level ordinal
+   *
+   * @param ordinal the ordinal: 0 for none, then 1 to 5 for
+   * {@code TRACE}, {@code DEBUG}, {@code INFO}, {@code WARN} and
+   * {@code ERROR}
+   * @return the level; or {@code null} for 0
+   */
+  public static Level toLevel(int ordinal) {
+    return ColumnarFormat.LEVELS[ordinal];
+  }
+
+  /**
+   * Gets the maximum number of events in the batch
+   *
+   * @return the capacity
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the number of events in the batch
+   *
+   * @return the number of events
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Determines whether the batch holds {@link #capacity()} events
+   *
+   * @return true if full; otherwise false
+   */
+  public boolean isFull() {
+    return size == capacity;
+  }
+
+  /**
+   * Removes all events from the batch. The dictionary is kept.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Gets the timestamps column
+   *
+   * @return the timestamps, in milliseconds since the epoch
+   */
+  public long[] getTimestamps() {
+    return timestamps;
+  }
+
+  /**
+   * Gets the level ordinals column
+   *
+   * @return the level ordinals
+   * @see #toLevel(int)
+   */
+  public byte[] getLevels() {
+    return levels;
+  }
+
+  /**
+   * Gets the logger names column
+   *
+   * @return the dictionary ids of the logger names
+   */
+  public int[] getLoggerIds() {
+    return loggerIds;
+  }
+
+  /**
+   * Gets the thread names column
+   *
+   * @return the dictionary ids of the thread names
+   */
+  public int[] getThreadIds() {
+    return threadIds;
+  }
+
+  /**
+   * Gets the context names column
+   *
+   * @return the dictionary ids of the context names
+   */
+  public int[] getContextIds() {
+    return contextIds;
+  }
+
+  /**
+   * Gets the buffer that holds the messages of the batch. The buffer
+   * may be replaced by a larger one as the batch is filled.
+   *
+   * @return the message buffer
+   * @see #getMessageStart(int)
+   * @see #getMessageEnd(int)
+   */
+  public char[] getMessageChars() {
+    return messageChars;
+  }
+
+  /**
+   * Gets the index of the first char of a message in the message buffer
+   *
+   * @param index the index of the event in the batch
+   * @return the index of the first char
+   */
+  public int getMessageStart(int index) {
+    return messageOffsets[index];
+  }
+
+  /**
+   * Gets the index after the last char of a message in the message buffer
+   *
+   * @param index the index of the event in the batch
+   * @return the index after the last char
+   */
+  public int getMessageEnd(int index) {
+    return messageOffsets[index + 1];
+  }
+
+  /**
+   * Gets the message of an event as a {@code String}
+   *
+   * @param index the index of the event in the batch
+   * @return the message (empty if not decoded)
+   */
+  public String getMessage(int index) {
+    int start = messageOffsets[index];
+    return new String(messageChars, start, messageOffsets[index + 1] - start);
+  }
+
+  /**
+   * Gets the buffer that holds the stack traces of the batch. The buffer
+   * may be replaced by a larger one as the batch is filled.
+   *
+   * @return the stack trace buffer
+   * @see #getExceptionStart(int)
+   * @see #getExceptionEnd(int)
+   */
+  public char[] getExceptionChars() {
+    return exceptionChars;
+  }
+
+  /**
+   * Gets the index of the first char of a stack trace in the stack trace
+   * buffer
+   *
+   * @param index the index of the event in the batch
+   * @return the index of the first char
+   */
+  public int getExceptionStart(int index) {
+    return exceptionOffsets[index];
+  }
+
+  /**
+   * Gets the index after the last char of a stack trace in the stack
+   * trace buffer
+   *
+   * @param index the index of the event in the batch
+   * @return the index after the last char (equal to the start if the
+   * event has no stack trace)
+   */
+  public int getExceptionEnd(int index) {
+    return exceptionOffsets[index + 1];
+  }
+
+  /**
+   * Gets the stack trace of an event as a {@code String}
+   *
+   * @param index the index of the event in the batch
+   * @return the stack trace (empty if none)
+   */
+  public String getException(int index) {
+    int start = exceptionOffsets[index];
+    return new String(exceptionChars, start, exceptionOffsets[index + 1] - start);
+  }
+
+  /**
+   * Gets the level of an event
+   *
+   * @param index the index of the event in the batch
+   * @return the level; or {@code null} if not decoded
+   */
+  public Level getLevel(int index) {
+    return toLevel(levels[index]);
+  }
+
+  /**
+   * Gets a string of the dictionary
+   *
+   * @param id the dictionary id
+   * @return the string; or {@code null} for -1
+   */
+  public String getString(int id) {
+    return id < 0 ? null : strings.get(id);
+  }
+
+  /**
+   * Gets the number of strings in the dictionary. The ids of the
+   * strings run from 0 to this count (exclusive).
+   *
+   * @return the number of strings
+   */
+  public int getStringCount() {
+    return strings.size();
+  }
+
+  /**
+   * Gets the number of events that could not be decoded into the batch
+   * because they do not match the layout. The count is kept when the
+   * batch is cleared.
+   *
+   * @return the number of events since the batch was created
+   */
+  public long getUndecodableCount() {
+    return undecodableCount;
+  }
+
+  /**
+   * Gets the number of events that were not added to the batch because
+   * a {@link Decoder#setFilters(List) filter} rejected them. The count is
+   * kept when the batch is cleared.
+   *
+   * @return the number of events since the batch was created
+   */
+  public long getRejectedCount() {
+    return rejectedCount;
+  }
+
+  /**
+   * Counts an event that was not added to the batch
+   *
+   * @param rejected true if a filter rejected the event; false if it
+   * could not be decoded
+   */
+  void skip(boolean rejected) {
+    if (rejected) {
+      rejectedCount++;
+    } else {
+      undecodableCount++;
+    }
+  }
+
+  /**
+   * Determines whether a field is a column of a batch
+   *
+   * @param name the full pattern name of the field
+   * @return true if the field is decoded into a batch
+   */
+  static boolean isColumn(String name) {
+    return name.equals(PatternNames.DATE) || name.equals(PatternNames.LEVEL)
+        || name.equals(PatternNames.LOGGER_NAME) || name.equals(PatternNames.THREAD_NAME)
+        || name.equals(PatternNames.CONTEXT_NAME) || name.equals(PatternNames.MESSAGE)
+        || isExceptionColumn(name);
+  }
+
+  /**
+   * Determines whether a field is held by the exception column of a batch
+   *
+   * @param name the full pattern name of the field
+   * @return true if the field is a stack trace
+   */
+  static boolean isExceptionColumn(String name) {
+    return name.equals(PatternNames.EXCEPTION) || name.equals(PatternNames.EXT_EXCEPTION)
+        || name.equals(PatternNames.ROOT_EXCEPTION);
+  }
+
+  /**
+   * Adds an event to the batch, with all of its fields not decoded
+   *
+   * @return the sink that sets the fields of the event
+   * @throws IllegalStateException the batch is full
+   */
+  IStaticLoggingEvent add() {
+    if (size == capacity) {
+      throw new IllegalStateException("batch is full");
+    }
+    int index = size++;
+    timestamps[index] = 0;
+    levels[index] = 0;
+    loggerIds[index] = -1;
+    threadIds[index] = -1;
+    contextIds[index] = -1;
+    messageOffsets[index + 1] = messageOffsets[index];
+    exceptionOffsets[index + 1] = exceptionOffsets[index];
+    row.index = index;
+    return row;
+  }
+
+  /**
+   * Sets the message of the last added event to a span of a char sequence
+   *
+   * @param s the sequence containing the message
+   * @param start index of the first char of the message
+   * @param end index after the last char of the message
+   */
+  void setMessage(CharSequence s, int start, int end) {
+    messageChars = copy(s, start, end, messageChars, messageOffsets[size - 1]);
+    messageOffsets[size] = messageOffsets[size - 1] + end - start;
+  }
+
+  /**
+   * Sets the stack trace of the last added event to a span of a char
+   * sequence
+   *
+   * @param s the sequence containing the stack trace
+   * @param start index of the first char of the stack trace
+   * @param end index after the last char of the stack trace
+   */
+  void setException(CharSequence s, int start, int end) {
+    exceptionChars = copy(s, start, end, exceptionChars, exceptionOffsets[size - 1]);
+    exceptionOffsets[size] = exceptionOffsets[size - 1] + end - start;
+  }
+
+  /**
+   * Copies a span of a char sequence into a buffer, growing the buffer
+   * if needed
+   *
+   * @return the buffer (or its replacement)
+   */
+  private static char[] copy(CharSequence s, int start, int end, char[] dest, int offset) {
+    int length = end - start;
+    if (dest.length < offset + length) {
+      dest = Arrays.copyOf(dest, Math.max(offset + length, dest.length * 2));
+    }
+    if (s instanceof String) {
+      ((String) s).getChars(start, end, dest, offset);
+    } else {
+      for (int i = start; i < end; i++) {
+        dest[offset++] = s.charAt(i);
+      }
+    }
+    return dest;
+  }
+
+  /**
+   * Gets the dictionary id of a string, adding it to the dictionary if
+   * it is new
+   */
+  private int id(String s) {
+    if (s == null) {
+      return -1;
+    }
+    Integer id = ids.get(s);
+    if (id == null) {
+      id = strings.size();
+      ids.put(s, id);
+      strings.add(s);
+    }
+    return id;
+  }
+
+  /**
+   * Sets the fields of the last added event from the field capturers of
+   * a layout. Fields that are not columns of the batch are dropped.
+   */
+  private final class Row extends CompactLoggingEvent {
+    int index;
+
+    @Override
+    public void setTimeStamp(long ms) {
+      timestamps[index] = ms;
+    }
+
+    @Override
+    public void setLevel(Level level) {
+      levels[index] = (byte) ColumnarFormat.levelCode(level);
+    }
+
+    @Override
+    public void setLoggerName(String loggerName) {
+      loggerIds[index] = id(loggerName);
+    }
+
+    @Override
+    public void setThreadName(String threadName) {
+      threadIds[index] = id(threadName);
+    }
+
+    @Override
+    public void setContextName(String contextName) {
+      contextIds[index] = id(contextName);
+    }
+
+    @Override
+    public void setMessage(String message) {
+      if (message != null) {
+        EventBatch.this.setMessage(message, 0, message.length());
+      }
+    }
+
+    @Override
+    public void setMDCPropertyMap(Map<String, String> map) {
+    }
+
+    @Override
+    public void setClassNameOfCaller(String className) {
+    }
+
+    @Override
+    public void setMethodOfCaller(String methodName) {
+    }
+
+    @Override
+    public void setFileNameOfCaller(String fileName) {
+    }
+
+    @Override
+    public void setLineNumberOfCaller(int lineNumber) {
+    }
+
+    @Override
+    public void setCallerStackData(List<StackTraceElement> stackTrace) {
+    }
+  }
+}
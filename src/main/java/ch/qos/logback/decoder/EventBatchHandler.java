@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+/**
+ * Receives batches of decoded log events, allowing a stream to be
+ * processed column by column without creating an object per event.
+ */
+public interface EventBatchHandler {
+
+  /**
+   * Handles a batch of decoded log events. The batch is cleared and
+   * refilled once this returns, so its columns must not be kept.
+   *
+   * @param batch the batch (never empty)
+   */
+  void handle(EventBatch batch);
+}
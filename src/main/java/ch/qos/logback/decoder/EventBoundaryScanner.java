@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * An {@code EventBoundaryScanner} finds the byte offsets at which log
+ * events start in a file, using the event-start recognition of a
+ * {@link Decoder}. This lets a file be split at arbitrary offsets and
+ * realigned so that no event is cut in two.
+ */
+class EventBoundaryScanner {
+  /** Max number of bytes of a line that are checked for an event start */
+  private static final int MAX_LINE_PREFIX = 8 * 1024;
+
+  private final FileChannel channel;
+  private final Charset charset;
+  private final Decoder decoder;
+  private final ByteBuffer buf;
+  private final byte[] line;
+  private int lineLength;
+
+  /**
+   * Constructs an {@code EventBoundaryScanner}
+   *
+   * @param channel the file to scan
+   * @param charset the character encoding of the file
+   * @param decoder the decoder whose layout pattern identifies event starts
+   */
+  EventBoundaryScanner(FileChannel channel, Charset charset, Decoder decoder) {
+    this.channel = channel;
+    this.charset = charset;
+    this.decoder = decoder;
+    this.buf = ByteBuffer.allocate(8 * 1024);
+    this.line = new byte[MAX_LINE_PREFIX];
+  }
+
+  /**
+   * Finds the start of the first event that begins at or after a
+   * given offset. If the offset is in the middle of a line, the scan
+   * starts at the following line.
+   *
+   * @param position the offset from which to scan
+   * @param limit the offset at which to stop scanning
+   * @return the offset of the event start; or {@code limit} if no
+   * event starts before it
+   * @throws IOException an error occurred while reading the file
+   */
+  long nextEventStart(long position, long limit) throws IOException {
+    long lineStart = position;
+    if (position > 0 && !isLineFeedAt(position - 1)) {
+      lineStart = skipLine(position, limit);
+    }
+
+    while (lineStart < limit) {
+      long next = readLine(lineStart, limit);
+      if (decoder.isEventStart(lineText())) {
+        return lineStart;
+      }
+      lineStart = next;
+    }
+    return limit;
+  }
+
+  /**
+   * Gets the text of the line last read by {@link #readLine(long, long)},
+   * without its line terminator
+   */
+  private String lineText() {
+    int len = lineLength;
+    if (len > 0 && line[len - 1] == '\r') {
+      len--;
+    }
+    return new String(line, 0, len, charset);
+  }
+
+  /**
+   * Reads the line starting at the given offset, retaining up to
+   * {@link #MAX_LINE_PREFIX} bytes of it
+   *
+   * @return the offset of the next line
+   */
+  private long readLine(long position, long limit) throws IOException {
+    lineLength = 0;
+    while (position < limit) {
+      int n = fill(position, limit);
+      if (n <= 0) {
+        return limit;
+      }
+      for (int i = 0; i < n; i++) {
+        byte b = buf.get(i);
+        if (b == '\n') {
+          return position + i + 1;
+        }
+        if (lineLength < line.length) {
+          line[lineLength++] = b;
+        }
+      }
+      position += n;
+    }
+    return limit;
+  }
+
+  /**
+   * Skips to the beginning of the line that follows the given offset
+   *
+   * @return the offset of the next line
+   */
+  private long skipLine(long position, long limit) throws IOException {
+    while (position < limit) {
+      int n = fill(position, limit);
+      if (n <= 0) {
+        return limit;
+      }
+      for (int i = 0; i < n; i++) {
+        if (buf.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += n;
+    }
+    return limit;
+  }
+
+  private boolean isLineFeedAt(long position) throws IOException {
+    return fill(position, position + 1) == 1 && buf.get(0) == '\n';
+  }
+
+  /**
+   * Reads bytes from the file into the buffer, starting at the given
+   * offset
+   *
+   * @return number of bytes read or -1 if at end of file
+   */
+  private int fill(long position, long limit) throws IOException {
+    buf.clear();
+    if (limit - position < buf.capacity()) {
+      buf.limit((int)(limit - position));
+    }
+    return channel.read(buf, position);
+  }
+}
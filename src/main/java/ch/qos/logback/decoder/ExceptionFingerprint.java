@@ -0,0 +1,338 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@code ExceptionFingerprint} reduces the text of a stack trace to
+ * what identifies where it was thrown: the class of the exception, the
+ * top frames of its trace and the class of its root cause. Line numbers
+ * can be dropped from the frames, so that the fingerprint of a trace does
+ * not change from one build of an application to the next. The parts are
+ * hashed into a 64-bit {@link #getHash() hash} without creating any
+ * {@code String}; they are only copied out on request.
+ * <p>
+ * The trace is expected in the format printed by logback ({@code %ex},
+ * {@code %xEx} or {@code %rEx}) or by {@link Throwable#printStackTrace()},
+ * and may follow the lines of a message. Its first exception is the one
+ * whose header line (a class name, optionally followed by a colon and a
+ * message) is followed by a frame line ({@code "at ..."}). Header lines
+ * that start with {@code "Caused by: "} name the causes, and those that
+ * start with {@code "Wrapped by: "} (root cause first, as with
+ * {@code %rEx}) name the wrapping exceptions. Indented lines (such as
+ * those of suppressed exceptions) are not headers.
+ * <p>
+ * A fingerprint is reused from one trace to the next, and is not
+ * thread-safe.
+ */
+public final class ExceptionFingerprint {
+  private static final String CAUSED_BY = "Caused by: ";
+  private static final String WRAPPED_BY = "Wrapped by: ";
+  private static final String AT = "at ";
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final int maxFrames;
+  private final boolean keepLineNumbers;
+
+  // spans of the last parsed input
+  private CharSequence input;
+  private int classStart, classEnd;
+  private int rootStart, rootEnd;
+  // start, end, and line number start and end (empty if kept) of each frame
+  private final int[] frames;
+  private int frameCount;
+  private long hash;
+
+  // state of the current parse
+  private int headerStart, headerEnd;
+  private boolean found;
+  private boolean inFirst;
+
+  /**
+   * Constructs an {@code ExceptionFingerprint}
+   *
+   * @param maxFrames the number of frames (from the top of the trace)
+   * in the fingerprint
+   * @param keepLineNumbers true to keep the line numbers of the frames;
+   * false to drop them
+   */
+  public ExceptionFingerprint(int maxFrames, boolean keepLineNumbers) {
+    if (maxFrames < 0) {
+      throw new IllegalArgumentException("frame count cannot be negative: " + maxFrames);
+    }
+    this.maxFrames = maxFrames;
+    this.keepLineNumbers = keepLineNumbers;
+    this.frames = new int[maxFrames * 4];
+  }
+
+  /**
+   * Gets the number of frames in the fingerprint
+   *
+   * @return the maximum number of frames
+   */
+  public int getMaxFrames() {
+    return maxFrames;
+  }
+
+  /**
+   * Determines whether the line numbers of the frames are kept
+   *
+   * @return true if kept; false if dropped
+   */
+  public boolean isKeepLineNumbers() {
+    return keepLineNumbers;
+  }
+
+  /**
+   * Reads the fingerprint of the stack trace in a span of a char sequence.
+   * The sequence is kept (until the next call) to copy out the parts of
+   * the fingerprint, so it must not be changed in between.
+   *
+   * @param s the sequence containing the stack trace
+   * @param start index of the first char of the span
+   * @param end index after the last char of the span
+   * @return true if the span holds a stack trace; otherwise false (and
+   * the fingerprint is undefined)
+   */
+  public boolean parse(CharSequence s, int start, int end) {
+    input = s;
+    frameCount = 0;
+    headerStart = -1;
+    found = false;
+    inFirst = false;
+
+    int pos = start;
+    while (pos < end) {
+      int lineEnd = indexOf(s, '\n', pos, end);
+      parseLine(s, pos, trimEnd(s, pos, lineEnd));
+      pos = lineEnd + 1;
+    }
+
+    if (found) {
+      hash = computeHash();
+    }
+    return found;
+  }
+
+  /**
+   * Reads a header or frame line of a trace
+   *
+   * @param s the sequence containing the line
+   * @param start index of the first char of the line
+   * @param end index after the last char of the line, without trailing
+   * whitespace
+   */
+  private void parseLine(CharSequence s, int start, int end) {
+    int p = start;
+    while (p < end && Character.isWhitespace(s.charAt(p))) {
+      p++;
+    }
+
+    if (startsWith(s, p, end, AT)) {
+      if (!found && headerStart >= 0) {
+        found = true;
+        inFirst = true;
+        classStart = rootStart = headerStart;
+        classEnd = rootEnd = headerEnd;
+      }
+      if (inFirst && frameCount < maxFrames) {
+        addFrame(s, p + AT.length(), end);
+      }
+      return;
+    }
+
+    // a header can only start at the beginning of a line
+    if (p != start) {
+      return;
+    }
+    boolean causedBy = startsWith(s, p, end, CAUSED_BY);
+    boolean wrappedBy = !causedBy && startsWith(s, p, end, WRAPPED_BY);
+    if (causedBy) {
+      p += CAUSED_BY.length();
+    } else if (wrappedBy) {
+      p += WRAPPED_BY.length();
+    }
+    int nameEnd = classNameEnd(s, p, end);
+    if (nameEnd < 0) {
+      return;
+    }
+
+    if (!found) {
+      headerStart = p;
+      headerEnd = nameEnd;
+    } else if (causedBy) {
+      rootStart = p;
+      rootEnd = nameEnd;
+      inFirst = false;
+    } else if (wrappedBy) {
+      classStart = p;
+      classEnd = nameEnd;
+      inFirst = false;
+    }
+  }
+
+  /**
+   * Gets the hash of the last parsed fingerprint
+   *
+   * @return the hash
+   */
+  public long getHash() {
+    return hash;
+  }
+
+  /**
+   * Gets the class of the exception of the last parsed fingerprint (the
+   * outermost exception if it has causes)
+   *
+   * @return the class name
+   */
+  public String getExceptionClass() {
+    return input.subSequence(classStart, classEnd).toString();
+  }
+
+  /**
+   * Gets the class of the root cause of the last parsed fingerprint
+   *
+   * @return the class name (the same as {@link #getExceptionClass()} if
+   * the exception has no cause)
+   */
+  public String getRootCauseClass() {
+    return input.subSequence(rootStart, rootEnd).toString();
+  }
+
+  /**
+   * Gets the top frames of the last parsed fingerprint, without their
+   * leading {@code "at "}. These are the frames of the first exception
+   * of the trace (the root cause for {@code %rEx}).
+   *
+   * @return the frames, e.g., {@code "foo.Bar.baz(Bar.java)"}
+   */
+  public List<String> getFrames() {
+    List<String> list = new ArrayList<String>(frameCount);
+    for (int i = 0; i < frameCount; i++) {
+      int f = i * 4;
+      list.add(new StringBuilder(frames[f + 1] - frames[f])
+          .append(input, frames[f], frames[f + 2])
+          .append(input, frames[f + 3], frames[f + 1])
+          .toString());
+    }
+    return list;
+  }
+
+  /**
+   * Records the span of a frame, up to the closing parenthesis of its
+   * source location (dropping any packaging data of {@code %xEx})
+   */
+  private void addFrame(CharSequence s, int start, int end) {
+    int close = -1;
+    int colon = -1;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (c == ':') {
+        colon = i;
+      } else if (c == ')') {
+        close = i;
+        break;
+      }
+    }
+    int f = frameCount++ * 4;
+    frames[f] = start;
+    frames[f + 1] = close >= 0 ? close + 1 : end;
+    frames[f + 2] = frames[f + 1];
+    frames[f + 3] = frames[f + 1];
+    if (!keepLineNumbers && close >= 0 && colon >= 0) {
+      frames[f + 2] = colon;
+      frames[f + 3] = close;
+    }
+  }
+
+  private long computeHash() {
+    long h = hash(FNV_OFFSET, input, classStart, classEnd);
+    for (int i = 0; i < frameCount; i++) {
+      int f = i * 4;
+      h = (h ^ '\n') * FNV_PRIME;
+      h = hash(h, input, frames[f], frames[f + 2]);
+      h = hash(h, input, frames[f + 3], frames[f + 1]);
+    }
+    h = (h ^ '\n') * FNV_PRIME;
+    return hash(h, input, rootStart, rootEnd);
+  }
+
+  /**
+   * Adds the chars of a span to a 64-bit FNV-1a hash
+   */
+  private static long hash(long h, CharSequence s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      h = (h ^ s.charAt(i)) * FNV_PRIME;
+    }
+    return h;
+  }
+
+  private static int indexOf(CharSequence s, char c, int start, int end) {
+    int i = start;
+    while (i < end && s.charAt(i) != c) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int trimEnd(CharSequence s, int start, int end) {
+    while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+      end--;
+    }
+    return end;
+  }
+
+  private static boolean startsWith(CharSequence s, int start, int end, String prefix) {
+    if (end - start < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (s.charAt(start + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the qualified class name at the start of a header line
+   *
+   * @return the index after the class name; or -1 if the line does not
+   * start with a qualified class name followed by a colon or the end of
+   * the line
+   */
+  private static int classNameEnd(CharSequence s, int start, int end) {
+    int i = start;
+    boolean qualified = false;
+    if (i == end || !Character.isJavaIdentifierStart(s.charAt(i))) {
+      return -1;
+    }
+    while (++i < end) {
+      char c = s.charAt(i);
+      if (c == '.') {
+        qualified = true;
+      } else if (!Character.isJavaIdentifierPart(c)) {
+        break;
+      }
+    }
+    if (!qualified || s.charAt(i - 1) == '.' || (i < end && s.charAt(i) != ':')) {
+      return -1;
+    }
+    return i;
+  }
+}
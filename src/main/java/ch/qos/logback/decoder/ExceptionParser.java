@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * An {@code ExceptionParser} accepts the stack trace of an exception field
+ * ({@code %ex}, {@code %xEx} or {@code %rEx}). Decoded events have no
+ * throwable to hold the trace, so the field is dropped from events; it is
+ * only kept as the exception column of an {@link EventBatch}.
+ */
+public class ExceptionParser implements FieldCapturer<IStaticLoggingEvent> {
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, String fieldAsStr, PatternInfo info) {
+    // nothing to set
+  }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    // don't copy the trace only to drop it
+  }
+
+}
@@ -33,4 +33,37 @@ public interface FieldCapturer<E> {
    */
   void captureField(E event, String fieldAsStr, PatternInfo info);
 
+  /**
+   * Given a span of an input sequence, sets the appropriate field of the
+   * event. By default, this copies the span to a {@code String} and calls
+   * {@link #captureField(Object, String, PatternInfo)}. Implementations
+   * can override this to parse the field in place.
+   *
+   * @param event the event whose field should be captured
+   * @param input the input sequence containing the field
+   * @param start index of the first char of the field in {@code input}
+   * @param end index after the last char of the field in {@code input}
+   * @param info sub-pattern information from original layout
+   * pattern, including format and conversion modifiers, that
+   * can be used to parse the field
+   */
+  default void captureField(E event, CharSequence input, int start, int end, PatternInfo info) {
+    captureField(event, input.subSequence(start, end).toString(), info);
+  }
+
+  /**
+   * Gets a capturer for the exclusive use of one {@link DecodeContext}.
+   * Capturers are shared by all threads that decode with the same
+   * {@link CompiledLayout}, so a capturer that keeps parsing state must
+   * override this to return a private copy of that state. By default,
+   * this returns the capturer itself.
+   *
+   * @param info the sub-pattern information that will be passed to
+   * the returned capturer
+   * @return the capturer to use
+   */
+  default FieldCapturer<E> forContext(PatternInfo info) {
+    return this;
+  }
+
 }
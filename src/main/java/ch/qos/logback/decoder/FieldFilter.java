@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2012, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * A {@code FieldFilter} decides whether to keep a log event from the raw
+ * text of one of its fields. Filters run right after the layout regex
+ * matches, before an event is created or any field is parsed, so a
+ * rejected event only costs the match and the filter itself.
+ *
+ * <p>Filters are shared by all threads that decode with the same
+ * {@link Decoder}, so implementations must be thread-safe.</p>
+ *
+ * @see Decoder#setFilters(java.util.List)
+ */
+public interface FieldFilter {
+
+  /**
+   * Gets the name of the field this filter evaluates
+   *
+   * @return the full pattern name of the field (e.g.,
+   * {@link PatternNames#LEVEL})
+   */
+  String getFieldName();
+
+  /**
+   * Determines whether to keep an event from the text of its field
+   *
+   * @param input the input sequence containing the field
+   * @param start index of the first char of the field in {@code input}
+   * @param end index after the last char of the field in {@code input}
+   * @param info sub-pattern information of the field from the original
+   * layout pattern
+   * @return true to keep the event; false to drop it
+   */
+  boolean accept(CharSequence input, int start, int end, PatternInfo info);
+}
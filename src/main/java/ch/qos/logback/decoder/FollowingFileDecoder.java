@@ -0,0 +1,535 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * A {@code FollowingFileDecoder} decodes the events appended to a live
+ * log file, like {@code tail -F}. Only the bytes appended since the last
+ * read are decoded. A trailing line that has not been terminated yet is
+ * held until the rest of it is written, and the last event is held until
+ * the next event starts or no continuation line has arrived within the
+ * {@link #setFlushDelay(long) flush delay}. Continuation lines that arrive
+ * after their event was flushed are reported as a warning.
+ * <p>
+ * The decoder sleeps on a {@link WatchService} of the file's directory
+ * while the file is idle, so it costs next to no CPU. When the file is
+ * rotated (i.e., it is renamed or deleted and then recreated, as by a
+ * {@code RollingFileAppender}), the rest of the old file is decoded
+ * before the new one is opened; when it is truncated in place, decoding
+ * restarts from its beginning.
+ * <p>
+ * Lines are split on the {@code '\n'} byte, so the file's encoding must
+ * be ASCII-compatible (e.g., UTF-8 or ISO-8859-1).
+ */
+public class FollowingFileDecoder extends Decoder {
+  /** Default time (in milliseconds) to wait for continuation lines of the last event */
+  public static final long DEFAULT_FLUSH_DELAY = 5;
+
+  /** Default time (in milliseconds) between checks of an idle file */
+  public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Logger logger;
+  private Charset charset;
+  private long flushDelay;
+  private long pollInterval;
+  private boolean fromStart;
+  private volatile boolean stopped;
+  private volatile WatchService watcher;
+
+  /**
+   * Constructs a {@code FollowingFileDecoder}
+   */
+  public FollowingFileDecoder() {
+    super();
+    logger = LoggerFactory.getLogger(FollowingFileDecoder.class);
+    charset = Charset.defaultCharset();
+    flushDelay = DEFAULT_FLUSH_DELAY;
+    pollInterval = DEFAULT_POLL_INTERVAL;
+  }
+
+  /**
+   * Sets the character encoding of the followed file
+   *
+   * @param charset the desired encoding (the platform default if not set)
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Gets the character encoding of the followed file
+   *
+   * @return the encoding
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Sets the time to wait for continuation lines (e.g., of a stack trace)
+   * once the end of the file is reached, before the last event is decoded.
+   * This bounds the latency of the last event written. It should exceed
+   * the time that a buffered appender can take between writing the parts
+   * of one event, since continuation lines that arrive after their event
+   * was decoded cannot be added to it (they are dropped, with a warning).
+   *
+   * @param millis the delay in milliseconds
+   */
+  public void setFlushDelay(long millis) {
+    this.flushDelay = millis;
+  }
+
+  /**
+   * Gets the time to wait for continuation lines of the last event
+   *
+   * @return the delay in milliseconds
+   */
+  public long getFlushDelay() {
+    return flushDelay;
+  }
+
+  /**
+   * Sets the maximum time between checks of an idle file. Changes are
+   * normally picked up as soon as the file system reports them; this
+   * only matters where it does not (e.g., some network file systems).
+   *
+   * @param millis the interval in milliseconds
+   */
+  public void setPollInterval(long millis) {
+    this.pollInterval = millis;
+  }
+
+  /**
+   * Gets the maximum time between checks of an idle file
+   *
+   * @return the interval in milliseconds
+   */
+  public long getPollInterval() {
+    return pollInterval;
+  }
+
+  /**
+   * Sets whether to decode the events already in the file before
+   * following it
+   *
+   * @param fromStart true to start from the beginning of the file;
+   * false (the default) to decode only the events appended from now on
+   */
+  public void setFromStart(boolean fromStart) {
+    this.fromStart = fromStart;
+  }
+
+  /**
+   * Determines whether the events already in the file are decoded
+   *
+   * @return true if following starts from the beginning of the file
+   */
+  public boolean isFromStart() {
+    return fromStart;
+  }
+
+  /**
+   * Follows a log file, passing each event appended to it to the given
+   * handler, until {@link #stop()} is called or the calling thread is
+   * interrupted. Events that cannot be decoded are skipped. If the file
+   * does not exist yet, it is followed from its creation.
+   *
+   * @param file the log file
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading the file
+   * @throws UnknownLayoutPatternException no layout pattern was set and
+   * the file does not start with a pattern header
+   */
+  public void follow(File file, ILoggingEventHandler handler) throws IOException {
+    Path path = file.toPath().toAbsolutePath();
+    WatchService watchService = path.getFileSystem().newWatchService();
+    stopped = false;
+    watcher = watchService;
+
+    Follower follower = new Follower(path, handler, watchService);
+    try {
+      path.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      follower.run();
+    } finally {
+      watcher = null;
+      follower.close();
+      watchService.close();
+    }
+  }
+
+  /**
+   * Stops following. The event held by {@link #follow(File, ILoggingEventHandler)}
+   * (if any) is decoded before it returns; an unterminated trailing line
+   * is dropped.
+   */
+  public void stop() {
+    stopped = true;
+    WatchService watchService = watcher;
+    if (watchService != null) {
+      try {
+        // wakes up the follower
+        watchService.close();
+      } catch (IOException e) {
+        logger.debug("cannot close watch service: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Gets an identifier of the file currently at a path, which changes
+   * when the file is replaced by another
+   *
+   * @param attrs the attributes of the file
+   * @return the file key (device and inode on Unix); or the creation
+   * time where the file system has no file keys
+   */
+  private static Object fileId(BasicFileAttributes attrs) {
+    Object key = attrs.fileKey();
+    return key != null ? key : attrs.creationTime();
+  }
+
+  /**
+   * Holds the read state of one followed file
+   */
+  private class Follower {
+    private final Path path;
+    private final ILoggingEventHandler handler;
+    private final WatchService watchService;
+    private final ByteBuffer buffer;
+    private final StringBuilder pending;
+    private FileChannel channel;
+    private Object fileId;
+    private long position;
+    private byte[] line;
+    private int lineLength;
+    private boolean atFileStart;
+    private boolean skipToLineStart;
+    private long lastReadNanos;
+    private boolean flushedOnDelay;
+    private int lateLines;
+
+    Follower(Path path, ILoggingEventHandler handler, WatchService watchService) {
+      this.path = path;
+      this.handler = handler;
+      this.watchService = watchService;
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      this.pending = new StringBuilder(256);
+      this.line = new byte[256];
+    }
+
+    void run() throws IOException {
+      open(!fromStart);
+
+      while (!stopped) {
+        if (channel == null) {
+          // not created yet, or rotated away and not recreated yet
+          if (!open(false)) {
+            await(pollInterval);
+          }
+          continue;
+        }
+
+        checkRotation();
+        if (read()) {
+          continue;
+        }
+
+        // caught up with the writer
+        if (pending.length() > 0 && lineLength == 0) {
+          long wait = flushDelay - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReadNanos);
+          if (wait > 0) {
+            await(wait);
+          } else {
+            flushedOnDelay = flush();
+          }
+        } else {
+          await(pollInterval);
+        }
+      }
+
+      flush();
+    }
+
+    void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+    }
+
+    /**
+     * Opens the file at the followed path
+     *
+     * @param atEnd true to skip the contents already in the file
+     * @return true if the file was opened; false if it does not exist
+     * @throws IOException
+     */
+    private boolean open(boolean atEnd) throws IOException {
+      BasicFileAttributes attrs;
+      try {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        attrs = Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        close();
+        return false;
+      }
+
+      fileId = fileId(attrs);
+      position = 0;
+      lineLength = 0;
+      atFileStart = true;
+      skipToLineStart = false;
+      flushedOnDelay = false;
+      lateLines = 0;
+
+      long size = channel.size();
+      if (atEnd && size > 0) {
+        if (getLayoutPattern() == null) {
+          readLayoutPattern();
+        }
+        position = size;
+        atFileStart = false;
+        // a line being written is not the start of an event we can decode
+        skipToLineStart = readByte(size - 1) != '\n';
+      }
+      logger.debug("following {} from offset {}", path, position);
+      return true;
+    }
+
+    /**
+     * Detects whether the file was replaced or truncated since it was opened
+     *
+     * @throws IOException
+     */
+    private void checkRotation() throws IOException {
+      BasicFileAttributes attrs;
+      try {
+        attrs = Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        // rotated away; keep reading the old file until the new one appears
+        return;
+      }
+
+      if (!fileId(attrs).equals(fileId)) {
+        logger.debug("{} was rotated at offset {}", path, position);
+        // the writer may still have appended to the old file
+        while (read()) {
+          continue;
+        }
+        if (lineLength > 0) {
+          // the old file is complete, so is its last line
+          endLine();
+        }
+        flush();
+        close();
+        open(false);
+
+      } else if (attrs.size() < position) {
+        logger.debug("{} was truncated at offset {}", path, position);
+        flush();
+        position = 0;
+        lineLength = 0;
+        atFileStart = true;
+        skipToLineStart = false;
+        flushedOnDelay = false;
+        lateLines = 0;
+      }
+    }
+
+    /**
+     * Reads the bytes appended to the file, and passes each complete
+     * line to {@link #onLine(String)}
+     *
+     * @return true if any bytes were read; false at the end of the file
+     * @throws IOException
+     */
+    private boolean read() throws IOException {
+      buffer.clear();
+      int count = channel.read(buffer, position);
+      if (count <= 0) {
+        return false;
+      }
+      position += count;
+      lastReadNanos = System.nanoTime();
+
+      byte[] bytes = buffer.array();
+      for (int i = 0; i < count; i++) {
+        byte b = bytes[i];
+        if (b == '\n') {
+          if (skipToLineStart) {
+            skipToLineStart = false;
+            lineLength = 0;
+          } else {
+            endLine();
+          }
+        } else if (!skipToLineStart) {
+          appendByte(b);
+        }
+      }
+      return true;
+    }
+
+    private void appendByte(byte b) {
+      if (lineLength == line.length) {
+        if (lineLength >= EventAssembler.DEFAULT_MAX_EVENT_LENGTH) {
+          // drop the rest of an overlong line
+          return;
+        }
+        line = Arrays.copyOf(line, lineLength * 2);
+      }
+      line[lineLength++] = b;
+    }
+
+    private void endLine() {
+      int length = lineLength;
+      if (length > 0 && line[length - 1] == '\r') {
+        length--;
+      }
+      lineLength = 0;
+      onLine(new String(line, 0, length, charset));
+    }
+
+    /**
+     * Adds a complete line to the event it belongs to, decoding the
+     * previous event when the line starts a new one
+     *
+     * @param text the line without its terminator
+     */
+    private void onLine(String text) {
+      if (atFileStart) {
+        atFileStart = false;
+        if (text.startsWith(PatternLayout.HEADER_PREFIX)) {
+          if (getLayoutPattern() == null) {
+            setLayoutPattern(text.substring(PatternLayout.HEADER_PREFIX.length()));
+          }
+          return;
+        }
+      }
+
+      if (isEventStart(text)) {
+        flush();
+        flushedOnDelay = false;
+        lateLines = 0;
+        pending.append(text).append('\n');
+      } else if (pending.length() == 0 && flushedOnDelay) {
+        if (lateLines++ == 0) {
+          logger.warn("continuation lines arrived after their event was flushed, and are dropped"
+              + " (the flush delay of {} ms may be too short): \"{}\"", flushDelay, text);
+        } else {
+          logger.trace("continuation line arrived late; dropped: \"{}\"", text);
+        }
+      } else if (pending.length() == 0) {
+        logger.trace("cannot decode: \"{}\"", text);
+      } else if (pending.length() + text.length() < EventAssembler.DEFAULT_MAX_EVENT_LENGTH) {
+        pending.append(text).append('\n');
+      } else {
+        logger.trace("event exceeds {} chars; dropped: \"{}\"", EventAssembler.DEFAULT_MAX_EVENT_LENGTH, text);
+      }
+    }
+
+    /**
+     * Decodes the held event (if any) and passes it to the handler
+     *
+     * @return true if an event was passed to the handler; otherwise false
+     */
+    private boolean flush() {
+      if (pending.length() == 0) {
+        return false;
+      }
+      String eventText = pending.toString();
+      pending.setLength(0);
+
+      ILoggingEvent event = decode(eventText);
+      if (event != null) {
+        handler.handle(event);
+        return true;
+      } else if (!wasRejected()) {
+        logger.trace("cannot decode: \"{}\"", eventText);
+      }
+      return false;
+    }
+
+    /**
+     * Waits until the file system reports a change in the file's
+     * directory, the timeout elapses, or following is stopped
+     *
+     * @param millis the timeout in milliseconds
+     */
+    private void await(long millis) {
+      try {
+        WatchKey key = watchService.poll(millis, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          key.pollEvents();
+          key.reset();
+        }
+      } catch (ClosedWatchServiceException e) {
+        stopped = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        stopped = true;
+      }
+    }
+
+    /**
+     * Reads the layout pattern header from the first line of the file
+     * and sets this decoder's layout pattern accordingly
+     *
+     * @throws IOException
+     * @throws UnknownLayoutPatternException pattern not found
+     */
+    private void readLayoutPattern() throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(1024);
+      channel.read(header, 0);
+      String text = new String(header.array(), 0, header.position(), charset);
+      int end = text.indexOf('\n');
+      if (!text.startsWith(PatternLayout.HEADER_PREFIX) || end < 0) {
+        throw new UnknownLayoutPatternException("layout pattern not specified");
+      }
+      setLayoutPattern(text.substring(PatternLayout.HEADER_PREFIX.length(), end).trim());
+    }
+
+    private byte readByte(long offset) throws IOException {
+      ByteBuffer one = ByteBuffer.allocate(1);
+      channel.read(one, offset);
+      return one.get(0);
+    }
+  }
+}
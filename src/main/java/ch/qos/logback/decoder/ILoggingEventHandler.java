@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Receives log events as soon as they are decoded, allowing a
+ * stream to be processed without holding all of its events in memory.
+ */
+public interface ILoggingEventHandler {
+
+  /**
+   * Handles a decoded log event
+   *
+   * @param event the decoded event (never {@code null})
+   */
+  void handle(ILoggingEvent event);
+}
@@ -13,6 +13,7 @@
 package ch.qos.logback.decoder;
 
 import java.util.List;
+import java.util.Map;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -25,8 +26,15 @@ public interface IStaticLoggingEvent extends ILoggingEvent {
   void setLevel(Level level);
   void setLineNumberOfCaller(int lineNumber);
   void setLoggerName(String loggerName);
+  void setMDCPropertyMap(Map<String, String> map);
   void setMessage(String message);
   void setMethodOfCaller(String methodName);
   void setThreadName(String threadName);
   void setTimeStamp(long ms);
+
+  String getClassNameOfCaller();
+  String getContextName();
+  String getFileNameOfCaller();
+  int getLineNumberOfCaller();
+  String getMethodOfCaller();
 }
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * A {@code JsonLinesWriter} writes each event it handles to a stream as
+ * one line of JSON (<a href="http://jsonlines.org/">JSON Lines</a>),
+ * e.g.:
+ * <pre>
+ * {"timestamp":1374487200224,"level":"INFO","logger":"com.example.Foo","thread":"main","message":"hello","mdc":{"user":"jdoe"}}
+ * </pre>
+ * Fields that were not decoded are left out. The fields of each event
+ * are written directly through one reused {@link JsonGenerator} into a
+ * large output buffer, without building a map or string per event.
+ * Write errors are rethrown as {@link UncheckedIOException}.
+ */
+public class JsonLinesWriter implements ILoggingEventHandler, Flushable, Closeable {
+  /** Default size (in bytes) of the output buffer */
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final JsonGenerator generator;
+  private boolean autoFlush;
+
+  /**
+   * Constructs a {@code JsonLinesWriter} with the default buffer size
+   *
+   * @param out the stream to write to (closed by {@link #close()})
+   * @throws IOException an error occurred while creating the generator
+   */
+  public JsonLinesWriter(OutputStream out) throws IOException {
+    this(out, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructs a {@code JsonLinesWriter}
+   *
+   * @param out the stream to write to (closed by {@link #close()})
+   * @param bufferSize size of the output buffer in bytes
+   * @throws IOException an error occurred while creating the generator
+   */
+  public JsonLinesWriter(OutputStream out, int bufferSize) throws IOException {
+    generator = FACTORY.createJsonGenerator(new BufferedOutputStream(out, bufferSize), JsonEncoding.UTF8);
+    // one event per line; the line separator is written after each event
+    generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+  }
+
+  /**
+   * Sets whether to flush the stream after each event (e.g., when
+   * following a live log); by default, the stream is only flushed when
+   * the buffer is full
+   *
+   * @param autoFlush true to flush after each event
+   */
+  public void setAutoFlush(boolean autoFlush) {
+    this.autoFlush = autoFlush;
+  }
+
+  /**
+   * Determines whether the stream is flushed after each event
+   *
+   * @return true if the stream is flushed after each event
+   */
+  public boolean isAutoFlush() {
+    return autoFlush;
+  }
+
+  @Override
+  public void handle(ILoggingEvent event) {
+    try {
+      write(event);
+      if (autoFlush) {
+        generator.flush();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes an event as a line of JSON
+   *
+   * @param event the event to write
+   * @throws IOException an error occurred while writing
+   */
+  private void write(ILoggingEvent event) throws IOException {
+    JsonGenerator g = generator;
+    g.writeStartObject();
+
+    if (event.getTimeStamp() != 0) {
+      g.writeNumberField("timestamp", event.getTimeStamp());
+    }
+    Level level = event.getLevel();
+    if (level != null) {
+      g.writeStringField("level", level.levelStr);
+    }
+    writeStringField("logger", event.getLoggerName());
+    writeStringField("thread", event.getThreadName());
+
+    if (event instanceof IStaticLoggingEvent) {
+      IStaticLoggingEvent e = (IStaticLoggingEvent) event;
+      writeStringField("context", e.getContextName());
+      writeStringField("callerClass", e.getClassNameOfCaller());
+      writeStringField("callerMethod", e.getMethodOfCaller());
+      writeStringField("callerFile", e.getFileNameOfCaller());
+      if (e.getLineNumberOfCaller() != 0) {
+        g.writeNumberField("callerLine", e.getLineNumberOfCaller());
+      }
+      writeCallerData(e.getCallerData());
+    }
+
+    writeStringField("message", event.getMessage());
+    writeMDC(event.getMDCPropertyMap());
+
+    g.writeEndObject();
+    g.writeRaw('\n');
+  }
+
+  private void writeStringField(String name, String value) throws IOException {
+    if (value != null) {
+      generator.writeStringField(name, value);
+    }
+  }
+
+  private void writeCallerData(StackTraceElement[] callerData) throws IOException {
+    if (callerData == null || callerData.length == 0) {
+      return;
+    }
+    generator.writeArrayFieldStart("callerData");
+    for (StackTraceElement element : callerData) {
+      generator.writeStartObject();
+      writeStringField("class", element.getClassName());
+      writeStringField("method", element.getMethodName());
+      writeStringField("file", element.getFileName());
+      if (element.getLineNumber() >= 0) {
+        generator.writeNumberField("line", element.getLineNumber());
+      }
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+  }
+
+  private void writeMDC(Map<String, String> mdc) throws IOException {
+    if (mdc == null || mdc.isEmpty()) {
+      return;
+    }
+    generator.writeObjectFieldStart("mdc");
+    for (Map.Entry<String, String> entry : mdc.entrySet()) {
+      generator.writeStringField(entry.getKey(), entry.getValue());
+    }
+    generator.writeEndObject();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    generator.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    generator.close();
+  }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.decoder.CompiledLayout.FieldSlot;
+
+/**
+ * A {@code LazyLoggingEvent} is a {@link StaticLoggingEvent} whose fields
+ * are only parsed when they are first read. It keeps the decoded input
+ * and the offsets of each field in it; a getter parses its field, stores
+ * the value, and returns it from then on. The input is released once all
+ * fields have been parsed (or {@link #prepareForDeferredProcessing()} is
+ * called).
+ *
+ * <p>Consumers that read only some fields of each event (e.g., those that
+ * filter events by level and discard most of them) skip the cost of
+ * parsing the others. The input must not change while the event is in
+ * use. Like {@code LoggingEvent}, this class is not thread-safe, but an
+ * event can be handed off to another thread.</p>
+ */
+public class LazyLoggingEvent extends StaticLoggingEvent {
+  private final FieldSlot[] fieldPlan;
+  private final int[] spans;
+  private CharSequence input;
+
+  // bit i is set while the field of fieldPlan[i] is not parsed
+  private int pending;
+
+  /**
+   * Constructs a {@code LazyLoggingEvent} from a successful match
+   *
+   * @param input the decoded input
+   * @param fieldPlan the field plan of the layout that was matched;
+   * its capturers must be thread-safe (i.e., not the copies of a context)
+   * @param matcher the matcher that matched {@code input}
+   */
+  LazyLoggingEvent(CharSequence input, FieldSlot[] fieldPlan, Matcher matcher) {
+    if (fieldPlan.length > Integer.SIZE) {
+      throw new IllegalArgumentException("too many fields: " + fieldPlan.length);
+    }
+    this.input = input;
+    this.fieldPlan = fieldPlan;
+    this.spans = new int[fieldPlan.length * 2];
+    for (int i = 0; i < fieldPlan.length; i++) {
+      int start = matcher.start(fieldPlan[i].group);
+
+      // skip optional groups that did not participate in the match
+      if (start >= 0) {
+        spans[2 * i] = start;
+        spans[2 * i + 1] = matcher.end(fieldPlan[i].group);
+        pending |= 1 << i;
+      }
+    }
+    if (pending == 0) {
+      this.input = null;
+    }
+  }
+
+  /**
+   * Parses a field if it has not been parsed yet
+   *
+   * @param name the full pattern name of the field (e.g.,
+   * {@link PatternNames#LEVEL})
+   */
+  private void resolve(String name) {
+    if (pending == 0) {
+      return;
+    }
+    for (int i = 0; i < fieldPlan.length; i++) {
+      int bit = 1 << i;
+      if ((pending & bit) != 0 && fieldPlan[i].name.equals(name)) {
+        pending &= ~bit;
+        fieldPlan[i].capturer.captureField(this, input, spans[2 * i], spans[2 * i + 1], fieldPlan[i].info);
+      }
+    }
+    if (pending == 0) {
+      input = null;
+    }
+  }
+
+  /**
+   * Parses all fields that have not been parsed yet
+   */
+  private void resolveAll() {
+    for (int i = 0; pending != 0 && i < fieldPlan.length; i++) {
+      resolve(fieldPlan[i].name);
+    }
+  }
+
+  /**
+   * Determines whether a field is still waiting to be parsed
+   *
+   * @param name the full pattern name of the field
+   * @return true if the field is in the input and not parsed yet
+   */
+  boolean isPending(String name) {
+    for (int i = 0; i < fieldPlan.length; i++) {
+      if ((pending & (1 << i)) != 0 && fieldPlan[i].name.equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public long getTimeStamp() {
+    resolve(PatternNames.DATE);
+    return super.getTimeStamp();
+  }
+
+  @Override
+  public Level getLevel() {
+    resolve(PatternNames.LEVEL);
+    return super.getLevel();
+  }
+
+  @Override
+  public String getLoggerName() {
+    resolve(PatternNames.LOGGER_NAME);
+    return super.getLoggerName();
+  }
+
+  @Override
+  public String getThreadName() {
+    resolve(PatternNames.THREAD_NAME);
+    return super.getThreadName();
+  }
+
+  @Override
+  public String getMessage() {
+    resolve(PatternNames.MESSAGE);
+    return super.getMessage();
+  }
+
+  @Override
+  public String getFormattedMessage() {
+    resolve(PatternNames.MESSAGE);
+    return super.getFormattedMessage();
+  }
+
+  @Override
+  public StackTraceElement[] getCallerData() {
+    resolve(PatternNames.CALLER_STACKTRACE);
+    return super.getCallerData();
+  }
+
+  @Override
+  public String getClassNameOfCaller() {
+    resolve(PatternNames.CLASS_OF_CALLER);
+    return super.getClassNameOfCaller();
+  }
+
+  @Override
+  public String getContextName() {
+    resolve(PatternNames.CONTEXT_NAME);
+    return super.getContextName();
+  }
+
+  @Override
+  public int getLineNumberOfCaller() {
+    resolve(PatternNames.LINE_OF_CALLER);
+    return super.getLineNumberOfCaller();
+  }
+
+  @Override
+  public String getMethodOfCaller() {
+    resolve(PatternNames.METHOD_OF_CALLER);
+    return super.getMethodOfCaller();
+  }
+
+  @Override
+  public Map<String, String> getMDCPropertyMap() {
+    resolve(PatternNames.MDC);
+    return super.getMDCPropertyMap();
+  }
+
+  @Override
+  public void prepareForDeferredProcessing() {
+    resolveAll();
+    super.prepareForDeferredProcessing();
+  }
+
+  @Override
+  public String toString() {
+    resolveAll();
+    return super.toString();
+  }
+}
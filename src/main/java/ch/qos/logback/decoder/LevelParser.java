@@ -40,4 +40,19 @@ public class LevelParser implements FieldCapturer<IStaticLoggingEvent> {
     event.setLevel(level);
   }
 
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    for (Level level : LEVELS) {
+      if (ParserUtil.equalsIgnoreCase(input, start, end, level.levelStr)) {
+        event.setLevel(level);
+        return;
+      }
+    }
+    captureField(event, input.subSequence(start, end).toString(), info);
+  }
+
+  private static final Level[] LEVELS = {
+    Level.INFO, Level.DEBUG, Level.WARN, Level.ERROR, Level.TRACE, Level.ALL,
+  };
+
 }
@@ -32,4 +32,9 @@ public class LineOfCallerParser implements FieldCapturer<IStaticLoggingEvent> {
     event.setLineNumberOfCaller(lineNumber);
   }
 
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    event.setLineNumberOfCaller(ParserUtil.parseInt(input, start, end, 0));
+  }
+
 }
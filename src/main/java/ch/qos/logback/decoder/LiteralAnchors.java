@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * {@code LiteralAnchors} are the literal texts (such as {@code "["},
+ * {@code "]"} and {@code "-"}) that a layout pattern prints between its
+ * sub-patterns. Every match of the layout's regex contains them in
+ * order, so text that does not contain them cannot match, and can be
+ * turned away with a few {@code indexOf} scans instead of a run of the
+ * backtracking regex. Anchors of several chars are searched with
+ * Boyer-Moore-Horspool.
+ * <p>
+ * Since the regex allows any run of whitespace where the layout has
+ * whitespace, the literal texts are split at whitespace. Texts with
+ * escapes or parentheses are left out, which only makes the check less
+ * strict. Anchors are immutable and thread-safe.
+ */
+final class LiteralAnchors {
+  /** Anchors that accept any text */
+  static final LiteralAnchors NONE = new LiteralAnchors(Collections.<String>emptyList());
+
+  private static final String UNSAFE_CHARS = "%\\{}()";
+
+  private final String[] anchors;
+  // bad-char shift tables (by the low byte of the char) of the anchors
+  // longer than one char
+  private final int[][] shifts;
+
+  private LiteralAnchors(List<String> anchors) {
+    this.anchors = anchors.toArray(new String[anchors.size()]);
+    this.shifts = new int[this.anchors.length][];
+    for (int i = 0; i < this.anchors.length; i++) {
+      String anchor = this.anchors[i];
+      if (anchor.length() > 1) {
+        int[] shift = new int[256];
+        Arrays.fill(shift, anchor.length());
+        // later chars have smaller shifts, so a shared slot keeps the smallest
+        for (int k = 0; k < anchor.length() - 1; k++) {
+          shift[anchor.charAt(k) & 0xFF] = anchor.length() - 1 - k;
+        }
+        shifts[i] = shift;
+      }
+    }
+  }
+
+  /**
+   * Collects the anchors of the start of a layout pattern
+   *
+   * @param layoutPattern the layout pattern
+   * @param infos the top-level sub-patterns of {@code layoutPattern}
+   * (or {@code null})
+   * @param end the index of {@code layoutPattern} up to which to collect
+   * @return the anchors
+   */
+  static LiteralAnchors of(String layoutPattern, List<PatternInfo> infos, int end) {
+    List<String> anchors = new ArrayList<String>();
+    int start = 0;
+    if (infos != null) {
+      for (PatternInfo inf : infos) {
+        if (inf.start() >= end) {
+          break;
+        }
+        addLiterals(layoutPattern.substring(start, inf.start()), anchors);
+        start = inf.end();
+        // the end of a sub-pattern with an option can be at its closing brace
+        if (start < layoutPattern.length() && layoutPattern.charAt(start) == '}') {
+          start++;
+        }
+      }
+    }
+    if (start < end) {
+      addLiterals(layoutPattern.substring(start, end), anchors);
+    }
+    return anchors.isEmpty() ? NONE : new LiteralAnchors(anchors);
+  }
+
+  private static void addLiterals(String text, List<String> anchors) {
+    for (String token : text.trim().split("\\s+")) {
+      if (!token.isEmpty() && isSafe(token)) {
+        anchors.add(token);
+      }
+    }
+  }
+
+  private static boolean isSafe(String token) {
+    for (int i = 0; i < token.length(); i++) {
+      if (UNSAFE_CHARS.indexOf(token.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the anchors
+   *
+   * @return the anchors, in order
+   */
+  List<String> getAnchors() {
+    return Collections.unmodifiableList(Arrays.asList(anchors));
+  }
+
+  /**
+   * Determines whether the anchors are empty, so that any text passes
+   *
+   * @return true if empty; otherwise false
+   */
+  boolean isEmpty() {
+    return anchors.length == 0;
+  }
+
+  /**
+   * Determines whether a char sequence contains all anchors in order
+   * (without overlap)
+   *
+   * @param s the sequence to evaluate
+   * @return true if all anchors are found; false if the sequence cannot
+   * match the layout
+   */
+  boolean matches(CharSequence s) {
+    if (s instanceof String) {
+      return matches((String) s);
+    }
+    int pos = 0;
+    int end = s.length();
+    for (int i = 0; i < anchors.length; i++) {
+      int found = shifts[i] == null
+          ? indexOf(s, anchors[i].charAt(0), pos, end)
+          : indexOf(s, anchors[i], shifts[i], pos, end);
+      if (found < 0) {
+        return false;
+      }
+      pos = found + anchors[i].length();
+    }
+    return true;
+  }
+
+  /**
+   * Determines whether a string contains all anchors in order, with the
+   * (intrinsic) search of {@link String#indexOf(String, int)}
+   */
+  private boolean matches(String s) {
+    int pos = 0;
+    for (String anchor : anchors) {
+      int found = s.indexOf(anchor, pos);
+      if (found < 0) {
+        return false;
+      }
+      pos = found + anchor.length();
+    }
+    return true;
+  }
+
+  private static int indexOf(CharSequence s, char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds an anchor with Boyer-Moore-Horspool
+   */
+  private static int indexOf(CharSequence s, String anchor, int[] shift, int from, int to) {
+    int last = anchor.length() - 1;
+    char lastChar = anchor.charAt(last);
+    int i = from;
+    while (i + last < to) {
+      char c = s.charAt(i + last);
+      if (c == lastChar) {
+        int j = last - 1;
+        while (j >= 0 && s.charAt(i + j) == anchor.charAt(j)) {
+          j--;
+        }
+        if (j < 0) {
+          return i;
+        }
+      }
+      i += shift[c & 0xFF];
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(anchors);
+  }
+}
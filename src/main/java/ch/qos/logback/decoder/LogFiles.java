@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the log files named by paths, directories and glob patterns
+ */
+public final class LogFiles {
+
+  /**
+   * Constructor not called
+   */
+  private LogFiles() {}
+
+  /**
+   * Resolves paths to the log files they name. A directory names the
+   * regular files in it (except {@link LogIndex} sidecar files). A path
+   * with glob characters ({@code * ? [ ]} or <code>{ }</code>) names
+   * the regular files that match it, e.g., {@code logs/*.log.gz} or
+   * {@code hosts/**}{@code /app.log}. Any other path names itself, whether
+   * or not the file exists. The files of each path are sorted by name.
+   *
+   * @param paths the paths
+   * @return the log files, in the order of the paths
+   * @throws IOException an error occurred while listing a directory
+   */
+  public static List<File> resolve(List<String> paths) throws IOException {
+    List<File> files = new ArrayList<File>();
+    for (String path : paths) {
+      if (isGlob(path)) {
+        files.addAll(glob(path));
+      } else if (new File(path).isDirectory()) {
+        files.addAll(list(Paths.get(path), 1, null));
+      } else {
+        files.add(new File(path));
+      }
+    }
+    return files;
+  }
+
+  private static boolean isGlob(String path) {
+    for (int i = 0; i < path.length(); i++) {
+      switch (path.charAt(i)) {
+        case '*':
+        case '?':
+        case '[':
+        case '{':
+          return true;
+        default:
+          break;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Lists the files that match a glob pattern
+   *
+   * @param pattern the glob pattern
+   * @return the matching files, sorted by path
+   * @throws IOException
+   */
+  private static List<File> glob(String pattern) throws IOException {
+    // walk from the deepest directory that has no glob chars
+    Path base = null;
+    int depth = 0;
+    for (Path name : Paths.get(pattern)) {
+      if (depth == 0 && !isGlob(name.toString())) {
+        base = base == null ? name : base.resolve(name);
+      } else {
+        depth = name.toString().contains("**") ? Integer.MAX_VALUE : depth + 1;
+        if (depth == Integer.MAX_VALUE) {
+          break;
+        }
+      }
+    }
+    if (Paths.get(pattern).isAbsolute()) {
+      base = base == null ? Paths.get(pattern).getRoot() : Paths.get(pattern).getRoot().resolve(base);
+    } else if (base == null) {
+      base = Paths.get("");
+    }
+
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+    return list(base, depth, matcher);
+  }
+
+  /**
+   * Lists the regular files under a directory
+   *
+   * @param dir the directory
+   * @param depth the maximum number of levels of directories to visit
+   * @param matcher the matcher of the paths to keep, or {@code null}
+   * to keep all files but index files
+   * @return the files, sorted by path
+   * @throws IOException
+   */
+  private static List<File> list(Path dir, int depth, PathMatcher matcher) throws IOException {
+    List<File> files = new ArrayList<File>();
+    if (!Files.isDirectory(dir)) {
+      return files;
+    }
+
+    Stream<Path> paths = Files.walk(dir, depth);
+    try {
+      for (Iterator<Path> it = paths.iterator(); it.hasNext();) {
+        Path path = it.next();
+        if (!Files.isRegularFile(path)) {
+          continue;
+        }
+        if (matcher != null ? matcher.matches(path) : !path.toString().endsWith(LogIndex.SUFFIX)) {
+          files.add(path.toFile());
+        }
+      }
+    } finally {
+      paths.close();
+    }
+    Collections.sort(files);
+    return files;
+  }
+}
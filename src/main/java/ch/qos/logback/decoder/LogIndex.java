@@ -0,0 +1,600 @@
+/**
+ * Copyright (C) 2012, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.pattern.parser2.FixedDateFormat;
+
+/**
+ * A {@code LogIndex} is a sparse index of a log file, kept in a sidecar
+ * file next to it (see {@link #sidecarFile(File)}). The events of the log
+ * are grouped into blocks of consecutive events; for each block, the index
+ * holds the ordinal and byte offset of its first event, the range of its
+ * timestamps, its number of events at each level, and the ids of its
+ * loggers in a dictionary of logger names. A query can then skip the
+ * blocks that cannot contain any event it is interested in.
+ *
+ * <p>An index covers the log up to a given length. The log can grow
+ * after the index is built; {@link #isValidFor(File)} checks (from the
+ * length and a checksum of the indexed bytes) that the indexed part of
+ * the log is unchanged, in which case the index can be extended with
+ * {@link MappedFileDecoder#buildIndex(File, LogIndex)}.</p>
+ *
+ * <p>An index is immutable and thread-safe.</p>
+ */
+public final class LogIndex {
+  /** Number of events per block of a new index */
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+  /** File-name suffix of the sidecar file of a log */
+  public static final String SUFFIX = ".idx";
+
+  private static final int MAGIC = 0x4c424958; // "LBIX"
+  private static final int VERSION = 1;
+
+  // number of bytes at the start and at the end of the indexed part of
+  // the log that are checksummed
+  private static final int CHECKSUM_WINDOW = 4096;
+
+  private static final Level[] LEVELS = {
+    Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR,
+  };
+
+  private final String layoutPattern;
+  private final int blockSize;
+  private final long indexedLength;
+  private final long checksum;
+  private final String[] loggers;
+  private final long[] ordinals;
+  private final long[] offsets;
+  private final long[] minTimestamps;
+  private final long[] maxTimestamps;
+  private final int[] counts;
+  private final int[][] levelCounts;
+  private final int[][] loggerIds;
+
+  private LogIndex(String layoutPattern, int blockSize, long indexedLength, long checksum,
+      String[] loggers, long[] ordinals, long[] offsets, long[] minTimestamps, long[] maxTimestamps,
+      int[] counts, int[][] levelCounts, int[][] loggerIds) {
+    this.layoutPattern = layoutPattern;
+    this.blockSize = blockSize;
+    this.indexedLength = indexedLength;
+    this.checksum = checksum;
+    this.loggers = loggers;
+    this.ordinals = ordinals;
+    this.offsets = offsets;
+    this.minTimestamps = minTimestamps;
+    this.maxTimestamps = maxTimestamps;
+    this.counts = counts;
+    this.levelCounts = levelCounts;
+    this.loggerIds = loggerIds;
+  }
+
+  /**
+   * Gets the sidecar file that holds the index of a log
+   *
+   * @param log the log file
+   * @return the index file (which may not exist)
+   */
+  public static File sidecarFile(File log) {
+    return new File(log.getPath() + SUFFIX);
+  }
+
+  /**
+   * Loads an index from its file. The whole file is read into the arrays
+   * of the index in one sequential pass (it is not memory-mapped), since
+   * a query reads the records of most blocks anyway, and an index is
+   * small next to its log.
+   *
+   * @param file the index file
+   * @return the index
+   * @throws IOException an error occurred while reading the file, or
+   * it is not an index file
+   */
+  public static LogIndex load(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      return read(in);
+    } catch (EOFException e) {
+      throw new IOException("invalid index file (truncated): " + file, e);
+    } catch (RuntimeException e) {
+      // e.g., NegativeArraySizeException for a corrupt length
+      throw new IOException("invalid index file: " + file, e);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static LogIndex read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("not an index file (or unsupported version)");
+    }
+    String layoutPattern = readString(in);
+    int blockSize = in.readInt();
+    long indexedLength = in.readLong();
+    long checksum = in.readLong();
+
+    String[] loggers = new String[in.readInt()];
+    for (int i = 0; i < loggers.length; i++) {
+      loggers[i] = readString(in);
+    }
+
+    int numBlocks = in.readInt();
+    long[] ordinals = new long[numBlocks];
+    long[] offsets = new long[numBlocks];
+    long[] minTimestamps = new long[numBlocks];
+    long[] maxTimestamps = new long[numBlocks];
+    int[] counts = new int[numBlocks];
+    int[][] levelCounts = new int[numBlocks][LEVELS.length];
+    int[][] loggerIds = new int[numBlocks][];
+    for (int i = 0; i < numBlocks; i++) {
+      ordinals[i] = in.readLong();
+      offsets[i] = in.readLong();
+      minTimestamps[i] = in.readLong();
+      maxTimestamps[i] = in.readLong();
+      counts[i] = in.readInt();
+      for (int j = 0; j < LEVELS.length; j++) {
+        levelCounts[i][j] = in.readInt();
+      }
+      loggerIds[i] = new int[in.readInt()];
+      for (int j = 0; j < loggerIds[i].length; j++) {
+        loggerIds[i][j] = in.readInt();
+      }
+    }
+    return new LogIndex(layoutPattern, blockSize, indexedLength, checksum, loggers,
+        ordinals, offsets, minTimestamps, maxTimestamps, counts, levelCounts, loggerIds);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes this index to a file
+   *
+   * @param file the destination (e.g., the {@link #sidecarFile(File)
+   * sidecar file} of the log)
+   * @throws IOException an error occurred while writing the file
+   */
+  public void write(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeString(out, layoutPattern);
+      out.writeInt(blockSize);
+      out.writeLong(indexedLength);
+      out.writeLong(checksum);
+
+      out.writeInt(loggers.length);
+      for (String logger : loggers) {
+        writeString(out, logger);
+      }
+
+      out.writeInt(offsets.length);
+      for (int i = 0; i < offsets.length; i++) {
+        out.writeLong(ordinals[i]);
+        out.writeLong(offsets[i]);
+        out.writeLong(minTimestamps[i]);
+        out.writeLong(maxTimestamps[i]);
+        out.writeInt(counts[i]);
+        for (int levelCount : levelCounts[i]) {
+          out.writeInt(levelCount);
+        }
+        out.writeInt(loggerIds[i].length);
+        for (int id : loggerIds[i]) {
+          out.writeInt(id);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Determines whether this index still describes a log, i.e., the log is
+   * at least as long as the indexed part, and the checksum of the indexed
+   * part is unchanged. A log that was rotated, truncated or rewritten
+   * fails this check.
+   *
+   * @param log the log file
+   * @return true if valid; otherwise false
+   * @throws IOException an error occurred while reading the log
+   */
+  public boolean isValidFor(File log) throws IOException {
+    if (log.length() < indexedLength) {
+      return false;
+    }
+    MappedFileSource source = new MappedFileSource(log);
+    try {
+      return isValidFor(source);
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Determines whether this index still describes the log read by a source
+   *
+   * @param source the log
+   * @return true if valid; otherwise false
+   * @see #isValidFor(File)
+   */
+  boolean isValidFor(MappedFileSource source) {
+    return source.size() >= indexedLength && checksum(source, indexedLength) == checksum;
+  }
+
+  /**
+   * Computes the checksum of the first and the last bytes of a part of
+   * a log
+   *
+   * @param source the log
+   * @param length the length of the part
+   * @return the checksum
+   */
+  static long checksum(MappedFileSource source, long length) {
+    CRC32 crc = new CRC32();
+    long head = Math.min(length, CHECKSUM_WINDOW);
+    for (long i = 0; i < head; i++) {
+      crc.update(source.get(i));
+    }
+    for (long i = Math.max(head, length - CHECKSUM_WINDOW); i < length; i++) {
+      crc.update(source.get(i));
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Gets the layout pattern of the indexed log
+   *
+   * @return the layout pattern
+   */
+  public String getLayoutPattern() {
+    return layoutPattern;
+  }
+
+  /**
+   * Gets the maximum number of events per block
+   *
+   * @return the block size
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Gets the length of the part of the log that is indexed
+   *
+   * @return the length in bytes
+   */
+  public long getIndexedLength() {
+    return indexedLength;
+  }
+
+  /**
+   * Gets the number of indexed events
+   *
+   * @return the event count
+   */
+  public long getEventCount() {
+    int last = offsets.length - 1;
+    return last < 0 ? 0 : ordinals[last] + counts[last];
+  }
+
+  /**
+   * Gets the number of blocks
+   *
+   * @return the block count
+   */
+  public int getBlockCount() {
+    return offsets.length;
+  }
+
+  /**
+   * Gets the ordinal (zero-based position in the log) of the first event
+   * of a block
+   *
+   * @param block the block number
+   * @return the ordinal
+   */
+  public long getBlockOrdinal(int block) {
+    return ordinals[block];
+  }
+
+  /**
+   * Gets the byte offset of the first event of a block
+   *
+   * @param block the block number
+   * @return the offset
+   */
+  public long getBlockOffset(int block) {
+    return offsets[block];
+  }
+
+  /**
+   * Gets the number of events in a block
+   *
+   * @param block the block number
+   * @return the event count
+   */
+  public int getBlockEventCount(int block) {
+    return counts[block];
+  }
+
+  /**
+   * Finds the block that contains an event
+   *
+   * @param ordinal the ordinal of the event
+   * @return the block number or -1 if the event is not indexed
+   */
+  public int findBlock(long ordinal) {
+    if (ordinal < 0 || ordinal >= getEventCount()) {
+      return -1;
+    }
+    int pos = Arrays.binarySearch(ordinals, ordinal);
+    return pos >= 0 ? pos : -pos - 2;
+  }
+
+  /**
+   * Determines whether a block may contain events that pass all of the
+   * given filters. Only {@link MinLevelFilter}s, {@link LoggerPrefixFilter}s
+   * and {@link TimeRangeFilter}s are evaluated against the index; other
+   * filters are assumed to pass.
+   *
+   * @param block the block number
+   * @param filters the filters to evaluate
+   * @return false if no event of the block can pass; otherwise true
+   */
+  public boolean mayContain(int block, List<FieldFilter> filters) {
+    for (FieldFilter filter : filters) {
+      if (filter instanceof MinLevelFilter) {
+        if (!mayContainLevel(block, ((MinLevelFilter)filter).getThreshold())) {
+          return false;
+        }
+      } else if (filter instanceof LoggerPrefixFilter) {
+        if (!mayContainLogger(block, ((LoggerPrefixFilter)filter).getPrefix())) {
+          return false;
+        }
+      } else if (filter instanceof TimeRangeFilter) {
+        TimeRangeFilter range = (TimeRangeFilter)filter;
+        if (maxTimestamps[block] < range.getSince() || minTimestamps[block] >= range.getUntil()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean mayContainLevel(int block, Level threshold) {
+    // events with other levels (e.g., unknown ones) are always kept by
+    // the filter
+    int known = 0;
+    for (int i = 0; i < LEVELS.length; i++) {
+      known += levelCounts[block][i];
+      if (levelCounts[block][i] > 0 && LEVELS[i].isGreaterOrEqual(threshold)) {
+        return true;
+      }
+    }
+    return known < counts[block];
+  }
+
+  private boolean mayContainLogger(int block, String prefix) {
+    for (int id : loggerIds[block]) {
+      if (loggers[id].startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "LogIndex[events=" + getEventCount() + ", blocks=" + getBlockCount()
+        + ", loggers=" + loggers.length + ", indexedLength=" + indexedLength + "]";
+  }
+
+  /**
+   * A {@code Builder} accumulates the events of a log, in order, into
+   * the blocks of a new index. It can start from an existing index of the
+   * same log, so that only the events added since are read.
+   */
+  static final class Builder {
+    private final String layoutPattern;
+    private final int blockSize;
+    private final List<String> loggers = new ArrayList<String>();
+    private final Map<String, Integer> loggerDictionary = new HashMap<String, Integer>();
+    private final List<long[]> blocks = new ArrayList<long[]>();
+    private final List<int[]> blockLevelCounts = new ArrayList<int[]>();
+    private final List<int[]> blockLoggerIds = new ArrayList<int[]>();
+    private long resumeOffset = -1;
+    private long ordinal;
+
+    // the open block
+    private long blockOrdinal;
+    private long blockOffset = -1;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private int count;
+    private int[] levelCounts;
+    private TreeSet<Integer> loggerIds;
+
+    /**
+     * Constructs a {@code Builder} for a new index
+     *
+     * @param layoutPattern the layout pattern of the log
+     * @param blockSize the maximum number of events per block
+     */
+    Builder(String layoutPattern, int blockSize) {
+      if (blockSize < 1) {
+        throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+      }
+      this.layoutPattern = layoutPattern;
+      this.blockSize = blockSize;
+    }
+
+    /**
+     * Constructs a {@code Builder} that extends an index. All blocks but
+     * the last one (which may not be full) are kept; the events of the
+     * last block must be added again, from {@link #getResumeOffset()}.
+     *
+     * @param previous the index to extend
+     */
+    Builder(LogIndex previous) {
+      this(previous.layoutPattern, previous.blockSize);
+      loggers.addAll(Arrays.asList(previous.loggers));
+      for (int i = 0; i < previous.loggers.length; i++) {
+        loggerDictionary.put(previous.loggers[i], i);
+      }
+      for (int i = 0; i < previous.offsets.length - 1; i++) {
+        blocks.add(new long[] {
+          previous.ordinals[i], previous.offsets[i], previous.minTimestamps[i],
+          previous.maxTimestamps[i], previous.counts[i],
+        });
+        blockLevelCounts.add(previous.levelCounts[i]);
+        blockLoggerIds.add(previous.loggerIds[i]);
+      }
+      int last = previous.offsets.length - 1;
+      ordinal = last < 0 ? 0 : previous.ordinals[last];
+      resumeOffset = last < 0 ? -1 : previous.offsets[last];
+    }
+
+    /**
+     * Gets the offset from which to add events
+     *
+     * @return the offset or -1 to start from the first event of the log
+     */
+    long getResumeOffset() {
+      return resumeOffset;
+    }
+
+    /**
+     * Adds the next event of the log
+     *
+     * @param offset the byte offset of the event
+     * @param event the event, decoded with at least its date, level and
+     * logger name
+     */
+    void add(long offset, ILoggingEvent event) {
+      if (count == blockSize) {
+        closeBlock();
+      }
+      if (count == 0) {
+        blockOrdinal = ordinal;
+        blockOffset = offset;
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+        levelCounts = new int[LEVELS.length];
+        loggerIds = new TreeSet<Integer>();
+      }
+
+      long timestamp = event.getTimeStamp();
+      if (timestamp != FixedDateFormat.INVALID && timestamp != 0) {
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+      }
+
+      Level level = event.getLevel();
+      for (int i = 0; i < LEVELS.length; i++) {
+        if (LEVELS[i].equals(level)) {
+          levelCounts[i]++;
+          break;
+        }
+      }
+
+      String logger = event.getLoggerName();
+      if (logger != null) {
+        Integer id = loggerDictionary.get(logger);
+        if (id == null) {
+          id = loggers.size();
+          loggers.add(logger);
+          loggerDictionary.put(logger, id);
+        }
+        loggerIds.add(id);
+      }
+
+      count++;
+      ordinal++;
+    }
+
+    private void closeBlock() {
+      if (count == 0) {
+        return;
+      }
+      blocks.add(new long[] { blockOrdinal, blockOffset, minTimestamp, maxTimestamp, count });
+      blockLevelCounts.add(levelCounts);
+      int[] ids = new int[loggerIds.size()];
+      int i = 0;
+      for (Integer id : loggerIds) {
+        ids[i++] = id;
+      }
+      blockLoggerIds.add(ids);
+      count = 0;
+    }
+
+    /**
+     * Builds the index
+     *
+     * @param indexedLength the length of the part of the log that was read
+     * @param checksum the {@link LogIndex#checksum(MappedFileSource, long)
+     * checksum} of that part
+     * @return the index
+     */
+    LogIndex build(long indexedLength, long checksum) {
+      closeBlock();
+      int n = blocks.size();
+      long[] ordinals = new long[n];
+      long[] offsets = new long[n];
+      long[] minTimestamps = new long[n];
+      long[] maxTimestamps = new long[n];
+      int[] counts = new int[n];
+      for (int i = 0; i < n; i++) {
+        long[] block = blocks.get(i);
+        ordinals[i] = block[0];
+        offsets[i] = block[1];
+        minTimestamps[i] = block[2];
+        maxTimestamps[i] = block[3];
+        counts[i] = (int)block[4];
+      }
+      return new LogIndex(layoutPattern, blockSize, indexedLength, checksum,
+          loggers.toArray(new String[loggers.size()]), ordinals, offsets, minTimestamps, maxTimestamps,
+          counts, blockLevelCounts.toArray(new int[n][]), blockLoggerIds.toArray(new int[n][]));
+    }
+  }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * A {@code LogStats} counts the events of a log per level, logger, thread
+ * and minute in one pass, from the columns of the {@link EventBatch}es
+ * that a decoder fills (so no event objects are created):
+ * <pre>
+ * LogStats stats = new LogStats();
+ * decoder.decode(file, stats.getBatch(), stats);
+ * stats.writeText(System.out);
+ * </pre>
+ * Its memory use depends on the number of distinct loggers, threads and
+ * minutes of the log, but not on the number of events.
+ */
+public class LogStats implements EventBatchHandler {
+  /** Number of events decoded per batch */
+  public static final int BATCH_SIZE = 1024;
+
+  /** Number of loggers, threads and minutes listed by {@link #writeText(PrintStream)} */
+  static final int TEXT_TOP_COUNT = 10;
+
+  private static final long MINUTE = 60 * 1000L;
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final EventBatch batch = new EventBatch(BATCH_SIZE);
+  private long eventCount;
+  private final long[] levelCounts = new long[ColumnarFormat.LEVELS.length];
+  // by dictionary id of the batch
+  private long[] loggerCounts = new long[64];
+  private long[] threadCounts = new long[64];
+  private final TreeMap<Long, long[]> minuteCounts = new TreeMap<Long, long[]>();
+  private long currentMinute = Long.MIN_VALUE;
+  private long[] currentMinuteCount;
+  private long firstTimestamp = Long.MAX_VALUE;
+  private long lastTimestamp = Long.MIN_VALUE;
+
+  /**
+   * Gets the batch to decode the events into. It keeps the names of
+   * the loggers and threads, and the counts of the events that could not
+   * be decoded or were rejected.
+   *
+   * @return the batch
+   */
+  public EventBatch getBatch() {
+    return batch;
+  }
+
+  /**
+   * Counts the events of a batch
+   *
+   * @param batch the batch returned by {@link #getBatch()}
+   * @throws IllegalArgumentException the batch is not the one of this
+   * {@code LogStats}
+   */
+  @Override
+  public void handle(EventBatch batch) {
+    if (batch != this.batch) {
+      throw new IllegalArgumentException("not the batch of these stats");
+    }
+    int size = batch.size();
+    int strings = batch.getStringCount();
+    if (loggerCounts.length < strings) {
+      loggerCounts = Arrays.copyOf(loggerCounts, Math.max(strings, loggerCounts.length * 2));
+      threadCounts = Arrays.copyOf(threadCounts, loggerCounts.length);
+    }
+
+    long[] timestamps = batch.getTimestamps();
+    byte[] levels = batch.getLevels();
+    int[] loggerIds = batch.getLoggerIds();
+    int[] threadIds = batch.getThreadIds();
+    for (int i = 0; i < size; i++) {
+      levelCounts[levels[i]]++;
+      if (loggerIds[i] >= 0) {
+        loggerCounts[loggerIds[i]]++;
+      }
+      if (threadIds[i] >= 0) {
+        threadCounts[threadIds[i]]++;
+      }
+
+      // events without a date have a timestamp of 0
+      long timestamp = timestamps[i];
+      if (timestamp != 0) {
+        firstTimestamp = Math.min(firstTimestamp, timestamp);
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        long minute = timestamp - Math.floorMod(timestamp, MINUTE);
+        if (minute != currentMinute) {
+          currentMinute = minute;
+          currentMinuteCount = minuteCounts.get(minute);
+          if (currentMinuteCount == null) {
+            currentMinuteCount = new long[1];
+            minuteCounts.put(minute, currentMinuteCount);
+          }
+        }
+        currentMinuteCount[0]++;
+      }
+    }
+    eventCount += size;
+  }
+
+  /**
+   * Gets the number of decoded events
+   *
+   * @return the number of events
+   */
+  public long getEventCount() {
+    return eventCount;
+  }
+
+  /**
+   * Gets the number of events that did not match the layout
+   *
+   * @return the number of events
+   */
+  public long getUndecodableCount() {
+    return batch.getUndecodableCount();
+  }
+
+  /**
+   * Gets the number of events that were rejected by a filter
+   *
+   * @return the number of events
+   */
+  public long getRejectedCount() {
+    return batch.getRejectedCount();
+  }
+
+  /**
+   * Gets the earliest timestamp of the events
+   *
+   * @return the timestamp in milliseconds since the epoch; or 0 if no
+   * event has a timestamp
+   */
+  public long getFirstTimestamp() {
+    return minuteCounts.isEmpty() ? 0 : firstTimestamp;
+  }
+
+  /**
+   * Gets the latest timestamp of the events
+   *
+   * @return the timestamp in milliseconds since the epoch; or 0 if no
+   * event has a timestamp
+   */
+  public long getLastTimestamp() {
+    return minuteCounts.isEmpty() ? 0 : lastTimestamp;
+  }
+
+  /**
+   * Gets the number of events per level
+   *
+   * @return the counts of the levels that have events, from {@code TRACE}
+   * to {@code ERROR}; events without a level are not counted
+   */
+  public Map<Level, Long> getLevelCounts() {
+    Map<Level, Long> counts = new LinkedHashMap<Level, Long>();
+    for (int i = 1; i < levelCounts.length; i++) {
+      if (levelCounts[i] != 0) {
+        counts.put(ColumnarFormat.LEVELS[i], levelCounts[i]);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Gets the number of events per logger
+   *
+   * @return the counts, highest first
+   */
+  public Map<String, Long> getLoggerCounts() {
+    return countsByName(loggerCounts);
+  }
+
+  /**
+   * Gets the number of events per thread
+   *
+   * @return the counts, highest first
+   */
+  public Map<String, Long> getThreadCounts() {
+    return countsByName(threadCounts);
+  }
+
+  /**
+   * Gets the number of events per minute
+   *
+   * @return the counts by the start of each minute (in milliseconds since
+   * the epoch) that has events, in time order
+   */
+  public SortedMap<Long, Long> getMinuteCounts() {
+    SortedMap<Long, Long> counts = new TreeMap<Long, Long>();
+    for (Map.Entry<Long, long[]> entry : minuteCounts.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue()[0]);
+    }
+    return counts;
+  }
+
+  /**
+   * Gets a percentile of the number of events per minute, over the
+   * minutes that have events
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the number of events in the minute at that percentile
+   * (nearest rank); or 0 if no event has a timestamp
+   */
+  public long getEventsPerMinute(double percentile) {
+    if (minuteCounts.isEmpty()) {
+      return 0;
+    }
+    long[] counts = new long[minuteCounts.size()];
+    int i = 0;
+    for (long[] count : minuteCounts.values()) {
+      counts[i++] = count[0];
+    }
+    Arrays.sort(counts);
+    int rank = (int) Math.ceil(percentile / 100 * counts.length);
+    return counts[Math.max(0, Math.min(counts.length, rank) - 1)];
+  }
+
+  /**
+   * Writes a compact report, which lists the busiest loggers, threads
+   * and minutes
+   *
+   * @param out the stream to write to
+   */
+  public void writeText(PrintStream out) {
+    SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    SimpleDateFormat minuteFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+
+    out.printf("events   %d (%d undecodable, %d rejected)%n", eventCount, getUndecodableCount(), getRejectedCount());
+    if (!minuteCounts.isEmpty()) {
+      out.printf("first    %s%n", timeFormat.format(new Date(firstTimestamp)));
+      out.printf("last     %s%n", timeFormat.format(new Date(lastTimestamp)));
+      out.printf("per min  p50 %d, p90 %d, p99 %d, max %d%n", getEventsPerMinute(50), getEventsPerMinute(90),
+          getEventsPerMinute(99), getEventsPerMinute(100));
+    }
+
+    out.print("levels  ");
+    for (Map.Entry<Level, Long> entry : getLevelCounts().entrySet()) {
+      out.printf(" %s %d", entry.getKey(), entry.getValue());
+    }
+    out.println();
+
+    writeTop(out, "loggers", getLoggerCounts());
+    writeTop(out, "threads", getThreadCounts());
+
+    Map<String, Long> minutes = new LinkedHashMap<String, Long>();
+    for (Map.Entry<Long, Long> entry : getMinuteCounts().entrySet()) {
+      minutes.put(minuteFormat.format(new Date(entry.getKey())), entry.getValue());
+    }
+    writeTop(out, "minutes", sortByCount(minutes));
+    out.flush();
+  }
+
+  private static void writeTop(PrintStream out, String title, Map<String, Long> counts) {
+    if (counts.isEmpty()) {
+      return;
+    }
+    out.printf("%-8s %d%s%n", title, counts.size(), counts.size() > TEXT_TOP_COUNT ? ", top " + TEXT_TOP_COUNT : "");
+    int n = 0;
+    for (Map.Entry<String, Long> entry : counts.entrySet()) {
+      if (n++ == TEXT_TOP_COUNT) {
+        break;
+      }
+      out.printf("  %10d  %s%n", entry.getValue(), entry.getKey());
+    }
+  }
+
+  /**
+   * Writes all counts as one JSON object
+   *
+   * @param out the stream to write to (not closed)
+   * @throws IOException an error occurred while writing
+   */
+  public void writeJson(OutputStream out) throws IOException {
+    SimpleDateFormat minuteFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    JsonGenerator g = FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+    g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    g.writeStartObject();
+    g.writeNumberField("events", eventCount);
+    g.writeNumberField("undecodable", getUndecodableCount());
+    g.writeNumberField("rejected", getRejectedCount());
+    if (!minuteCounts.isEmpty()) {
+      g.writeNumberField("first", firstTimestamp);
+      g.writeNumberField("last", lastTimestamp);
+      g.writeObjectFieldStart("eventsPerMinute");
+      g.writeNumberField("p50", getEventsPerMinute(50));
+      g.writeNumberField("p90", getEventsPerMinute(90));
+      g.writeNumberField("p99", getEventsPerMinute(99));
+      g.writeNumberField("max", getEventsPerMinute(100));
+      g.writeEndObject();
+    }
+
+    g.writeObjectFieldStart("levels");
+    for (Map.Entry<Level, Long> entry : getLevelCounts().entrySet()) {
+      g.writeNumberField(entry.getKey().levelStr, entry.getValue());
+    }
+    g.writeEndObject();
+    writeCounts(g, "loggers", getLoggerCounts());
+    writeCounts(g, "threads", getThreadCounts());
+    g.writeObjectFieldStart("minutes");
+    for (Map.Entry<Long, Long> entry : getMinuteCounts().entrySet()) {
+      g.writeNumberField(minuteFormat.format(new Date(entry.getKey())), entry.getValue());
+    }
+    g.writeEndObject();
+
+    g.writeEndObject();
+    g.writeRaw('\n');
+    g.flush();
+  }
+
+  private static void writeCounts(JsonGenerator g, String name, Map<String, Long> counts) throws IOException {
+    g.writeObjectFieldStart(name);
+    for (Map.Entry<String, Long> entry : counts.entrySet()) {
+      g.writeNumberField(entry.getKey(), entry.getValue());
+    }
+    g.writeEndObject();
+  }
+
+  /**
+   * Gets the non-zero counts of an array indexed by dictionary id
+   */
+  private Map<String, Long> countsByName(long[] countsById) {
+    Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    for (int id = 0; id < countsById.length; id++) {
+      if (countsById[id] != 0) {
+        counts.put(batch.getString(id), countsById[id]);
+      }
+    }
+    return sortByCount(counts);
+  }
+
+  private static Map<String, Long> sortByCount(Map<String, Long> counts) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(counts.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+      @Override
+      public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+        return b.getValue().compareTo(a.getValue());
+      }
+    });
+    Map<String, Long> sorted = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Long> entry : entries) {
+      sorted.put(entry.getKey(), entry.getValue());
+    }
+    return sorted;
+  }
+}
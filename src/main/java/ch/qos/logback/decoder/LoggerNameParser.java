@@ -22,7 +22,12 @@ public class LoggerNameParser implements FieldCapturer<IStaticLoggingEvent> {
 
   @Override
   public void captureField(IStaticLoggingEvent event, String fieldAsStr, PatternInfo info) {
-    event.setLoggerName(fieldAsStr.trim());
+    event.setLoggerName(StringPool.getDefault().intern(fieldAsStr.trim()));
+  }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    event.setLoggerName(ParserUtil.internTrimmed(input, start, end));
   }
 
 }
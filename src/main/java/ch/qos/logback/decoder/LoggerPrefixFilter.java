@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2012, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * A {@code LoggerPrefixFilter} keeps the events whose logger name starts
+ * with a given prefix (e.g., {@code "com.example."}). The logger name is
+ * compared as it appears in the log, so a layout that abbreviates it
+ * (e.g., {@code %logger{0}}) must be matched with an abbreviated prefix.
+ */
+public class LoggerPrefixFilter implements FieldFilter {
+  private final String prefix;
+
+  /**
+   * Constructs a {@code LoggerPrefixFilter}
+   *
+   * @param prefix the prefix of the logger names to keep
+   */
+  public LoggerPrefixFilter(String prefix) {
+    if (prefix == null) {
+      throw new IllegalArgumentException("prefix cannot be null");
+    }
+    this.prefix = prefix;
+  }
+
+  /**
+   * Gets the prefix of the logger names kept by this filter
+   *
+   * @return the prefix
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  @Override
+  public String getFieldName() {
+    return PatternNames.LOGGER_NAME;
+  }
+
+  @Override
+  public boolean accept(CharSequence input, int start, int end, PatternInfo info) {
+    if (end - start < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (input.charAt(start + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "logger starts with \"" + prefix + "\"";
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * A {@code MDCParser} parses an MDC field (%X or %mdc) from a string
+ * of comma-separated {@code key=value} pairs and populates the MDC
+ * property map of a given logging event
+ */
+public class MDCParser implements FieldCapturer<IStaticLoggingEvent> {
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, String fieldAsStr, PatternInfo info) {
+    captureField(event, fieldAsStr, 0, fieldAsStr.length(), info);
+  }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    Map<String, String> map = new LinkedHashMap<String, String>();
+    int pos = start;
+    while (pos < end) {
+      // skip the separator and the blanks before a key
+      char c = input.charAt(pos);
+      if (c == ',' || Character.isWhitespace(c)) {
+        pos++;
+        continue;
+      }
+
+      int keyEnd = pos;
+      while (keyEnd < end && input.charAt(keyEnd) != '=' && input.charAt(keyEnd) != ',') {
+        keyEnd++;
+      }
+      int valueEnd = keyEnd;
+      while (valueEnd < end && input.charAt(valueEnd) != ',') {
+        valueEnd++;
+      }
+
+      String key = input.subSequence(pos, keyEnd).toString().trim();
+      String value = keyEnd < valueEnd ? input.subSequence(keyEnd + 1, valueEnd).toString().trim() : "";
+      map.put(key, value);
+      pos = valueEnd;
+    }
+    event.setMDCPropertyMap(map);
+  }
+
+}
@@ -0,0 +1,507 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * A {@code MappedFileDecoder} decodes a log file through a
+ * {@link MappedFileSource}. Each event (including its continuation lines)
+ * is matched directly against the mapped bytes; no line or event
+ * {@code String} is created unless the event contains non-ASCII chars
+ * and the file's encoding is not ISO-8859-1.
+ */
+public class MappedFileDecoder extends Decoder {
+  private static final Set<String> INDEX_FIELDS = Collections.unmodifiableSet(new HashSet<String>(
+      Arrays.asList(PatternNames.DATE, PatternNames.LEVEL, PatternNames.LOGGER_NAME)));
+
+  private final Logger logger;
+  private Charset charset;
+
+  /**
+   * Constructs a {@code MappedFileDecoder}
+   */
+  public MappedFileDecoder() {
+    super();
+    logger = LoggerFactory.getLogger(MappedFileDecoder.class);
+    charset = Charset.defaultCharset();
+  }
+
+  /**
+   * Sets the character encoding of decoded files
+   *
+   * @param charset the desired encoding (the platform default if not set)
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Gets the character encoding of decoded files
+   *
+   * @return the encoding
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Parses the log events of a file. Events that cannot be decoded
+   * are skipped.
+   *
+   * @param file the log file
+   * @return a list of log events, in file order
+   * @throws IOException an error occurred while reading the file
+   */
+  public List<ILoggingEvent> decode(File file) throws IOException {
+    final List<ILoggingEvent> eventList = new ArrayList<ILoggingEvent>();
+    decode(file, new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        eventList.add(event);
+      }
+    });
+    return eventList;
+  }
+
+  /**
+   * Parses the log events of a file, passing each event to the given
+   * handler as soon as it is decoded. Events that cannot be decoded
+   * are skipped.
+   *
+   * @param file the log file
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading the file
+   */
+  public void decode(File file, ILoggingEventHandler handler) throws IOException {
+    MappedFileSource source = new MappedFileSource(file);
+    try {
+      readLayoutPattern(source);
+      decodeRange(source, source.position(), source.size(), handler);
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Parses the log events of a file into a batch, passing the batch to
+   * the given handler each time it is full and once more at the end of
+   * the file (if it is not empty). Events that cannot be decoded are
+   * skipped.
+   *
+   * @param file the log file
+   * @param batch the batch to fill; it is cleared before it is filled,
+   * and after each call to the handler
+   * @param handler the handler to receive the filled batch
+   * @throws IOException an error occurred while reading the file
+   * @see Decoder#decode(CharSequence, EventBatch)
+   */
+  public void decode(File file, final EventBatch batch, final EventBatchHandler handler) throws IOException {
+    final MappedFileSource source = new MappedFileSource(file);
+    try {
+      readLayoutPattern(source);
+      batch.clear();
+      scanEvents(source, source.position(), source.size(), new EventRangeHandler() {
+        @Override
+        public void handle(long eventStart, long eventEnd) {
+          CharSequence text = eventText(source, eventStart, eventEnd);
+          if (!decode(text, batch) && !wasRejected()) {
+            logger.trace("offset {}: cannot decode: \"{}\"", eventStart, text);
+          }
+          if (batch.isFull()) {
+            handler.handle(batch);
+            batch.clear();
+          }
+        }
+      });
+      if (batch.size() > 0) {
+        handler.handle(batch);
+        batch.clear();
+      }
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Parses the log events of a file that fall within a time range. The
+   * events of the file must be in time order. The first and last events
+   * of the range are found by binary search on their timestamps, and only
+   * the events between them are decoded, so the cost of a query depends on
+   * the size of the range rather than the size of the file.
+   *
+   * <p>If the layout has no {@link CompiledLayout#hasLeadingDate()
+   * leading date}, the whole file is decoded and the events outside the
+   * range are dropped.</p>
+   *
+   * @param file the log file
+   * @param since the earliest timestamp to decode, inclusive (in
+   * milliseconds since the epoch); or {@code Long.MIN_VALUE} for no bound
+   * @param until the timestamp at which to stop decoding, exclusive;
+   * or {@code Long.MAX_VALUE} for no bound
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading the file
+   */
+  public void decode(File file, final long since, final long until, final ILoggingEventHandler handler) throws IOException {
+    MappedFileSource source = new MappedFileSource(file);
+    try {
+      readLayoutPattern(source);
+      long start = source.position();
+      long end = source.size();
+
+      if (getCompiledLayout().hasLeadingDate()) {
+        TimestampSeeker seeker = new TimestampSeeker(source, this, start);
+        if (since != Long.MIN_VALUE) {
+          start = seeker.seek(since);
+        }
+        if (until != Long.MAX_VALUE) {
+          end = Math.max(start, seeker.seek(until));
+        }
+        logger.debug("decoding bytes {} to {} of {}", new Object[] { start, end, file });
+        decodeRange(source, start, end, handler);
+
+      } else {
+        logger.debug("layout has no leading date; decoding all of {}", file);
+        decodeRange(source, start, end, new ILoggingEventHandler() {
+          @Override
+          public void handle(ILoggingEvent event) {
+            if (event.getTimeStamp() >= since && event.getTimeStamp() < until) {
+              handler.handle(event);
+            }
+          }
+        });
+      }
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Builds the index of a log file
+   *
+   * @param file the log file
+   * @return the index
+   * @throws IOException an error occurred while reading the file
+   * @see #buildIndex(File, LogIndex)
+   */
+  public LogIndex buildIndex(File file) throws IOException {
+    return buildIndex(file, null);
+  }
+
+  /**
+   * Builds the index of a log file, extending an earlier index of the
+   * same file if it is still {@link LogIndex#isValidFor(File) valid}, so
+   * that only the events appended since are read. Only the date, level
+   * and logger name of the events are decoded, and filters are not
+   * applied. A trailing line without a line terminator (e.g., one that is
+   * still being written) is not indexed.
+   *
+   * @param file the log file
+   * @param previous the earlier index (or {@code null} to build from
+   * scratch)
+   * @return the index
+   * @throws IOException an error occurred while reading the file
+   */
+  public LogIndex buildIndex(File file, LogIndex previous) throws IOException {
+    MappedFileSource source = new MappedFileSource(file);
+    try {
+      readLayoutPattern(source);
+      long start = source.position();
+
+      final LogIndex.Builder builder;
+      if (previous != null && isIndexValid(previous, source)) {
+        builder = new LogIndex.Builder(previous);
+        if (builder.getResumeOffset() >= 0) {
+          start = builder.getResumeOffset();
+        }
+        logger.debug("extending index of {} from offset {}", file, start);
+      } else {
+        builder = new LogIndex.Builder(getLayoutPattern(), LogIndex.DEFAULT_BLOCK_SIZE);
+      }
+
+      // index complete lines only
+      long end = source.size();
+      while (end > start && source.get(end - 1) != '\n') {
+        end--;
+      }
+
+      final MappedFileSource src = source;
+      final DecodeContext context = CompiledLayoutCache.getDefault()
+          .get(getLayoutPattern(), INDEX_FIELDS).newContext();
+      scanEvents(source, start, end, new EventRangeHandler() {
+        @Override
+        public void handle(long eventStart, long eventEnd) {
+          ILoggingEvent event = context.decode(eventText(src, eventStart, eventEnd));
+          if (event != null) {
+            builder.add(eventStart, event);
+          }
+        }
+      });
+      return builder.build(end, LogIndex.checksum(source, end));
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Parses the log events of a file through its index. The blocks of
+   * the index in which no event can pass the {@link #setFilters(List)
+   * filters} are skipped; e.g., with a {@link MinLevelFilter} of
+   * {@code ERROR}, only the blocks that hold errors are decoded. The part
+   * of the file appended after the index was built is decoded in full.
+   * If the index is no longer {@link LogIndex#isValidFor(File) valid},
+   * the whole file is decoded.
+   *
+   * @param file the log file
+   * @param index the index of the file
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading the file
+   */
+  public void decode(File file, LogIndex index, ILoggingEventHandler handler) throws IOException {
+    MappedFileSource source = new MappedFileSource(file);
+    try {
+      readLayoutPattern(source);
+      long dataStart = source.position();
+      if (!isIndexValid(index, source)) {
+        logger.debug("index of {} is out of date; decoding all of it", file);
+        decodeRange(source, dataStart, source.size(), handler);
+        return;
+      }
+
+      // the last indexed event can have continuation lines past the
+      // indexed length
+      long tailStart = nextEventStart(source, Math.max(dataStart, index.getIndexedLength()));
+
+      List<FieldFilter> filters = getFilters();
+      int numBlocks = index.getBlockCount();
+      int skipped = 0;
+      for (int i = 0; i < numBlocks; i++) {
+        if (!index.mayContain(i, filters)) {
+          skipped++;
+          continue;
+        }
+        // decode consecutive blocks at once
+        int last = i;
+        while (last + 1 < numBlocks && index.mayContain(last + 1, filters)) {
+          last++;
+        }
+        long end = last + 1 < numBlocks ? index.getBlockOffset(last + 1) : tailStart;
+        decodeRange(source, index.getBlockOffset(i), end, handler);
+        i = last;
+      }
+      logger.debug("skipped {} of {} blocks of {}", new Object[] { skipped, numBlocks, file });
+
+      decodeRange(source, tailStart, source.size(), handler);
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Determines whether an index describes the log read by a source
+   * (with the layout pattern of this decoder)
+   */
+  private boolean isIndexValid(LogIndex index, MappedFileSource source) {
+    return index.getLayoutPattern().equals(getLayoutPattern()) && index.isValidFor(source);
+  }
+
+  /**
+   * Finds the start of the first event at or after the beginning of a line
+   *
+   * @param source the source to read
+   * @param lineStart the offset of the line
+   * @return the offset of the event or the size of the source
+   */
+  private long nextEventStart(MappedFileSource source, long lineStart) {
+    source.position(lineStart);
+    CharSequence line;
+    while ((line = source.readLine()) != null) {
+      if (isEventStart(line)) {
+        return lineStart;
+      }
+      lineStart = source.position();
+    }
+    return source.size();
+  }
+
+  /**
+   * Decodes the events in a byte range of the source
+   *
+   * @param source the source to read
+   * @param start offset of the first line to read
+   * @param end offset at which to stop reading
+   * @param handler the handler to receive the decoded events
+   */
+  private void decodeRange(final MappedFileSource source, long start, long end, final ILoggingEventHandler handler) {
+    scanEvents(source, start, end, new EventRangeHandler() {
+      @Override
+      public void handle(long eventStart, long eventEnd) {
+        decodeEvent(source, eventStart, eventEnd, handler);
+      }
+    });
+  }
+
+  /**
+   * Receives the byte range of each event found by
+   * {@link MappedFileDecoder#scanEvents(MappedFileSource, long, long, EventRangeHandler)}
+   */
+  private interface EventRangeHandler {
+    void handle(long start, long end);
+  }
+
+  /**
+   * Finds the events in a byte range of the source. An event starts at a
+   * line that {@link #isEventStart(CharSequence) starts an event}, and
+   * includes the continuation lines that follow it.
+   *
+   * @param source the source to read
+   * @param start offset of the first line to read
+   * @param end offset at which to stop reading
+   * @param handler the handler to receive the range of each event
+   */
+  private void scanEvents(MappedFileSource source, long start, long end, EventRangeHandler handler) {
+    source.position(start);
+    long eventStart = -1;
+    long lineStart = start;
+    CharSequence line;
+    while (lineStart < end && (line = source.readLine()) != null) {
+      if (isEventStart(line)) {
+        if (eventStart >= 0) {
+          handler.handle(eventStart, lineStart);
+        }
+        eventStart = lineStart;
+      } else if (eventStart < 0) {
+        logger.trace("offset {}: cannot decode: \"{}\"", lineStart, line);
+      }
+      lineStart = source.position();
+    }
+
+    if (eventStart >= 0) {
+      handler.handle(eventStart, lineStart);
+    }
+  }
+
+  /**
+   * Decodes the event in a byte range of the source
+   *
+   * @param source the source to read
+   * @param start offset of the first byte of the event
+   * @param end offset after the last byte of the event, including the
+   * terminator of its last line
+   * @param handler the handler to receive the decoded event
+   */
+  private void decodeEvent(MappedFileSource source, long start, long end, ILoggingEventHandler handler) {
+    CharSequence text = eventText(source, start, end);
+    ILoggingEvent event = decode(text);
+    if (event != null) {
+      handler.handle(event);
+    } else if (!wasRejected()) {
+      logger.trace("offset {}: cannot decode: \"{}\"", start, text);
+    }
+  }
+
+  /**
+   * Gets the text of the event in a byte range of the source, as a view
+   * over the mapped bytes where possible
+   *
+   * @param source the source to read
+   * @param start offset of the first byte of the event
+   * @param end offset after the last byte of the event
+   * @return the text, with its lines terminated by LF alone
+   */
+  private CharSequence eventText(MappedFileSource source, long start, long end) {
+    int flags = source.scan(start, end);
+    CharSequence text;
+    if (isLatin1View(charset) || (flags & MappedFileSource.NON_ASCII) == 0) {
+      text = source.subSequence(start, end);
+    } else {
+      text = source.toString(start, end, charset);
+    }
+
+    // the lines of a CRLF file are handed to the layout without their CRs,
+    // like the lines that BufferDecoder reads
+    if ((flags & MappedFileSource.HAS_CR) != 0) {
+      text = stripCarriageReturns(text);
+    }
+
+    // the layout expects each line (including the last) to be terminated
+    if (end == source.size() && end > start && source.get(end - 1) != '\n') {
+      text = text + "\n";
+    }
+    return text;
+  }
+
+  /**
+   * Removes the CRs of the CRLF line terminators of a text
+   *
+   * @param text the text
+   * @return the text with its lines terminated by LF alone
+   */
+  private static String stripCarriageReturns(CharSequence text) {
+    StringBuilder buf = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c != '\r' || i + 1 == text.length() || text.charAt(i + 1) != '\n') {
+        buf.append(c);
+      }
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Determines whether the views of a {@link MappedFileSource} are exact
+   * for all text in the given encoding
+   */
+  private static boolean isLatin1View(Charset charset) {
+    return charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Reads the layout pattern header from the beginning of the source.
+   * If the header is not found, the source is reset to the first line so
+   * that it can be decoded as a logging event.
+   *
+   * @param source the source to read
+   * @throws UnknownLayoutPatternException pattern not found in the
+   * source, and no other pattern was specified
+   */
+  private void readLayoutPattern(MappedFileSource source) {
+    CharSequence line = source.readLine();
+    if (line != null && line.toString().startsWith(PatternLayout.HEADER_PREFIX)) {
+      if (getLayoutPattern() == null) {
+        setLayoutPattern(line.toString().substring(PatternLayout.HEADER_PREFIX.length()));
+      }
+    } else {
+      source.position(0);
+    }
+
+    if (getLayoutPattern() == null) {
+      throw new UnknownLayoutPatternException("layout pattern not specified");
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@code MappedFileSource} reads a log file through a memory mapping
+ * and exposes its lines as {@link CharSequence} views over the mapped
+ * bytes, so that no chars are copied until a {@code String} is actually
+ * needed. Each byte of a view is read as one ISO-8859-1 char, which is
+ * exact for Latin-1 files and for the ASCII subset of UTF-8 files.
+ *
+ * <p>The file is mapped in segments of up to 1 GB, so files of any size
+ * can be read. The mapping is released by the garbage collector after
+ * the source (and all of its views) are no longer referenced.</p>
+ */
+public class MappedFileSource implements Closeable {
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = (int)(SEGMENT_SIZE - 1);
+
+  /** Flag of {@link #scan(long, long)}: the range has a non-ASCII byte */
+  static final int NON_ASCII = 1;
+
+  /** Flag of {@link #scan(long, long)}: the range has a CR */
+  static final int HAS_CR = 2;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] segments;
+  private final long size;
+  private long position;
+
+  /**
+   * Constructs a {@code MappedFileSource} and maps the entire file
+   *
+   * @param file the file to read
+   * @throws IOException an error occurred while mapping the file
+   */
+  public MappedFileSource(File file) throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      segments = new MappedByteBuffer[(int)((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = (long)i << SEGMENT_SHIFT;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+      }
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the size of the file
+   *
+   * @return the size in bytes
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Gets the offset of the next line to be read
+   *
+   * @return the offset in bytes
+   */
+  public long position() {
+    return position;
+  }
+
+  /**
+   * Sets the offset of the next line to be read
+   *
+   * @param offset the desired offset in bytes
+   */
+  public void position(long offset) {
+    if (offset < 0 || offset > size) {
+      throw new IllegalArgumentException("offset out of range: " + offset);
+    }
+    position = offset;
+  }
+
+  /**
+   * Reads the next line as a view over the mapped bytes, and advances
+   * the position to the line that follows it
+   *
+   * @return the line without its line terminator; or {@code null} if
+   * the end of the file has been reached
+   */
+  public CharSequence readLine() {
+    if (position >= size) {
+      return null;
+    }
+
+    long start = position;
+    long end = indexOf('\n', start);
+    if (end < 0) {
+      end = size;
+      position = size;
+    } else {
+      position = end + 1;
+    }
+
+    if (end > start && get(end - 1) == '\r') {
+      end--;
+    }
+    return subSequence(start, end);
+  }
+
+  /**
+   * Gets a view over a byte range of the file
+   *
+   * @param start offset of the first byte
+   * @param end offset after the last byte
+   * @return the view, with one char per byte
+   */
+  public CharSequence subSequence(long start, long end) {
+    if (start < 0 || end > size || start > end || end - start > Integer.MAX_VALUE) {
+      throw new IndexOutOfBoundsException("[" + start + "," + end + ")");
+    }
+    return new MappedCharSequence(this, start, (int)(end - start));
+  }
+
+  /**
+   * Determines whether a byte range of the file contains only ASCII chars,
+   * in which case its views are exact for any ASCII-compatible encoding
+   *
+   * @param start offset of the first byte
+   * @param end offset after the last byte
+   * @return true if ASCII only; otherwise false
+   */
+  public boolean isAscii(long start, long end) {
+    for (long i = start; i < end; i++) {
+      if (get(i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Determines in one pass whether a byte range of the file is ASCII
+   * only, and whether it holds CRs
+   *
+   * @param start offset of the first byte
+   * @param end offset after the last byte
+   * @return {@link #NON_ASCII} and {@link #HAS_CR}, or'ed together;
+   * 0 for ASCII text without CRs
+   */
+  int scan(long start, long end) {
+    int flags = 0;
+    for (long i = start; i < end && flags != (NON_ASCII | HAS_CR); i++) {
+      byte b = get(i);
+      if (b < 0) {
+        flags |= NON_ASCII;
+      } else if (b == '\r') {
+        flags |= HAS_CR;
+      }
+    }
+    return flags;
+  }
+
+  /**
+   * Decodes a byte range of the file to a string
+   *
+   * @param start offset of the first byte
+   * @param end offset after the last byte
+   * @param charset the character encoding of the file
+   * @return the decoded string
+   */
+  public String toString(long start, long end, Charset charset) {
+    byte[] bytes = new byte[(int)(end - start)];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = get(start + i);
+    }
+    return new String(bytes, charset);
+  }
+
+  /**
+   * Finds the next occurrence of a byte
+   *
+   * @param b the byte to find
+   * @param from offset from which to search
+   * @return the offset of the byte or -1 if not found
+   */
+  long indexOf(int b, long from) {
+    for (long i = from; i < size; i++) {
+      if (get(i) == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the byte at the given offset
+   *
+   * @param offset the offset in bytes
+   * @return the byte
+   */
+  byte get(long offset) {
+    return segments[(int)(offset >>> SEGMENT_SHIFT)].get((int)offset & SEGMENT_MASK);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * A view over a byte range of a {@link MappedFileSource}
+   */
+  private static final class MappedCharSequence implements CharSequence {
+    private final MappedFileSource source;
+    private final long start;
+    private final int length;
+
+    MappedCharSequence(MappedFileSource source, long start, int length) {
+      this.source = source;
+      this.start = start;
+      this.length = length;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return (char)(source.get(start + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      if (from < 0 || to > length || from > to) {
+        throw new IndexOutOfBoundsException("[" + from + "," + to + ")");
+      }
+      return new MappedCharSequence(source, start + from, to - from);
+    }
+
+    @Override
+    public String toString() {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        chars[i] = (char)(source.get(start + i) & 0xff);
+      }
+      return new String(chars);
+    }
+  }
+}
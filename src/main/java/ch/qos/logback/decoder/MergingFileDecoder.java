@@ -0,0 +1,364 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * A {@code MergingFileDecoder} decodes several log files (e.g., the
+ * files of several hosts) concurrently, and merges their events in
+ * timestamp order. Each file must be in timestamp order itself, as
+ * logback writes them; events with equal timestamps are passed on in
+ * the order of their files.
+ * <p>
+ * Each file is read through its own {@link BufferDecoder}, a small batch
+ * of events at a time, by a shared {@link ForkJoinPool}. A file is only
+ * read ahead by a few batches, so memory use is bounded by the number of
+ * files times the {@link #setReadAhead(int) read-ahead}, not by their
+ * size, and no more threads are needed than the pool has.
+ */
+public class MergingFileDecoder extends Decoder {
+  /** Default number of events decoded from a file at a time */
+  public static final int DEFAULT_BATCH_SIZE = 128;
+
+  /** Default number of batches decoded ahead of the merge for each file */
+  public static final int DEFAULT_READ_AHEAD = 2;
+
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+  private final Logger logger;
+  private final ForkJoinPool pool;
+  private Charset charset;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int readAhead = DEFAULT_READ_AHEAD;
+
+  /**
+   * Constructs a {@code MergingFileDecoder} with its own pool
+   *
+   * @param parallelism number of threads to decode with
+   */
+  public MergingFileDecoder(int parallelism) {
+    this(new ForkJoinPool(parallelism));
+  }
+
+  /**
+   * Constructs a {@code MergingFileDecoder} that runs on the given pool
+   *
+   * @param pool the pool to decode with
+   */
+  public MergingFileDecoder(ForkJoinPool pool) {
+    super();
+    logger = LoggerFactory.getLogger(MergingFileDecoder.class);
+    this.pool = pool;
+    this.charset = Charset.defaultCharset();
+  }
+
+  /**
+   * Sets the character encoding of decoded files
+   *
+   * @param charset the desired encoding (the platform default if not set)
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Gets the character encoding of decoded files
+   *
+   * @return the encoding
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Sets the number of events decoded from a file at a time
+   *
+   * @param batchSize the number of events (at least 1)
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Gets the number of events decoded from a file at a time
+   *
+   * @return the number of events
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the number of batches decoded ahead of the merge for each file
+   *
+   * @param readAhead the number of batches (at least 1)
+   */
+  public void setReadAhead(int readAhead) {
+    this.readAhead = Math.max(1, readAhead);
+  }
+
+  /**
+   * Gets the number of batches decoded ahead of the merge for each file
+   *
+   * @return the number of batches
+   */
+  public int getReadAhead() {
+    return readAhead;
+  }
+
+  /**
+   * Parses the log events of several files, and passes them to the given
+   * handler in timestamp order. The handler is only called from the
+   * calling thread. Files may be compressed (see {@link ArchiveDecoder});
+   * only the first entry of a {@code .zip} archive is read. Unless a
+   * layout pattern was set, each file is decoded with the pattern in its
+   * own header. Events that cannot be decoded are skipped.
+   *
+   * @param files the log files
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading a file
+   * @throws UnknownLayoutPatternException no layout pattern was set and
+   * a file does not start with a pattern header
+   */
+  public void decode(List<File> files, ILoggingEventHandler handler) throws IOException {
+    List<Source> sources = new ArrayList<Source>(files.size());
+    for (int i = 0; i < files.size(); i++) {
+      sources.add(new Source(i, files.get(i)));
+    }
+    logger.debug("merging {} files", sources.size());
+
+    try {
+      PriorityQueue<Source> heads = new PriorityQueue<Source>(Math.max(1, sources.size()));
+      for (Source source : sources) {
+        source.schedule();
+      }
+      for (Source source : sources) {
+        if (source.advance()) {
+          heads.add(source);
+        }
+      }
+
+      Source source;
+      while ((source = heads.poll()) != null) {
+        handler.handle(source.head);
+        if (source.advance()) {
+          heads.add(source);
+        }
+      }
+    } finally {
+      for (Source source : sources) {
+        source.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the fields each file is decoded with: the requested fields
+   * and the date, by which events are merged
+   *
+   * @return the pattern names of the fields; or {@code null} for all fields
+   */
+  private Set<String> sourceFields() {
+    Set<String> fields = getFields();
+    if (fields == null) {
+      return null;
+    }
+    Set<String> merged = new TreeSet<String>(fields);
+    merged.add(PatternNames.DATE);
+    return merged;
+  }
+
+  /**
+   * A file being merged: its decoded batches, and the next event of the
+   * merge from it
+   */
+  private class Source implements Comparable<Source>, Runnable {
+    private final int ordinal;
+    private final File file;
+    private final BlockingQueue<Batch> batches;
+    private final AtomicBoolean scheduled;
+    private BufferedReader reader;
+    private Iterator<ILoggingEvent> iterator;
+    private volatile boolean closed;
+    private volatile boolean done;
+
+    // only used by the merging thread
+    private Batch batch;
+    private int index;
+    ILoggingEvent head;
+
+    Source(int ordinal, File file) {
+      this.ordinal = ordinal;
+      this.file = file;
+      // room for the read-ahead and the final batch
+      this.batches = new ArrayBlockingQueue<Batch>(readAhead + 1);
+      this.scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Moves to the next event of the file, waiting for it to be decoded
+     *
+     * @return true if there is a next event; false at the end of the file
+     * @throws IOException an error occurred while reading the file
+     */
+    boolean advance() throws IOException {
+      while (batch == null || index == batch.events.size()) {
+        if (batch != null && batch.last) {
+          head = null;
+          return false;
+        }
+        try {
+          batch = batches.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        index = 0;
+        schedule();
+        if (batch.error instanceof IOException) {
+          throw (IOException) batch.error;
+        } else if (batch.error != null) {
+          throw (RuntimeException) batch.error;
+        }
+      }
+      head = batch.events.get(index++);
+      return true;
+    }
+
+    /**
+     * Submits this file for decoding, unless it is being decoded already,
+     * it has ended, or its read-ahead is full
+     */
+    void schedule() {
+      if (!done && batches.size() < readAhead && scheduled.compareAndSet(false, true)) {
+        pool.execute(this);
+      }
+    }
+
+    /**
+     * Decodes a batch of events (on a pool thread)
+     */
+    @Override
+    public void run() {
+      Batch next = new Batch(batchSize);
+      try {
+        if (iterator == null) {
+          iterator = open();
+        }
+        while (next.events.size() < batchSize && !closed && iterator.hasNext()) {
+          next.events.add(iterator.next());
+        }
+        next.last = closed || !iterator.hasNext();
+      } catch (IOException e) {
+        next.error = e;
+        next.last = true;
+      } catch (UncheckedIOException e) {
+        next.error = e.getCause();
+        next.last = true;
+      } catch (RuntimeException e) {
+        next.error = e;
+        next.last = true;
+      }
+
+      if (next.last) {
+        done = true;
+        closeReader();
+      }
+      batches.add(next);
+      scheduled.set(false);
+      schedule();
+    }
+
+    private Iterator<ILoggingEvent> open() throws IOException {
+      InputStream in = ArchiveDecoder.open(file);
+      if (in instanceof ZipInputStream) {
+        ((ZipInputStream) in).getNextEntry();
+      }
+      reader = new BufferedReader(new InputStreamReader(in, charset), READ_BUFFER_SIZE);
+
+      BufferDecoder decoder = new BufferDecoder();
+      decoder.setFields(sourceFields());
+      decoder.setFilters(getFilters());
+      decoder.setLazy(isLazy());
+      decoder.setCompact(isCompact());
+      decoder.setLayoutPattern(getLayoutPattern());
+      return decoder.iterator(reader);
+    }
+
+    /**
+     * Stops decoding the file; a batch being decoded is finished first
+     */
+    void close() {
+      closed = true;
+      if (scheduled.compareAndSet(false, true)) {
+        // not being decoded, and never will be again
+        closeReader();
+      }
+    }
+
+    private synchronized void closeReader() {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          logger.debug("cannot close {}: {}", file, e.getMessage());
+        }
+        reader = null;
+      }
+    }
+
+    @Override
+    public int compareTo(Source other) {
+      int cmp = Long.compare(head.getTimeStamp(), other.head.getTimeStamp());
+      return cmp != 0 ? cmp : Integer.compare(ordinal, other.ordinal);
+    }
+  }
+
+  /**
+   * Events decoded from a file at once
+   */
+  private static class Batch {
+    final List<ILoggingEvent> events;
+    boolean last;
+    // an IOException or a RuntimeException
+    Exception error;
+
+    Batch(int size) {
+      events = new ArrayList<ILoggingEvent>(size);
+    }
+  }
+}
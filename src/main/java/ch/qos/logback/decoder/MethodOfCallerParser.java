@@ -22,7 +22,12 @@ public class MethodOfCallerParser implements FieldCapturer<IStaticLoggingEvent>
 
   @Override
   public void captureField(IStaticLoggingEvent event, String fieldAsStr, PatternInfo info) {
-    event.setMethodOfCaller(fieldAsStr);
+    event.setMethodOfCaller(StringPool.getDefault().intern(fieldAsStr));
+  }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    event.setMethodOfCaller(StringPool.getDefault().intern(input, start, end));
   }
 
 }
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2012, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * A {@code MinLevelFilter} keeps the events whose level is at least a
+ * given threshold (e.g., {@code WARN} and {@code ERROR} for a threshold of
+ * {@code WARN}). Levels are compared in place, without creating a
+ * {@code String}. Events with an unknown level are kept.
+ */
+public class MinLevelFilter implements FieldFilter {
+  private static final Level[] LEVELS = {
+    Level.ERROR, Level.WARN, Level.INFO, Level.DEBUG, Level.TRACE,
+  };
+
+  private final Level threshold;
+
+  /**
+   * Constructs a {@code MinLevelFilter}
+   *
+   * @param threshold the lowest level to keep
+   */
+  public MinLevelFilter(Level threshold) {
+    if (threshold == null) {
+      throw new IllegalArgumentException("threshold cannot be null");
+    }
+    this.threshold = threshold;
+  }
+
+  /**
+   * Gets the lowest level kept by this filter
+   *
+   * @return the threshold
+   */
+  public Level getThreshold() {
+    return threshold;
+  }
+
+  @Override
+  public String getFieldName() {
+    return PatternNames.LEVEL;
+  }
+
+  @Override
+  public boolean accept(CharSequence input, int start, int end, PatternInfo info) {
+    for (Level level : LEVELS) {
+      if (ParserUtil.equalsIgnoreCase(input, start, end, level.levelStr)) {
+        return level.isGreaterOrEqual(threshold);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "level >= " + threshold;
+  }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * A {@code ParallelFileDecoder} decodes a log file on several threads.
+ * The file is split into byte ranges, each of which is realigned to the
+ * next event start so that no event is cut in two. The ranges are decoded
+ * concurrently on a {@link ForkJoinPool}, and the events are passed on in
+ * file order.
+ */
+public class ParallelFileDecoder extends Decoder {
+  /** Smallest byte range worth decoding as a separate task */
+  static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+  /**
+   * Largest byte range to decode as a separate task, which bounds the
+   * memory held by the events of the chunks in flight
+   */
+  static final long MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+
+  /** Number of chunks per thread, to balance uneven chunks */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final Logger logger;
+  private final ForkJoinPool pool;
+  private final BufferDecoder chunkDecoder;
+  private Charset charset;
+  private long minChunkSize = MIN_CHUNK_SIZE;
+  private long maxChunkSize = MAX_CHUNK_SIZE;
+
+  /**
+   * Constructs a {@code ParallelFileDecoder} with its own pool
+   *
+   * @param parallelism number of threads to decode with
+   */
+  public ParallelFileDecoder(int parallelism) {
+    this(new ForkJoinPool(parallelism));
+  }
+
+  /**
+   * Constructs a {@code ParallelFileDecoder} that runs on the given pool
+   *
+   * @param pool the pool to decode with
+   */
+  public ParallelFileDecoder(ForkJoinPool pool) {
+    super();
+    logger = LoggerFactory.getLogger(ParallelFileDecoder.class);
+    this.pool = pool;
+    this.charset = Charset.defaultCharset();
+    this.chunkDecoder = new BufferDecoder();
+  }
+
+  /**
+   * Sets the character encoding of decoded files
+   *
+   * @param charset the desired encoding (the platform default if not set)
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Gets the character encoding of decoded files
+   *
+   * @return the encoding
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Sets the smallest byte range to decode as a separate task
+   * (only changed by tests)
+   *
+   * @param size the desired size in bytes
+   */
+  void setMinChunkSize(long size) {
+    minChunkSize = size;
+  }
+
+  /**
+   * Sets the largest byte range to decode as a separate task, unless it
+   * is below the smallest one (only changed by tests)
+   *
+   * @param size the desired size in bytes
+   */
+  void setMaxChunkSize(long size) {
+    maxChunkSize = size;
+  }
+
+  /**
+   * Parses the log events of a file. Unlike
+   * {@link BufferDecoder#decode(BufferedReader)}, events that cannot
+   * be decoded are skipped.
+   *
+   * @param file the log file
+   * @return a list of log events, in file order
+   * @throws IOException an error occurred while reading the file
+   */
+  public List<ILoggingEvent> decode(File file) throws IOException {
+    final List<ILoggingEvent> eventList = new ArrayList<ILoggingEvent>();
+    decode(file, new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        eventList.add(event);
+      }
+    });
+    return eventList;
+  }
+
+  /**
+   * Parses the log events of a file, passing them to the given handler
+   * in file order. The handler is only called from the calling thread.
+   * Only a few chunks (of at most {@link #MAX_CHUNK_SIZE} bytes, give or
+   * take an event) are decoded ahead of the handler, so memory use does
+   * not grow with the size of the file.
+   *
+   * @param file the log file
+   * @param handler the handler to receive the decoded events
+   * @throws IOException an error occurred while reading the file
+   */
+  public void decode(File file, ILoggingEventHandler handler) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      long start = readLayoutPattern(channel);
+      // the workers share one compiled layout, each with its own context;
+      // the previous layout is cleared so the filters are not checked on it
+      chunkDecoder.setCompiledLayout(null);
+      chunkDecoder.setFilters(getFilters());
+      chunkDecoder.setCompiledLayout(getCompiledLayout());
+      chunkDecoder.setLazy(isLazy());
+      chunkDecoder.setCompact(isCompact());
+      List<Long> bounds = split(channel, start, channel.size());
+      logger.debug("decoding {} in {} chunks", file, bounds.size() - 1);
+
+      int window = pool.getParallelism() * 2;
+      Deque<ForkJoinTask<List<ILoggingEvent>>> pending = new ArrayDeque<ForkJoinTask<List<ILoggingEvent>>>();
+      int next = 0;
+      while (next < bounds.size() - 1 || !pending.isEmpty()) {
+        while (pending.size() < window && next < bounds.size() - 1) {
+          pending.add(pool.submit(new ChunkTask(channel, bounds.get(next), bounds.get(next + 1))));
+          next++;
+        }
+
+        for (ILoggingEvent event : pending.remove().join()) {
+          handler.handle(event);
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Splits a byte range of a file into chunks that begin at event starts
+   *
+   * @param channel the file to split
+   * @param start offset of the first event
+   * @param end size of the file
+   * @return the chunk boundaries, starting with {@code start} and
+   * ending with {@code end}
+   * @throws IOException an error occurred while reading the file
+   */
+  List<Long> split(FileChannel channel, long start, long end) throws IOException {
+    long chunkSize = Math.max(minChunkSize,
+        Math.min(maxChunkSize, (end - start) / (pool.getParallelism() * CHUNKS_PER_THREAD)));
+    EventBoundaryScanner scanner = new EventBoundaryScanner(channel, charset, this);
+
+    List<Long> bounds = new ArrayList<Long>();
+    bounds.add(start);
+    long pos = start + chunkSize;
+    while (pos < end) {
+      long bound = scanner.nextEventStart(pos, end);
+      if (bound >= end) {
+        break;
+      }
+      bounds.add(bound);
+      pos = bound + chunkSize;
+    }
+    bounds.add(end);
+    return bounds;
+  }
+
+  /**
+   * Reads the layout pattern header from the beginning of a file. If
+   * the header is found and no layout pattern was set, the decoder's
+   * layout pattern is set from the header.
+   *
+   * @param channel the file to read
+   * @return the offset of the first line after the header (if any)
+   * @throws IOException an error occurred while reading the file
+   * @throws UnknownLayoutPatternException pattern not found in the
+   * file, and no other pattern was specified
+   */
+  private long readLayoutPattern(FileChannel channel) throws IOException {
+    final int READ_AHEAD_LIMIT = 1024; // max length of pattern line
+
+    ByteBuffer buf = ByteBuffer.allocate(READ_AHEAD_LIMIT);
+    channel.read(buf, 0);
+
+    long start = 0;
+    String layout = null;
+    for (int i = 0; i < buf.position(); i++) {
+      if (buf.get(i) == '\n') {
+        String line = new String(buf.array(), 0, i, charset).trim();
+        if (line.startsWith(PatternLayout.HEADER_PREFIX)) {
+          layout = line.substring(PatternLayout.HEADER_PREFIX.length());
+          start = i + 1;
+        }
+        break;
+      }
+    }
+
+    if (getLayoutPattern() == null) {
+      if (layout == null) {
+        throw new UnknownLayoutPatternException("layout pattern not specified");
+      }
+      setLayoutPattern(layout);
+    }
+    return start;
+  }
+
+  /**
+   * Task that decodes the events of a byte range of a file
+   */
+  @SuppressWarnings("serial")
+  private class ChunkTask extends RecursiveTask<List<ILoggingEvent>> {
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+
+    ChunkTask(FileChannel channel, long start, long end) {
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected List<ILoggingEvent> compute() {
+      final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new ChannelRangeInputStream(channel, start, end), charset),
+          READ_BUFFER_SIZE);
+
+      try {
+        chunkDecoder.decode(reader, new ILoggingEventHandler() {
+          @Override
+          public void handle(ILoggingEvent event) {
+            events.add(event);
+          }
+        });
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return events;
+    }
+  }
+}
@@ -69,4 +69,76 @@ public class ParserUtil {
 
     return quoted;
   }
+
+  /**
+   * Determines if a span of a char sequence equals a string,
+   * ignoring case
+   *
+   * @param s sequence to evaluate
+   * @param start index of the first char of the span
+   * @param end index after the last char of the span
+   * @param str the string to compare with
+   * @return true if equal; otherwise false
+   */
+  public static boolean equalsIgnoreCase(CharSequence s, int start, int end, String str) {
+    if (end - start != str.length()) {
+      return false;
+    }
+    for (int i = start, j = 0; i < end; i++, j++) {
+      char c1 = s.charAt(i);
+      char c2 = str.charAt(j);
+      if (c1 != c2 && Character.toUpperCase(c1) != Character.toUpperCase(c2)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses a decimal integer (with optional minus sign) from a span
+   * of a char sequence without creating a {@code String}
+   *
+   * @param s sequence to evaluate
+   * @param start index of the first char of the span
+   * @param end index after the last char of the span
+   * @param defaultValue value to return if the span is not an integer
+   * @return the parsed value or {@code defaultValue}
+   */
+  public static int parseInt(CharSequence s, int start, int end, int defaultValue) {
+    boolean negative = start < end && s.charAt(start) == '-';
+    int i = negative ? start + 1 : start;
+    if (i >= end || end - i > 9) {
+      return defaultValue;
+    }
+
+    int value = 0;
+    for (; i < end; i++) {
+      int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return defaultValue;
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Interns a span of a char sequence without its leading and trailing
+   * whitespace (as {@link String#trim()} would remove)
+   *
+   * @param s sequence containing the span
+   * @param start index of the first char of the span
+   * @param end index after the last char of the span
+   * @return the pooled string
+   * @see StringPool#getDefault()
+   */
+  public static String internTrimmed(CharSequence s, int start, int end) {
+    while (start < end && s.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && s.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return StringPool.getDefault().intern(s, start, end);
+  }
 }
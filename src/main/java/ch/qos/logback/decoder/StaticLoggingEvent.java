@@ -12,7 +12,9 @@
  */
 package ch.qos.logback.decoder;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import ch.qos.logback.classic.spi.LoggingEvent;
 
@@ -21,23 +23,31 @@ import ch.qos.logback.classic.spi.LoggingEvent;
  * are normally calculated dynamically.
  */
 public class StaticLoggingEvent extends LoggingEvent implements IStaticLoggingEvent {
+  private static final StackTraceElement[] NO_CALLER_DATA = new StackTraceElement[0];
+
   private String _classNameOfCaller;
   private String _contextName;
   private String _fileNameOfCaller;
   private int    _lineNumberOfCaller;
   private String _methodNameOfCaller;
-  private List<StackTraceElement> _callerStackTrace;
+  private StackTraceElement[] _callerData;
+  private String _threadName;
+  private Map<String, String> _mdc;
 
   @Override
   public void setCallerStackData(List<StackTraceElement> stackTrace) {
-    _callerStackTrace = stackTrace;
+    _callerData = stackTrace == null ? null : stackTrace.toArray(new StackTraceElement[stackTrace.size()]);
   }
 
+  /**
+   * Gets the caller stack trace. The array is held by the event and is
+   * returned as is (not copied), so it must not be changed.
+   *
+   * @return the stack trace (empty if it was not decoded)
+   */
   @Override
   public StackTraceElement[] getCallerData() {
-    return _callerStackTrace == null
-        ? new StackTraceElement[0]
-        : _callerStackTrace.toArray(new StackTraceElement[0]);
+    return _callerData == null ? NO_CALLER_DATA : _callerData;
   }
 
   @Override
@@ -65,22 +75,62 @@ public class StaticLoggingEvent extends LoggingEvent implements IStaticLoggingEv
     _methodNameOfCaller = methodName;
   }
 
+  /**
+   * Sets the thread name. Unlike {@link LoggingEvent#setThreadName(String)},
+   * this does not fall back to the name of the current thread when no
+   * name was decoded.
+   */
+  @Override
+  public void setThreadName(String threadName) {
+    _threadName = threadName;
+  }
+
+  @Override
+  public String getThreadName() {
+    return _threadName;
+  }
+
+  /**
+   * Sets the MDC properties. Unlike {@link LoggingEvent}, an event whose
+   * MDC was not decoded has an empty MDC rather than the current thread's.
+   */
+  @Override
+  public void setMDCPropertyMap(Map<String, String> map) {
+    _mdc = map;
+  }
+
+  @Override
+  public Map<String, String> getMDCPropertyMap() {
+    return _mdc == null ? Collections.<String, String>emptyMap() : _mdc;
+  }
+
+  @Override
+  @Deprecated
+  public Map<String, String> getMdc() {
+    return getMDCPropertyMap();
+  }
+
+  @Override
   public String getClassNameOfCaller() {
     return _classNameOfCaller;
   }
 
+  @Override
   public String getContextName() {
     return _contextName;
   }
 
+  @Override
   public String getFileNameOfCaller() {
     return _fileNameOfCaller;
   }
 
+  @Override
   public int getLineNumberOfCaller() {
     return _lineNumberOfCaller;
   }
 
+  @Override
   public String getMethodOfCaller() {
     return _methodNameOfCaller;
   }
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@code StringPool} interns the strings of fields that repeat from one
+ * event to the next (such as logger and thread names), so that the decoded
+ * events share one instance of each string instead of holding a copy each.
+ * Strings are looked up by a span of the input, so that a hit does not
+ * create a {@code String} at all.
+ * <p>
+ * The pool is bounded and thread-safe. It is a two-way set-associative
+ * table: a string that collides with two others replaces one of them,
+ * so a pool never holds more than its size, and a string that is no
+ * longer seen is eventually evicted. Strings longer than
+ * {@link #MAX_LENGTH} are not pooled.
+ */
+public final class StringPool {
+  /** Number of strings kept by the default pool */
+  public static final int DEFAULT_SIZE = 8192;
+
+  /** Maximum length of a pooled string */
+  public static final int MAX_LENGTH = 256;
+
+  private static final StringPool DEFAULT = new StringPool(DEFAULT_SIZE);
+
+  private final AtomicReferenceArray<String> entries;
+  private final int mask;
+
+  /**
+   * Constructs a {@code StringPool}
+   *
+   * @param size the maximum number of strings to keep (rounded up to a
+   * power of two)
+   */
+  public StringPool(int size) {
+    if (size < 2) {
+      throw new IllegalArgumentException("size must be at least 2: " + size);
+    }
+    int capacity = Integer.highestOneBit(size - 1) << 1;
+    this.entries = new AtomicReferenceArray<String>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Gets the pool shared by all decoders
+   *
+   * @return the default pool
+   */
+  public static StringPool getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Gets the pooled instance of a span of a char sequence, adding
+   * the span to the pool if it is not there
+   *
+   * @param s sequence containing the span
+   * @param start index of the first char of the span
+   * @param end index after the last char of the span
+   * @return a string equal to the span
+   */
+  public String intern(CharSequence s, int start, int end) {
+    int length = end - start;
+    if (length > MAX_LENGTH) {
+      return s.subSequence(start, end).toString();
+    }
+
+    // the same hash as String.hashCode()
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + s.charAt(i);
+    }
+
+    int slot = slot(hash);
+    String candidate = entries.get(slot);
+    if (candidate != null && equals(candidate, s, start, end)) {
+      return candidate;
+    }
+    String other = entries.get(slot ^ 1);
+    if (other != null && equals(other, s, start, end)) {
+      return other;
+    }
+    return add(s.subSequence(start, end).toString(), hash, slot, candidate, other);
+  }
+
+  /**
+   * Gets the pooled instance of a string, adding the string to
+   * the pool if it is not there
+   *
+   * @param s the string
+   * @return a string equal to {@code s} (or {@code null} if it is {@code null})
+   */
+  public String intern(String s) {
+    if (s == null || s.length() > MAX_LENGTH) {
+      return s;
+    }
+    int hash = s.hashCode();
+    int slot = slot(hash);
+    String candidate = entries.get(slot);
+    if (s.equals(candidate)) {
+      return candidate;
+    }
+    String other = entries.get(slot ^ 1);
+    if (s.equals(other)) {
+      return other;
+    }
+    return add(s, hash, slot, candidate, other);
+  }
+
+  /**
+   * Removes all strings from the pool
+   */
+  public void clear() {
+    for (int i = 0; i < entries.length(); i++) {
+      entries.set(i, null);
+    }
+  }
+
+  /**
+   * Gets the number of strings in the pool
+   *
+   * @return the number of strings
+   */
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < entries.length(); i++) {
+      if (entries.get(i) != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Gets the first of the two slots a string may be kept in
+   */
+  private int slot(int hash) {
+    hash *= 0x9E3779B9;
+    return (hash ^ hash >>> 16) & mask & ~1;
+  }
+
+  /**
+   * Adds a string that is in neither of its slots, preferring an empty
+   * slot. Concurrent adds may overwrite each other's strings, which only
+   * costs a later miss.
+   */
+  private String add(String s, int hash, int slot, String candidate, String other) {
+    if (candidate == null) {
+      entries.lazySet(slot, s);
+    } else if (other == null) {
+      entries.lazySet(slot ^ 1, s);
+    } else {
+      entries.lazySet(slot ^ (hash >>> 31), s);
+    }
+    return s;
+  }
+
+  private static boolean equals(String str, CharSequence s, int start, int end) {
+    if (str.length() != end - start) {
+      return false;
+    }
+    for (int i = start, j = 0; i < end; i++, j++) {
+      if (str.charAt(j) != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
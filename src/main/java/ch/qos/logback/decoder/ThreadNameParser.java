@@ -22,7 +22,12 @@ public class ThreadNameParser implements FieldCapturer<IStaticLoggingEvent> {
 
   @Override
   public void captureField(IStaticLoggingEvent event, String fieldAsStr, PatternInfo info) {
-    event.setThreadName(fieldAsStr.trim());
+    event.setThreadName(StringPool.getDefault().intern(fieldAsStr.trim()));
+  }
+
+  @Override
+  public void captureField(IStaticLoggingEvent event, CharSequence input, int start, int end, PatternInfo info) {
+    event.setThreadName(ParserUtil.internTrimmed(input, start, end));
   }
 
 }
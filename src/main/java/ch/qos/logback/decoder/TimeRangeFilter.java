@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2012, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import ch.qos.logback.core.pattern.parser2.FixedDateFormat;
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * A {@code TimeRangeFilter} keeps the events whose timestamp is within a
+ * range. Dates in a common fixed-width pattern are parsed in place with
+ * the layout's {@link FixedDateFormat}; others fall back to its
+ * {@code SimpleDateFormat}. Events whose date cannot be parsed are dropped.
+ */
+public class TimeRangeFilter implements FieldFilter {
+  private final long since;
+  private final long until;
+
+  /**
+   * Constructs a {@code TimeRangeFilter}
+   *
+   * @param since the earliest timestamp to keep, inclusive (in
+   * milliseconds since the epoch); or {@code Long.MIN_VALUE} for no bound
+   * @param until the timestamp at which to stop keeping events, exclusive;
+   * or {@code Long.MAX_VALUE} for no bound
+   */
+  public TimeRangeFilter(long since, long until) {
+    if (since > until) {
+      throw new IllegalArgumentException("since is after until: " + since + " > " + until);
+    }
+    this.since = since;
+    this.until = until;
+  }
+
+  /**
+   * Gets the earliest timestamp kept by this filter
+   *
+   * @return the timestamp in milliseconds since the epoch (inclusive)
+   */
+  public long getSince() {
+    return since;
+  }
+
+  /**
+   * Gets the timestamp at which this filter stops keeping events
+   *
+   * @return the timestamp in milliseconds since the epoch (exclusive)
+   */
+  public long getUntil() {
+    return until;
+  }
+
+  @Override
+  public String getFieldName() {
+    return PatternNames.DATE;
+  }
+
+  @Override
+  public boolean accept(CharSequence input, int start, int end, PatternInfo info) {
+    long timestamp = DateParser.parseTimestamp(input, start, end, info);
+    return timestamp != FixedDateFormat.INVALID && timestamp >= since && timestamp < until;
+  }
+
+  @Override
+  public String toString() {
+    return "timestamp in [" + since + ", " + until + ")";
+  }
+}
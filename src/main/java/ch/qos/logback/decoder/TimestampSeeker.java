@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2012, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import ch.qos.logback.core.pattern.parser2.FixedDateFormat;
+
+/**
+ * A {@code TimestampSeeker} finds the first event at or after a given time
+ * in a log file by binary search over its byte offsets. Each probe is
+ * realigned to the start of the next event, and only the date of that
+ * event's first line is parsed, so a seek reads a few lines per halving
+ * of the file rather than the whole file.
+ *
+ * <p>The events of the file must be in time order (as logback writes
+ * them), and the layout must have a {@link CompiledLayout#hasLeadingDate()
+ * leading date}. Events whose date cannot be read are treated as earlier
+ * than any time sought.</p>
+ */
+class TimestampSeeker {
+  private final MappedFileSource source;
+  private final Decoder decoder;
+  private final long dataStart;
+
+  /**
+   * Constructs a {@code TimestampSeeker}
+   *
+   * @param source the file to search
+   * @param decoder the decoder whose layout identifies event starts and dates
+   * @param dataStart the offset of the first event (i.e., after any header)
+   */
+  TimestampSeeker(MappedFileSource source, Decoder decoder, long dataStart) {
+    this.source = source;
+    this.decoder = decoder;
+    this.dataStart = dataStart;
+  }
+
+  /**
+   * Finds the first event whose timestamp is at or after a given time
+   *
+   * @param timestamp the time to seek, in milliseconds since the epoch
+   * @return the offset of the event; or the size of the file if all
+   * events are earlier
+   */
+  long seek(long timestamp) {
+    // invariant: events that start before lo are earlier than timestamp,
+    // hi is either the end of the file or an event at or after it, and
+    // no event starts between probeHi and hi
+    long lo = dataStart;
+    long hi = source.size();
+    long probeHi = hi;
+
+    while (lo < probeHi) {
+      long mid = lo + (probeHi - lo) / 2;
+      long start = nextEventStart(mid, probeHi);
+      if (start == probeHi) {
+        // no event starts in the upper half (e.g., it is the tail of a
+        // long stack trace), so only the lower half is left to probe
+        probeHi = mid;
+      } else if (timestampAt(start) >= timestamp) {
+        hi = start;
+        probeHi = start;
+      } else {
+        lo = start + 1;
+      }
+    }
+    return hi;
+  }
+
+  /**
+   * Finds the start of the first event that begins at or after a given
+   * offset. If the offset is in the middle of a line, the search starts
+   * at the following line.
+   *
+   * @param position the offset from which to search
+   * @param limit the offset at which to stop
+   * @return the offset of the event; or {@code limit} if no event starts
+   * before it
+   */
+  long nextEventStart(long position, long limit) {
+    long lineStart = position;
+    if (position > 0 && source.get(position - 1) != '\n') {
+      long lf = source.indexOf('\n', position);
+      lineStart = lf < 0 ? limit : lf + 1;
+    }
+
+    while (lineStart < limit) {
+      source.position(lineStart);
+      CharSequence line = source.readLine();
+      if (decoder.isEventStart(line)) {
+        return lineStart;
+      }
+      lineStart = source.position();
+    }
+    return limit;
+  }
+
+  /**
+   * Reads the timestamp of the event that starts at a given offset
+   *
+   * @return the timestamp; or {@link FixedDateFormat#INVALID} (which is
+   * earlier than any other timestamp) if it cannot be read
+   */
+  private long timestampAt(long offset) {
+    source.position(offset);
+    return decoder.readTimestamp(source.readLine());
+  }
+}
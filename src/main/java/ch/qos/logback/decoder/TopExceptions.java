@@ -0,0 +1,448 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A {@code TopExceptions} finds the most frequent exceptions of a log in
+ * one pass. The stack trace of each event (from the exception field of
+ * the layout, or else from the lines of the message) is reduced to an
+ * {@link ExceptionFingerprint}, and the fingerprints are counted with the
+ * Space-Saving algorithm: at most {@link #getCapacity() capacity}
+ * fingerprints are tracked, and when an untracked one is seen, it takes
+ * the place of the tracked one with the lowest count, inheriting that
+ * count as its {@link Entry#getError() error}. Any fingerprint that
+ * occurs more than {@code n / capacity} times in {@code n} traces is
+ * tracked, and no count is understated.
+ * <pre>
+ * TopExceptions top = new TopExceptions();
+ * decoder.decode(file, top.getBatch(), top);
+ * top.writeText(System.out);
+ * </pre>
+ * Only the first trace of each fingerprint is kept (as a sample, cut to
+ * {@link #MAX_SAMPLE_LENGTH} chars), so memory use is bounded by the
+ * capacity, however many traces the log holds.
+ */
+public class TopExceptions implements EventBatchHandler {
+  /** Number of events decoded per batch */
+  public static final int BATCH_SIZE = 1024;
+
+  /** Default number of tracked fingerprints */
+  public static final int DEFAULT_CAPACITY = 256;
+
+  /** Default number of frames in a fingerprint */
+  public static final int DEFAULT_FRAMES = 5;
+
+  /** Maximum length of the sample trace of a fingerprint */
+  public static final int MAX_SAMPLE_LENGTH = 4096;
+
+  /** Number of fingerprints listed by {@link #writeText(PrintStream)} */
+  static final int TEXT_TOP_COUNT = 10;
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final EventBatch batch = new EventBatch(BATCH_SIZE);
+  private final ExceptionFingerprint fingerprint;
+  private final int capacity;
+  private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+  // min-heap of the tracked entries by count
+  private final Entry[] heap;
+  private int size;
+  private long eventCount;
+  private long exceptionCount;
+
+  /**
+   * Constructs a {@code TopExceptions} that tracks
+   * {@link #DEFAULT_CAPACITY} fingerprints of {@link #DEFAULT_FRAMES}
+   * frames, without line numbers
+   */
+  public TopExceptions() {
+    this(DEFAULT_CAPACITY, DEFAULT_FRAMES, false);
+  }
+
+  /**
+   * Constructs a {@code TopExceptions}
+   *
+   * @param capacity the maximum number of tracked fingerprints
+   * @param maxFrames the number of frames in a fingerprint
+   * @param keepLineNumbers true to tell apart frames that differ only
+   * in their line numbers; otherwise false
+   */
+  public TopExceptions(int capacity, int maxFrames, boolean keepLineNumbers) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.heap = new Entry[capacity];
+    this.fingerprint = new ExceptionFingerprint(maxFrames, keepLineNumbers);
+  }
+
+  /**
+   * Gets the batch to decode the events into
+   *
+   * @return the batch
+   */
+  public EventBatch getBatch() {
+    return batch;
+  }
+
+  /**
+   * Gets the maximum number of tracked fingerprints
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Counts the stack traces of the events of a batch. The trace of an
+   * event is read from the exception column of the batch, or else from
+   * its message.
+   *
+   * @param batch the batch to read
+   */
+  @Override
+  public void handle(EventBatch batch) {
+    long[] timestamps = batch.getTimestamps();
+    CharBuffer exceptions = CharBuffer.wrap(batch.getExceptionChars());
+    CharBuffer messages = CharBuffer.wrap(batch.getMessageChars());
+    for (int i = 0; i < batch.size(); i++) {
+      int start = batch.getExceptionStart(i);
+      int end = batch.getExceptionEnd(i);
+      if (start < end) {
+        add(timestamps[i], exceptions, start, end);
+      } else {
+        add(timestamps[i], messages, batch.getMessageStart(i), batch.getMessageEnd(i));
+      }
+    }
+  }
+
+  /**
+   * Counts the stack trace of an event, if it has one
+   *
+   * @param timestamp the timestamp of the event, in milliseconds since
+   * the epoch
+   * @param s the sequence containing the text of the trace
+   * @param start index of the first char of the text
+   * @param end index after the last char of the text
+   * @return true if the text holds a stack trace; otherwise false
+   */
+  public boolean add(long timestamp, CharSequence s, int start, int end) {
+    eventCount++;
+    if (!fingerprint.parse(s, start, end)) {
+      return false;
+    }
+    exceptionCount++;
+
+    Long hash = fingerprint.getHash();
+    Entry entry = entries.get(hash);
+    if (entry != null) {
+      entry.count++;
+      entry.firstSeen = Math.min(entry.firstSeen, timestamp);
+      entry.lastSeen = Math.max(entry.lastSeen, timestamp);
+      siftDown(entry.heapIndex);
+
+    } else if (size < capacity) {
+      entry = new Entry();
+      entry.track(hash, fingerprint, 0, timestamp, s, start, end);
+      entries.put(hash, entry);
+      heap[size] = entry;
+      entry.heapIndex = size++;
+      siftUp(entry.heapIndex);
+
+    } else {
+      // replace the entry with the lowest count
+      entry = heap[0];
+      entries.remove(entry.hash);
+      entry.track(hash, fingerprint, entry.count, timestamp, s, start, end);
+      entries.put(hash, entry);
+      siftDown(0);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the number of events read
+   *
+   * @return the number of events
+   */
+  public long getEventCount() {
+    return eventCount;
+  }
+
+  /**
+   * Gets the number of events that have a stack trace
+   *
+   * @return the number of events
+   */
+  public long getExceptionCount() {
+    return exceptionCount;
+  }
+
+  /**
+   * Gets the tracked fingerprints
+   *
+   * @return the entries, highest count first
+   */
+  public List<Entry> getTop() {
+    List<Entry> list = new ArrayList<Entry>(Arrays.asList(heap).subList(0, size));
+    Collections.sort(list, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry a, Entry b) {
+        return a.count != b.count ? Long.compare(b.count, a.count) : Long.compare(a.firstSeen, b.firstSeen);
+      }
+    });
+    return list;
+  }
+
+  /**
+   * Writes a compact report of the most frequent fingerprints, with
+   * their frames
+   *
+   * @param out the stream to write to
+   */
+  public void writeText(PrintStream out) {
+    SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    List<Entry> top = getTop();
+
+    out.printf("events     %d (%d with exceptions, %d undecodable, %d rejected)%n", eventCount, exceptionCount,
+        batch.getUndecodableCount(), batch.getRejectedCount());
+    out.printf("exceptions %d%s%n", size, size > TEXT_TOP_COUNT ? ", top " + TEXT_TOP_COUNT : "");
+    for (Entry entry : top.subList(0, Math.min(TEXT_TOP_COUNT, top.size()))) {
+      out.printf("  %10d  %s", entry.count, entry.exceptionClass);
+      if (!entry.rootCauseClass.equals(entry.exceptionClass)) {
+        out.printf(" (root cause %s)", entry.rootCauseClass);
+      }
+      out.println();
+      if (entry.error > 0) {
+        out.printf("              count may be high by %d%n", entry.error);
+      }
+      out.printf("              seen %s to %s%n", timeFormat.format(new Date(entry.firstSeen)),
+          timeFormat.format(new Date(entry.lastSeen)));
+      for (String frame : entry.frames) {
+        out.printf("              at %s%n", frame);
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes all tracked fingerprints, with their samples, as one JSON
+   * object
+   *
+   * @param out the stream to write to (not closed)
+   * @throws IOException an error occurred while writing
+   */
+  public void writeJson(OutputStream out) throws IOException {
+    JsonGenerator g = FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+    g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    g.writeStartObject();
+    g.writeNumberField("events", eventCount);
+    g.writeNumberField("exceptions", exceptionCount);
+    g.writeNumberField("undecodable", batch.getUndecodableCount());
+    g.writeNumberField("rejected", batch.getRejectedCount());
+    g.writeArrayFieldStart("top");
+    for (Entry entry : getTop()) {
+      g.writeStartObject();
+      g.writeStringField("exception", entry.exceptionClass);
+      g.writeStringField("rootCause", entry.rootCauseClass);
+      g.writeNumberField("count", entry.count);
+      g.writeNumberField("error", entry.error);
+      g.writeNumberField("first", entry.firstSeen);
+      g.writeNumberField("last", entry.lastSeen);
+      g.writeArrayFieldStart("frames");
+      for (String frame : entry.frames) {
+        g.writeString(frame);
+      }
+      g.writeEndArray();
+      g.writeStringField("sample", entry.sample);
+      g.writeEndObject();
+    }
+    g.writeEndArray();
+    g.writeEndObject();
+    g.writeRaw('\n');
+    g.flush();
+  }
+
+  private void siftUp(int index) {
+    Entry entry = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (heap[parent].count <= entry.count) {
+        break;
+      }
+      place(heap[parent], index);
+      index = parent;
+    }
+    place(entry, index);
+  }
+
+  private void siftDown(int index) {
+    Entry entry = heap[index];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+        child++;
+      }
+      if (entry.count <= heap[child].count) {
+        break;
+      }
+      place(heap[child], index);
+      index = child;
+    }
+    place(entry, index);
+  }
+
+  private void place(Entry entry, int index) {
+    heap[index] = entry;
+    entry.heapIndex = index;
+  }
+
+  /**
+   * A tracked fingerprint
+   */
+  public static final class Entry {
+    private long hash;
+    private String exceptionClass;
+    private String rootCauseClass;
+    private List<String> frames;
+    private String sample;
+    private long count;
+    private long error;
+    private long firstSeen;
+    private long lastSeen;
+    private int heapIndex;
+
+    private Entry() {
+    }
+
+    /**
+     * Starts tracking the last parsed fingerprint in this entry
+     */
+    private void track(long hash, ExceptionFingerprint fingerprint, long error, long timestamp,
+        CharSequence s, int start, int end) {
+      this.hash = hash;
+      this.exceptionClass = fingerprint.getExceptionClass();
+      this.rootCauseClass = fingerprint.getRootCauseClass();
+      this.frames = Collections.unmodifiableList(fingerprint.getFrames());
+      this.sample = s.subSequence(start, Math.min(end, start + MAX_SAMPLE_LENGTH)).toString();
+      this.count = error + 1;
+      this.error = error;
+      this.firstSeen = timestamp;
+      this.lastSeen = timestamp;
+    }
+
+    /**
+     * Gets the class of the exception (the outermost one if it has causes)
+     *
+     * @return the class name
+     */
+    public String getExceptionClass() {
+      return exceptionClass;
+    }
+
+    /**
+     * Gets the class of the root cause of the exception
+     *
+     * @return the class name (the same as {@link #getExceptionClass()}
+     * if the exception has no cause)
+     */
+    public String getRootCauseClass() {
+      return rootCauseClass;
+    }
+
+    /**
+     * Gets the top frames of the trace
+     *
+     * @return the frames, without their leading {@code "at "}
+     * @see ExceptionFingerprint#getFrames()
+     */
+    public List<String> getFrames() {
+      return frames;
+    }
+
+    /**
+     * Gets the first trace that was counted for this fingerprint
+     *
+     * @return the text of the trace, cut to {@link #MAX_SAMPLE_LENGTH}
+     * chars
+     */
+    public String getSample() {
+      return sample;
+    }
+
+    /**
+     * Gets the number of traces counted for this fingerprint
+     *
+     * @return the count, which may be high by up to {@link #getError()}
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Gets the most by which {@link #getCount()} may be high, which is
+     * the count of the fingerprint this one replaced
+     *
+     * @return the error (0 if the count is exact)
+     */
+    public long getError() {
+      return error;
+    }
+
+    /**
+     * Gets the earliest timestamp of the traces of this fingerprint since
+     * it was last tracked
+     *
+     * @return the timestamp in milliseconds since the epoch
+     */
+    public long getFirstSeen() {
+      return firstSeen;
+    }
+
+    /**
+     * Gets the latest timestamp of the traces of this fingerprint
+     *
+     * @return the timestamp in milliseconds since the epoch
+     */
+    public long getLastSeen() {
+      return lastSeen;
+    }
+
+    @Override
+    public String toString() {
+      return count + " " + exceptionClass + (rootCauseClass.equals(exceptionClass) ? "" : " <- " + rootCauseClass);
+    }
+  }
+}
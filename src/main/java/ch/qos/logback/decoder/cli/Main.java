@@ -13,20 +13,55 @@
 package ch.qos.logback.decoder.cli;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.decoder.ArchiveDecoder;
 import ch.qos.logback.decoder.BufferDecoder;
+import ch.qos.logback.decoder.ColumnarReader;
+import ch.qos.logback.decoder.ColumnarWriter;
+import ch.qos.logback.decoder.EventBatch;
+import ch.qos.logback.decoder.EventBatchHandler;
+import ch.qos.logback.decoder.FollowingFileDecoder;
+import ch.qos.logback.decoder.ILoggingEventHandler;
+import ch.qos.logback.decoder.JsonLinesWriter;
+import ch.qos.logback.decoder.LogFiles;
+import ch.qos.logback.decoder.LogIndex;
+import ch.qos.logback.decoder.LogStats;
+import ch.qos.logback.decoder.MappedFileDecoder;
+import ch.qos.logback.decoder.MergingFileDecoder;
+import ch.qos.logback.decoder.ParallelFileDecoder;
+import ch.qos.logback.decoder.PatternNames;
+import ch.qos.logback.decoder.TopExceptions;
 
 /**
  * Provides application entry point
  */
 public final class Main {
+  /** Fields decoded by --stats */
+  private static final Set<String> STATS_FIELDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+      PatternNames.DATE, PatternNames.LEVEL, PatternNames.LOGGER_NAME, PatternNames.THREAD_NAME)));
+
+  /** Fields decoded by --top-exceptions */
+  private static final Set<String> TOP_EXCEPTIONS_FIELDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+      PatternNames.DATE, PatternNames.MESSAGE, PatternNames.EXCEPTION, PatternNames.EXT_EXCEPTION,
+      PatternNames.ROOT_EXCEPTION)));
 
   /**
    * Constructor not called
@@ -55,23 +90,281 @@ public final class Main {
           enableVerboseLogging();
         }
 
-        BufferDecoder decoder = new BufferDecoder();
-        decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+        ILoggingEventHandler handler = newEventHandler(mainArgs);
+        boolean hasInputFile = !StringUtils.defaultString(mainArgs.getInputFile()).isEmpty();
+        List<File> files = hasInputFile ? resolveInputFiles(mainArgs) : null;
 
-        BufferedReader reader = null;
-        if (StringUtils.defaultString(mainArgs.getInputFile()).isEmpty()) {
-          reader = new BufferedReader(new InputStreamReader(System.in));
-        } else {
-          reader = new BufferedReader(new FileReader(mainArgs.getInputFile()));
-        }
+        try {
+          if (mainArgs.isBuildIndex()) {
+            buildIndex(mainArgs);
+
+          } else if (mainArgs.getStatsFormat() != null) {
+            printStats(mainArgs, files);
+
+          } else if (mainArgs.getTopExceptionsFormat() != null) {
+            printTopExceptions(mainArgs, files);
+
+          } else if (mainArgs.isFollow()) {
+            // decode the events appended to the file until interrupted
+            FollowingFileDecoder decoder = new FollowingFileDecoder();
+            decoder.setFields(mainArgs.getFields());
+            decoder.setFilters(mainArgs.getFilters());
+            decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+            decoder.setFlushDelay(mainArgs.getFlushDelay());
+            decoder.follow(new File(mainArgs.getInputFile()), handler);
+
+          } else if (hasInputFile && mainArgs.isMerge()) {
+            // decode the files concurrently, and merge their events by timestamp
+            int threads = mainArgs.getThreads() > 1 ? mainArgs.getThreads() : Runtime.getRuntime().availableProcessors();
+            MergingFileDecoder decoder = new MergingFileDecoder(threads);
+            decoder.setFields(mainArgs.getFields());
+            decoder.setFilters(mainArgs.getFilters());
+            decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+            decoder.decode(files, handler);
+
+          } else if (hasInputFile && files.size() == 1 && ColumnarReader.isColumnar(files.get(0))) {
+            // read the events stored by --output columnar, filtering on their columns
+            ColumnarReader reader = new ColumnarReader();
+            reader.setFilters(mainArgs.getFilters());
+            reader.read(files.get(0), handler);
+
+          } else if (hasInputFile && needsArchiveDecoder(files)) {
+            // inflate compressed files on the fly, and decode several files as one
+            ArchiveDecoder decoder = new ArchiveDecoder();
+            decoder.setFields(mainArgs.getFields());
+            decoder.setFilters(mainArgs.getFilters());
+            decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+            decoder.decode(files, handler);
+
+          } else if (hasInputFile && mainArgs.getThreads() > 1) {
+            ParallelFileDecoder decoder = new ParallelFileDecoder(mainArgs.getThreads());
+            decoder.setFields(mainArgs.getFields());
+            decoder.setFilters(mainArgs.getFilters());
+            decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+            decoder.decode(files.get(0), handler);
 
-        decoder.decode(reader);
+          } else if (hasInputFile) {
+            // decode the file in place through a memory mapping
+            MappedFileDecoder decoder = new MappedFileDecoder();
+            decoder.setFields(mainArgs.getFields());
+            decoder.setFilters(mainArgs.getFilters());
+            decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+            File file = files.get(0);
+            LogIndex index = mainArgs.getFilters().isEmpty() ? null : loadIndex(file);
+            if (index != null) {
+              // skip the blocks in which no event can pass the filters
+              decoder.decode(file, index, handler);
+            } else if (mainArgs.hasTimeRange()) {
+              // seek to the range instead of decoding the whole file
+              decoder.decode(file, mainArgs.getSince(), mainArgs.getUntil(), handler);
+            } else {
+              decoder.decode(file, handler);
+            }
+
+          } else {
+            BufferDecoder decoder = new BufferDecoder();
+            decoder.setFields(mainArgs.getFields());
+            decoder.setFilters(mainArgs.getFilters());
+            decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+
+            // decode one event at a time so that output starts immediately
+            // and memory use does not grow with the size of the input
+            try {
+              decoder.decode(reader, handler);
+            } finally {
+              reader.close();
+            }
+          }
+        } finally {
+          if (handler instanceof Closeable) {
+            // flushes buffered output
+            ((Closeable) handler).close();
+          }
+        }
       }
     } catch (Exception e) {
       System.err.println("error: " + e.getMessage());
     }
   }
 
+  /**
+   * Counts the events of the input per level, logger, thread and minute,
+   * and prints the counts
+   *
+   * @param mainArgs the command-line arguments
+   * @param files the input files; or {@code null} to read stdin
+   * @throws IOException an error occurred while reading the input
+   */
+  static private void printStats(MainArgs mainArgs, List<File> files) throws IOException {
+    LogStats stats = new LogStats();
+    decodeBatches(mainArgs, files, STATS_FIELDS, stats.getBatch(), stats, "--stats");
+
+    if ("json".equals(mainArgs.getStatsFormat())) {
+      stats.writeJson(System.out);
+    } else {
+      stats.writeText(System.out);
+    }
+  }
+
+  /**
+   * Counts the stack traces of the input by fingerprint, and prints the
+   * most frequent ones
+   *
+   * @param mainArgs the command-line arguments
+   * @param files the input files; or {@code null} to read stdin
+   * @throws IOException an error occurred while reading the input
+   */
+  static private void printTopExceptions(MainArgs mainArgs, List<File> files) throws IOException {
+    TopExceptions top = new TopExceptions(TopExceptions.DEFAULT_CAPACITY, mainArgs.getFrames(),
+        mainArgs.isKeepLineNumbers());
+    decodeBatches(mainArgs, files, TOP_EXCEPTIONS_FIELDS, top.getBatch(), top, "--top-exceptions");
+
+    if ("json".equals(mainArgs.getTopExceptionsFormat())) {
+      top.writeJson(System.out);
+    } else {
+      top.writeText(System.out);
+    }
+  }
+
+  /**
+   * Decodes the input into batches of events
+   *
+   * @param mainArgs the command-line arguments
+   * @param files the input files; or {@code null} to read stdin
+   * @param fields the fields to decode
+   * @param batch the batch to fill
+   * @param handler the handler to receive each filled batch
+   * @param option the option that was given (for error messages)
+   * @throws IOException an error occurred while reading the input
+   */
+  static private void decodeBatches(MainArgs mainArgs, List<File> files, Set<String> fields,
+      EventBatch batch, EventBatchHandler handler, String option) throws IOException {
+    if (files != null && files.size() == 1 && ColumnarReader.isColumnar(files.get(0))) {
+      throw new IOException(option + " cannot read columnar files");
+
+    } else if (files != null && needsArchiveDecoder(files)) {
+      ArchiveDecoder decoder = new ArchiveDecoder();
+      decoder.setFields(fields);
+      decoder.setFilters(mainArgs.getFilters());
+      decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+      decoder.decode(files, batch, handler);
+
+    } else if (files != null) {
+      MappedFileDecoder decoder = new MappedFileDecoder();
+      decoder.setFields(fields);
+      decoder.setFilters(mainArgs.getFilters());
+      decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+      decoder.decode(files.get(0), batch, handler);
+
+    } else {
+      BufferDecoder decoder = new BufferDecoder();
+      decoder.setFields(fields);
+      decoder.setFilters(mainArgs.getFilters());
+      decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+      BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+      try {
+        decoder.decode(reader, batch, handler);
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Creates the handler that receives each event as it is decoded
+   *
+   * @param mainArgs the command-line arguments
+   * @return the event handler
+   * @throws IOException an error occurred while opening the output
+   */
+  static private ILoggingEventHandler newEventHandler(final MainArgs mainArgs) throws IOException {
+    if ("jsonl".equals(mainArgs.getOutputFormat())) {
+      JsonLinesWriter writer = new JsonLinesWriter(new FileOutputStream(FileDescriptor.out));
+      // show events as they are appended rather than when the buffer fills
+      writer.setAutoFlush(mainArgs.isFollow());
+      return writer;
+    }
+    if ("columnar".equals(mainArgs.getOutputFormat())) {
+      return new ColumnarWriter(new FileOutputStream(FileDescriptor.out));
+    }
+    return new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        if (mainArgs.isVerbose()) {
+          System.out.println(event);
+        }
+      }
+    };
+  }
+
+  /**
+   * Resolves the input file arguments, which may name directories or
+   * glob patterns, to the files to decode
+   *
+   * @param mainArgs the command-line arguments
+   * @return the input files (at least one)
+   * @throws IOException an error occurred while listing a directory
+   * @throws FileNotFoundException no file matches the arguments
+   */
+  static private List<File> resolveInputFiles(MainArgs mainArgs) throws IOException {
+    List<File> files = LogFiles.resolve(mainArgs.getInputFiles());
+    if (files.isEmpty()) {
+      throw new FileNotFoundException("no input files match " + mainArgs.getInputFiles());
+    }
+    return files;
+  }
+
+  /**
+   * Determines whether the input files must be decoded by an
+   * {@link ArchiveDecoder} rather than from a memory mapping
+   *
+   * @param files the input files
+   * @return true if there are several files or any is compressed
+   */
+  static private boolean needsArchiveDecoder(List<File> files) {
+    return files.size() > 1 || ArchiveDecoder.isArchive(files.get(0));
+  }
+
+  /**
+   * Builds the index of the input file, or extends its existing index,
+   * and writes it to the sidecar file of the input file
+   *
+   * @param mainArgs the command-line arguments
+   * @throws IOException an error occurred while reading the input file
+   * or writing the index
+   */
+  static private void buildIndex(MainArgs mainArgs) throws IOException {
+    File file = new File(mainArgs.getInputFile());
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setLayoutPattern(mainArgs.getLayoutPattern());
+
+    LogIndex index = decoder.buildIndex(file, loadIndex(file));
+    File indexFile = LogIndex.sidecarFile(file);
+    index.write(indexFile);
+    System.out.println("indexed " + index.getEventCount() + " events in "
+        + index.getBlockCount() + " blocks: " + indexFile);
+  }
+
+  /**
+   * Loads the index in the sidecar file of a log file
+   *
+   * @param file the log file
+   * @return the index or {@code null} if there is none or it cannot be read
+   */
+  static private LogIndex loadIndex(File file) {
+    File indexFile = LogIndex.sidecarFile(file);
+    if (!indexFile.isFile()) {
+      return null;
+    }
+    try {
+      return LogIndex.load(indexFile);
+    } catch (IOException e) {
+      LoggerFactory.getLogger(Main.class).debug("cannot read index: {}", e.getMessage());
+      return null;
+    }
+  }
+
   static private void enableVerboseLogging() {
     ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger)LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
     root.setLevel(Level.TRACE);
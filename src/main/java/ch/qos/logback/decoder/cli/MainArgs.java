@@ -12,7 +12,16 @@
  */
 package ch.qos.logback.decoder.cli;
 
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -25,6 +34,15 @@ import org.apache.commons.cli.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.decoder.FieldFilter;
+import ch.qos.logback.decoder.FollowingFileDecoder;
+import ch.qos.logback.decoder.LoggerPrefixFilter;
+import ch.qos.logback.decoder.MinLevelFilter;
+import ch.qos.logback.decoder.PatternNames;
+import ch.qos.logback.decoder.TimeRangeFilter;
+import ch.qos.logback.decoder.TopExceptions;
+
 /**
  * Utility to parse and hold arguments from the command line
  */
@@ -32,16 +50,37 @@ public class MainArgs {
   static private final String VERSION_NUMBER = "0.1.0";
   static private final String APPNAME = "logback-decoder";
   static private final String VERSION_STRING = APPNAME + " (Version " + VERSION_NUMBER + ")";
+  static private final String[] TIME_FORMATS = {
+    "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd HH:mm:ss.SSS",
+    "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss",
+    "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd HH:mm",
+    "yyyy-MM-dd",
+  };
 
   private final Logger logger;
   private String layoutPattern;
   private String inputFile;
+  private List<String> inputFiles = Collections.emptyList();
   private boolean verbose;
   private boolean debugMode;
   private Properties props;
   private Options options;
   private boolean queriedHelp;
   private boolean queriedVersion;
+  private int threads = 1;
+  private Set<String> fields;
+  private List<FieldFilter> filters = new ArrayList<FieldFilter>();
+  private boolean buildIndex;
+  private boolean follow;
+  private long flushDelay = FollowingFileDecoder.DEFAULT_FLUSH_DELAY;
+  private boolean merge;
+  private String outputFormat;
+  private String statsFormat;
+  private String topExceptionsFormat;
+  private int frames = TopExceptions.DEFAULT_FRAMES;
+  private boolean keepLineNumbers;
+  private long since = Long.MIN_VALUE;
+  private long until = Long.MAX_VALUE;
 
   /**
    * Constructs a {@code MainArgs} with the given arguments
@@ -62,6 +101,13 @@ public class MainArgs {
    */
   public String getInputFile() { return inputFile; }
 
+  /**
+   * Gets the paths to all log files for parsing, in the order given
+   *
+   * @return the file paths (empty to parse stdin)
+   */
+  public List<String> getInputFiles() { return inputFiles; }
+
   /**
    * Gets the layout pattern to use to parse the log file
    * (only used if file does not contain pattern header)
@@ -70,6 +116,120 @@ public class MainArgs {
    */
   public String getLayoutPattern() { return layoutPattern; }
 
+  /**
+   * Gets the number of threads to decode with
+   *
+   * @return the number of threads (at least 1)
+   */
+  public int getThreads() { return threads; }
+
+  /**
+   * Gets the fields to decode
+   *
+   * @return the pattern names of the fields; or {@code null} to decode
+   * all fields
+   */
+  public Set<String> getFields() { return fields; }
+
+  /**
+   * Gets the filters that decoded events must pass
+   *
+   * @return the filters (empty to keep all events)
+   */
+  public List<FieldFilter> getFilters() { return filters; }
+
+  /**
+   * Determines whether to build the index of the input file instead of
+   * decoding it
+   *
+   * @return true if --build-index was given; otherwise false
+   */
+  public boolean isBuildIndex() { return buildIndex; }
+
+  /**
+   * Determines whether to follow the input file as it grows
+   *
+   * @return true if --follow was given; otherwise false
+   */
+  public boolean isFollow() { return follow; }
+
+  /**
+   * Gets the time to wait for continuation lines of the last event
+   * while following the input file
+   *
+   * @return the delay in milliseconds
+   */
+  public long getFlushDelay() { return flushDelay; }
+
+  /**
+   * Determines whether to merge the events of the input files by timestamp
+   *
+   * @return true if --merge was given; otherwise false
+   */
+  public boolean isMerge() { return merge; }
+
+  /**
+   * Gets the format in which to write decoded events to stdout
+   *
+   * @return the format ("jsonl" or "columnar"); or {@code null} if not specified
+   */
+  public String getOutputFormat() { return outputFormat; }
+
+  /**
+   * Gets the format in which to print the statistics of the input
+   *
+   * @return the format ("text" or "json"); or {@code null} if --stats
+   * was not given
+   */
+  public String getStatsFormat() { return statsFormat; }
+
+  /**
+   * Gets the format in which to print the most frequent exceptions of
+   * the input
+   *
+   * @return the format ("text" or "json"); or {@code null} if
+   * --top-exceptions was not given
+   */
+  public String getTopExceptionsFormat() { return topExceptionsFormat; }
+
+  /**
+   * Gets the number of stack frames that identify an exception
+   *
+   * @return the number of frames
+   */
+  public int getFrames() { return frames; }
+
+  /**
+   * Determines whether frames that differ only in their line numbers
+   * identify different exceptions
+   *
+   * @return true if --keep-line-numbers was given; otherwise false
+   */
+  public boolean isKeepLineNumbers() { return keepLineNumbers; }
+
+  /**
+   * Gets the earliest timestamp to decode
+   *
+   * @return the timestamp in milliseconds since the epoch (inclusive);
+   * or {@code Long.MIN_VALUE} if not specified
+   */
+  public long getSince() { return since; }
+
+  /**
+   * Gets the timestamp at which to stop decoding
+   *
+   * @return the timestamp in milliseconds since the epoch (exclusive);
+   * or {@code Long.MAX_VALUE} if not specified
+   */
+  public long getUntil() { return until; }
+
+  /**
+   * Determines whether a time range was specified
+   *
+   * @return true if --since or --until was given; otherwise false
+   */
+  public boolean hasTimeRange() { return since != Long.MIN_VALUE || until != Long.MAX_VALUE; }
+
   /**
    * Determines whether debug mode was set
    *
@@ -153,11 +313,123 @@ public class MainArgs {
     Option infile = OptionBuilder
                               .withArgName("path")
                               .hasArg()
-                              .withDescription("Log file to parse (default: stdin)")
+                              .withDescription("Log file, directory or glob to parse (default: stdin); may be repeated, and files may be .gz or .zip archives")
                               .withLongOpt("input-file")
                               .create("f");
     opts.addOption(infile);
 
+    Option threads = OptionBuilder
+                              .withArgName("count")
+                              .hasArg()
+                              .withDescription("Number of threads to decode input file with (default: 1)")
+                              .withLongOpt("threads")
+                              .create();
+    opts.addOption(threads);
+
+    Option fields = OptionBuilder
+                              .withArgName("names")
+                              .hasArg()
+                              .withDescription("Comma-separated fields to decode, e.g., level,logger,date (default: all)")
+                              .withLongOpt("fields")
+                              .create();
+    opts.addOption(fields);
+
+    Option minLevel = OptionBuilder
+                              .withArgName("level")
+                              .hasArg()
+                              .withDescription("Only decode events at this level or higher")
+                              .withLongOpt("min-level")
+                              .create();
+    opts.addOption(minLevel);
+
+    Option loggerPrefix = OptionBuilder
+                              .withArgName("prefix")
+                              .hasArg()
+                              .withDescription("Only decode events whose logger name starts with prefix")
+                              .withLongOpt("logger-prefix")
+                              .create();
+    opts.addOption(loggerPrefix);
+
+    Option since = OptionBuilder
+                              .withArgName("time")
+                              .hasArg()
+                              .withDescription("Only decode events at or after time (yyyy-MM-dd[ HH:mm[:ss[.SSS]]] or epoch millis)")
+                              .withLongOpt("since")
+                              .create();
+    opts.addOption(since);
+
+    Option until = OptionBuilder
+                              .withArgName("time")
+                              .hasArg()
+                              .withDescription("Only decode events before time")
+                              .withLongOpt("until")
+                              .create();
+    opts.addOption(until);
+
+    Option buildIndex = OptionBuilder
+                              .withDescription("Build (or extend) the index of the input file in a sidecar file, and exit")
+                              .withLongOpt("build-index")
+                              .create();
+    opts.addOption(buildIndex);
+
+    Option follow = OptionBuilder
+                              .withDescription("Follow the input file, decoding events as they are appended (across rotations)")
+                              .withLongOpt("follow")
+                              .create("F");
+    opts.addOption(follow);
+
+    Option flushDelay = OptionBuilder
+                              .withArgName("millis")
+                              .hasArg()
+                              .withDescription("Time to wait for continuation lines of the last event with --follow (default: " + FollowingFileDecoder.DEFAULT_FLUSH_DELAY + ")")
+                              .withLongOpt("flush-delay")
+                              .create();
+    opts.addOption(flushDelay);
+
+    Option merge = OptionBuilder
+                              .withDescription("Decode the input files concurrently, merging their events by timestamp")
+                              .withLongOpt("merge")
+                              .create();
+    opts.addOption(merge);
+
+    Option output = OptionBuilder
+                              .withArgName("format")
+                              .hasArg()
+                              .withDescription("Write decoded events to stdout in format: jsonl (JSON Lines) or columnar (compact binary, readable with -f)")
+                              .withLongOpt("output")
+                              .create();
+    opts.addOption(output);
+
+    Option stats = OptionBuilder
+                              .withArgName("format")
+                              .hasOptionalArg()
+                              .withDescription("Print event counts per level, logger, thread and minute instead of the events, in format: text (default) or json")
+                              .withLongOpt("stats")
+                              .create();
+    opts.addOption(stats);
+
+    Option topExceptions = OptionBuilder
+                              .withArgName("format")
+                              .hasOptionalArg()
+                              .withDescription("Print the most frequent exceptions (by class, top frames and root cause) instead of the events, in format: text (default) or json")
+                              .withLongOpt("top-exceptions")
+                              .create();
+    opts.addOption(topExceptions);
+
+    Option frames = OptionBuilder
+                              .withArgName("count")
+                              .hasArg()
+                              .withDescription("Number of stack frames that identify an exception for --top-exceptions (default: " + TopExceptions.DEFAULT_FRAMES + ")")
+                              .withLongOpt("frames")
+                              .create();
+    opts.addOption(frames);
+
+    Option keepLineNumbers = OptionBuilder
+                              .withDescription("Tell apart exceptions whose frames differ only in line numbers for --top-exceptions")
+                              .withLongOpt("keep-line-numbers")
+                              .create();
+    opts.addOption(keepLineNumbers);
+
     Option debug = OptionBuilder
                               .withDescription("Enable debug mode")
                               .withLongOpt("debug")
@@ -196,9 +468,95 @@ public class MainArgs {
       verbose = Boolean.valueOf(line.hasOption("verbose"));
       debugMode = Boolean.valueOf(line.hasOption("debug"));
       layoutPattern = line.getOptionValue("layout");
+      buildIndex = line.hasOption("build-index");
+      follow = line.hasOption("follow");
+      merge = line.hasOption("merge");
+      outputFormat = line.getOptionValue("output");
+
+      if (outputFormat != null && !outputFormat.equals("jsonl") && !outputFormat.equals("columnar")) {
+        throw new ParseException("unknown output format: " + outputFormat);
+      }
 
       if (line.hasOption("input-file")) {
         inputFile = line.getOptionValue("input-file");
+        inputFiles = Arrays.asList(line.getOptionValues("input-file"));
+      }
+
+      if (buildIndex && inputFile == null) {
+        throw new ParseException("--build-index requires an input file");
+      }
+
+      if (follow && inputFile == null) {
+        throw new ParseException("--follow requires an input file");
+      }
+
+      if (line.hasOption("flush-delay")) {
+        if (!follow) {
+          throw new ParseException("--flush-delay requires --follow");
+        }
+        flushDelay = parseFlushDelay(line.getOptionValue("flush-delay"));
+      }
+
+      if (merge && inputFile == null) {
+        throw new ParseException("--merge requires input files");
+      }
+
+      if (line.hasOption("stats")) {
+        statsFormat = line.getOptionValue("stats", "text");
+        if (!statsFormat.equals("text") && !statsFormat.equals("json")) {
+          throw new ParseException("unknown stats format: " + statsFormat);
+        }
+        if (buildIndex || follow || outputFormat != null) {
+          throw new ParseException("--stats cannot be combined with --build-index, --follow or --output");
+        }
+      }
+
+      if (line.hasOption("top-exceptions")) {
+        topExceptionsFormat = line.getOptionValue("top-exceptions", "text");
+        if (!topExceptionsFormat.equals("text") && !topExceptionsFormat.equals("json")) {
+          throw new ParseException("unknown top-exceptions format: " + topExceptionsFormat);
+        }
+        if (buildIndex || follow || outputFormat != null || statsFormat != null) {
+          throw new ParseException("--top-exceptions cannot be combined with --build-index, --follow, --output or --stats");
+        }
+      }
+
+      if (line.hasOption("frames")) {
+        frames = parseFrames(line.getOptionValue("frames"));
+      }
+      keepLineNumbers = line.hasOption("keep-line-numbers");
+
+      if ((buildIndex || follow) && inputFiles.size() > 1) {
+        throw new ParseException("--build-index and --follow take a single input file");
+      }
+
+      if (line.hasOption("threads")) {
+        threads = parseThreads(line.getOptionValue("threads"));
+      }
+
+      if (line.hasOption("fields")) {
+        fields = parseFields(line.getOptionValue("fields"));
+      }
+
+      if (line.hasOption("min-level")) {
+        filters.add(new MinLevelFilter(parseLevel(line.getOptionValue("min-level"))));
+      }
+
+      if (line.hasOption("logger-prefix")) {
+        filters.add(new LoggerPrefixFilter(line.getOptionValue("logger-prefix")));
+      }
+
+      if (line.hasOption("since") || line.hasOption("until")) {
+        if (line.hasOption("since")) {
+          since = parseTime(line.getOptionValue("since"));
+        }
+        if (line.hasOption("until")) {
+          until = parseTime(line.getOptionValue("until"));
+        }
+        if (since > until) {
+          throw new ParseException("--since is after --until");
+        }
+        filters.add(new TimeRangeFilter(since, until));
       }
 
       if (line.hasOption('D')) {
@@ -209,5 +567,127 @@ public class MainArgs {
       throw new RuntimeException(exp.getMessage(), exp);
     }
   }
-}
 
+  /**
+   * Parses the frame count from a command-line value
+   *
+   * @param value the value to evaluate
+   * @return the frame count
+   * @throws ParseException the value is not a non-negative integer
+   */
+  private static int parseFrames(String value) throws ParseException {
+    try {
+      int count = Integer.parseInt(value.trim());
+      if (count >= 0) {
+        return count;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    throw new ParseException("invalid frame count: " + value);
+  }
+
+  /**
+   * Parses the flush delay from a command-line value
+   *
+   * @param value the value to evaluate
+   * @return the delay in milliseconds
+   * @throws ParseException the value is not a non-negative integer
+   */
+  private static long parseFlushDelay(String value) throws ParseException {
+    try {
+      long millis = Long.parseLong(value.trim());
+      if (millis >= 0) {
+        return millis;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    throw new ParseException("invalid flush delay: " + value);
+  }
+
+  /**
+   * Parses the thread count from a command-line value
+   *
+   * @param value the value to evaluate
+   * @return the thread count
+   * @throws ParseException the value is not a positive integer
+   */
+  private static int parseThreads(String value) throws ParseException {
+    int count;
+    try {
+      count = Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      count = 0;
+    }
+    if (count < 1) {
+      throw new ParseException("invalid thread count: " + value);
+    }
+    return count;
+  }
+
+  /**
+   * Parses the field names from a command-line value
+   *
+   * @param value the comma-separated names to evaluate
+   * @return the field names
+   * @throws ParseException a name is not a known pattern name
+   */
+  private static Set<String> parseFields(String value) throws ParseException {
+    Set<String> names = new LinkedHashSet<String>();
+    for (String name : value.split(",")) {
+      name = name.trim();
+      if (!PatternNames.asList().contains(name)) {
+        throw new ParseException("invalid field: " + name);
+      }
+      names.add(name);
+    }
+    return names;
+  }
+
+  /**
+   * Parses a log level from a command-line value
+   *
+   * @param value the value to evaluate
+   * @return the level
+   * @throws ParseException the value is not a level name
+   */
+  private static Level parseLevel(String value) throws ParseException {
+    Level level = Level.toLevel(value.trim(), null);
+    if (level == null) {
+      throw new ParseException("invalid level: " + value);
+    }
+    return level;
+  }
+
+  /**
+   * Parses a point in time from a command-line value, which is either a
+   * local date and time (e.g., "2013-07-22 10:15") or milliseconds since
+   * the epoch
+   *
+   * @param value the value to evaluate
+   * @return the time in milliseconds since the epoch
+   * @throws ParseException the value is not a time
+   */
+  static long parseTime(String value) throws ParseException {
+    String text = value.trim();
+    if (!text.isEmpty() && text.matches("\\d+")) {
+      try {
+        return Long.parseLong(text);
+      } catch (NumberFormatException e) {
+        throw new ParseException("invalid time: " + value);
+      }
+    }
+
+    for (String format : TIME_FORMATS) {
+      SimpleDateFormat dateFormat = new SimpleDateFormat(format);
+      dateFormat.setLenient(false);
+      ParsePosition pos = new ParsePosition(0);
+      Date date = dateFormat.parse(text, pos);
+      if (date != null && pos.getIndex() == text.length()) {
+        return date.getTime();
+      }
+    }
+    throw new ParseException("invalid time: " + value);
+  }
+}
@@ -14,6 +14,7 @@ package ch.qos.logback.decoder.regex;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import ch.qos.logback.core.ContextBase;
 import ch.qos.logback.core.CoreConstants;
@@ -67,6 +68,74 @@ public class PatternLayoutRegexUtil {
 
     return patt;
   }
+
+  /**
+   * Converts a layout pattern to a regular expression pattern that only
+   * captures the given fields. The groups of all other converters are
+   * non-capturing, so that matching does not track their bounds.
+   *
+   * @param layoutPattern the layout pattern to be evaluated
+   * @param fields the full pattern names (e.g., "level") of the fields
+   * to capture; or {@code null} to capture all fields
+   * @return the pattern with the log-layout patterns replaced with equivalent regexes
+   */
+  public String toRegex(String layoutPattern, Set<String> fields) {
+    String patt = toRegex(layoutPattern);
+    return fields == null ? patt : uncaptureGroups(patt, fields);
+  }
+
+  /**
+   * Replaces the named groups of a regex that are not in a set of names
+   * with non-capturing groups
+   *
+   * @param regex the regex to evaluate
+   * @param names the names of the groups to keep
+   * @return the modified regex
+   */
+  static String uncaptureGroups(String regex, Set<String> names) {
+    StringBuilder buf = new StringBuilder(regex.length());
+    int i = 0;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+
+      // copy escape sequences as is (e.g., a literal "\(")
+      if (c == '\\' && i + 1 < regex.length()) {
+        buf.append(c).append(regex.charAt(i + 1));
+        i += 2;
+        continue;
+      }
+
+      if (c == '(' && regex.startsWith("(?<", i)) {
+        int end = regex.indexOf('>', i + 3);
+        String name = end < 0 ? "" : regex.substring(i + 3, end);
+        if (isGroupName(name) && !names.contains(name)) {
+          buf.append("(?:");
+          i = end + 1;
+          continue;
+        }
+      }
+
+      buf.append(c);
+      i++;
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Determines whether a string is a valid group name (as opposed to,
+   * e.g., the rest of a lookbehind)
+   */
+  private static boolean isGroupName(String name) {
+    if (name.isEmpty() || !Character.isLetter(name.charAt(0))) {
+      return false;
+    }
+    for (int i = 1; i < name.length(); i++) {
+      if (!Character.isLetterOrDigit(name.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
 
 /**
@@ -23,6 +23,7 @@ import ch.qos.logback.decoder.PatternNames;
 public class RootCauseFirstThrowableProxyRegexConverter extends DynamicConverter<InputStream> {
   
   public String convert(InputStream le) {
-    return "(?<" + PatternNames.ROOT_EXCEPTION + ">" + RegexPatterns.EXCEPTION_REGEX + ")";
+    // optional, since nothing is printed for an event without a throwable
+    return "(?:(?<" + PatternNames.ROOT_EXCEPTION + ">" + RegexPatterns.EXCEPTION_REGEX + "))?";
   }
 }
@@ -23,6 +23,7 @@ import ch.qos.logback.decoder.PatternNames;
 public class ThrowableProxyRegexConverter extends DynamicConverter<InputStream> {
   
   public String convert(InputStream le) {
-    return "(?<" + PatternNames.EXCEPTION + ">" + RegexPatterns.EXCEPTION_REGEX + ")";
+    // optional, since nothing is printed for an event without a throwable
+    return "(?:(?<" + PatternNames.EXCEPTION + ">" + RegexPatterns.EXCEPTION_REGEX + "))?";
   }
 }
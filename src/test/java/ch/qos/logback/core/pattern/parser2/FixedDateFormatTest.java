@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.core.pattern.parser2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import ch.qos.logback.core.CoreConstants;
+
+/**
+ * Tests the {@link FixedDateFormat} class
+ */
+public class FixedDateFormatTest {
+
+  @Test
+  public void compilesCommonPatterns() {
+    assertNotNull(FixedDateFormat.compile(CoreConstants.ISO8601_PATTERN, null));
+    assertNotNull(FixedDateFormat.compile("yyyy-MM-dd HH:mm:ss.SSS", null));
+    assertNotNull(FixedDateFormat.compile("HH:mm:ss.SSS", null));
+    assertNotNull(FixedDateFormat.compile("yyyy-MM-dd'T'HH:mm:ss.SSS", null));
+  }
+
+  @Test
+  public void doesNotCompileUnsupportedPatterns() {
+    assertNull(FixedDateFormat.compile("HH:mm:ssa", null));
+    assertNull(FixedDateFormat.compile("dd MMM yyyy", null));
+    assertNull(FixedDateFormat.compile("yy-MM-dd", null));
+    assertNull(FixedDateFormat.compile("yyyy-MM-dd'T", null));
+  }
+
+  @Test
+  public void parsesLikeSimpleDateFormat() throws ParseException {
+    assertParsesLikeSimpleDateFormat(CoreConstants.ISO8601_PATTERN, "UTC");
+    assertParsesLikeSimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", "Europe/Paris");
+    assertParsesLikeSimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", "America/New_York");
+    assertParsesLikeSimpleDateFormat("yyyyMMdd HHmmss SSS", "Australia/Perth");
+    assertParsesLikeSimpleDateFormat("HH:mm:ss.SSS", "GMT-05:00");
+  }
+
+  @Test
+  public void parsesAcrossDaylightSavingTransitions() throws ParseException {
+    final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+    TimeZone tz = TimeZone.getTimeZone("Europe/Paris");
+    SimpleDateFormat sdf = new SimpleDateFormat(PATTERN);
+    sdf.setTimeZone(tz);
+    FixedDateFormat fdf = FixedDateFormat.compile(PATTERN, tz);
+
+    // includes a time in the spring gap, and one that occurs twice in fall
+    String[] inputs = {
+      "2013-03-31 01:59:59.999",
+      "2013-03-31 02:30:00.000",
+      "2013-03-31 03:00:00.000",
+      "2013-10-27 01:59:59.999",
+      "2013-10-27 02:30:00.000",
+      "2013-10-27 03:00:00.000",
+    };
+    for (String input : inputs) {
+      assertEquals(input, sdf.parse(input).getTime(), fdf.parse(input, 0, input.length()));
+    }
+  }
+
+  @Test
+  public void returnsInvalidForMismatchedText() {
+    FixedDateFormat fdf = FixedDateFormat.compile("yyyy-MM-dd HH:mm:ss.SSS", null);
+    assertEquals(FixedDateFormat.INVALID, fdf.parse("2013-07-22 10:15:40", 0, 19));
+    assertEquals(FixedDateFormat.INVALID, fdf.parse("2013-07-22T10:15:40.224", 0, 23));
+    assertEquals(FixedDateFormat.INVALID, fdf.parse("2013-07-2x 10:15:40.224", 0, 23));
+    assertEquals(FixedDateFormat.INVALID, fdf.parse("2013-13-22 10:15:40.224", 0, 23));
+  }
+
+  @Test
+  public void parsesDateInsideLongerText() throws ParseException {
+    final String INPUT = "[main] 2013-07-22 10:15:40.224 hello";
+    TimeZone tz = TimeZone.getTimeZone("UTC");
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    sdf.setTimeZone(tz);
+    FixedDateFormat fdf = FixedDateFormat.compile("yyyy-MM-dd HH:mm:ss.SSS", tz);
+
+    assertEquals(sdf.parse("2013-07-22 10:15:40.224").getTime(), fdf.parse(INPUT, 7, 30));
+  }
+
+  @Test
+  public void splitsPrefixAtMilliseconds() {
+    FixedDateFormat fdf = FixedDateFormat.compile("yyyy-MM-dd HH:mm:ss.SSS", TimeZone.getTimeZone("UTC"));
+    assertEquals(20, fdf.prefixLength());
+    assertEquals(224, fdf.parseMillis("2013-07-22 10:15:40.224", 0));
+    assertEquals(fdf.parse("2013-07-22 10:15:40.000", 0, 23), fdf.parsePrefix("2013-07-22 10:15:40.224", 0));
+  }
+
+  @Test
+  public void patternParserCompilesFixedDateFormat() {
+    List<PatternInfo> infos = PatternParser.parse("%d{HH:mm:ss.SSS, UTC} %msg");
+    DatePatternInfo dpi = (DatePatternInfo)infos.get(0);
+    assertNotNull(dpi.getFixedDateFormat());
+    assertEquals("UTC", dpi.getFixedDateFormat().getTimeZone().getID());
+
+    infos = PatternParser.parse("%d{HH:mm:ssa} %msg");
+    assertNull(((DatePatternInfo)infos.get(0)).getFixedDateFormat());
+  }
+
+  private void assertParsesLikeSimpleDateFormat(String pattern, String timeZoneName) throws ParseException {
+    TimeZone tz = TimeZone.getTimeZone(timeZoneName);
+    SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+    sdf.setTimeZone(tz);
+    FixedDateFormat fdf = FixedDateFormat.compile(pattern, tz);
+
+    // a year of dates, about 3 hours apart
+    long start = 1356998400000L;
+    for (long t = start; t < start + 366L * 86400000L; t += 10000019L) {
+      String input = sdf.format(new Date(t));
+      assertEquals(input, sdf.parse(input).getTime(), fdf.parse(input, 0, input.length()));
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding compressed and concatenated log files
+ */
+public class ArchiveDecoderTest {
+  private static final String LAYOUT = "%d [%level] %logger - %msg%n";
+  private static final String HEADER = PatternLayout.HEADER_PREFIX + LAYOUT + "\n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  /**
+   * Generates the text of a log with a header and the given events;
+   * every 10th event has a stack trace
+   */
+  private static String log(int first, int count) {
+    StringBuilder text = new StringBuilder(HEADER);
+    for (int i = first; i < first + count; i++) {
+      text.append("2013-07-22 10:15:40,224 [INFO] com.example.Foo - event ").append(i).append('\n');
+      if (i % 10 == 9) {
+        text.append("java.lang.IllegalStateException: boom\n\tat foo.Bar.baz(Bar.java:12)\n");
+      }
+    }
+    return text.toString();
+  }
+
+  private static void write(OutputStream out, String text) throws IOException {
+    try {
+      out.write(text.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  private File gzip(String name, String text) throws IOException {
+    File file = tmp.newFile(name);
+    write(new GZIPOutputStream(new FileOutputStream(file)), text);
+    return file;
+  }
+
+  private File zip(String name, String... entries) throws IOException {
+    File file = tmp.newFile(name);
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      for (int i = 0; i < entries.length; i++) {
+        out.putNextEntry(new ZipEntry("entry" + i + ".log"));
+        out.write(entries[i].getBytes("UTF-8"));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private static List<ILoggingEvent> decode(ArchiveDecoder decoder, File... files) throws IOException {
+    final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    decoder.decode(Arrays.asList(files), new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        events.add(event);
+      }
+    });
+    return events;
+  }
+
+  private static void assertEvents(List<ILoggingEvent> events, int count) {
+    assertEquals(count, events.size());
+    for (int i = 0; i < count; i++) {
+      assertTrue(events.get(i).getMessage().startsWith("event " + i));
+    }
+  }
+
+  @Test
+  public void detectsArchivesByName() {
+    assertTrue(ArchiveDecoder.isArchive(new File("foo.2013-07-22.log.gz")));
+    assertTrue(ArchiveDecoder.isArchive(new File("foo.1.ZIP")));
+    assertFalse(ArchiveDecoder.isArchive(new File("foo.log")));
+  }
+
+  @Test
+  public void decodesGzipFile() throws IOException {
+    // larger than several chunks, so events span chunk boundaries
+    File file = gzip("large.log.gz", log(0, 20000));
+    List<ILoggingEvent> events = decode(new ArchiveDecoder(), file);
+
+    assertEvents(events, 20000);
+    assertEquals("event 9\njava.lang.IllegalStateException: boom\n\tat foo.Bar.baz(Bar.java:12)",
+        events.get(9).getMessage());
+  }
+
+  @Test
+  public void decodesAllEntriesOfZipFile() throws IOException {
+    File file = zip("rolled.zip", log(0, 100), log(100, 50));
+    assertEvents(decode(new ArchiveDecoder(), file), 150);
+  }
+
+  @Test
+  public void decodesFilesInOrderAsOneLog() throws IOException {
+    File plain = tmp.newFile("foo.log");
+    // the last line of this file is not terminated
+    String text = log(300, 10);
+    write(new FileOutputStream(plain), text.substring(0, text.length() - 1));
+
+    List<ILoggingEvent> events = decode(new ArchiveDecoder(),
+        gzip("foo.1.log.gz", log(0, 200)), zip("foo.2.zip", log(200, 100)), plain);
+
+    assertEvents(events, 310);
+    assertTrue(events.get(309).getMessage().endsWith("(Bar.java:12)"));
+  }
+
+  @Test
+  public void skipsHeadersWhenLayoutIsGiven() throws IOException {
+    ArchiveDecoder decoder = new ArchiveDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    decoder.setFilters(Arrays.<FieldFilter>asList(new LoggerPrefixFilter("com.example.")));
+
+    assertEvents(decode(decoder, gzip("a.log.gz", log(0, 5)), gzip("b.log.gz", log(5, 5))), 10);
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void reportsMissingFile() throws IOException {
+    decode(new ArchiveDecoder(), gzip("present.log.gz", log(0, 5)), new File(tmp.getRoot(), "missing.log.gz"));
+  }
+
+  @Test(expected = IllegalStateException.class, timeout = 5000)
+  public void reportsUncheckedInflaterFailure() throws IOException {
+    ArchiveDecoder decoder = new ArchiveDecoder() {
+      @Override
+      public String getLayoutPattern() {
+        if (Thread.currentThread().getName().equals("logback-decoder-inflater")) {
+          throw new IllegalStateException("boom");
+        }
+        return super.getLayoutPattern();
+      }
+    };
+    decode(decoder, gzip("a.log.gz", log(0, 5)));
+  }
+}
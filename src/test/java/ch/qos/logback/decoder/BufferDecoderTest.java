@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding log events from a buffer
+ */
+public class BufferDecoderTest {
+  private static final String LAYOUT = "%d [%level] - %msg%n";
+  private static final String INPUT =
+      PatternLayout.HEADER_PREFIX + LAYOUT + "\n"
+      + "not a log event\n"
+      + "2013-07-22 10:15:40,224 [INFO] - Oak is strong and also gives shade.\n"
+      + "2013-07-22 10:15:41,224 [WARN] - Cats and dogs each hate the other.\n";
+
+  private BufferDecoder decoder;
+
+  @Before
+  public void setUp() {
+    decoder = new BufferDecoder();
+  }
+
+  @Test
+  public void decodesListWithNullForUndecodableLines() throws IOException {
+    List<ILoggingEvent> events = decoder.decode(reader(INPUT));
+    assertEquals(LAYOUT, decoder.getLayoutPattern());
+    assertEquals(3, events.size());
+    assertNull(events.get(0));
+    assertEquals("Oak is strong and also gives shade.", events.get(1).getMessage());
+    assertEquals("Cats and dogs each hate the other.", events.get(2).getMessage());
+  }
+
+  @Test
+  public void decodesMultiLineMessage() throws IOException {
+    final String INPUT = "2013-07-22 10:15:40,224 [INFO] - first line\n"
+        + "second line\n"
+        + "\tthird line\n"
+        + "2013-07-22 10:15:41,224 [WARN] - next event\n";
+
+    decoder.setLayoutPattern(LAYOUT);
+    List<ILoggingEvent> events = decoder.decode(reader(INPUT));
+    assertEquals(2, events.size());
+    assertEquals("first line\nsecond line\n\tthird line", events.get(0).getMessage());
+    assertEquals("next event", events.get(1).getMessage());
+  }
+
+  @Test
+  public void decodesCallerDataOnContinuationLines() throws IOException {
+    final String INPUT = "2013-06-12 15:27:15.044 INFO  [main] Foo: Foo Bar\n"
+        + "Caller+0   at mainPackage.sub.sample.Bar.sampleMethodName(Bar.java:22)\n"
+        + "Caller+1   at mainPackage.sub.sample.Bar.createLoggingRequest(Bar.java:17)\n"
+        + "2013-06-12 15:27:16.044 WARN  [main] Foo: Baz\n"
+        + "Caller+0   at mainPackage.sub.sample.Bar.sampleMethodName(Bar.java:23)\n";
+
+    decoder.setLayoutPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger{0}: %msg%caller%n");
+    List<ILoggingEvent> events = decoder.decode(reader(INPUT));
+    assertEquals(2, events.size());
+    assertEquals(2, events.get(0).getCallerData().length);
+    assertEquals(17, events.get(0).getCallerData()[1].getLineNumber());
+    assertEquals(1, events.get(1).getCallerData().length);
+    assertEquals(23, events.get(1).getCallerData()[0].getLineNumber());
+  }
+
+  @Test
+  public void recognizesEventStartFromLeadingPatterns() {
+    decoder.setLayoutPattern(LAYOUT);
+    assertTrue(decoder.isEventStart("2013-07-22 10:15:40,224 [INFO] - hello"));
+    assertFalse(decoder.isEventStart("\tat foo.Bar.baz(Bar.java:12)"));
+    assertFalse(decoder.isEventStart("java.lang.IllegalStateException: boom"));
+  }
+
+  @Test
+  public void treatsEveryLineAsEventStartWithoutLeadingPatterns() {
+    decoder.setLayoutPattern("%msg%n");
+    assertTrue(decoder.isEventStart("anything at all"));
+  }
+
+  @Test
+  public void passesDecodedEventsToHandler() throws IOException {
+    final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    decoder.decode(reader(INPUT), new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        events.add(event);
+      }
+    });
+
+    assertEquals(2, events.size());
+    assertEquals("INFO", events.get(0).getLevel().toString());
+    assertEquals("WARN", events.get(1).getLevel().toString());
+  }
+
+  @Test
+  public void iteratesLazily() throws IOException {
+    Iterator<ILoggingEvent> it = decoder.iterator(reader(INPUT));
+
+    assertTrue(it.hasNext());
+    assertEquals("Oak is strong and also gives shade.", it.next().getMessage());
+
+    assertTrue(it.hasNext());
+    assertEquals("Cats and dogs each hate the other.", it.next().getMessage());
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void streamsDecodedEvents() throws IOException {
+    List<String> messages = decoder.stream(reader(INPUT))
+        .map(ILoggingEvent::getMessage)
+        .collect(Collectors.toList());
+
+    assertEquals(2, messages.size());
+    assertEquals("Oak is strong and also gives shade.", messages.get(0));
+    assertEquals("Cats and dogs each hate the other.", messages.get(1));
+  }
+
+  private static BufferedReader reader(String s) {
+    return new BufferedReader(new StringReader(s));
+  }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.pattern.parser2.PatternInfo;
+
+/**
+ * Tests writing events in the columnar format and reading them back
+ */
+public class ColumnarReaderTest {
+  private static final Level[] LEVELS = { Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR };
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  /**
+   * Creates events whose timestamps go back every 100 events; every
+   * 50th event is an ERROR of "org.other.Rare", and every 7th has no
+   * level
+   */
+  private static List<ILoggingEvent> events(int count) {
+    List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    for (int i = 0; i < count; i++) {
+      StaticLoggingEvent event = new StaticLoggingEvent();
+      event.setTimeStamp(1374488100000L + (i % 100) * 1000L + i);
+      boolean rare = i % 50 == 49;
+      if (rare) {
+        event.setLevel(Level.ERROR);
+      } else if (i % 7 != 0) {
+        event.setLevel(LEVELS[i % 3]);
+      }
+      event.setLoggerName(rare ? "org.other.Rare" : "com.example.Foo" + i % 5);
+      event.setThreadName("pool-" + i % 3);
+      event.setMessage("event " + i);
+      events.add(event);
+    }
+    return events;
+  }
+
+  private File write(List<ILoggingEvent> events, int blockSize) throws IOException {
+    File file = tmp.newFile("events" + blockSize + ".lbc");
+    ColumnarWriter writer = new ColumnarWriter(new FileOutputStream(file), blockSize);
+    try {
+      for (ILoggingEvent event : events) {
+        writer.handle(event);
+      }
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  private static List<ILoggingEvent> read(File file, FieldFilter... filters) throws IOException {
+    ColumnarReader reader = new ColumnarReader();
+    reader.setFilters(Arrays.asList(filters));
+    return reader.read(file);
+  }
+
+  private static void assertSameEvents(List<ILoggingEvent> expected, List<ILoggingEvent> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      ILoggingEvent e = expected.get(i);
+      ILoggingEvent a = actual.get(i);
+      assertEquals(e.getTimeStamp(), a.getTimeStamp());
+      assertEquals(e.getLevel(), a.getLevel());
+      assertEquals(e.getLoggerName(), a.getLoggerName());
+      assertEquals(e.getThreadName(), a.getThreadName());
+      assertEquals(e.getMessage(), a.getMessage());
+    }
+  }
+
+  /** Applies filters the way a decoder does */
+  private static List<ILoggingEvent> select(List<ILoggingEvent> events, Level threshold, String prefix, long since, long until) {
+    List<ILoggingEvent> selected = new ArrayList<ILoggingEvent>();
+    for (ILoggingEvent event : events) {
+      if ((threshold == null || event.getLevel() == null || event.getLevel().isGreaterOrEqual(threshold))
+          && (prefix == null || event.getLoggerName().startsWith(prefix))
+          && event.getTimeStamp() >= since && event.getTimeStamp() < until) {
+        selected.add(event);
+      }
+    }
+    return selected;
+  }
+
+  @Test
+  public void readsBackWrittenEvents() throws IOException {
+    List<ILoggingEvent> events = events(1000);
+    File file = write(events, 64);
+
+    assertTrue(ColumnarReader.isColumnar(file));
+    assertSameEvents(events, read(file));
+  }
+
+  @Test
+  public void readsFieldsOfStaticEvents() throws IOException {
+    StaticLoggingEvent event = new StaticLoggingEvent();
+    event.setLevel(Level.WARN);
+    event.setContextName("ctx");
+    event.setClassNameOfCaller("com.example.Foo");
+    event.setMethodOfCaller("run");
+    event.setFileNameOfCaller("Foo.java");
+    event.setLineNumberOfCaller(12);
+    event.setMessage("héllo\nworld");
+    Map<String, String> mdc = new LinkedHashMap<String, String>();
+    mdc.put("user", "jdoe");
+    mdc.put("requestId", "42");
+    event.setMDCPropertyMap(mdc);
+
+    StaticLoggingEvent bare = new StaticLoggingEvent();
+    bare.setMessage(null);
+
+    List<ILoggingEvent> events = read(write(Arrays.<ILoggingEvent>asList(event, bare), 16));
+    assertEquals(2, events.size());
+    StaticLoggingEvent read = (StaticLoggingEvent) events.get(0);
+    assertEquals("ctx", read.getContextName());
+    assertEquals("com.example.Foo", read.getClassNameOfCaller());
+    assertEquals("run", read.getMethodOfCaller());
+    assertEquals("Foo.java", read.getFileNameOfCaller());
+    assertEquals(12, read.getLineNumberOfCaller());
+    assertEquals("héllo\nworld", read.getMessage());
+    assertEquals(mdc, read.getMDCPropertyMap());
+
+    read = (StaticLoggingEvent) events.get(1);
+    assertNull(read.getLevel());
+    assertNull(read.getLoggerName());
+    assertNull(read.getMessage());
+    assertTrue(read.getMDCPropertyMap().isEmpty());
+  }
+
+  @Test
+  public void appliesFiltersAcrossBlocks() throws IOException {
+    List<ILoggingEvent> events = events(2000);
+    File file = write(events, 128);
+    long since = 1374488100000L + 20 * 1000L;
+    long until = 1374488100000L + 30 * 1000L;
+
+    assertSameEvents(select(events, Level.WARN, null, Long.MIN_VALUE, Long.MAX_VALUE),
+        read(file, new MinLevelFilter(Level.WARN)));
+    assertSameEvents(select(events, null, "org.", Long.MIN_VALUE, Long.MAX_VALUE),
+        read(file, new LoggerPrefixFilter("org.")));
+    assertSameEvents(select(events, null, null, since, until),
+        read(file, new TimeRangeFilter(since, until)));
+    assertSameEvents(select(events, Level.ERROR, "com.", since, until),
+        read(file, new MinLevelFilter(Level.ERROR), new LoggerPrefixFilter("com."), new TimeRangeFilter(since, until)));
+  }
+
+  @Test
+  public void skipsBlocksThatCannotPassFilters() throws IOException {
+    // the ERROR events are all in the last block, which adds a new logger
+    List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    for (ILoggingEvent event : events(200)) {
+      if (event.getLevel() != Level.ERROR && event.getLevel() != null) {
+        events.add(event);
+      }
+    }
+    List<ILoggingEvent> errors = new ArrayList<ILoggingEvent>();
+    for (ILoggingEvent event : events(1000)) {
+      if (event.getLevel() == Level.ERROR) {
+        errors.add(event);
+      }
+    }
+    // one block of errors after three without any
+    events = new ArrayList<ILoggingEvent>(events.subList(0, 3 * errors.size()));
+    events.addAll(errors);
+    File file = write(events, errors.size());
+
+    assertSameEvents(errors, read(file, new MinLevelFilter(Level.ERROR)));
+    assertSameEvents(errors, read(file, new LoggerPrefixFilter("org.other.")));
+    assertEquals(0, read(file, new TimeRangeFilter(0, 1000)).size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsupportedFilter() {
+    new ColumnarReader().setFilters(Collections.<FieldFilter>singletonList(new FieldFilter() {
+      @Override
+      public String getFieldName() {
+        return PatternNames.MESSAGE;
+      }
+
+      @Override
+      public boolean accept(CharSequence input, int start, int end, PatternInfo info) {
+        return true;
+      }
+    }));
+  }
+
+  @Test
+  public void recognizesOnlyColumnarFiles() throws IOException {
+    File text = tmp.newFile("text.log");
+    FileOutputStream out = new FileOutputStream(text);
+    out.write("2013-07-22 10:15:00,000 INFO hello\n".getBytes("UTF-8"));
+    out.close();
+
+    assertFalse(ColumnarReader.isColumnar(text));
+    assertFalse(ColumnarReader.isColumnar(tmp.getRoot()));
+  }
+}
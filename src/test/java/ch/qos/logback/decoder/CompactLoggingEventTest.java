@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding events as {@link CompactLoggingEvent}s
+ */
+public class CompactLoggingEventTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger{0} {%mdc} %class.%method:%line: %msg%caller%n";
+  private static final String INPUT =
+        "2013-06-12 15:27:15.044 INFO  [main] Foo {user=jdoe} com.example.Foo.run:12: hello\n"
+      + "Caller+0   at com.example.Foo.run(Foo.java:12)\n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static BufferDecoder newDecoder(boolean compact) {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    decoder.setCompact(compact);
+    return decoder;
+  }
+
+  private static String toJson(ILoggingEvent event) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonLinesWriter writer = new JsonLinesWriter(out);
+    writer.handle(event);
+    writer.close();
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void decodesSameFieldsAsStaticEvent() throws IOException {
+    ILoggingEvent event = newDecoder(true).decode(INPUT);
+    ILoggingEvent expected = newDecoder(false).decode(INPUT);
+
+    assertTrue(event instanceof CompactLoggingEvent);
+    assertEquals(Level.INFO, event.getLevel());
+    assertEquals("main", event.getThreadName());
+    assertEquals("jdoe", event.getMDCPropertyMap().get("user"));
+    assertEquals("com.example.Foo", ((IStaticLoggingEvent) event).getClassNameOfCaller());
+    assertEquals(12, ((IStaticLoggingEvent) event).getLineNumberOfCaller());
+    assertEquals(toJson(expected), toJson(event));
+    assertEquals(expected.toString(), event.toString());
+  }
+
+  @Test
+  public void returnsCachedCallerData() {
+    ILoggingEvent event = newDecoder(true).decode(INPUT);
+
+    assertTrue(event.hasCallerData());
+    assertEquals(1, event.getCallerData().length);
+    assertSame(event.getCallerData(), event.getCallerData());
+  }
+
+  @Test
+  public void leavesOutFieldsNotDecoded() {
+    CompactLoggingEvent event = new CompactLoggingEvent();
+
+    assertNull(event.getThreadName());
+    assertNull(event.getClassNameOfCaller());
+    assertEquals(0, event.getLineNumberOfCaller());
+    assertFalse(event.hasCallerData());
+    assertEquals(0, event.getCallerData().length);
+    assertTrue(event.getMDCPropertyMap().isEmpty());
+  }
+
+  @Test
+  public void parallelDecoderDecodesCompactEvents() throws IOException {
+    ParallelFileDecoder decoder = new ParallelFileDecoder(2);
+    decoder.setLayoutPattern(LAYOUT);
+    decoder.setCompact(true);
+
+    File file = tmp.newFile("compact.log");
+    Writer writer = new FileWriter(file);
+    try {
+      writer.write(INPUT);
+      writer.write(INPUT);
+    } finally {
+      writer.close();
+    }
+
+    List<ILoggingEvent> events = decoder.decode(file);
+    assertEquals(2, events.size());
+    for (ILoggingEvent event : events) {
+      assertTrue(event instanceof CompactLoggingEvent);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link CompiledLayoutCache} class
+ */
+public class CompiledLayoutCacheTest {
+  private static final String LAYOUT_A = "%d [%level] - %msg%n";
+  private static final String LAYOUT_B = "%d [%thread] %level %logger - %msg%n";
+  private static final String LAYOUT_C = "%level: %msg%n";
+
+  @Test
+  public void returnsSameLayoutForSamePattern() {
+    CompiledLayoutCache cache = new CompiledLayoutCache(4);
+    CompiledLayout layout = cache.get(LAYOUT_A);
+
+    assertSame(layout, cache.get(LAYOUT_A));
+    assertEquals(LAYOUT_A, layout.getLayoutPattern());
+    assertNotSame(layout, cache.get(LAYOUT_B));
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+    CompiledLayoutCache cache = new CompiledLayoutCache(4);
+    cache.get(LAYOUT_A);
+    cache.get(LAYOUT_A);
+    cache.get(LAYOUT_B);
+    cache.get(LAYOUT_A);
+
+    assertEquals(2, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(0.5, cache.getHitRate(), 0.0);
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedLayout() {
+    CompiledLayoutCache cache = new CompiledLayoutCache(2);
+    CompiledLayout a = cache.get(LAYOUT_A);
+    cache.get(LAYOUT_B);
+    cache.get(LAYOUT_A);
+    cache.get(LAYOUT_C);
+
+    // B was the least recently used
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+    assertSame(a, cache.get(LAYOUT_A));
+    long misses = cache.getMissCount();
+    cache.get(LAYOUT_B);
+    assertEquals(misses + 1, cache.getMissCount());
+  }
+
+  @Test
+  public void clearKeepsStatistics() {
+    CompiledLayoutCache cache = new CompiledLayoutCache(2);
+    cache.get(LAYOUT_A);
+    cache.clear();
+
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveSize() {
+    new CompiledLayoutCache(0);
+  }
+
+  @Test
+  public void decodersShareCachedLayout() {
+    BufferDecoder a = new BufferDecoder();
+    a.setLayoutPattern(LAYOUT_B);
+    BufferDecoder b = new BufferDecoder();
+    b.setLayoutPattern(LAYOUT_B);
+
+    assertSame(a.getCompiledLayout(), b.getCompiledLayout());
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests sharing a {@link CompiledLayout} through {@link DecodeContext}s
+ */
+public class CompiledLayoutTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %level %logger - %msg%n";
+
+  @Test
+  public void contextDecodesEventsInTurn() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext();
+
+    ILoggingEvent first = context.decode("2013-07-22 10:15:40.224 [main] INFO foo.Bar - hello\n");
+    ILoggingEvent second = context.decode("2013-07-22 10:15:41.001 [worker] WARN foo.Baz - world\n");
+
+    assertEquals("hello", first.getMessage());
+    assertEquals(Level.INFO, first.getLevel());
+    assertEquals("world", second.getMessage());
+    assertEquals("worker", second.getThreadName());
+    assertEquals(Level.WARN, second.getLevel());
+  }
+
+  @Test
+  public void contextReturnsNullForUndecodableInput() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext();
+    assertNull(context.decode("not a log event"));
+    assertEquals("ok", context.decode("2013-07-22 10:15:40.224 [main] INFO foo.Bar - ok\n").getMessage());
+  }
+
+  @Test
+  public void contextDetectsEventStart() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext();
+    assertTrue(context.isEventStart("2013-07-22 10:15:40.224 [main] INFO foo.Bar - hello"));
+    assertFalse(context.isEventStart("\tat foo.Bar.baz(Bar.java:12)"));
+  }
+
+  @Test
+  public void decodersShareCompiledLayout() {
+    BufferDecoder a = new BufferDecoder();
+    a.setLayoutPattern(LAYOUT);
+    BufferDecoder b = new BufferDecoder();
+    b.setCompiledLayout(a.getCompiledLayout());
+
+    assertSame(a.getCompiledLayout(), b.getCompiledLayout());
+    assertEquals(LAYOUT, b.getLayoutPattern());
+  }
+
+  @Test
+  public void decodesConcurrentlyWithSharedLayout() throws Exception {
+    final CompiledLayout layout = CompiledLayout.compile(LAYOUT);
+    final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    final int threads = 4;
+    final int eventsPerThread = 2000;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+      for (int t = 0; t < threads; t++) {
+        final long base = 1374480000000L + t * 86400000L;
+        final String thread = "t" + t;
+        final List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < eventsPerThread; i++) {
+          lines.add(format.format(new Date(base + i * 1001L)) + " [" + thread + "] INFO foo.Bar - event " + i + "\n");
+        }
+
+        results.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            DecodeContext context = layout.newContext();
+            int decoded = 0;
+            for (int i = 0; i < lines.size(); i++) {
+              ILoggingEvent event = context.decode(lines.get(i));
+              assertEquals(base + i * 1001L, event.getTimeStamp());
+              assertEquals(thread, event.getThreadName());
+              assertEquals("event " + i, event.getMessage());
+              decoded++;
+            }
+            return decoded;
+          }
+        }));
+      }
+
+      for (Future<Integer> result : results) {
+        assertEquals(eventsPerThread, result.get().intValue());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
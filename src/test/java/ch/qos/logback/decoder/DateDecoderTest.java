@@ -84,6 +84,24 @@ public class DateDecoderTest extends DecoderTest {
     assertThatDateDecoded(TIMEZONE, FORMAT, INPUT);
   }
 
+  @Test
+  public void decodesConsecutiveDatesInSameSecond() throws ParseException {
+    final String FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+    SimpleDateFormat sdf = new SimpleDateFormat(FORMAT);
+    decoder.setLayoutPattern("%d{" + FORMAT + "} %msg%n");
+
+    String[] inputs = {
+      "2013-07-22 10:15:40.224",
+      "2013-07-22 10:15:40.901",
+      "2013-07-22 10:15:41.002",
+      "2013-07-23 10:15:41.002",
+    };
+    for (String input : inputs) {
+      ILoggingEvent event = decoder.decode(input + " Hello world!\n");
+      assertEquals(input, sdf.parse(input).getTime(), event.getTimeStamp());
+    }
+  }
+
   private void assertThatDateDecoded(String timeZoneName, String format, String input) throws ParseException {
     if (format == null) format = "";
     if (timeZoneName == null) timeZoneName = "";
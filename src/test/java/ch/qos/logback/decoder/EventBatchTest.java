@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding events into the columns of an {@link EventBatch}
+ */
+public class EventBatchTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger{0} {%mdc}: %msg%n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static String input(int count) {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      input.append(String.format("2013-06-12 15:27:%02d.%03d %-5s [pool-%d] Foo%d {user=jdoe}: event %d\n",
+          i / 1000 % 60, i % 1000, i % 10 == 9 ? "ERROR" : "INFO", i % 3, i % 4, i));
+      if (i % 10 == 9) {
+        input.append("java.lang.IllegalStateException: boom\n");
+      }
+    }
+    return input.toString();
+  }
+
+  /** Copies the rows of each batch to compare them with decoded events */
+  private static class Rows implements EventBatchHandler {
+    final List<Integer> sizes = new ArrayList<Integer>();
+    final List<String> rows = new ArrayList<String>();
+
+    @Override
+    public void handle(EventBatch batch) {
+      sizes.add(batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        rows.add(batch.getTimestamps()[i] + " " + batch.getLevel(i) + " "
+            + batch.getString(batch.getThreadIds()[i]) + " "
+            + batch.getString(batch.getLoggerIds()[i]) + ": " + batch.getMessage(i));
+      }
+    }
+  }
+
+  private static List<String> rows(List<ILoggingEvent> events) {
+    List<String> rows = new ArrayList<String>();
+    for (ILoggingEvent event : events) {
+      rows.add(event.getTimeStamp() + " " + event.getLevel() + " " + event.getThreadName() + " "
+          + event.getLoggerName() + ": " + event.getMessage());
+    }
+    return rows;
+  }
+
+  @Test
+  public void fillsBatchesInChunks() throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    String input = input(250);
+    Rows rows = new Rows();
+    decoder.decode(new BufferedReader(new StringReader(input)), new EventBatch(100), rows);
+
+    assertEquals(Arrays.asList(100, 100, 50), rows.sizes);
+    assertEquals(rows(decoder.decode(new BufferedReader(new StringReader(input)))), rows.rows);
+  }
+
+  @Test
+  public void keepsDictionaryAcrossBatches() throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    final List<Integer> loggerIds = new ArrayList<Integer>();
+    EventBatch batch = new EventBatch(3);
+    decoder.decode(new BufferedReader(new StringReader(input(12))), batch, new EventBatchHandler() {
+      @Override
+      public void handle(EventBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+          loggerIds.add(batch.getLoggerIds()[i]);
+        }
+      }
+    });
+
+    assertEquals(0, batch.size());
+    // Foo0 to Foo3, and thread names pool-0 to pool-2
+    assertEquals(7, batch.getStringCount());
+    assertEquals(loggerIds.get(0), loggerIds.get(4));
+    assertEquals(loggerIds.get(3), loggerIds.get(11));
+    assertEquals("Foo3", batch.getString(loggerIds.get(11)));
+  }
+
+  @Test
+  public void decodesMessagesIntoSharedBuffer() {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    EventBatch batch = new EventBatch(4);
+    String input = input(10);
+    String last = input.substring(input.lastIndexOf("2013-"));
+
+    assertTrue(decoder.decode(last, batch));
+    assertFalse(decoder.decode("not an event\n", batch));
+    assertTrue(decoder.decode(last, batch));
+
+    assertEquals(2, batch.size());
+    assertEquals(Level.ERROR, batch.getLevel(1));
+    assertEquals(-1, batch.getContextIds()[1]);
+    String message = "event 9\njava.lang.IllegalStateException: boom";
+    assertEquals(message, batch.getMessage(0));
+    assertEquals(message, new String(batch.getMessageChars(), batch.getMessageStart(1),
+        batch.getMessageEnd(1) - batch.getMessageStart(1)));
+  }
+
+  @Test
+  public void leavesOutFieldsNotDecoded() {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setFields(Collections.singleton(PatternNames.LEVEL));
+    decoder.setLayoutPattern(LAYOUT);
+    EventBatch batch = new EventBatch(1);
+    decoder.decode(input(1), batch);
+
+    assertEquals(Level.INFO, batch.getLevel(0));
+    assertEquals(0, batch.getTimestamps()[0]);
+    assertNull(batch.getString(batch.getLoggerIds()[0]));
+    assertEquals("", batch.getMessage(0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsEventsWhenFull() {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    EventBatch batch = new EventBatch(1);
+    decoder.decode(input(1), batch);
+    decoder.decode(input(1), batch);
+  }
+
+  @Test
+  public void mappedFileDecoderFillsBatches() throws IOException {
+    File file = tmp.newFile("batch.log");
+    Writer writer = new FileWriter(file);
+    try {
+      writer.write(PatternLayout.HEADER_PREFIX + LAYOUT + "\n");
+      writer.write(input(1000));
+    } finally {
+      writer.close();
+    }
+
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR)));
+    Rows rows = new Rows();
+    decoder.decode(file, new EventBatch(64), rows);
+
+    assertEquals(Arrays.asList(64, 36), rows.sizes);
+    assertEquals(rows(decoder.decode(file)), rows.rows);
+  }
+}
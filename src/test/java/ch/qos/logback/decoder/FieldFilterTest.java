@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests filtering events on the raw text of their fields
+ */
+public class FieldFilterTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger: %msg%n";
+  private static final String INPUT =
+        "2013-07-22 10:15:40.224 DEBUG [main] com.example.Foo: one\n"
+      + "2013-07-22 10:15:41.224 WARN  [main] com.example.Bar: two\n"
+      + "2013-07-22 10:15:42.224 ERROR [main] org.other.Baz: three\n"
+      + "2013-07-22 10:15:43.224 INFO  [main] com.example.Foo: four\n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static List<ILoggingEvent> decode(BufferDecoder decoder, String input) throws IOException {
+    return decoder.decode(new BufferedReader(new StringReader(input)));
+  }
+
+  private static BufferDecoder newDecoder(FieldFilter... filters) {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    decoder.setFilters(Arrays.asList(filters));
+    return decoder;
+  }
+
+  private static long time(String format, String text) throws Exception {
+    return new SimpleDateFormat(format).parse(text).getTime();
+  }
+
+  @Test
+  public void keepsEventsAtOrAboveMinLevel() throws IOException {
+    List<ILoggingEvent> events = decode(newDecoder(new MinLevelFilter(Level.WARN)), INPUT);
+
+    assertEquals(2, events.size());
+    assertEquals(Level.WARN, events.get(0).getLevel());
+    assertEquals(Level.ERROR, events.get(1).getLevel());
+  }
+
+  @Test
+  public void keepsEventsWithLoggerPrefix() throws IOException {
+    List<ILoggingEvent> events = decode(newDecoder(new LoggerPrefixFilter("com.example.")), INPUT);
+
+    assertEquals(3, events.size());
+    assertEquals("four", events.get(2).getMessage());
+  }
+
+  @Test
+  public void keepsEventsInTimeRange() throws Exception {
+    String format = "yyyy-MM-dd HH:mm:ss";
+    TimeRangeFilter filter = new TimeRangeFilter(
+        time(format, "2013-07-22 10:15:41"), time(format, "2013-07-22 10:15:43"));
+    List<ILoggingEvent> events = decode(newDecoder(filter), INPUT);
+
+    assertEquals(2, events.size());
+    assertEquals("two", events.get(0).getMessage());
+    assertEquals("three", events.get(1).getMessage());
+  }
+
+  @Test
+  public void filtersDatesWithoutFixedWidthFormat() throws Exception {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern("%d{dd MMM yyyy HH:mm:ss} %msg%n");
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new TimeRangeFilter(
+        time("yyyy-MM-dd HH:mm:ss", "2013-07-22 10:00:00"), Long.MAX_VALUE)));
+
+    String input = new SimpleDateFormat("dd MMM yyyy HH:mm:ss").format(time("yyyy-MM-dd HH", "2013-07-22 09")) + " early\n"
+        + new SimpleDateFormat("dd MMM yyyy HH:mm:ss").format(time("yyyy-MM-dd HH", "2013-07-22 11")) + " late\n";
+    List<ILoggingEvent> events = decode(decoder, input);
+
+    assertEquals(1, events.size());
+    assertEquals("late", events.get(0).getMessage());
+  }
+
+  @Test
+  public void combinesFilters() throws IOException {
+    List<ILoggingEvent> events = decode(newDecoder(
+        new MinLevelFilter(Level.WARN), new LoggerPrefixFilter("com.example.")), INPUT);
+
+    assertEquals(1, events.size());
+    assertEquals("com.example.Bar", events.get(0).getLoggerName());
+  }
+
+  @Test
+  public void distinguishesRejectedFromUndecodable() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext(
+        Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR)));
+
+    assertNull(context.decode("2013-07-22 10:15:40.224 DEBUG [main] Foo: one\n"));
+    assertTrue(context.wasRejected());
+    assertNull(context.decode("not an event\n"));
+    assertFalse(context.wasRejected());
+    assertNotNull(context.decode("2013-07-22 10:15:40.224 ERROR [main] Foo: one\n"));
+    assertFalse(context.wasRejected());
+  }
+
+  @Test
+  public void filtersLazyEvents() throws IOException {
+    BufferDecoder decoder = newDecoder(new MinLevelFilter(Level.WARN));
+    decoder.setLazy(true);
+    List<ILoggingEvent> events = decode(decoder, INPUT);
+
+    assertEquals(2, events.size());
+    assertTrue(events.get(0) instanceof LazyLoggingEvent);
+    assertEquals("two", events.get(0).getMessage());
+  }
+
+  @Test
+  public void capturesFilteredFieldsOutsideProjection() throws IOException {
+    BufferDecoder decoder = newDecoder(new MinLevelFilter(Level.WARN));
+    decoder.setFields(new HashSet<String>(Arrays.asList("message")));
+    List<ILoggingEvent> events = decode(decoder, INPUT);
+
+    assertEquals(2, events.size());
+    assertNull(events.get(0).getLoggerName());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsFilterOnFieldMissingFromLayout() {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern("[%thread] %logger: %msg%n");
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsLayoutMissingFieldOfFilter() {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR)));
+    decoder.setLayoutPattern("[%thread] %logger: %msg%n");
+  }
+
+  @Test
+  public void parallelDecoderAppliesFilters() throws IOException {
+    File file = tmp.newFile("filtered.log");
+    Writer writer = new FileWriter(file);
+    try {
+      for (int i = 0; i < 2000; i++) {
+        writer.write(INPUT);
+      }
+    } finally {
+      writer.close();
+    }
+
+    ParallelFileDecoder decoder = new ParallelFileDecoder(3);
+    decoder.setLayoutPattern(LAYOUT);
+    decoder.setMinChunkSize(16 * 1024);
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR)));
+
+    List<ILoggingEvent> events = decoder.decode(file);
+    assertEquals(2000, events.size());
+    for (ILoggingEvent event : events) {
+      assertEquals(Level.ERROR, event.getLevel());
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.decoder.regex.PatternLayoutRegexUtil;
+
+/**
+ * Tests decoding only some fields of a layout
+ */
+public class FieldProjectionTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger{0}: %msg%n";
+  private static final String INPUT = "2013-06-12 15:27:15.044 INFO  [main] KdbFxFeedhandlerApp: Foo Bar\n";
+
+  private static Set<String> fields(String... names) {
+    return new HashSet<String>(Arrays.asList(names));
+  }
+
+  @Test
+  public void capturesOnlyRequestedFields() {
+    String regex = new PatternLayoutRegexUtil().toRegex(LAYOUT, fields("level", "logger"));
+    assertTrue(regex.contains("(?<level>"));
+    assertTrue(regex.contains("(?<logger>"));
+    assertFalse(regex.contains("(?<thread>"));
+    assertFalse(regex.contains("(?<date>"));
+
+    // date, thread and message no longer capture
+    CompiledLayout all = CompiledLayout.compile(LAYOUT);
+    CompiledLayout layout = CompiledLayout.compile(LAYOUT, fields("level", "logger"));
+    assertEquals(all.getMatchPattern().matcher("").groupCount() - 3,
+        layout.getMatchPattern().matcher("").groupCount());
+    assertEquals(2, layout.getFieldPlan().length);
+  }
+
+  @Test
+  public void decodesOnlyRequestedFields() {
+    ILoggingEvent event = CompiledLayout.compile(LAYOUT, fields("level", "logger"))
+        .newContext().decode(INPUT);
+
+    assertEquals(Level.INFO, event.getLevel());
+    assertEquals("KdbFxFeedhandlerApp", event.getLoggerName());
+    assertEquals(0, event.getTimeStamp());
+    assertNull(event.getMessage());
+  }
+
+  @Test
+  public void acceptsAbbreviatedNames() {
+    CompiledLayout layout = CompiledLayout.compile(LAYOUT, fields("d", "p", "m"));
+    assertEquals(fields(PatternNames.DATE, PatternNames.LEVEL, PatternNames.MESSAGE), layout.getFields());
+
+    ILoggingEvent event = layout.newContext().decode(INPUT);
+    assertEquals(Level.INFO, event.getLevel());
+    assertTrue(event.getTimeStamp() != 0);
+    assertNull(event.getLoggerName());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownField() {
+    CompiledLayout.compile(LAYOUT, fields("level", "nosuchfield"));
+  }
+
+  @Test
+  public void cacheKeepsProjectionsApart() {
+    CompiledLayoutCache cache = new CompiledLayoutCache(4);
+    CompiledLayout all = cache.get(LAYOUT);
+    CompiledLayout levelOnly = cache.get(LAYOUT, fields("level"));
+
+    assertNotSame(all, levelOnly);
+    assertSame(levelOnly, cache.get(LAYOUT, fields("p")));
+    assertNull(all.getFields());
+  }
+
+  @Test
+  public void decoderAppliesFieldsToLayout() {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    decoder.setFields(fields("level"));
+
+    ILoggingEvent event = decoder.decode(INPUT);
+    assertEquals(Level.INFO, event.getLevel());
+    assertNull(event.getLoggerName());
+
+    decoder.setFields(null);
+    assertEquals("KdbFxFeedhandlerApp", decoder.decode(INPUT).getLoggerName());
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+/**
+ * Tests following a log file as it is appended to and rotated
+ */
+public class FollowingFileDecoderTest {
+  private static final String LAYOUT = "%d [%level] %logger - %msg%n";
+  private static final String HEADER = PatternLayout.HEADER_PREFIX + LAYOUT + "\n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final BlockingQueue<ILoggingEvent> events = new LinkedBlockingQueue<ILoggingEvent>();
+  private FollowingFileDecoder decoder;
+  private Thread thread;
+
+  @After
+  public void stopFollowing() throws InterruptedException {
+    if (decoder != null) {
+      decoder.stop();
+      thread.join(5000);
+      assertFalse(thread.isAlive());
+    }
+  }
+
+  private static String event(String message) {
+    return "2013-07-22 10:15:40,224 [INFO] com.example.Foo - " + message + "\n";
+  }
+
+  private static void write(File file, boolean append, String text) throws IOException {
+    OutputStream out = new FileOutputStream(file, append);
+    try {
+      out.write(text.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  private void follow(final File file, boolean fromStart, long flushDelay) {
+    decoder = new FollowingFileDecoder();
+    decoder.setFromStart(fromStart);
+    decoder.setFlushDelay(flushDelay);
+    decoder.setPollInterval(50);
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          decoder.follow(file, new ILoggingEventHandler() {
+            @Override
+            public void handle(ILoggingEvent event) {
+              events.add(event);
+            }
+          });
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    thread.start();
+  }
+
+  private String nextMessage() throws InterruptedException {
+    ILoggingEvent event = events.poll(5, TimeUnit.SECONDS);
+    return event == null ? null : event.getMessage();
+  }
+
+  @Test
+  public void decodesAppendedEvents() throws Exception {
+    File file = tmp.newFile("append.log");
+    write(file, false, HEADER + event("one") + event("two"));
+    follow(file, true, 5);
+
+    assertEquals("one", nextMessage());
+    assertEquals("two", nextMessage());
+
+    write(file, true, event("three"));
+    assertEquals("three", nextMessage());
+  }
+
+  @Test
+  public void skipsExistingEventsByDefault() throws Exception {
+    File file = tmp.newFile("existing.log");
+    write(file, false, HEADER + event("old") + "2013-07-22 10:15:40,224 [INFO] com.exa");
+    follow(file, false, 5);
+    Thread.sleep(200);
+
+    write(file, true, "mple.Foo - partial\n" + event("new"));
+    assertEquals("new", nextMessage());
+    assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void holdsIncompleteEvent() throws Exception {
+    File file = tmp.newFile("partial.log");
+    write(file, false, HEADER);
+    follow(file, true, 300);
+
+    write(file, true, "2013-07-22 10:15:40,224 [ERROR] com.example.Foo - bo");
+    assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    write(file, true, "om\n");
+    write(file, true, "java.lang.IllegalStateException: boom\n");
+    write(file, true, "\tat foo.Bar.baz(Bar.java:12)\n");
+
+    assertEquals("boom\njava.lang.IllegalStateException: boom\n\tat foo.Bar.baz(Bar.java:12)", nextMessage());
+  }
+
+  @Test
+  public void holdsLastEventForLateContinuationLines() throws Exception {
+    File file = tmp.newFile("buffered.log");
+    write(file, false, HEADER);
+    follow(file, true, 1000);
+
+    // a buffered appender writes the stack trace of an event a bit later
+    write(file, true, event("boom"));
+    assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    write(file, true, "java.lang.IllegalStateException: boom\n");
+    write(file, true, event("next"));
+
+    assertEquals("boom\njava.lang.IllegalStateException: boom", nextMessage());
+    assertEquals("next", nextMessage());
+  }
+
+  @Test
+  public void reportsContinuationLinesAfterFlush() throws Exception {
+    Logger logger = (Logger) LoggerFactory.getLogger(FollowingFileDecoder.class);
+    ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+    appender.start();
+    // logging is off by default (see logback.xml)
+    logger.setLevel(Level.WARN);
+    logger.addAppender(appender);
+    try {
+      File file = tmp.newFile("late.log");
+      write(file, false, HEADER);
+      follow(file, true, 5);
+
+      write(file, true, event("boom"));
+      assertEquals("boom", nextMessage());
+      write(file, true, "java.lang.IllegalStateException: boom\n");
+      write(file, true, event("next"));
+      assertEquals("next", nextMessage());
+
+      int warnings = 0;
+      for (ILoggingEvent event : appender.list) {
+        if (event.getLevel() == Level.WARN
+            && event.getFormattedMessage().contains("java.lang.IllegalStateException: boom")) {
+          warnings++;
+        }
+      }
+      assertEquals(1, warnings);
+    } finally {
+      logger.detachAppender(appender);
+      logger.setLevel(null);
+    }
+  }
+
+  @Test
+  public void followsRotatedFile() throws Exception {
+    File file = tmp.newFile("rotated.log");
+    write(file, false, HEADER + event("one"));
+    follow(file, true, 5);
+    assertEquals("one", nextMessage());
+
+    // the appender writes its last event and rolls over
+    write(file, true, event("two"));
+    File rolled = new File(file.getPath() + ".1");
+    file.renameTo(rolled);
+    write(file, false, HEADER + event("three"));
+
+    assertEquals("two", nextMessage());
+    assertEquals("three", nextMessage());
+
+    write(file, true, event("four"));
+    assertEquals("four", nextMessage());
+    assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void restartsTruncatedFile() throws Exception {
+    File file = tmp.newFile("truncated.log");
+    write(file, false, HEADER + event("one") + event("two"));
+    follow(file, true, 5);
+    assertEquals("one", nextMessage());
+    assertEquals("two", nextMessage());
+
+    write(file, false, event("three"));
+    assertEquals("three", nextMessage());
+    assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+  }
+}
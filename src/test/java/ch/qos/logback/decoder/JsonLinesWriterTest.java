@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Tests writing decoded events as JSON Lines
+ */
+public class JsonLinesWriterTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger{0} {%mdc}: %msg%n";
+  private static final String INPUT =
+        "2013-06-12 15:27:15.044 INFO  [main] Foo {user=jdoe, requestId=42}: hello \"world\"\n"
+      + "2013-06-12 15:27:16.044 ERROR [pool-1] Bar {user=root}: boom\n"
+      + "java.lang.IllegalStateException: bad\n";
+
+  private static String write(BufferDecoder decoder, String input) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonLinesWriter writer = new JsonLinesWriter(out, 64);
+    try {
+      decoder.decode(new BufferedReader(new StringReader(input)), writer);
+    } finally {
+      writer.close();
+    }
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void writesOneLinePerEvent() throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    String[] lines = write(decoder, INPUT).split("\n", -1);
+
+    assertEquals(3, lines.length);
+    assertEquals("", lines[2]);
+    long time = decoder.decode(INPUT.substring(0, INPUT.indexOf('\n') + 1)).getTimeStamp();
+    assertEquals("{\"timestamp\":" + time + ",\"level\":\"INFO\",\"logger\":\"Foo\",\"thread\":\"main\","
+        + "\"message\":\"hello \\\"world\\\"\",\"mdc\":{\"user\":\"jdoe\",\"requestId\":\"42\"}}", lines[0]);
+    assertEquals("{\"timestamp\":" + (time + 1000) + ",\"level\":\"ERROR\",\"logger\":\"Bar\",\"thread\":\"pool-1\","
+        + "\"message\":\"boom\\njava.lang.IllegalStateException: bad\",\"mdc\":{\"user\":\"root\"}}", lines[1]);
+  }
+
+  @Test
+  public void leavesOutFieldsNotDecoded() throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setFields(new HashSet<String>(Arrays.asList("level", "message")));
+    decoder.setLayoutPattern(LAYOUT);
+
+    assertEquals("{\"level\":\"INFO\",\"message\":\"hello \\\"world\\\"\"}",
+        write(decoder, INPUT).split("\n")[0]);
+  }
+
+  @Test
+  public void writesCallerFields() throws IOException {
+    StaticLoggingEvent event = new StaticLoggingEvent();
+    event.setLevel(Level.WARN);
+    event.setClassNameOfCaller("com.example.Foo");
+    event.setMethodOfCaller("run");
+    event.setLineNumberOfCaller(12);
+    event.setCallerStackData(Arrays.asList(new StackTraceElement("com.example.Foo", "run", "Foo.java", 12)));
+    event.setMessage("hi");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonLinesWriter writer = new JsonLinesWriter(out);
+    writer.handle(event);
+    writer.flush();
+
+    assertEquals("{\"level\":\"WARN\",\"callerClass\":\"com.example.Foo\",\"callerMethod\":\"run\",\"callerLine\":12,"
+        + "\"callerData\":[{\"class\":\"com.example.Foo\",\"method\":\"run\",\"file\":\"Foo.java\",\"line\":12}],"
+        + "\"message\":\"hi\"}\n", out.toString("UTF-8"));
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding {@link LazyLoggingEvent}s
+ */
+public class LazyLoggingEventTest {
+  private static final String INPUT = "2013-06-12 15:27:15.044 INFO  [main] KdbFxFeedhandlerApp: Foo Bar\n"
+      + "Caller+0   at mainPackage.sub.sample.Bar.sampleMethodName(Bar.java:22)\n"
+      + "Caller+1   at mainPackage.sub.sample.Bar.createLoggingRequest(Bar.java:17)\n";
+
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger{0}: %msg%caller%n";
+
+  @Test
+  public void parsesFieldsOnlyWhenRead() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext();
+    LazyLoggingEvent event = (LazyLoggingEvent)context.decodeLazily(INPUT);
+
+    assertTrue(event.isPending(PatternNames.LEVEL));
+    assertTrue(event.isPending(PatternNames.DATE));
+
+    assertEquals(Level.INFO, event.getLevel());
+    assertFalse(event.isPending(PatternNames.LEVEL));
+    assertTrue(event.isPending(PatternNames.DATE));
+    assertTrue(event.isPending(PatternNames.CALLER_STACKTRACE));
+  }
+
+  @Test
+  public void decodesSameFieldsAsEagerDecoding() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext();
+    ILoggingEvent eager = context.decode(INPUT);
+    ILoggingEvent lazy = context.decodeLazily(INPUT);
+
+    assertEquals(eager.getTimeStamp(), lazy.getTimeStamp());
+    assertEquals(eager.getLevel(), lazy.getLevel());
+    assertEquals(eager.getThreadName(), lazy.getThreadName());
+    assertEquals(eager.getLoggerName(), lazy.getLoggerName());
+    assertEquals(eager.getMessage(), lazy.getMessage());
+    assertEquals(eager.getFormattedMessage(), lazy.getFormattedMessage());
+    assertArrayEquals(eager.getCallerData(), lazy.getCallerData());
+  }
+
+  @Test
+  public void keepsThreadNameFromInput() {
+    // LoggingEvent.getThreadName() defaults to the current thread's name
+    // when not set, so the field must be parsed first
+    DecodeContext context = CompiledLayout.compile("%d [%thread] %msg%n").newContext();
+    ILoggingEvent event = context.decodeLazily("2013-07-22 10:15:40,224 [worker-7] hello\n");
+    assertEquals("worker-7", event.getThreadName());
+  }
+
+  @Test
+  public void returnsNullForUndecodableInput() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext();
+    assertNull(context.decodeLazily("not a log event"));
+  }
+
+  @Test
+  public void prepareForDeferredProcessingParsesAllFields() {
+    DecodeContext context = CompiledLayout.compile(LAYOUT).newContext();
+    LazyLoggingEvent event = (LazyLoggingEvent)context.decodeLazily(INPUT);
+    event.prepareForDeferredProcessing();
+
+    assertFalse(event.isPending(PatternNames.DATE));
+    assertFalse(event.isPending(PatternNames.CALLER_STACKTRACE));
+    assertEquals(2, event.getCallerData().length);
+  }
+
+  @Test
+  public void lazyDecoderDecodesLazyEvents() throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    List<ILoggingEvent> expected = decoder.decode(new BufferedReader(new StringReader(INPUT + INPUT)));
+
+    decoder.setLazy(true);
+    List<ILoggingEvent> actual = decoder.decode(new BufferedReader(new StringReader(INPUT + INPUT)));
+
+    assertEquals(2, actual.size());
+    assertTrue(actual.get(0) instanceof LazyLoggingEvent);
+    for (int i = 0; i < actual.size(); i++) {
+      assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+      assertArrayEquals(expected.get(i).getCallerData(), actual.get(i).getCallerData());
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import ch.qos.logback.core.pattern.parser2.FixedDateFormat;
+
+/**
+ * Tests turning away text that lacks the literals of a layout
+ */
+public class LiteralAnchorsTest {
+  private static final String LAYOUT = "%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+
+  @Test
+  public void collectsLiteralsBetweenSubPatterns() {
+    CompiledLayout layout = CompiledLayout.compile(LAYOUT);
+    assertEquals(Arrays.asList("[", "]", "-"), layout.getAnchors().getAnchors());
+    assertEquals(Arrays.asList("[", "]", "-"), layout.getEventStartAnchors().getAnchors());
+
+    layout = CompiledLayout.compile("%d %level %msg ::: %logger <<end>>%n");
+    assertEquals(Arrays.asList(":::", "<<end>>"), layout.getAnchors().getAnchors());
+    assertTrue(layout.getEventStartAnchors().isEmpty());
+
+    // escaped literals are left out
+    assertTrue(CompiledLayout.compile("%d \\(%level\\) %msg%n").getAnchors().isEmpty());
+  }
+
+  @Test
+  public void findsAnchorsInOrder() {
+    LiteralAnchors anchors = CompiledLayout.compile("%level ::: %logger <<end>> %msg%n").getAnchors();
+
+    assertTrue(anchors.matches("INFO ::: foo <<end>> bar"));
+    assertTrue(anchors.matches("INFO :::: foo <<<end>>> bar"));
+    assertFalse(anchors.matches("INFO <<end>> foo ::: bar"));
+    assertFalse(anchors.matches("INFO ::<<end>> foo"));
+    assertFalse(anchors.matches("INFO :::<<end"));
+    assertTrue(LiteralAnchors.NONE.matches(""));
+  }
+
+  @Test
+  public void rejectsContinuationLinesBeforeRegex() {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+
+    assertTrue(decoder.isEventStart("10:15:40.224 [main] INFO  com.example.Foo - one"));
+    assertFalse(decoder.isEventStart("\tat com.example.Foo.bar(Foo.java:12)"));
+    assertFalse(decoder.isEventStart("10:15:40.224 wrapped text without brackets"));
+    assertNull(decoder.decode("10:15:40.224 wrapped text without brackets\n"));
+    assertFalse(decoder.wasRejected());
+    assertNotNull(decoder.decode("10:15:40.224 [main] INFO  com.example.Foo - one\n"));
+  }
+
+  @Test
+  public void readsTimestampOnlyOfEventStart() {
+    DecodeContext context = CompiledLayout.compile("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %msg%n")
+        .newContext(Collections.<FieldFilter>emptyList());
+
+    assertTrue(context.readTimestamp("2013-07-22 10:15:40.224 [main] one") > 0);
+    assertEquals(FixedDateFormat.INVALID, context.readTimestamp("2013-07-22 10:15:40.224 main one"));
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests resolving the log files named by paths, directories and globs
+ */
+public class LogFilesTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private String root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = tmp.getRoot().getPath();
+    tmp.newFolder("host1");
+    tmp.newFolder("host2");
+    tmp.newFile("host1/app.log");
+    tmp.newFile("host1/app.log.1.gz");
+    tmp.newFile("host1/app.log.idx");
+    tmp.newFile("host2/app.log");
+    tmp.newFile("host2/other.txt");
+  }
+
+  private List<String> resolve(String... paths) throws IOException {
+    List<String> names = new ArrayList<String>();
+    for (File file : LogFiles.resolve(Arrays.asList(paths))) {
+      names.add(file.getPath().substring(root.length() + 1));
+    }
+    return names;
+  }
+
+  private static String path(String... names) {
+    StringBuilder path = new StringBuilder();
+    for (String name : names) {
+      path.append(path.length() > 0 ? File.separator : "").append(name);
+    }
+    return path.toString();
+  }
+
+  @Test
+  public void listsFilesOfDirectory() throws IOException {
+    assertEquals(Arrays.asList(path("host1", "app.log"), path("host1", "app.log.1.gz")),
+        resolve(root + File.separator + "host1"));
+  }
+
+  @Test
+  public void expandsGlobs() throws IOException {
+    assertEquals(Arrays.asList(path("host1", "app.log"), path("host2", "app.log")),
+        resolve(root + File.separator + path("*", "app.log")));
+    assertEquals(Arrays.asList(path("host1", "app.log"), path("host1", "app.log.1.gz"), path("host2", "app.log")),
+        resolve(root + File.separator + path("**", "app.log{,.*.gz}")));
+  }
+
+  @Test
+  public void keepsPlainPaths() throws IOException {
+    assertEquals(Arrays.asList(path("missing.log"), path("host2", "other.txt")),
+        resolve(root + File.separator + "missing.log", root + File.separator + path("host2", "other.txt")));
+  }
+}
@@ -20,15 +20,54 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.ThrowableProxy;
 import ch.qos.logback.core.CoreConstants;
 
 /**
  * Utility to generate log files for testing
  */
 public class LogGenerator {
+  /** Layout of the files from {@link #generateFile(String, int)} */
+  static public final String SIMPLE_LAYOUT = "%d [%level] - %msg%n";
+
+  /** Layout with caller data on continuation lines */
+  static public final String CALLER_LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger{0}: %msg%n%caller{2}";
+
+  /** Layout with MDC properties */
+  static public final String MDC_LAYOUT = "%d [%thread] %level %logger {%mdc} - %msg%n";
+
+  /** Layout with a stack trace after each event */
+  static public final String EXCEPTION_LAYOUT = "%d [%level] %logger - %msg%n%ex";
+
+  /** Timestamp of the first event of {@link #generateEvents(String, int)} */
+  static final long START_TIME = 1374480000000L;
+
+  /** Time between consecutive events of {@link #generateEvents(String, int)} */
+  static final long EVENT_INTERVAL = 137L;
+
+  static private final String[] LOGGER_NAMES = {
+    "ch.qos.logback.decoder.Decoder",
+    "com.example.web.RequestHandler",
+    "com.example.db.ConnectionPool",
+    "org.example.cache.Evictor",
+  };
+
+  static private final String[] THREAD_NAMES = {
+    "main",
+    "http-nio-8080-exec-1",
+    "pool-1-thread-3",
+  };
+
   // Harvard Sentences as log event messages
   static private final String[] EVENT_MSGS = {
     "Oak is strong and also gives shade.",
@@ -58,7 +97,7 @@ public class LogGenerator {
    * @param numEvents number of events to generate (one event per line)
    */
   static public void generateFile(String path, int numEvents) {
-    final String LAYOUT = "%d [%level] - %msg%n";
+    final String LAYOUT = SIMPLE_LAYOUT;
     DateFormat dateFormat = new SimpleDateFormat(CoreConstants.ISO8601_PATTERN);
     Calendar now = Calendar.getInstance();
     BufferedWriter writer = null;
@@ -93,4 +132,80 @@ public class LogGenerator {
       } catch (Exception e) { /* ignore */ }
     }
   }
+
+  /**
+   * Generates log events formatted with a logback {@link PatternLayout}.
+   * The events only depend on the layout and their number, so that the
+   * same input can be decoded across runs (e.g., for benchmarks).
+   *
+   * @param layout the layout pattern to format the events with (e.g.,
+   * {@link #CALLER_LAYOUT})
+   * @param numEvents number of events to generate
+   * @return the text of each event, including its line terminators
+   */
+  static public List<String> generateEvents(String layout, int numEvents) {
+    LoggerContext context = new LoggerContext();
+    PatternLayout patternLayout = new PatternLayout();
+    patternLayout.setContext(context);
+    patternLayout.setPattern(layout);
+    // only include stack traces where the layout asks for them
+    patternLayout.setPostCompileProcessor(null);
+    patternLayout.start();
+
+    List<String> events = new ArrayList<String>(numEvents);
+    for (int i = 0; i < numEvents; i++) {
+      String loggerName = LOGGER_NAMES[i % LOGGER_NAMES.length];
+
+      LoggingEvent event = new LoggingEvent();
+      event.setTimeStamp(START_TIME + i * EVENT_INTERVAL);
+      event.setLevel(Level.toLevel(EVENT_LEVELS[i % EVENT_LEVELS.length]));
+      event.setLoggerName(loggerName);
+      event.setThreadName(THREAD_NAMES[i % THREAD_NAMES.length]);
+      event.setMessage(EVENT_MSGS[i % EVENT_MSGS.length]);
+      event.setLoggerContextRemoteView(context.getLoggerContextRemoteView());
+      event.setCallerData(new StackTraceElement[] {
+          new StackTraceElement(loggerName, "handle", "Handler.java", 40 + i % 60),
+          new StackTraceElement(loggerName, "run", "Handler.java", 12),
+      });
+
+      Map<String, String> mdc = new HashMap<String, String>();
+      mdc.put("requestId", String.valueOf(100000 + i));
+      mdc.put("user", "user" + i % 7);
+      event.setMDCPropertyMap(mdc);
+
+      IllegalStateException ex = new IllegalStateException("Failed to process item " + i);
+      ex.setStackTrace(new StackTraceElement[] {
+          new StackTraceElement("com.example.db.ConnectionPool", "acquire", "ConnectionPool.java", 88),
+          new StackTraceElement("com.example.web.RequestHandler", "handle", "RequestHandler.java", 51),
+          new StackTraceElement("java.lang.Thread", "run", "Thread.java", 745),
+      });
+      event.setThrowableProxy(new ThrowableProxy(ex));
+
+      events.add(patternLayout.doLayout(event));
+    }
+    patternLayout.stop();
+    return events;
+  }
+
+  /**
+   * Generates a log file whose events are formatted with a logback
+   * {@link PatternLayout}, starting with the layout pattern header
+   *
+   * @param path file destination
+   * @param layout the layout pattern to format the events with
+   * @param numEvents number of events to generate
+   * @throws IOException an error occurred while writing the file
+   * @see #generateEvents(String, int)
+   */
+  static public void generateFile(String path, String layout, int numEvents) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path)));
+    try {
+      writer.write(PatternLayout.HEADER_PREFIX + layout + "\n");
+      for (String event : generateEvents(layout, numEvents)) {
+        writer.write(event);
+      }
+    } finally {
+      writer.close();
+    }
+  }
 }
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests building and querying the sidecar index of a log file
+ */
+public class LogIndexTest {
+  private static final String LAYOUT = "%d [%level] %logger - %msg%n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  /**
+   * Appends events to a log; every 2000th event is an ERROR of the
+   * logger "com.example.Rare", and the others are INFO events of
+   * "com.example.Common"
+   */
+  private static void append(File file, int first, int count) throws IOException {
+    Writer writer = new FileWriter(file, true);
+    try {
+      if (first == 0) {
+        writer.write(PatternLayout.HEADER_PREFIX + LAYOUT + "\n");
+      }
+      for (int i = first; i < first + count; i++) {
+        boolean rare = i % 2000 == 1999;
+        writer.write(String.format("2013-07-22 %02d:%02d:%02d,000 [%s] com.example.%s - event %d\n",
+            i / 3600 % 24, i / 60 % 60, i % 60, rare ? "ERROR" : "INFO", rare ? "Rare" : "Common", i));
+        if (rare) {
+          writer.write("java.lang.IllegalStateException: boom\n\tat foo.Bar.baz(Bar.java:12)\n");
+        }
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static List<ILoggingEvent> decode(MappedFileDecoder decoder, File file, LogIndex index) throws IOException {
+    final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    decoder.decode(file, index, new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        events.add(event);
+      }
+    });
+    return events;
+  }
+
+  @Test
+  public void buildsBlocksOfEvents() throws IOException {
+    File file = tmp.newFile("blocks.log");
+    append(file, 0, 5000);
+    LogIndex index = new MappedFileDecoder().buildIndex(file);
+
+    assertEquals(5000, index.getEventCount());
+    assertEquals(5, index.getBlockCount());
+    assertEquals(1024, index.getBlockOrdinal(1));
+    assertEquals(5000 - 4 * 1024, index.getBlockEventCount(4));
+    assertEquals(file.length(), index.getIndexedLength());
+    assertEquals(1, index.findBlock(2047));
+    assertEquals(2, index.findBlock(2048));
+    assertEquals(-1, index.findBlock(5000));
+  }
+
+  @Test
+  public void loadsIndexFromSidecarFile() throws IOException {
+    File file = tmp.newFile("sidecar.log");
+    append(file, 0, 3000);
+    LogIndex index = new MappedFileDecoder().buildIndex(file);
+    index.write(LogIndex.sidecarFile(file));
+
+    LogIndex loaded = LogIndex.load(LogIndex.sidecarFile(file));
+    assertEquals(index.toString(), loaded.toString());
+    assertEquals(LAYOUT, loaded.getLayoutPattern());
+    for (int i = 0; i < index.getBlockCount(); i++) {
+      assertEquals(index.getBlockOffset(i), loaded.getBlockOffset(i));
+    }
+    assertTrue(loaded.isValidFor(file));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsTruncatedIndexFile() throws IOException {
+    File file = tmp.newFile("truncated.log");
+    append(file, 0, 3000);
+    File indexFile = LogIndex.sidecarFile(file);
+    new MappedFileDecoder().buildIndex(file).write(indexFile);
+
+    RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+    try {
+      raf.setLength(raf.length() - 10);
+    } finally {
+      raf.close();
+    }
+    LogIndex.load(indexFile);
+  }
+
+  @Test
+  public void skipsBlocksThatCannotPassFilters() throws IOException {
+    File file = tmp.newFile("skip.log");
+    append(file, 0, 5000);
+    LogIndex index = new MappedFileDecoder().buildIndex(file);
+
+    // only the blocks of events 1999 and 3999 hold errors
+    assertFalse(index.mayContain(0, Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR))));
+    assertTrue(index.mayContain(1, Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR))));
+    assertFalse(index.mayContain(1, Collections.<FieldFilter>singletonList(new LoggerPrefixFilter("org."))));
+
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.ERROR)));
+    List<ILoggingEvent> events = decode(decoder, file, index);
+
+    assertEquals(2, events.size());
+    assertEquals("com.example.Rare", events.get(0).getLoggerName());
+    assertTrue(events.get(0).getMessage().startsWith("event 1999\njava.lang.IllegalStateException"));
+    assertEquals(decoder.decode(file).size(), events.size());
+  }
+
+  @Test
+  public void extendsIndexWhenLogGrows() throws IOException {
+    File file = tmp.newFile("grow.log");
+    append(file, 0, 1500);
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    LogIndex index = decoder.buildIndex(file);
+
+    append(file, 1500, 2000);
+    assertTrue(index.isValidFor(file));
+    LogIndex extended = decoder.buildIndex(file, index);
+    LogIndex rebuilt = new MappedFileDecoder().buildIndex(file);
+
+    assertEquals(3500, extended.getEventCount());
+    assertEquals(rebuilt.toString(), extended.toString());
+    for (int i = 0; i < rebuilt.getBlockCount(); i++) {
+      assertEquals(rebuilt.getBlockOffset(i), extended.getBlockOffset(i));
+      assertEquals(rebuilt.getBlockEventCount(i), extended.getBlockEventCount(i));
+    }
+  }
+
+  @Test
+  public void decodesEventsAppendedAfterIndexing() throws IOException {
+    File file = tmp.newFile("tail.log");
+    append(file, 0, 1500);
+    LogIndex index = new MappedFileDecoder().buildIndex(file);
+    append(file, 1500, 1000);
+
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new LoggerPrefixFilter("com.example.Rare")));
+    List<ILoggingEvent> events = decode(decoder, file, index);
+
+    assertEquals(1, events.size());
+    assertTrue(events.get(0).getMessage().startsWith("event 1999"));
+  }
+
+  @Test
+  public void rejectsRewrittenLog() throws IOException {
+    File file = tmp.newFile("rewritten.log");
+    append(file, 0, 1500);
+    LogIndex index = new MappedFileDecoder().buildIndex(file);
+
+    // a rotated log that has grown past the indexed length
+    file.delete();
+    append(file, 0, 10);
+    append(file, 5000, 2000);
+    assertTrue(file.length() > index.getIndexedLength());
+    assertFalse(index.isValidFor(file));
+
+    List<ILoggingEvent> events = decode(new MappedFileDecoder(), file, index);
+    assertEquals(2010, events.size());
+  }
+}
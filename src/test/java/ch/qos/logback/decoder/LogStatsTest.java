@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Tests counting the events of a log
+ */
+public class LogStatsTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level [%thread] %logger: %msg%n";
+
+  /**
+   * Creates a log of 3000 events over three minutes: 500 in the first,
+   * 1000 in the second and 1500 in the third. Every 10th event is a
+   * WARN of "com.example.Bar"; the others are INFO events of
+   * "com.example.Foo". The log starts with a line that does not match
+   * the layout.
+   */
+  private static String input() {
+    StringBuilder input = new StringBuilder("### not an event\n");
+    for (int i = 0; i < 3000; i++) {
+      int minute = i < 500 ? 0 : i < 1500 ? 1 : 2;
+      boolean warn = i % 10 == 0;
+      input.append(String.format("2013-07-22 10:%02d:%02d.%03d %-5s [pool-%d] com.example.%s: event %d\n",
+          minute, i % 60, i % 1000, warn ? "WARN" : "INFO", i % 2, warn ? "Bar" : "Foo", i));
+    }
+    return input.toString();
+  }
+
+  private static LogStats stats(FieldFilter... filters) throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setFilters(Arrays.asList(filters));
+    decoder.setLayoutPattern(LAYOUT);
+    LogStats stats = new LogStats();
+    decoder.decode(new BufferedReader(new StringReader(input())), stats.getBatch(), stats);
+    return stats;
+  }
+
+  @Test
+  public void countsEventsPerField() throws IOException {
+    LogStats stats = stats();
+
+    assertEquals(3000, stats.getEventCount());
+    assertEquals(1, stats.getUndecodableCount());
+    assertEquals(0, stats.getRejectedCount());
+
+    Map<Level, Long> levels = stats.getLevelCounts();
+    assertEquals(Arrays.asList(Level.INFO, Level.WARN), Arrays.asList(levels.keySet().toArray()));
+    assertEquals(2700L, (long) levels.get(Level.INFO));
+    assertEquals(300L, (long) levels.get(Level.WARN));
+
+    // highest first
+    Iterator<Map.Entry<String, Long>> loggers = stats.getLoggerCounts().entrySet().iterator();
+    assertEquals("com.example.Foo", loggers.next().getKey());
+    assertEquals(300L, (long) loggers.next().getValue());
+    assertEquals(1500L, (long) stats.getThreadCounts().get("pool-1"));
+
+    assertEquals(Arrays.asList(500L, 1000L, 1500L), Arrays.asList(stats.getMinuteCounts().values().toArray()));
+  }
+
+  @Test
+  public void reportsTimeRangeAndRate() throws IOException {
+    LogStats stats = stats();
+    long minute = stats.getMinuteCounts().firstKey();
+
+    assertEquals(minute, stats.getFirstTimestamp());
+    assertEquals(minute + 2 * 60 * 1000 + 59 * 1000 + 999, stats.getLastTimestamp());
+    assertEquals(500, stats.getEventsPerMinute(0));
+    assertEquals(1000, stats.getEventsPerMinute(50));
+    assertEquals(1500, stats.getEventsPerMinute(90));
+    assertEquals(1500, stats.getEventsPerMinute(100));
+  }
+
+  @Test
+  public void countsRejectedEvents() throws IOException {
+    LogStats stats = stats(new MinLevelFilter(Level.WARN));
+
+    assertEquals(300, stats.getEventCount());
+    assertEquals(2700, stats.getRejectedCount());
+    assertEquals(Collections.singleton("com.example.Bar"), stats.getLoggerCounts().keySet());
+  }
+
+  @Test
+  public void writesReports() throws IOException {
+    LogStats stats = stats();
+
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    stats.writeJson(json);
+    String text = json.toString("UTF-8");
+    assertTrue(text, text.startsWith("{\"events\":3000,\"undecodable\":1,\"rejected\":0,\"first\":"));
+    assertTrue(text, text.contains("\"levels\":{\"INFO\":2700,\"WARN\":300},\"loggers\":{\"com.example.Foo\":2700,"));
+    assertTrue(text, text.endsWith("\"2013-07-22 10:02\":1500}}\n"));
+
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    stats.writeText(new PrintStream(report, true, "UTF-8"));
+    text = report.toString("UTF-8");
+    assertTrue(text, text.startsWith("events   3000 (1 undecodable, 0 rejected)"));
+    assertTrue(text, text.contains("per min  p50 1000, p90 1500, p99 1500, max 1500"));
+    assertTrue(text, text.contains("        1500  2013-07-22 10:02"));
+  }
+
+  @Test
+  public void countsEventsOfEmptyLog() throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    LogStats stats = new LogStats();
+    decoder.decode(new BufferedReader(new StringReader("")), stats.getBatch(), stats);
+
+    assertEquals(0, stats.getEventCount());
+    assertEquals(0, stats.getFirstTimestamp());
+    assertEquals(0, stats.getEventsPerMinute(50));
+    assertTrue(stats.getLevelCounts().isEmpty());
+  }
+}
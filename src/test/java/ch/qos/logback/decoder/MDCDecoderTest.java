@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding %mdc
+ */
+public class MDCDecoderTest extends DecoderTest {
+  @Test
+  public void decodesSingleProperty() {
+    Map<String, String> expected = new LinkedHashMap<String, String>();
+    expected.put("user", "jdoe");
+    assertEquals(expected, getMDC("user=jdoe"));
+  }
+
+  @Test
+  public void decodesPropertiesInOrder() {
+    Map<String, String> mdc = getMDC("user=jdoe, session=0xCAFE, requestId=42");
+    assertEquals(Arrays.asList("user", "session", "requestId"), Arrays.asList(mdc.keySet().toArray()));
+    assertEquals("0xCAFE", mdc.get("session"));
+  }
+
+  @Test
+  public void decodesLazily() {
+    decoder.setLazy(true);
+    assertEquals("42", getMDC("user=jdoe, requestId=42").get("requestId"));
+  }
+
+  @Test
+  public void undecodedMDCIsEmptyRatherThanCurrentThreads() {
+    MDC.put("leak", "yes");
+    try {
+      decoder.setFields(new HashSet<String>(Arrays.asList("level")));
+      assertTrue(getMDC("user=jdoe").isEmpty());
+    } finally {
+      MDC.remove("leak");
+    }
+  }
+
+  private Map<String, String> getMDC(String mdc) {
+    final String INPUT = "2013-06-12 15:27:15.044 INFO  {" + mdc + "}: foo bar message\n";
+    final String PATT = "%d{yyyy-MM-dd HH:mm:ss.SSS} %-5level {%mdc}: %msg%n";
+    decoder.setLayoutPattern(PATT);
+    ILoggingEvent event = decoder.decode(INPUT);
+    assertNotNull(event);
+    return event.getMDCPropertyMap();
+  }
+}
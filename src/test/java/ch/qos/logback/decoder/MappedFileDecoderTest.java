@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding a log file through a memory mapping
+ */
+public class MappedFileDecoderTest {
+  private static final String LAYOUT = "%d [%level] - %msg%n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void decodesSameEventsAsBufferDecoder() throws IOException {
+    File file = tmp.newFile("gen.log");
+    LogGenerator.generateFile(file.getPath(), 500);
+
+    List<ILoggingEvent> expected = new BufferDecoder().decode(new BufferedReader(new FileReader(file)));
+    List<ILoggingEvent> actual = new MappedFileDecoder().decode(file);
+
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getTimeStamp(), actual.get(i).getTimeStamp());
+      assertEquals(expected.get(i).getLevel(), actual.get(i).getLevel());
+      assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+    }
+  }
+
+  @Test
+  public void decodesMultiLineAndNonAsciiEvents() throws IOException {
+    File file = write("multiline.log", "2013-07-22 10:15:40,224 [INFO] - héllo wörld\n"
+        + "java.lang.IllegalStateException: boom\n"
+        + "\tat foo.Bar.baz(Bar.java:12)\n"
+        + "2013-07-22 10:15:41,224 [WARN] - last line without terminator");
+
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setCharset(StandardCharsets.UTF_8);
+    decoder.setLayoutPattern(LAYOUT);
+    List<ILoggingEvent> events = decoder.decode(file);
+
+    assertEquals(2, events.size());
+    assertEquals("héllo wörld\njava.lang.IllegalStateException: boom\n\tat foo.Bar.baz(Bar.java:12)",
+        events.get(0).getMessage());
+    assertEquals("last line without terminator", events.get(1).getMessage());
+  }
+
+  @Test
+  public void decodesCrlfEventsLikeBufferDecoder() throws IOException {
+    File file = write("crlf.log", "2013-07-22 10:15:40,224 [INFO] - first\r\n"
+        + "java.lang.IllegalStateException: boom\r\n"
+        + "\tat foo.Bar.baz(Bar.java:12)\r\n"
+        + "2013-07-22 10:15:41,224 [WARN] - second\r\n");
+
+    BufferDecoder bufferDecoder = new BufferDecoder();
+    bufferDecoder.setLayoutPattern(LAYOUT);
+    List<ILoggingEvent> expected = bufferDecoder.decode(new BufferedReader(new FileReader(file)));
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setLayoutPattern(LAYOUT);
+    List<ILoggingEvent> actual = decoder.decode(file);
+
+    assertEquals(2, expected.size());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getTimeStamp(), actual.get(i).getTimeStamp());
+      assertEquals(expected.get(i).getLevel(), actual.get(i).getLevel());
+      assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+    }
+    assertEquals("first\njava.lang.IllegalStateException: boom\n\tat foo.Bar.baz(Bar.java:12)",
+        actual.get(0).getMessage());
+  }
+
+  @Test
+  public void decodesNonAsciiCrlfEvents() throws IOException {
+    File file = write("crlf-utf8.log", "2013-07-22 10:15:40,224 [INFO] - héllo\r\n"
+        + "\tat foo.Bär.baz(Bär.java:12)\r\n"
+        + "2013-07-22 10:15:41,224 [WARN] - wörld\r\n");
+
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setCharset(StandardCharsets.UTF_8);
+    decoder.setLayoutPattern(LAYOUT);
+    List<ILoggingEvent> events = decoder.decode(file);
+
+    assertEquals(2, events.size());
+    assertEquals("héllo\n\tat foo.Bär.baz(Bär.java:12)", events.get(0).getMessage());
+    assertEquals("wörld", events.get(1).getMessage());
+  }
+
+  @Test
+  public void decodesOnlyEventsInTimeRange() throws IOException {
+    File file = tmp.newFile("range.log");
+    LogGenerator.generateFile(file.getPath(), 2000);
+    List<ILoggingEvent> all = new MappedFileDecoder().decode(file);
+
+    List<ILoggingEvent> events = decodeRange(file, null, all.get(500).getTimeStamp(), all.get(1500).getTimeStamp());
+    assertEquals(1000, events.size());
+    assertEquals(all.get(500).getTimeStamp(), events.get(0).getTimeStamp());
+    assertEquals(all.get(1499).getTimeStamp(), events.get(999).getTimeStamp());
+
+    // bounds between two events
+    events = decodeRange(file, null, all.get(500).getTimeStamp() - 1, all.get(1500).getTimeStamp() - 1);
+    assertEquals(1000, events.size());
+    assertEquals(all.get(500).getTimeStamp(), events.get(0).getTimeStamp());
+  }
+
+  @Test
+  public void decodesOpenAndEmptyTimeRanges() throws IOException {
+    File file = tmp.newFile("open.log");
+    LogGenerator.generateFile(file.getPath(), 300);
+    List<ILoggingEvent> all = new MappedFileDecoder().decode(file);
+    long first = all.get(0).getTimeStamp();
+    long last = all.get(299).getTimeStamp();
+
+    assertEquals(300, decodeRange(file, null, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    assertEquals(100, decodeRange(file, null, all.get(200).getTimeStamp(), Long.MAX_VALUE).size());
+    assertEquals(200, decodeRange(file, null, Long.MIN_VALUE, all.get(200).getTimeStamp()).size());
+    assertEquals(0, decodeRange(file, null, last + 1, Long.MAX_VALUE).size());
+    assertEquals(0, decodeRange(file, null, Long.MIN_VALUE, first).size());
+  }
+
+  @Test
+  public void seeksPastContinuationLines() throws Exception {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < 600; i++) {
+      buf.append(String.format("2013-07-22 10:%02d:%02d,000 [ERROR] - event %d\n", i / 60, i % 60, i));
+      for (int j = 0; j < i % 7; j++) {
+        buf.append("\tat foo.Bar.baz(Bar.java:" + j + ")\n");
+      }
+    }
+    File file = write("continued.log", buf.toString());
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    List<ILoggingEvent> events = decodeRange(file, LAYOUT,
+        format.parse("2013-07-22 10:03:20").getTime(), format.parse("2013-07-22 10:05:00").getTime());
+    assertEquals(100, events.size());
+    assertEquals("event 200", events.get(0).getMessage().substring(0, 9));
+    assertEquals("event 299", events.get(99).getMessage().substring(0, 9));
+  }
+
+  @Test
+  public void seeksPastLongTrailingEvent() throws Exception {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      buf.append(String.format("2013-07-22 10:00:%02d,000 [ERROR] - event %d\n", i, i));
+    }
+    // the last event takes up most of the file
+    for (int j = 0; j < 5000; j++) {
+      buf.append("\tat foo.Bar.baz(Bar.java:" + j + ")\n");
+    }
+    File file = write("trace.log", buf.toString());
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    final int[] lines = new int[1];
+    MappedFileDecoder decoder = new MappedFileDecoder() {
+      @Override
+      public boolean isEventStart(CharSequence line) {
+        lines[0]++;
+        return super.isEventStart(line);
+      }
+    };
+    decoder.setLayoutPattern(LAYOUT);
+    final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    ILoggingEventHandler handler = new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        events.add(event);
+      }
+    };
+
+    decoder.decode(file, format.parse("2013-07-22 10:01:00").getTime(), Long.MAX_VALUE, handler);
+    assertEquals(0, events.size());
+    // each line of the trace is read about once, not once per event
+    assertTrue("read " + lines[0] + " lines", lines[0] < 2 * 5050);
+
+    decoder.decode(file, format.parse("2013-07-22 10:00:49").getTime(), Long.MAX_VALUE, handler);
+    assertEquals(1, events.size());
+    assertEquals("event 49", events.get(0).getMessage().substring(0, 8));
+  }
+
+  @Test
+  public void filtersTimeRangeWithoutLeadingDate() throws Exception {
+    File file = write("trailing.log", "one [2013-07-22 10:15:40,224]\n"
+        + "two [2013-07-22 10:15:41,224]\n"
+        + "three [2013-07-22 10:15:42,224]\n");
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    List<ILoggingEvent> events = decodeRange(file, "%msg [%d]%n",
+        format.parse("2013-07-22 10:15:41").getTime(), Long.MAX_VALUE);
+    assertEquals(2, events.size());
+    assertEquals("two", events.get(0).getMessage());
+  }
+
+  private static List<ILoggingEvent> decodeRange(File file, String layout, long since, long until) throws IOException {
+    final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    MappedFileDecoder decoder = new MappedFileDecoder();
+    decoder.setLayoutPattern(layout);
+    decoder.decode(file, since, until, new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        events.add(event);
+      }
+    });
+    return events;
+  }
+
+  @Test
+  public void exposesLinesAsViews() throws IOException {
+    File file = write("lines.log", "first\r\nsecond\n\nthird");
+    MappedFileSource source = new MappedFileSource(file);
+    try {
+      assertEquals("first", source.readLine().toString());
+      assertEquals(7, source.position());
+      assertEquals("second", source.readLine().toString());
+      assertEquals("", source.readLine().toString());
+      CharSequence third = source.readLine();
+      assertEquals("hir", third.subSequence(1, 4).toString());
+      assertEquals(null, source.readLine());
+    } finally {
+      source.close();
+    }
+  }
+
+  private File write(String name, String s) throws IOException {
+    File file = tmp.newFile(name);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(s.getBytes(StandardCharsets.UTF_8));
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests merging the events of several log files by timestamp
+ */
+public class MergingFileDecoderTest {
+  private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%level] %logger - %msg%n";
+  private static final String HEADER = PatternLayout.HEADER_PREFIX + LAYOUT + "\n";
+  private static final long START = 1374487200000L;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  /**
+   * Writes a log of events at the given times (in milliseconds after
+   * {@link #START}); each message names the file and the time
+   */
+  private File log(String name, boolean header, long... times) throws IOException {
+    File file = tmp.newFile(name);
+    OutputStream out = new FileOutputStream(file);
+    if (name.endsWith(".gz")) {
+      out = new GZIPOutputStream(out);
+    }
+    StringBuilder text = new StringBuilder(header ? HEADER : "");
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    for (long time : times) {
+      text.append(format.format(new Date(START + time)))
+          .append(time % 7 == 0 ? " [WARN] " : " [INFO] ")
+          .append("com.example.Foo - ").append(name).append('@').append(time).append('\n');
+    }
+    try {
+      out.write(text.toString().getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private static long[] times(int first, int step, int count) {
+    long[] times = new long[count];
+    for (int i = 0; i < count; i++) {
+      times[i] = first + (long) i * step;
+    }
+    return times;
+  }
+
+  private static List<ILoggingEvent> decode(MergingFileDecoder decoder, File... files) throws IOException {
+    final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+    decoder.decode(Arrays.asList(files), new ILoggingEventHandler() {
+      @Override
+      public void handle(ILoggingEvent event) {
+        events.add(event);
+      }
+    });
+    return events;
+  }
+
+  private static void assertOrdered(List<ILoggingEvent> events) {
+    for (int i = 1; i < events.size(); i++) {
+      assertTrue("event " + i, events.get(i - 1).getTimeStamp() <= events.get(i).getTimeStamp());
+    }
+  }
+
+  @Test
+  public void mergesFilesByTimestamp() throws IOException {
+    File a = log("a.log", true, times(0, 3, 1000));
+    File b = log("b.log.gz", true, times(1, 5, 600));
+    File c = log("c.log", true, times(2, 2, 1500));
+
+    List<ILoggingEvent> events = decode(new MergingFileDecoder(2), a, b, c);
+
+    assertEquals(3100, events.size());
+    assertOrdered(events);
+    assertEquals("a.log@0", events.get(0).getMessage());
+    assertEquals("b.log.gz@1", events.get(1).getMessage());
+    assertEquals("c.log@2", events.get(2).getMessage());
+  }
+
+  @Test
+  public void keepsFileOrderForEqualTimestamps() throws IOException {
+    File a = log("a.log", true, 10, 20, 20);
+    File b = log("b.log", true, 10, 20);
+
+    List<ILoggingEvent> events = decode(new MergingFileDecoder(2), b, a);
+
+    List<String> messages = new ArrayList<String>();
+    for (ILoggingEvent event : events) {
+      messages.add(event.getMessage());
+    }
+    assertEquals(Arrays.asList("b.log@10", "a.log@10", "b.log@20", "a.log@20", "a.log@20"), messages);
+  }
+
+  @Test
+  public void mergesManyFilesWithFewThreads() throws IOException {
+    // far more files than threads, each read ahead by one small batch
+    File[] files = new File[60];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = log("host" + i + ".log", true, times(i, files.length, 50));
+    }
+    MergingFileDecoder decoder = new MergingFileDecoder(2);
+    decoder.setBatchSize(8);
+    decoder.setReadAhead(1);
+
+    List<ILoggingEvent> events = decode(decoder, files);
+
+    assertEquals(3000, events.size());
+    for (int i = 0; i < events.size(); i++) {
+      assertEquals(START + i, events.get(i).getTimeStamp());
+    }
+  }
+
+  @Test
+  public void appliesFieldsAndFilters() throws IOException {
+    File a = log("a.log", false, times(0, 1, 100));
+    File b = log("b.log", false, times(0, 1, 100));
+
+    MergingFileDecoder decoder = new MergingFileDecoder(2);
+    decoder.setFields(new HashSet<String>(Arrays.asList("level")));
+    decoder.setFilters(Collections.<FieldFilter>singletonList(new MinLevelFilter(Level.WARN)));
+    decoder.setLayoutPattern(LAYOUT);
+    List<ILoggingEvent> events = decode(decoder, a, b);
+
+    assertEquals(30, events.size());
+    assertOrdered(events);
+    assertEquals(Level.WARN, events.get(0).getLevel());
+    assertNull(events.get(0).getMessage());
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void reportsMissingFile() throws IOException {
+    decode(new MergingFileDecoder(2), log("a.log", true, 1, 2), new File(tmp.getRoot(), "missing.log"));
+  }
+
+  @Test(expected = UnknownLayoutPatternException.class)
+  public void requiresLayoutOfEachFile() throws IOException {
+    decode(new MergingFileDecoder(2), log("a.log", true, 1, 2), log("b.log", false, 1, 2));
+  }
+}
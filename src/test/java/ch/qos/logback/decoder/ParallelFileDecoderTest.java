@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests decoding a log file in parallel chunks
+ */
+public class ParallelFileDecoderTest {
+  private static final long CHUNK_SIZE = 16 * 1024;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void decodesSameEventsInSameOrderAsBufferDecoder() throws IOException {
+    File file = tmp.newFile("big.log");
+    LogGenerator.generateFile(file.getPath(), 5000);
+
+    List<ILoggingEvent> expected = new BufferDecoder().decode(new BufferedReader(new FileReader(file)));
+    ParallelFileDecoder decoder = new ParallelFileDecoder(4);
+    decoder.setMinChunkSize(CHUNK_SIZE);
+    List<ILoggingEvent> actual = decoder.decode(file);
+
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getTimeStamp(), actual.get(i).getTimeStamp());
+      assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+    }
+  }
+
+  @Test
+  public void capsChunkSizeForLargeFiles() throws IOException {
+    File file = tmp.newFile("large.log");
+    LogGenerator.generateFile(file.getPath(), 20000);
+
+    ParallelFileDecoder decoder = new ParallelFileDecoder(2);
+    decoder.setLayoutPattern(LogGenerator.SIMPLE_LAYOUT);
+    decoder.setMinChunkSize(CHUNK_SIZE / 4);
+    decoder.setMaxChunkSize(CHUNK_SIZE);
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    List<Long> bounds;
+    try {
+      bounds = decoder.split(channel, 0, channel.size());
+    } finally {
+      channel.close();
+    }
+
+    // a chunk ends at the first event start after the cap
+    long maxEventLength = 1024;
+    assertTrue(bounds.size() - 1 >= file.length() / (CHUNK_SIZE + maxEventLength));
+    for (int i = 1; i < bounds.size(); i++) {
+      assertTrue(bounds.get(i) - bounds.get(i - 1) <= CHUNK_SIZE + maxEventLength);
+    }
+  }
+
+  @Test
+  public void doesNotSplitMultiLineEvents() throws IOException {
+    File file = tmp.newFile("multiline.log");
+    Writer writer = new FileWriter(file);
+    try {
+      for (int i = 0; i < 2000; i++) {
+        writer.write("2013-07-22 10:15:40,224 [ERROR] - event " + i + "\n");
+        writer.write("java.lang.IllegalStateException: boom\n");
+        writer.write("\tat foo.Bar.baz(Bar.java:12)\n");
+        writer.write("\tat foo.Bar.main(Bar.java:5)\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    ParallelFileDecoder decoder = new ParallelFileDecoder(3);
+    decoder.setLayoutPattern("%d [%level] - %msg%n");
+    decoder.setMinChunkSize(CHUNK_SIZE);
+    List<ILoggingEvent> events = decoder.decode(file);
+
+    assertEquals(2000, events.size());
+    for (int i = 0; i < events.size(); i++) {
+      assertTrue(events.get(i).getMessage().startsWith("event " + i + "\n"));
+      assertTrue(events.get(i).getMessage().endsWith("(Bar.java:5)"));
+    }
+  }
+}
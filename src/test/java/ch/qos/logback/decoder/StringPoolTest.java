@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Tests interning repeated fields
+ */
+public class StringPoolTest {
+
+  @Test
+  public void returnsPooledInstanceForEqualSpans() {
+    StringPool pool = new StringPool(16);
+    String first = pool.intern("[main] com.example.Foo", 7, 22);
+    StringBuilder other = new StringBuilder("com.example.Foo: hello");
+
+    assertEquals("com.example.Foo", first);
+    assertSame(first, pool.intern(other, 0, 15));
+    assertSame(first, pool.intern(new String("com.example.Foo")));
+    assertEquals("com.example.Bar", pool.intern("com.example.Bar", 0, 15));
+  }
+
+  @Test
+  public void staysWithinSize() {
+    StringPool pool = new StringPool(64);
+    for (int i = 0; i < 10000; i++) {
+      assertEquals("thread-" + i, pool.intern("thread-" + i));
+    }
+    assertTrue(pool.size() <= 64);
+
+    pool.clear();
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void doesNotPoolLongStrings() {
+    StringPool pool = new StringPool(16);
+    StringBuilder s = new StringBuilder();
+    while (s.length() <= StringPool.MAX_LENGTH) {
+      s.append("com.example.");
+    }
+    String first = pool.intern(s, 0, s.length());
+
+    assertEquals(s.toString(), first);
+    assertNotSame(first, pool.intern(s, 0, s.length()));
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void decodedEventsShareNames() throws IOException {
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern("%d{HH:mm:ss.SSS} [%thread] %-5level %logger %class.%method: %msg%n");
+    List<ILoggingEvent> events = decoder.decode(new BufferedReader(new StringReader(
+          "10:15:40.224 [main] INFO  com.example.Foo com.example.Foo.run: one\n"
+        + "10:15:41.224 [main] WARN  com.example.Foo com.example.Foo.run: two\n")));
+
+    StaticLoggingEvent first = (StaticLoggingEvent) events.get(0);
+    StaticLoggingEvent second = (StaticLoggingEvent) events.get(1);
+    assertEquals("com.example.Foo", first.getLoggerName());
+    assertSame(first.getLoggerName(), second.getLoggerName());
+    assertSame(first.getThreadName(), second.getThreadName());
+    assertSame(first.getLoggerName(), first.getClassNameOfCaller());
+    assertSame(first.getMethodOfCaller(), second.getMethodOfCaller());
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, QOS.ch. All rights reserved.
+ *
+ * This program and the accompanying materials are dual-licensed under
+ * either the terms of the Eclipse Public License v1.0 as published by
+ * the Eclipse Foundation
+ *
+ *   or (per the licensee's choosing)
+ *
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ */
+package ch.qos.logback.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests fingerprinting stack traces and counting the most frequent ones
+ */
+public class TopExceptionsTest {
+  private static final String TRACE = "java.lang.RuntimeException: Sorry, try again later\n"
+      + "\tat BookController.gamma(BookController.java:26)\n"
+      + "\tat BookController.beta(BookController.java:20)\n"
+      + "\tat BookController.alpha(BookController.java:18)\n"
+      + "Caused by: java.lang.IllegalStateException: Unable to save order\n"
+      + "\tat BookService.zeta(BookController.java:51)\n"
+      + "\t... 3 common frames omitted\n"
+      + "Caused by: java.sql.SQLException: Database problem\n"
+      + "\tat BookDao.iota(BookController.java:66)\n"
+      + "\t... 4 common frames omitted\n";
+
+  private static ExceptionFingerprint parse(String text, int maxFrames, boolean keepLineNumbers) {
+    ExceptionFingerprint fingerprint = new ExceptionFingerprint(maxFrames, keepLineNumbers);
+    assertTrue(fingerprint.parse(text, 0, text.length()));
+    return fingerprint;
+  }
+
+  @Test
+  public void fingerprintsClassFramesAndRootCause() {
+    ExceptionFingerprint fingerprint = parse("Order failed\n" + TRACE, 2, false);
+
+    assertEquals("java.lang.RuntimeException", fingerprint.getExceptionClass());
+    assertEquals("java.sql.SQLException", fingerprint.getRootCauseClass());
+    assertEquals(Arrays.asList("BookController.gamma(BookController.java)", "BookController.beta(BookController.java)"),
+        fingerprint.getFrames());
+
+    // same frames at other lines, with the packaging data of %xEx
+    String moved = TRACE.replace("java:26)", "java:27) ~[books.jar:1.1]");
+    assertEquals(fingerprint.getHash(), parse(moved, 2, false).getHash());
+    assertTrue(parse(TRACE, 2, true).getHash() != parse(moved, 2, true).getHash());
+    assertEquals("BookController.gamma(BookController.java:27)", parse(moved, 2, true).getFrames().get(0));
+  }
+
+  @Test
+  public void fingerprintsRootCauseFirstTrace() {
+    ExceptionFingerprint fingerprint = parse("java.lang.NullPointerException\n"
+        + "\tat com.xyz.Wombat(Wombat.java:57) ~[wombat-1.3.jar:1.3]\n"
+        + "Wrapped by: org.springframework.BeanCreationException: Error creating bean\n"
+        + "\tat org.springframework.AbstractBeanFactory.getBean(AbstractBeanFactory.java:248)\n", 5, false);
+
+    assertEquals("org.springframework.BeanCreationException", fingerprint.getExceptionClass());
+    assertEquals("java.lang.NullPointerException", fingerprint.getRootCauseClass());
+    assertEquals(Arrays.asList("com.xyz.Wombat(Wombat.java)"), fingerprint.getFrames());
+  }
+
+  @Test
+  public void ignoresTextWithoutTrace() {
+    ExceptionFingerprint fingerprint = new ExceptionFingerprint(5, false);
+    String text = "connecting to db.example.com\ncom.example.Foo: not a trace\n";
+    assertFalse(fingerprint.parse(text, 0, text.length()));
+  }
+
+  @Test
+  public void evictsLeastFrequentFingerprint() {
+    TopExceptions top = new TopExceptions(2, 1, false);
+    String a = TRACE;
+    String b = "java.io.IOException: b\n\tat foo.B.run(B.java:1)\n";
+    String c = "java.io.IOException: c\n\tat foo.C.run(C.java:1)\n";
+    for (int i = 0; i < 5; i++) {
+      top.add(100 + i, a, 0, a.length());
+    }
+    top.add(200, b, 0, b.length());
+    top.add(300, c, 0, c.length());
+    top.add(400, c, 0, c.length());
+    assertFalse(top.add(500, "no trace", 0, 8));
+
+    List<TopExceptions.Entry> entries = top.getTop();
+    assertEquals(9, top.getEventCount());
+    assertEquals(8, top.getExceptionCount());
+    assertEquals(2, entries.size());
+
+    TopExceptions.Entry first = entries.get(0);
+    assertEquals(5, first.getCount());
+    assertEquals(0, first.getError());
+    assertEquals(100, first.getFirstSeen());
+    assertEquals(104, first.getLastSeen());
+    assertEquals(TRACE, first.getSample());
+
+    // c took the place of b, inheriting its count as the error
+    TopExceptions.Entry second = entries.get(1);
+    assertEquals(Arrays.asList("foo.C.run(C.java)"), second.getFrames());
+    assertEquals(3, second.getCount());
+    assertEquals(1, second.getError());
+    assertEquals(300, second.getFirstSeen());
+  }
+
+  @Test
+  public void countsTracesOfExceptionField() throws IOException {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      input.append(String.format("2013-07-22 10:00:%02d,000 [main] com.example.Foo - event %d\n", i % 60, i));
+      if (i % 100 == 0) {
+        input.append(i % 300 == 0 ? TRACE : "java.io.IOException: x\n\tat foo.B.run(B.java:" + i + ")\n");
+      }
+    }
+    BufferDecoder decoder = new BufferDecoder();
+    decoder.setLayoutPattern("%d [%thread] %logger - %msg%n%ex");
+    TopExceptions top = new TopExceptions();
+    decoder.decode(new BufferedReader(new StringReader(input.toString())), top.getBatch(), top);
+
+    // events without a throwable still match the layout
+    assertEquals(3000, top.getEventCount());
+    assertEquals(0, top.getBatch().getUndecodableCount());
+    assertEquals(30, top.getExceptionCount());
+
+    List<TopExceptions.Entry> entries = top.getTop();
+    assertEquals(2, entries.size());
+    assertEquals("java.io.IOException", entries.get(0).getExceptionClass());
+    assertEquals(20, entries.get(0).getCount());
+    assertEquals("java.sql.SQLException", entries.get(1).getRootCauseClass());
+    assertEquals(10, entries.get(1).getCount());
+  }
+}
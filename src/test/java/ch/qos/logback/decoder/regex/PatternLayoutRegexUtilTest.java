@@ -156,7 +156,7 @@ public class PatternLayoutRegexUtilTest {
 
   @Test
   public void throwableProxyPatternToRegex() {
-    final String REGEX = regex(PatternNames.EXCEPTION, RegexPatterns.EXCEPTION_REGEX);
+    final String REGEX = "(?:" + regex(PatternNames.EXCEPTION, RegexPatterns.EXCEPTION_REGEX) + ")?";
     for (String p : Arrays.asList("%ex", "%exception", "%throwable")) {
       assertEquals(REGEX, regexifier.toRegex(p));
     }
@@ -164,7 +164,7 @@ public class PatternLayoutRegexUtilTest {
 
   @Test
   public void extendedExceptionPatternToRegex() {
-    final String REGEX = regex(PatternNames.EXT_EXCEPTION, RegexPatterns.EXCEPTION_REGEX);
+    final String REGEX = "(?:" + regex(PatternNames.EXT_EXCEPTION, RegexPatterns.EXCEPTION_REGEX) + ")?";
     for (String p : Arrays.asList("%xEx", "%xException", "%xThrowable")) {
       assertEquals(REGEX, regexifier.toRegex(p));
     }
@@ -172,7 +172,7 @@ public class PatternLayoutRegexUtilTest {
 
   @Test
   public void rootExceptionPatternToRegex() {
-    final String REGEX = regex(PatternNames.ROOT_EXCEPTION, RegexPatterns.EXCEPTION_REGEX);
+    final String REGEX = "(?:" + regex(PatternNames.ROOT_EXCEPTION, RegexPatterns.EXCEPTION_REGEX) + ")?";
     for (String p : Arrays.asList("%rEx", "%rootException")) {
       assertEquals(REGEX, regexifier.toRegex(p));
     }